@@ -0,0 +1,65 @@
+package sql.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import sql.ide.storage.SchemaCatalog;
+
+/**
+ * The IO part of updateTree: discovering the tables and columns of a
+ * database folder with many tables
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CatalogBenchmark {
+    @Param({ "10", "100", "1000" })
+    public int tables;
+
+    private Path folder;
+    private Path changedTable;
+    private SchemaCatalog catalog;
+    private long modified;
+
+    @Setup(Level.Trial)
+    public void createDatabase() throws IOException {
+        folder = Workloads.database(tables, 20, Workloads.SEED);
+        changedTable = folder.resolve("PEOPLE.csv");
+        modified = Files.getLastModifiedTime(changedTable).toMillis();
+        catalog = new SchemaCatalog();
+        catalog.refresh(folder);
+    }
+
+    /**
+     * First refresh of a database, every header is read
+     */
+    @Benchmark
+    public SchemaCatalog.Changes cold() throws IOException {
+        return new SchemaCatalog().refresh(folder);
+    }
+
+    /**
+     * Refresh with nothing changed, only the attributes are read
+     */
+    @Benchmark
+    public SchemaCatalog.Changes unchanged() throws IOException {
+        return catalog.refresh(folder);
+    }
+
+    /**
+     * Refresh after a statement wrote one table
+     */
+    @Benchmark
+    public SchemaCatalog.Changes oneChanged() throws IOException {
+        Files.setLastModifiedTime(changedTable, FileTime.fromMillis(++modified));
+        return catalog.refresh(folder);
+    }
+}
@@ -0,0 +1,82 @@
+package sql.bench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+//* Import everything related to database manager
+import edu.upvictoria.fpoo.*;
+import sql.ide.query.QueryParser;
+import sql.ide.query.SelectExecutor;
+import sql.ide.query.SelectQuery;
+import sql.ide.storage.TableCache;
+
+/**
+ * Filters, sorts and aggregates over a table already in memory, as the List
+ * of HashMaps of Table (rows) and as a ColumnarTable (columns). The heap of
+ * the two layouts is measured by HeapReport.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class ColumnarBenchmark {
+    @Param({ "10000", "100000", "1000000" })
+    public int rows;
+
+    @Param({ "rows", "columns" })
+    public String layout;
+
+    private Path folder;
+    private Table table;
+    private SelectExecutor executor;
+
+    private final SelectQuery filter = parse(
+            "SELECT COUNT(*) FROM PEOPLE WHERE AGE > 40 AND CITY = 'victoria';");
+    private final SelectQuery aggregate = parse("SELECT SUM(SCORE), AVG(AGE), MAX(SCORE), MIN(NAME) FROM PEOPLE;");
+    private final SelectQuery sort = parse("SELECT ID, NAME FROM PEOPLE WHERE AGE < 30 ORDER BY SCORE DESC, ID;");
+
+    @Setup(Level.Trial)
+    public void createTable() throws IOException {
+        folder = Workloads.database(1, rows, Workloads.SEED);
+        if (layout.equals("rows")) {
+            table = Table.load(folder.resolve("PEOPLE.csv"));
+        } else {
+            // a warm cache, the table is loaded once
+            executor = new SelectExecutor(new TableCache());
+            executor.execute(filter, folder);
+        }
+    }
+
+    @Benchmark
+    public int filter() {
+        return execute(filter);
+    }
+
+    @Benchmark
+    public int aggregate() {
+        return execute(aggregate);
+    }
+
+    @Benchmark
+    public int sort() {
+        return execute(sort);
+    }
+
+    private int execute(SelectQuery query) {
+        if (table != null) {
+            List<?> result = RowEngine.execute(query, table);
+            return result.size();
+        }
+        return executor.execute(query, folder).getRows().size();
+    }
+
+    static SelectQuery parse(String query) {
+        return QueryParser.parseSelect(new Lexer(query).scanTokens());
+    }
+}
@@ -0,0 +1,132 @@
+package sql.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+//* Import everything related to database manager
+import edu.upvictoria.fpoo.*;
+import sql.ide.execution.Statement;
+import sql.ide.execution.StatementCache;
+import sql.ide.execution.StatementRunner;
+import sql.ide.execution.StatementSplitter;
+import sql.ide.storage.TableCache;
+
+/**
+ * The path of runFile without the JavaFX parts: split the script, lex, parse
+ * and run every statement against a table of the given size.
+ *
+ * With cold caches every invocation starts with empty statement and table
+ * caches, so it measures the full parse plus interpret path; with warm
+ * caches they are kept for the whole trial, like in an IDE session. The
+ * DML workloads restore the table before every invocation; their statements
+ * are batched and appended to the write-ahead log, run with
+ * -Dsqlide.wal=false to rewrite the table at the end of every batch and with
+ * -Dsqlide.dml.batchSize=1 too to rewrite it after every statement like the
+ * Interpreter does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecutionBenchmark {
+    // statements of every script
+    private static final int STATEMENTS = 10;
+
+    @Param({ "1000", "10000", "100000" })
+    public int rows;
+
+    @Param({ "SELECT", "INSERT", "UPDATE", "DELETE" })
+    public String workload;
+
+    @Param({ "cold", "warm" })
+    public String caches;
+
+    private Path folder;
+    private Path table;
+    private Path pristine;
+    private String script;
+    private StatementRunner runner;
+    private long outputLength;
+
+    @Setup(Level.Trial)
+    public void createDatabase() throws IOException {
+        folder = Workloads.database(1, rows, Workloads.SEED);
+        table = folder.resolve("PEOPLE.csv");
+        pristine = folder.resolve("PEOPLE.pristine");
+        Files.copy(table, pristine);
+        pristine.toFile().deleteOnExit();
+        script = script(workload, rows);
+        runner = newRunner();
+    }
+
+    @Setup(Level.Invocation)
+    public void reset() throws IOException {
+        if (!workload.equals("SELECT"))
+            Files.copy(pristine, table, StandardCopyOption.REPLACE_EXISTING);
+        if (caches.equals("cold"))
+            runner = newRunner();
+    }
+
+    /**
+     * Write the write-ahead log into the table, outside of the measurement
+     * like the background checkpoint of the IDE
+     */
+    @TearDown(Level.Invocation)
+    public void checkpoint() {
+        runner.close();
+    }
+
+    private StatementRunner newRunner() {
+        Interpreter interpreter = new Interpreter();
+        interpreter.setDataBase(folder);
+        return new StatementRunner(interpreter, new StatementCache(), new TableCache());
+    }
+
+    @Benchmark
+    public int runFile() {
+        int executed = 0;
+        for (Statement statement : StatementSplitter.split(script))
+            executed += runner.run(statement, text -> outputLength += text.length(),
+                    result -> outputLength += result.getRows().size());
+        // the end of the script writes the batched DML
+        runner.flush();
+        return executed;
+    }
+
+    static String script(String workload, int rows) {
+        Random random = new Random(Workloads.SEED);
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; i < STATEMENTS; i++) {
+            int id = random.nextInt(rows);
+            switch (workload) {
+                case "SELECT":
+                    if (i % 2 == 0)
+                        script.append("SELECT NAME, AGE FROM PEOPLE WHERE AGE > ").append(id % 90)
+                                .append(" ORDER BY AGE DESC LIMIT 100;\n");
+                    else
+                        script.append("SELECT COUNT(*), AVG(SCORE) FROM PEOPLE WHERE ID < ").append(id).append(";\n");
+                    break;
+                case "INSERT":
+                    script.append(Workloads.insert(rows + i, random)).append('\n');
+                    break;
+                case "UPDATE":
+                    script.append("UPDATE PEOPLE SET SCORE = 1.5 WHERE ID = ").append(id).append(";\n");
+                    break;
+                case "DELETE":
+                    script.append("DELETE FROM PEOPLE WHERE ID = ").append(id).append(";\n");
+                    break;
+                default:
+                    throw new IllegalArgumentException(workload);
+            }
+        }
+        return script.toString();
+    }
+}
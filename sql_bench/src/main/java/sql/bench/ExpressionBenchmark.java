@@ -0,0 +1,86 @@
+package sql.bench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+//* Import everything related to database manager
+import edu.upvictoria.fpoo.*;
+import sql.ide.query.Evaluator;
+import sql.ide.query.ExprCompiler;
+import sql.ide.query.SelectQuery;
+import sql.ide.storage.ColumnarTable;
+
+/**
+ * Cost per row of a WHERE and of a SELECT list over a ColumnarTable, walked
+ * by the Evaluator (visitor) and run as the closures of an ExprCompiler
+ * (compiled). The compiled runs include compiling the query, once per
+ * run of ROWS rows.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xmx2g" })
+@OperationsPerInvocation(ExpressionBenchmark.ROWS)
+public class ExpressionBenchmark {
+    static final int ROWS = 100_000;
+
+    @Param({ "visitor", "compiled" })
+    public String engine;
+
+    private ColumnarTable table;
+    private Evaluator evaluator;
+
+    private final SelectQuery query = ColumnarBenchmark.parse("SELECT ID, AGE * 2 + 1, UCASE(NAME), CITY, SCORE / 10 "
+            + "FROM PEOPLE WHERE AGE * 2 + 1 > 60 AND (UCASE(NAME) = 'ANA' OR SCORE - 50 < 0);");
+
+    @Setup(Level.Trial)
+    public void createTable() throws IOException {
+        Path folder = Workloads.database(1, ROWS, Workloads.SEED);
+        table = ColumnarTable.from(Table.load(folder.resolve("PEOPLE.csv")));
+        evaluator = new Evaluator(table.getColumnNames());
+    }
+
+    @Benchmark
+    public int where() {
+        int selected = 0;
+        if (engine.equals("visitor")) {
+            for (int row = 0; row < ROWS; row++) {
+                if (evaluator.test(query.where, table.row(row)))
+                    selected++;
+            }
+        } else {
+            ExprCompiler.Test where = ExprCompiler.of(table).predicate(query.where);
+            for (int row = 0; row < ROWS; row++) {
+                if (where.test(row))
+                    selected++;
+            }
+        }
+        return selected;
+    }
+
+    @Benchmark
+    public void project(Blackhole blackhole) {
+        List<SelectQuery.Item> items = query.items;
+        if (engine.equals("visitor")) {
+            for (int row = 0; row < ROWS; row++) {
+                Map<String, Object> view = table.row(row);
+                for (SelectQuery.Item item : items)
+                    blackhole.consume(evaluator.evaluate(item.expression, view));
+            }
+        } else {
+            ExprCompiler.Program[] programs = ExprCompiler.of(table).compile(items);
+            for (int row = 0; row < ROWS; row++) {
+                for (ExprCompiler.Program program : programs)
+                    blackhole.consume(program.evaluate(row));
+            }
+        }
+    }
+}
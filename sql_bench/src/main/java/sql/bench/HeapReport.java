@@ -0,0 +1,45 @@
+package sql.bench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+//* Import everything related to database manager
+import edu.upvictoria.fpoo.*;
+import sql.ide.storage.ColumnarTable;
+import sql.ide.storage.TableCache;
+
+/**
+ * Heap used by a generated table as a Table and as a ColumnarTable, both the
+ * estimate the TableCache uses and the heap measured after a GC.
+ *
+ * java -Xmx4g -cp target/benchmarks.jar sql.bench.HeapReport 1000000
+ */
+public class HeapReport {
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Path file = Workloads.database(1, rows, Workloads.SEED).resolve("PEOPLE.csv");
+
+        long before = usedHeap();
+        Table table = Table.load(file);
+        long tableHeap = usedHeap() - before;
+        long tableEstimate = TableCache.estimateBytes(table);
+        table = null;
+
+        before = usedHeap();
+        ColumnarTable columns = ColumnarTable.load(file);
+        long columnsHeap = usedHeap() - before;
+
+        System.out.println(rows + " rows, " + Workloads.HEADER);
+        System.out.printf("Table:         %,d KB measured, %,d KB estimated%n", tableHeap >> 10, tableEstimate >> 10);
+        System.out.printf("ColumnarTable: %,d KB measured, %,d KB estimated%n", columnsHeap >> 10,
+                columns.estimateBytes() >> 10);
+        System.out.printf("%.1fx less heap%n", (double) tableHeap / Math.max(columnsHeap, 1));
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,51 @@
+package sql.bench;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.fxmisc.richtext.model.StyleSpans;
+import org.openjdk.jmh.annotations.*;
+
+//* Import everything related to database manager
+import edu.upvictoria.fpoo.*;
+import sql.ide.editor.SyntaxHighlighter;
+import sql.ide.execution.Statement;
+import sql.ide.execution.StatementSplitter;
+
+/**
+ * Lexing and highlighting of whole scripts, what the editor does when a
+ * file is loaded
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HighlightingBenchmark {
+    @Param({ "1000", "10000", "100000" })
+    public int lines;
+
+    private String script;
+
+    @Setup
+    public void setup() {
+        script = Workloads.script(lines, Workloads.SEED);
+    }
+
+    @Benchmark
+    public List<Token> scanTokens() {
+        return new Lexer(script).scanTokens();
+    }
+
+    @Benchmark
+    public StyleSpans<Collection<String>> computeHighlighting() {
+        return SyntaxHighlighter.computeHighlighting(script);
+    }
+
+    @Benchmark
+    public List<Statement> splitStatements() {
+        return StatementSplitter.split(script);
+    }
+}
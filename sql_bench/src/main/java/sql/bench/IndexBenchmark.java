@@ -0,0 +1,67 @@
+package sql.bench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+//* Import everything related to database manager
+import edu.upvictoria.fpoo.*;
+import sql.ide.execution.Statement;
+import sql.ide.execution.StatementRunner;
+import sql.ide.execution.StatementSplitter;
+
+/**
+ * Point lookups and narrow ranges on the ID column, scanning the table or
+ * reading the rows an index finds. The scan keeps the table in its cache,
+ * so it is the best case of the scan.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class IndexBenchmark {
+    @Param({ "100000", "1000000" })
+    public int rows;
+
+    @Param({ "scan", "hash", "sorted" })
+    public String access;
+
+    private StatementRunner runner;
+    private Random random;
+    private long outputLength;
+
+    @Setup(Level.Trial)
+    public void createDatabase() throws IOException {
+        Path folder = Workloads.database(1, rows, Workloads.SEED);
+        Interpreter interpreter = new Interpreter();
+        interpreter.setDataBase(folder);
+        runner = new StatementRunner(interpreter);
+        if (!access.equals("scan"))
+            run("CREATE INDEX ID_INDEX ON PEOPLE (ID) USING " + access.toUpperCase() + ";");
+        folder.resolve("PEOPLE.ID_INDEX.idx").toFile().deleteOnExit();
+        random = new Random(Workloads.SEED);
+    }
+
+    @Benchmark
+    public int pointLookup() {
+        return run("SELECT * FROM PEOPLE WHERE ID = " + random.nextInt(rows) + ";");
+    }
+
+    @Benchmark
+    public int range() {
+        int low = random.nextInt(rows - 100);
+        return run("SELECT NAME, AGE FROM PEOPLE WHERE ID >= " + low + " AND ID < " + (low + 100) + ";");
+    }
+
+    private int run(String script) {
+        List<Statement> statements = StatementSplitter.split(script);
+        return runner.run(statements.get(0), text -> outputLength += text.length(),
+                result -> outputLength += result.getRows().size());
+    }
+}
@@ -0,0 +1,63 @@
+package sql.bench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+//* Import everything related to database manager
+import edu.upvictoria.fpoo.*;
+import sql.ide.query.QueryParser;
+import sql.ide.query.SelectExecutor;
+import sql.ide.query.SelectQuery;
+import sql.ide.storage.TableCache;
+
+/**
+ * SELECT ... LIMIT on a table that is not in memory: loading the whole table
+ * and then cutting the rows (load), against the streaming pipeline that
+ * stops reading at the LIMIT or keeps only the top rows (stream).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class LimitBenchmark {
+    @Param({ "100000", "1000000" })
+    public int rows;
+
+    @Param({ "load", "stream" })
+    public String mode;
+
+    private Path folder;
+    private final SelectQuery first = parse("SELECT * FROM PEOPLE WHERE AGE > 30 LIMIT 10;");
+    private final SelectQuery top = parse("SELECT NAME, SCORE FROM PEOPLE ORDER BY SCORE DESC LIMIT 10;");
+
+    @Setup(Level.Trial)
+    public void createTable() throws IOException {
+        folder = Workloads.database(1, rows, Workloads.SEED);
+    }
+
+    @Benchmark
+    public int limit() {
+        return execute(first);
+    }
+
+    @Benchmark
+    public int orderByLimit() {
+        return execute(top);
+    }
+
+    private int execute(SelectQuery query) {
+        if (mode.equals("load"))
+            return RowEngine.execute(query, Table.load(folder.resolve("PEOPLE.csv"))).size();
+        // a new cache every time, the table is never in memory
+        return new SelectExecutor(new TableCache()).execute(query, folder).getRows().size();
+    }
+
+    static SelectQuery parse(String query) {
+        return QueryParser.parseSelect(new Lexer(query).scanTokens());
+    }
+}
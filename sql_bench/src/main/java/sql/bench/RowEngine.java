@@ -0,0 +1,91 @@
+package sql.bench;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+//* Import everything related to database manager
+import edu.upvictoria.fpoo.*;
+import sql.ide.query.Evaluator;
+import sql.ide.query.Expr;
+import sql.ide.query.SelectQuery;
+
+/**
+ * The SelectExecutor as it was before the columnar tables: every step walks
+ * the List of HashMaps of a Table. It is the baseline of ColumnarBenchmark.
+ */
+public class RowEngine {
+    private RowEngine() {
+    }
+
+    /**
+     * @param query
+     * @param source the table, already loaded
+     * @return rows of the result
+     */
+    public static List<HashMap<String, Object>> execute(SelectQuery query, Table source) {
+        Evaluator evaluator = new Evaluator(source.getColumnNames());
+
+        List<HashMap<String, Object>> rows = source.getRows();
+        if (query.where != null) {
+            List<HashMap<String, Object>> selected = new ArrayList<>();
+            for (HashMap<String, Object> row : rows) {
+                if (evaluator.test(query.where, row))
+                    selected.add(row);
+            }
+            rows = selected;
+        }
+
+        if (query.isAggregate()) {
+            HashMap<String, Object> result = new HashMap<>();
+            for (SelectQuery.Item item : query.items)
+                result.put(item.name(), evaluator.aggregate((Expr.FunctionCall) item.expression, rows));
+            return Collections.singletonList(result);
+        }
+
+        if (!query.orderBy.isEmpty()) {
+            if (rows == source.getRows())
+                rows = new ArrayList<>(rows);
+            rows.sort(comparator(query.orderBy, evaluator));
+        }
+
+        if (!query.isStar()) {
+            List<HashMap<String, Object>> projected = new ArrayList<>(rows.size());
+            for (HashMap<String, Object> row : rows) {
+                HashMap<String, Object> result = new HashMap<>();
+                for (SelectQuery.Item item : query.items)
+                    result.put(item.name(), evaluator.evaluate(item.expression, row));
+                projected.add(result);
+            }
+            rows = projected;
+        }
+
+        if (query.distinct)
+            rows = new ArrayList<>(new LinkedHashSet<>(rows));
+        if (query.limit != -1 && query.limit < rows.size())
+            rows = rows.subList(0, query.limit);
+        return rows;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Comparator<HashMap<String, Object>> comparator(List<SelectQuery.OrderKey> keys,
+            Evaluator evaluator) {
+        return (first, second) -> {
+            for (SelectQuery.OrderKey key : keys) {
+                Object a = evaluator.evaluate(key.expression, first);
+                Object b = evaluator.evaluate(key.expression, second);
+                int comparison;
+                if (a == null || b == null)
+                    comparison = a == b ? 0 : a == null ? 1 : -1;
+                else
+                    comparison = key.descending ? -((Comparable) a).compareTo(b) : ((Comparable) a).compareTo(b);
+                if (comparison != 0)
+                    return comparison;
+            }
+            return 0;
+        };
+    }
+}
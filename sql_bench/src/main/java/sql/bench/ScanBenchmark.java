@@ -0,0 +1,70 @@
+package sql.bench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+//* Import everything related to database manager
+import edu.upvictoria.fpoo.*;
+import sql.ide.query.QueryParser;
+import sql.ide.query.SelectExecutor;
+import sql.ide.query.SelectQuery;
+import sql.ide.storage.TableCache;
+
+/**
+ * A filter the kernels can not run, so it goes through the Evaluator row by
+ * row, and a projection of most of the rows; on one thread and on all the
+ * cores. The table is in the cache, only the scan is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class ScanBenchmark {
+    @Param({ "100000", "1000000" })
+    public int rows;
+
+    private Path folder;
+    private SelectExecutor executor;
+    private final SelectQuery filter = parse(
+            "SELECT COUNT(*) FROM PEOPLE WHERE AGE * 2 > 100 AND UCASE(NAME) = 'ANA';");
+    private final SelectQuery projection = parse(
+            "SELECT UCASE(NAME) AS NAME, SCORE * 1.5 AS SCORE FROM PEOPLE WHERE AGE > 10;");
+
+    @Setup(Level.Trial)
+    public void createTable() throws IOException {
+        folder = Workloads.database(1, rows, Workloads.SEED);
+        executor = new SelectExecutor(new TableCache());
+        executor.execute(filter, folder);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgs = { "-Xmx4g", "-Dsqlide.scan.parallelism=1" })
+    public int filterSerial() {
+        return executor.execute(filter, folder).getRows().size();
+    }
+
+    @Benchmark
+    public int filterParallel() {
+        return executor.execute(filter, folder).getRows().size();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgs = { "-Xmx4g", "-Dsqlide.scan.parallelism=1" })
+    public int projectionSerial() {
+        return executor.execute(projection, folder).getRows().size();
+    }
+
+    @Benchmark
+    public int projectionParallel() {
+        return executor.execute(projection, folder).getRows().size();
+    }
+
+    static SelectQuery parse(String query) {
+        return QueryParser.parseSelect(new Lexer(query).scanTokens());
+    }
+}
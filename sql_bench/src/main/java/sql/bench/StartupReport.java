@@ -0,0 +1,100 @@
+package sql.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cold start of the IDE: time to the first frame and until it is interactive,
+ * over several launches, without and with the class-data-sharing archive
+ * built by mvn -Pcds package in sql_gui. Every launch is a new JVM that
+ * exits by itself once the IDE is interactive, so it needs a display.
+ *
+ * java -cp target/benchmarks.jar sql.bench.StartupReport 10
+ */
+public class StartupReport {
+    private static final Path JAR = Path.of("../sql_gui/target/sql_gui-1.0-SNAPSHOT.jar");
+    private static final Path ARCHIVE = Path.of("../sql_gui/target/sql-ide.jsa");
+    private static final Pattern TIMES = Pattern.compile("startup: first frame (-?\\d+) ms, interactive (\\d+) ms");
+    private static final long TIMEOUT_SECONDS = 60;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        Path jar = args.length > 1 ? Path.of(args[1]) : JAR;
+        Path archive = args.length > 2 ? Path.of(args[2]) : ARCHIVE;
+        if (!Files.exists(jar)) {
+            System.err.println(jar + " does not exist, run mvn -Pcds package in sql_gui first");
+            System.exit(2);
+        }
+
+        report("without archive", jar, null, runs);
+        if (Files.exists(archive))
+            report("with archive", jar, archive, runs);
+        else
+            System.out.println("no archive at " + archive);
+    }
+
+    private static void report(String name, Path jar, Path archive, int runs)
+            throws IOException, InterruptedException {
+        long[] firstFrame = new long[runs];
+        long[] interactive = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            long[] times = launch(jar, archive);
+            firstFrame[i] = times[0];
+            interactive[i] = times[1];
+        }
+        System.out.printf("%-16s first frame: median %,d ms, min %,d ms   interactive: median %,d ms, min %,d ms%n",
+                name, median(firstFrame), min(firstFrame), median(interactive), min(interactive));
+    }
+
+    /**
+     * @return time to the first frame and until the IDE is interactive
+     */
+    private static long[] launch(Path jar, Path archive) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        if (archive != null)
+            command.add("-XX:SharedArchiveFile=" + archive);
+        command.add("-Dsqlide.startup.report=true");
+        command.add("-Dsqlide.startup.exit=true");
+        command.add("-jar");
+        command.add(jar.toString());
+
+        // read once the IDE exited, a launch that hangs is stopped at the timeout
+        Path log = Files.createTempFile("startup", ".log");
+        try {
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log.toFile())
+                    .start();
+            if (!process.waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                throw new IllegalStateException("The IDE did not exit in " + TIMEOUT_SECONDS + " s");
+            }
+            List<String> lines = Files.readAllLines(log);
+            for (String line : lines) {
+                Matcher matcher = TIMES.matcher(line);
+                if (matcher.find())
+                    return new long[] { Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2)) };
+            }
+            throw new IllegalStateException("The IDE did not report its startup, exit code " + process.exitValue()
+                    + (lines.isEmpty() ? "" : ": " + lines.get(0)));
+        } finally {
+            Files.deleteIfExists(log);
+        }
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static long min(long[] values) {
+        return Arrays.stream(values).min().orElse(0);
+    }
+}
@@ -0,0 +1,72 @@
+package sql.bench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import sql.ide.query.SelectExecutor;
+import sql.ide.query.SelectQuery;
+import sql.ide.storage.ColumnarTable;
+import sql.ide.storage.TableFiles;
+import sql.ide.storage.TableCache;
+
+/**
+ * Queries against a table that is not in memory, stored as a .csv and as a
+ * .col file: every query reads the file again, the cache keeps nothing. The
+ * whole table, two of its columns, and the rows of a narrow range of ids,
+ * which the zone maps of the .col find in one block.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class StorageBenchmark {
+    @Param({ "100000", "1000000" })
+    public int rows;
+
+    @Param({ "csv", "columnar" })
+    public String format;
+
+    private Path folder;
+    private SelectExecutor executor;
+
+    private final SelectQuery all = ColumnarBenchmark.parse("SELECT * FROM PEOPLE;");
+    private final SelectQuery columns = ColumnarBenchmark.parse("SELECT SUM(SCORE), MAX(AGE) FROM PEOPLE;");
+    private final SelectQuery range = ColumnarBenchmark
+            .parse("SELECT NAME, SCORE FROM PEOPLE WHERE ID >= 5000 AND ID < 5100;");
+
+    @Setup(Level.Trial)
+    public void createTable() throws IOException {
+        folder = Workloads.database(1, rows, Workloads.SEED);
+        if (format.equals("columnar"))
+            TableFiles.convert(folder.resolve("PEOPLE.csv"));
+        executor = new SelectExecutor(new TableCache(0));
+    }
+
+    @Benchmark
+    public int all() {
+        return executor.execute(all, folder).getRows().size();
+    }
+
+    @Benchmark
+    public int columns() {
+        return executor.execute(columns, folder).getRows().size();
+    }
+
+    @Benchmark
+    public int range() {
+        return executor.execute(range, folder).getRows().size();
+    }
+
+    /**
+     * Only the load, without the query
+     */
+    @Benchmark
+    public ColumnarTable load() {
+        return TableFiles.loadColumnar(TableFiles.resolve(folder, "PEOPLE"));
+    }
+}
@@ -0,0 +1,138 @@
+package sql.bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Generators for the synthetic scripts and databases the benchmarks run on.
+ * Everything is generated from a seed, so two runs of the same version see
+ * the same data.
+ */
+public class Workloads {
+    public static final long SEED = 42;
+    /**
+     * Columns of the generated tables, in the format Table.writeToCSV uses
+     */
+    public static final String HEADER = "ID,NAME,AGE,CITY,SCORE";
+
+    private static final String[] NAMES = { "ana", "luis", "maria", "jose", "sofia", "diego", "lucia", "pedro" };
+    private static final String[] CITIES = { "victoria", "monterrey", "tampico", "reynosa", "matamoros" };
+
+    private Workloads() {
+    }
+
+    /**
+     * A script with the given number of lines, a mix of comments, SELECT
+     * statements split across lines and single line DML
+     *
+     * @param lines
+     * @param seed
+     * @return
+     */
+    public static String script(int lines, long seed) {
+        Random random = new Random(seed);
+        StringBuilder script = new StringBuilder(lines * 48);
+        int line = 0;
+        while (line < lines) {
+            int id = random.nextInt(100_000);
+            switch (random.nextInt(6)) {
+                case 0:
+                    script.append("-- statement ").append(line).append('\n');
+                    line++;
+                    break;
+                case 1:
+                    script.append("SELECT NAME, AGE, UCASE(CITY) AS CITY\n")
+                            .append("FROM PEOPLE\n")
+                            .append("WHERE AGE >= ").append(random.nextInt(80))
+                            .append(" AND CITY = '").append(pick(random, CITIES)).append("' ORDER BY AGE DESC LIMIT 10;\n");
+                    line += 3;
+                    break;
+                case 2:
+                    script.append(insert(id, random)).append('\n');
+                    line++;
+                    break;
+                case 3:
+                    script.append("UPDATE PEOPLE SET SCORE = SCORE * 1.5, NAME = '").append(pick(random, NAMES))
+                            .append("' WHERE ID = ").append(id).append(";\n");
+                    line++;
+                    break;
+                case 4:
+                    script.append("DELETE FROM PEOPLE WHERE ID = ").append(id).append(";\n");
+                    line++;
+                    break;
+                default:
+                    script.append("SELECT COUNT(*), AVG(SCORE), MAX(AGE) FROM PEOPLE WHERE ID < ").append(id)
+                            .append(";\n");
+                    line++;
+                    break;
+            }
+        }
+        return script.toString();
+    }
+
+    /**
+     * An INSERT of one row of the PEOPLE table
+     */
+    public static String insert(int id, Random random) {
+        return "INSERT INTO PEOPLE (ID, NAME, AGE, CITY, SCORE) VALUES (" + id + ", '" + pick(random, NAMES)
+                + "', " + random.nextInt(90) + ", '" + pick(random, CITIES) + "', " + random.nextInt(1000) / 10.0
+                + ");";
+    }
+
+    /**
+     * Write a table with the given number of rows, a tenth of the cities are
+     * null; ID, AGE and SCORE never are, so they can be compared
+     *
+     * @param file
+     * @param rows
+     * @param seed
+     * @throws IOException
+     */
+    public static void writeTable(Path file, int rows, long seed) throws IOException {
+        Random random = new Random(seed);
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            writer.write(HEADER);
+            for (int i = 0; i < rows; i++) {
+                writer.newLine();
+                writer.write(Double.toString(i));
+                writer.write(",\"");
+                writer.write(pick(random, NAMES));
+                writer.write("\",");
+                writer.write(Double.toString(random.nextInt(90)));
+                writer.write(',');
+                writer.write(random.nextInt(10) == 0 ? "null" : "\"" + pick(random, CITIES) + "\"");
+                writer.write(',');
+                writer.write(Double.toString(random.nextInt(1000) / 10.0));
+            }
+        }
+    }
+
+    /**
+     * Create a database folder with a PEOPLE table and tables TABLE_1 to
+     * TABLE_n with the same columns
+     *
+     * @param tables total number of tables
+     * @param rows rows of every table
+     * @return the folder
+     * @throws IOException
+     */
+    public static Path database(int tables, int rows, long seed) throws IOException {
+        Path folder = Files.createTempDirectory("sql-bench");
+        folder.toFile().deleteOnExit();
+        writeTable(folder.resolve("PEOPLE.csv"), rows, seed);
+        for (int i = 1; i < tables; i++) {
+            Path file = folder.resolve("TABLE_" + i + ".csv");
+            writeTable(file, rows, seed + i);
+            file.toFile().deleteOnExit();
+        }
+        folder.resolve("PEOPLE.csv").toFile().deleteOnExit();
+        return folder;
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
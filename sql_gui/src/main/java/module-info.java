@@ -4,6 +4,9 @@ module sql.ide {
     requires edu.upvictoria.fpoo;
     requires javafx.graphics;
     requires richtextfx.fat;
+    requires java.management;
+    requires jdk.management;
+    requires jdk.jfr;
 
     opens sql.ide to javafx.fxml;
     exports sql.ide;
@@ -3,6 +3,7 @@ package sql.ide;
 import java.io.File;
 
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
@@ -31,6 +32,17 @@ public class App extends Application {
             event -> ((FileEditorController) loader.getController()).closeApplication()
         );
         primaryStage.show();
+
+        // what the first frame does not need starts once it is laid out
+        FileEditorController controller = loader.getController();
+        scene.addPostLayoutPulseListener(new Runnable() {
+            @Override
+            public void run() {
+                scene.removePostLayoutPulseListener(this);
+                Startup.firstFrame();
+                Platform.runLater(() -> controller.afterFirstFrame(Startup::interactive));
+            }
+        });
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,222 @@
+package sql.ide;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+//* Import everything related to database manager
+import edu.upvictoria.fpoo.*;
+import sql.ide.execution.Statement;
+import sql.ide.execution.StatementRunner;
+import sql.ide.execution.StatementSplitter;
+import sql.ide.profiling.Profiler;
+import sql.ide.profiling.StatementProfile;
+import sql.ide.storage.TableFiles;
+
+/**
+ * Runs .sql scripts against a database folder without starting JavaFX, with
+ * the same StatementRunner, caches, batching and write-ahead log as the IDE:
+ *
+ * java -cp ... sql.ide.BatchRunner [options] DATABASE SCRIPT...
+ *
+ * --out FILE     write the results to FILE instead of stdout
+ * --results DIR  write the rows of every SELECT to DIR/SCRIPT-N.csv instead
+ *                of printing them
+ * --no-rows      do not print the rows of the SELECT statements
+ * --continue     keep going after a statement fails
+ *
+ * The statistics (statements and rows per second) are printed to stderr at
+ * the end. The exit code is 0 when every statement ran, 1 when one failed
+ * and 2 when the arguments are wrong.
+ */
+public class BatchRunner {
+    private static final String USAGE = "Usage: BatchRunner [--out FILE] [--results DIR] [--no-rows] [--continue]"
+            + " DATABASE SCRIPT...";
+
+    private final StatementRunner runner;
+    private final PrintWriter out;
+    private final Path resultsFolder;
+    private final boolean printRows;
+    private final boolean keepGoing;
+
+    private long statements = 0;
+    private long failures = 0;
+    private long rowsScanned = 0;
+    private long rowsReturned = 0;
+    private int resultFiles = 0;
+
+    BatchRunner(Path database, PrintWriter out, Path resultsFolder, boolean printRows, boolean keepGoing) {
+        Interpreter interpreter = new Interpreter();
+        interpreter.setDataBase(database);
+        this.runner = new StatementRunner(interpreter);
+        this.out = out;
+        this.resultsFolder = resultsFolder;
+        this.printRows = printRows;
+        this.keepGoing = keepGoing;
+    }
+
+    public static void main(String[] args) {
+        Path output = null;
+        Path resultsFolder = null;
+        boolean printRows = true;
+        boolean keepGoing = false;
+        List<Path> paths = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--out":
+                        output = Path.of(value(args, i++));
+                        break;
+                    case "--results":
+                        resultsFolder = Path.of(value(args, i++));
+                        break;
+                    case "--no-rows":
+                        printRows = false;
+                        break;
+                    case "--continue":
+                        keepGoing = true;
+                        break;
+                    default:
+                        if (args[i].startsWith("--"))
+                            throw new IllegalArgumentException("Unknown option " + args[i]);
+                        paths.add(Path.of(args[i]));
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        if (paths.size() < 2 || !Files.isDirectory(paths.get(0))) {
+            System.err.println(paths.isEmpty() || Files.isDirectory(paths.get(0)) ? USAGE
+                    : "The database folder " + paths.get(0) + " does not exist");
+            System.exit(2);
+        }
+
+        int status;
+        try (PrintWriter out = output != null
+                ? new PrintWriter(Files.newBufferedWriter(output, StandardCharsets.UTF_8))
+                : new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8),
+                        1 << 16))) {
+            if (resultsFolder != null)
+                Files.createDirectories(resultsFolder);
+            BatchRunner batch = new BatchRunner(paths.get(0), out, resultsFolder, printRows, keepGoing);
+            status = batch.run(paths.subList(1, paths.size()));
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            status = 1;
+        }
+        System.exit(status);
+    }
+
+    /**
+     * @return the value after the option at i
+     * @throws IllegalArgumentException if the option is the last argument
+     */
+    private static String value(String[] args, int i) {
+        if (i + 1 >= args.length)
+            throw new IllegalArgumentException("Missing value of " + args[i]);
+        return args[i + 1];
+    }
+
+    /**
+     * Run the scripts one after the other
+     *
+     * @param scripts
+     * @return exit code
+     * @throws IOException if a script can not be read or a result written
+     */
+    int run(List<Path> scripts) throws IOException {
+        long start = System.nanoTime();
+        boolean failed = false;
+        try {
+            for (Path script : scripts) {
+                if (!runScript(script)) {
+                    failed = true;
+                    if (!keepGoing)
+                        break;
+                }
+            }
+        } finally {
+            try {
+                runner.close();
+            } catch (Error | RuntimeException e) {
+                out.println("Error writing the tables: " + e.getMessage());
+                failed = true;
+            }
+            out.flush();
+        }
+        printStatistics(System.nanoTime() - start);
+        return failed ? 1 : 0;
+    }
+
+    /**
+     * @return false if a statement failed
+     */
+    private boolean runScript(Path script) throws IOException {
+        String name = script.getFileName().toString();
+        boolean failed = false;
+        for (Statement statement : StatementSplitter.split(Files.readString(script))) {
+            StatementProfile profile = Profiler.start(statement.line, statement.text);
+            Throwable failure = null;
+            try {
+                runner.run(statement, out::print, table -> printTable(name, table));
+            } catch (Error | RuntimeException e) {
+                failure = e;
+                out.println("Error at " + name + ":" + statement.line + ": " + e.getMessage());
+            } finally {
+                Profiler.finish(failure);
+                Profiler.emit(profile);
+            }
+            statements++;
+            rowsScanned += profile.getRowsScanned();
+            rowsReturned += Math.max(profile.getRowsReturned(), 0);
+            if (failure != null) {
+                failures++;
+                failed = true;
+                if (!keepGoing)
+                    break;
+            }
+        }
+        // the statements still in memory are written at the end of every script, like in the IDE
+        try {
+            runner.flush();
+        } catch (Error | RuntimeException e) {
+            out.println("Error at the end of " + name + ": " + e.getMessage());
+            failures++;
+            failed = true;
+        }
+        return !failed;
+    }
+
+    private void printTable(String script, Table table) {
+        try {
+            if (resultsFolder != null) {
+                Path file = resultsFolder.resolve(script.replaceFirst("\\.[^.]*$", "") + "-" + (++resultFiles) + ".csv");
+                table.writeToCSV(file);
+                out.println("Rows written to " + file);
+            } else if (printRows) {
+                List<String> columnNames = table.getColumnNames();
+                out.println(String.join(",", columnNames));
+                for (HashMap<String, Object> row : table.getRows())
+                    out.println(TableFiles.csvLine(columnNames, row));
+            }
+        } catch (RuntimeException e) {
+            out.println("Error writing the rows: " + e.getMessage());
+        }
+    }
+
+    private void printStatistics(long nanos) {
+        double seconds = nanos / 1e9;
+        System.err.printf("%d statement(s), %d failed, in %.3f s: %.0f statements/s, %d row(s) scanned"
+                + " (%.0f rows/s), %d row(s) returned (%.0f rows/s)%n", statements, failures, seconds,
+                statements / seconds, rowsScanned, rowsScanned / seconds, rowsReturned, rowsReturned / seconds);
+    }
+}
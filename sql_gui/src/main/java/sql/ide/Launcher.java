@@ -0,0 +1,13 @@
+package sql.ide;
+
+/**
+ * Starts the IDE from the class path. The java launcher refuses a main class
+ * that extends Application when JavaFX is not on the module path, this one
+ * does not, so the IDE can be started with java -cp and a class-data-sharing
+ * archive (see the cds profile of the pom).
+ */
+public class Launcher {
+    public static void main(String[] args) {
+        App.main(args);
+    }
+}
@@ -0,0 +1,65 @@
+package sql.ide;
+
+import java.time.Instant;
+
+/**
+ * Times the start of the IDE: the first frame is the first layout of the
+ * window, it is interactive once the work deferred after the first frame
+ * (the highlighter, the interpreter and the classes of the query engine) is
+ * done.
+ *
+ * -Dsqlide.startup.report=true prints both times to stderr, and
+ * -Dsqlide.startup.exit=true exits once the IDE is interactive, which is
+ * how the class-data-sharing archive is trained and how StartupReport of
+ * sql_bench measures it.
+ */
+public final class Startup {
+    static final boolean REPORT = Boolean.getBoolean("sqlide.startup.report");
+    static final boolean EXIT = Boolean.getBoolean("sqlide.startup.exit");
+
+    // the process start, the time the class was loaded if it is unknown
+    private static final long START_MILLIS = ProcessHandle.current().info().startInstant()
+            .map(Instant::toEpochMilli).orElse(System.currentTimeMillis());
+
+    private static long firstFrameMillis = -1;
+    private static long interactiveMillis = -1;
+
+    private Startup() {
+    }
+
+    /**
+     * The window was laid out for the first time, called on the JavaFX thread
+     */
+    static void firstFrame() {
+        if (firstFrameMillis < 0)
+            firstFrameMillis = System.currentTimeMillis() - START_MILLIS;
+    }
+
+    /**
+     * The deferred work is done, called on the JavaFX thread
+     */
+    public static void interactive() {
+        if (interactiveMillis >= 0)
+            return;
+        interactiveMillis = System.currentTimeMillis() - START_MILLIS;
+        if (REPORT)
+            System.err.println("startup: first frame " + firstFrameMillis + " ms, interactive "
+                    + interactiveMillis + " ms");
+        if (EXIT)
+            System.exit(0);
+    }
+
+    /**
+     * @return milliseconds from the process start to the first frame, -1 before it
+     */
+    public static long getFirstFrameMillis() {
+        return firstFrameMillis;
+    }
+
+    /**
+     * @return milliseconds from the process start until the IDE was interactive, -1 before it
+     */
+    public static long getInteractiveMillis() {
+        return interactiveMillis;
+    }
+}
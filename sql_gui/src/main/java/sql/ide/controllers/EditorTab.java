@@ -0,0 +1,97 @@
+package sql.ide.controllers;
+
+import java.io.File;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import javafx.scene.control.Tab;
+
+//* richtext imports
+import org.fxmisc.richtext.CodeArea;
+import org.fxmisc.richtext.LineNumberFactory;
+
+import sql.ide.editor.CompletionPopup;
+import sql.ide.editor.HighlightScheduler;
+import sql.ide.editor.SqlCompleter;
+import sql.ide.editor.SyntaxHighlighter;
+import sql.ide.execution.StatementCache;
+import sql.ide.io.FileSaveTask;
+import sql.ide.io.FileStamp;
+import sql.ide.io.FileWatcher;
+import sql.ide.io.LargeFileDocument;
+
+/**
+ * One script open in the editor: its tab, its code area and the file it was
+ * loaded from. The fields are only touched on the JavaFX thread, except the
+ * volatile ones the saver and watcher threads read.
+ */
+class EditorTab {
+    final Tab tab = new Tab();
+    final CodeArea codeArea = new CodeArea();
+    final SyntaxHighlighter highlighter;
+    final CompletionPopup completion;
+
+    // read by the saver thread
+    volatile File file;
+    // the file as the editor last loaded or wrote it, read by the watcher thread
+    volatile FileStamp savedStamp;
+    // number of changes made to the text, and the number the saved file has
+    long textVersion = 0;
+    long savedVersion = 0;
+    FileWatcher.Registration registration;
+    // the file changed outside of the editor
+    boolean changedOnDisk = false;
+    // the last save started, null before the first one
+    FileSaveTask saving;
+
+    // File open in the read only large file mode, null when there is none
+    LargeFileDocument largeFile;
+    int chunkIndex = 0;
+
+    /**
+     * @param feedback receives the lexer errors while the tab is selected
+     * @param statementCache
+     * @param scheduler highlighting workers shared by all the tabs
+     * @param completer
+     * @param completionWorker completes the words of all the tabs
+     */
+    EditorTab(Consumer<String> feedback, StatementCache statementCache, HighlightScheduler scheduler,
+            SqlCompleter completer, Executor completionWorker) {
+        codeArea.setParagraphGraphicFactory(LineNumberFactory.get(codeArea)); // line numbers
+        highlighter = new SyntaxHighlighter(codeArea, message -> {
+            if (tab.isSelected())
+                feedback.accept(message);
+        }, statementCache, scheduler);
+        completion = new CompletionPopup(codeArea, completer, completionWorker);
+        // the highlighter only changes the styles, so this counts the edits
+        codeArea.plainTextChanges().filter(change -> !change.isIdentity()).subscribe(change -> {
+            textVersion++;
+            updateTitle();
+        });
+        tab.setContent(codeArea);
+        updateTitle();
+    }
+
+    /**
+     * @return true for a tab without a file and without text
+     */
+    boolean isBlank() {
+        return file == null && largeFile == null && codeArea.getLength() == 0;
+    }
+
+    /**
+     * @return true if the text changed since it was loaded or saved
+     */
+    boolean isModified() {
+        return textVersion != savedVersion && largeFile == null;
+    }
+
+    /**
+     * Show the name of the file, with a * while it has unsaved changes
+     */
+    void updateTitle() {
+        String title = (file == null ? "Untitled" : file.getName()) + (isModified() ? " *" : "");
+        if (!title.equals(tab.getText()))
+            tab.setText(title);
+    }
+}
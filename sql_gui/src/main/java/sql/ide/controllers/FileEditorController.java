@@ -1,19 +1,17 @@
 package sql.ide.controllers;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.attribute.BasicFileAttributes;
-import java.nio.file.attribute.FileTime;
 import java.util.*;
-import java.util.concurrent.ExecutionException;
-import java.util.stream.Stream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Platform;
-import javafx.concurrent.ScheduledService;
 import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
@@ -22,35 +20,77 @@ import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
+import javafx.scene.control.ButtonBar;
+import javafx.scene.control.ButtonType;
 import javafx.scene.control.Label;
 import javafx.scene.control.ProgressBar;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TabPane;
+import javafx.scene.control.TableView;
 import javafx.scene.control.TextArea;
 import javafx.scene.control.TreeItem;
 import javafx.scene.control.TreeView;
 import javafx.scene.layout.HBox;
-import javafx.scene.layout.Pane;
 import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import javafx.util.Duration;
+import sql.ide.editor.HighlightScheduler;
+import sql.ide.editor.SqlCompleter;
+import sql.ide.execution.QueryExecutionService;
+import sql.ide.execution.Statement;
+import sql.ide.execution.StatementCache;
+import sql.ide.execution.StatementSplitter;
+import sql.ide.io.FileLoadTask;
+import sql.ide.io.FileSaveTask;
+import sql.ide.io.FileStamp;
+import sql.ide.io.FileWatcher;
+import sql.ide.io.LargeFileDocument;
+import sql.ide.profiling.StatementProfile;
+import sql.ide.results.ProfilePanel;
+import sql.ide.results.ResultGrid;
+import sql.ide.storage.ResultWriter;
+import sql.ide.storage.SchemaCatalog;
+import sql.ide.storage.TableIndex;
 
 
 //* richtext imports
 import org.fxmisc.richtext.CodeArea;
-import org.fxmisc.richtext.LineNumberFactory;
-import org.fxmisc.richtext.model.StyleSpans;
-import org.fxmisc.richtext.model.StyleSpansBuilder;
 
 //* Import everything related to database manager
 import edu.upvictoria.fpoo.*;
 
 public class FileEditorController {
-    // Database manager dependency
-    Interpreter interpreter = new Interpreter();
+    // Database manager dependency, created with the execution service
+    Interpreter interpreter;
+    // Lexed and parsed statements, shared by the highlighter and the executor
+    StatementCache statementCache = new StatementCache();
+    // Runs the scripts out of the JavaFX thread, null until it is first needed
+    QueryExecutionService executionService;
 
-    // File editor variables
-    private File loadedFileReference;
-    private FileTime lastModifiedTime;
+    // Watches the loaded files and the database folder
+    private FileWatcher fileWatcher;
+    private FileWatcher.Registration databaseRegistration;
+    private Path watchedDatabase;
+
+    // Tables and columns of the database, shown in the tree
+    SchemaCatalog catalog = new SchemaCatalog();
+    private final Map<String, TreeItem<String>> tableItems = new HashMap<>();
+    private boolean treeRefreshing = false;
+    private boolean treeRefreshPending = false;
+    private final ExecutorService catalogLoader = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "sql-schema-catalog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Completes the keywords, tables and columns as the user types
+    private final SqlCompleter completer = new SqlCompleter();
+    private final ExecutorService completionWorker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "sql-completer");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     @FXML
     private TreeView<String> treeView;
@@ -58,103 +98,206 @@ public class FileEditorController {
     @FXML
     private TextArea resultArea = new TextArea();
 
+    // One tab per open script
+    @FXML
+    private TabPane editorTabs;
+    private final Map<Tab, EditorTab> openTabs = new HashMap<>();
+
+    @FXML
+    private TabPane resultTabs;
+
+    @FXML
+    private TableView<Object[]> resultTable;
+    // Pages the rows of the last SELECT into the result table
+    private ResultGrid resultGrid;
+
     @FXML
-    private CodeArea codeArea = new CodeArea();
+    private TableView<StatementProfile> profileTable;
+    @FXML
+    private Label profileSummary;
+    // Time and rows of every statement of the last script
+    private ProfilePanel profilePanel;
 
     public Label statusMessage;
     public ProgressBar progressBar;
+    public HBox statusBox;
     public Button loadChangesButton;
+    public Button runFileButton;
+    public Button runQueryButton;
+    public Button cancelButton;
     //// public TextArea textArea;  // deprecated bc of codeArea
     public Label feedback;
 
     /**
-     * Thread to lex and highlight the text area
+     * Highlights the tabs when their text changes, the selected one first
      */
-    Thread lexerThread = new Thread(() -> {
-        while (true) {
-            try {
-                Thread.sleep(500);
-                String text = codeArea.getText();
-                Platform.runLater(() -> {
-                    // Platform.runLater(() -> {}) se utiliza para ejecutar una 
-                    // tarea en el hilo de aplicación de JavaFX 
-                    // en un momento futuro no especificado
-                    StyleSpans<Collection<String>> spans = computeHighlighting(text);
-                    if (spans != null)
-                        codeArea.setStyleSpans(0, spans);
-                });
-            } catch (Exception e) {
-                e.printStackTrace();
-            } catch (Error e) {
-                e.printStackTrace();
-            }
-        }
+    private final HighlightScheduler highlighting = new HighlightScheduler();
+    // the highlighters of new tabs start right away once this is true
+    private boolean highlightersStarted = false;
+    // drops the styles of the tabs hidden for a while
+    private Timeline idleTimer;
+
+    // Reads the files out of the JavaFX thread
+    private final ExecutorService fileLoader = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "sql-file-loader");
+        thread.setDaemon(true);
+        return thread;
     });
+    // Writes the files out of the JavaFX thread, one save after the other
+    private final ExecutorService fileSaver = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "sql-file-saver");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // time the exit waits for a running save
+    private static final long SAVE_WAIT_SECONDS = 30;
+    /**
+     * Seconds between two autosaves of the loaded files, 0 (the default) turns
+     * it off, -Dsqlide.autosave.seconds=...
+     */
+    static final int AUTOSAVE_SECONDS = Integer.getInteger("sqlide.autosave.seconds", 0);
+    private Timeline autosaveTimer;
+
+    public HBox largeFileBox;
+    public Label chunkLabel;
+    public Button previousChunkButton;
+    public Button nextChunkButton;
+
+    public void initialize() {
+        loadChangesButton.setVisible(false); // hide load changes button
+        editorTabs.getSelectionModel().selectedItemProperty().addListener((observable, previous, selected) -> {
+            if (openTabs.containsKey(previous))
+                openTabs.get(previous).highlighter.setVisible(false);
+            if (openTabs.containsKey(selected))
+                showTab(openTabs.get(selected));
+        });
+        newTab(null);
+        resultGrid = new ResultGrid(resultTable);
+        profilePanel = new ProfilePanel(profileTable, profileSummary);
+    }
 
     /**
-     * Compute the highlighting for the text area
-     * 
-     * @param text
-     * @return
+     * Start what the first frame does not need: the highlighters, the file
+     * watcher and the interpreter, whose classes are loaded on the executor
+     * thread
+     *
+     * @param interactive called on the JavaFX thread when everything started
      */
-    private StyleSpans<Collection<String>> computeHighlighting(String text) {
-        Lexer lexer = new Lexer(text);
-        StyleSpansBuilder<Collection<String>> spansBuilder = new StyleSpansBuilder<>();
-        int lastPos = 0;
-        List<Token> tokens = null;
-        
+    public void afterFirstFrame(Runnable interactive) {
+        highlightersStarted = true;
+        for (EditorTab tab : openTabs.values())
+            tab.highlighter.start();
+        idleTimer = new Timeline(new KeyFrame(Duration.seconds(30), event -> {
+            for (EditorTab tab : openTabs.values())
+                tab.highlighter.dropCachesIfIdle();
+        }));
+        idleTimer.setCycleCount(Animation.INDEFINITE);
+        idleTimer.play();
         try {
-            // scan tokens
-            tokens = lexer.scanTokens();
-        } catch (Error e) {
-            // if the lexer returns an error, show it to the user
-            feedback.setText(e.getMessage());
-            return null;
+            fileWatcher = new FileWatcher();
+        } catch (IOException e) {
+            // the IDE still works, it just does not see external changes
+            e.printStackTrace();
+        }
+        if (AUTOSAVE_SECONDS > 0) {
+            autosaveTimer = new Timeline(new KeyFrame(Duration.seconds(AUTOSAVE_SECONDS), event -> autosave()));
+            autosaveTimer.setCycleCount(Animation.INDEFINITE);
+            autosaveTimer.play();
         }
+        executionService().warmUp(interactive);
+    }
 
-        // clear the issue field
-        feedback.setText("");
+    /**
+     * @return the execution service, created with its interpreter on the first call
+     */
+    private QueryExecutionService executionService() {
+        if (executionService == null) {
+            interpreter = new Interpreter();
+            executionService = new QueryExecutionService(interpreter, statementCache);
+        }
+        return executionService;
+    }
 
+    /****************************************************************/
+    /* Tabs */
+    /****************************************************************/
 
-        for (Token token : tokens) {
-            String style = switch (token.type) {
-                case NUMBER_DATA_TYPE, BOOLEAN_DATA_TYPE, DATE_DATA_TYPE, STRING_DATA_TYPE -> "data-type";
-                case CREATE, DROP, USE -> "ddl";
-                case SELECT, INSERT, UPDATE, DELETE -> "dml";
-                case WHERE, FROM, ORDER, BY, LIMIT, VALUES, INTO, AND, OR, NOT, NULL, TRUE, FALSE, PRIMARY, KEY,
-                        DATABASE, TABLE, ASC, DESC, SET, UNIQUE, AS, GROUP, IS, PIPE_PIPE -> "keyword";
-                case NUMBER, STRING, IDENTIFIER -> "literal";
-                case LEFT_PAREN, RIGHT_PAREN, COMMA, MINUS, PLUS, SLASH, STAR, SEMICOLON, MOD, DIV, UCASE, LCASE,
-                        CAPITALIZE, FLOOR, ROUND, RAND, COUNT, DISTINCT, MIN, MAX, SUM, AVG, CEIL -> "operator";
-                case BANG_EQUAL, BANG, EQUAL_EQUAL, EQUAL, PORCENTAJE, LESS_EQUAL, LESS, GREATER_EQUAL, GREATER -> "operator";
-                case SHOW, TABLES -> "keyword";
-                default -> "default";
-            };
-
-            if (token.start > lastPos) {
-                spansBuilder.add(Collections.emptyList(), token.start - lastPos);
-            }
+    /**
+     * Open an empty tab and select it
+     *
+     * @param event
+     */
+    public void newTab(ActionEvent event) {
+        addTab();
+    }
 
-            spansBuilder.add(Collections.singleton(style), token.end - token.start);
-            lastPos = token.end;
-        }
+    private EditorTab addTab() {
+        EditorTab tab = new EditorTab(feedback::setText, statementCache, highlighting, completer, completionWorker);
+        tab.tab.setOnCloseRequest(closeEvent -> {
+            if (!confirmDiscard(tab))
+                closeEvent.consume();
+        });
+        tab.tab.setOnClosed(closedEvent -> disposeTab(tab));
+        openTabs.put(tab.tab, tab);
+        if (highlightersStarted)
+            tab.highlighter.start();
+        tab.completion.start();
+        editorTabs.getTabs().add(tab.tab);
+        editorTabs.getSelectionModel().select(tab.tab);
+        return tab;
+    }
 
-        return spansBuilder.create();
+    /**
+     * @return the selected tab, there is always one
+     */
+    private EditorTab currentTab() {
+        EditorTab tab = openTabs.get(editorTabs.getSelectionModel().getSelectedItem());
+        return tab != null ? tab : addTab();
     }
 
-    public void initialize() {
-        loadChangesButton.setVisible(false); // hide load changes button
-        // codeArea.setPromptText("SQL code goes here..."); // placeholder text
-        codeArea.setParagraphGraphicFactory(LineNumberFactory.get(codeArea)); // line numbers
-        // codeArea.replaceText("\n");
-        // todo: place holder for codearea
-        lexerThread.setDaemon(true);
-        lexerThread.start(); // set thread as daemon
+    /**
+     * Show the state of the tab just selected in the status bar
+     */
+    private void showTab(EditorTab tab) {
+        tab.highlighter.setVisible(true);
+        loadChangesButton.setVisible(tab.changedOnDisk);
+        largeFileBox.setVisible(tab.largeFile != null);
+        if (tab.largeFile != null)
+            updateChunkControls(tab);
+        feedback.setText("");
+    }
+
+    /**
+     * Ask before closing a tab with unsaved changes
+     *
+     * @return true if the tab can be closed
+     */
+    private boolean confirmDiscard(EditorTab tab) {
+        if (!tab.isModified())
+            return true;
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION, null, ButtonType.YES, ButtonType.NO);
+        alert.setTitle("Unsaved changes");
+        alert.setHeaderText(tab.tab.getText().replace(" *", "") + " has unsaved changes");
+        alert.setContentText("Close it anyway?");
+        return alert.showAndWait().filter(answer -> answer == ButtonType.YES).isPresent();
+    }
+
+    /**
+     * Release what a closed tab holds, the last tab is replaced by an empty one
+     */
+    private void disposeTab(EditorTab tab) {
+        openTabs.remove(tab.tab);
+        tab.highlighter.stop();
+        tab.completion.stop();
+        closeLargeFile(tab);
+        watchLoadedFile(tab, null);
+        if (editorTabs.getTabs().isEmpty())
+            addTab();
     }
 
     /**
      * Open file chooser dialog to select file to open
-     * 
+     *
      * @param event
      */
     public void openFile(ActionEvent event) {
@@ -166,87 +309,99 @@ public class FileEditorController {
         fileChooser.setInitialDirectory(new File(System.getProperty("user.home")));
         // let user select file
         File fileToLoad = fileChooser.showOpenDialog(null);
-        // if file has been chosen, load it using asynchronous method (define later)
-        if (fileToLoad != null) {
-            loadFileToTextArea(fileToLoad);
+        if (fileToLoad == null)
+            return;
+
+        // a file already open is only selected
+        for (EditorTab tab : openTabs.values()) {
+            if (fileToLoad.equals(tab.file)) {
+                editorTabs.getSelectionModel().select(tab.tab);
+                return;
+            }
         }
+        // the empty tab is reused, any other file gets a tab of its own
+        EditorTab tab = currentTab();
+        if (!tab.isBlank())
+            tab = addTab();
+        loadFileToTextArea(tab, fileToLoad);
     }
 
     /**
-     * Load file to text area
-     * 
+     * Load file to the tab, files bigger than LargeFileDocument.THRESHOLD
+     * can be opened in the read only large file mode instead
+     *
+     * @param tab
      * @param fileToLoad
      */
-    private void loadFileToTextArea(File fileToLoad) {
-        Task<String> loadTask = fileLoaderTask(fileToLoad);
+    private void loadFileToTextArea(EditorTab tab, File fileToLoad) {
+        if (fileToLoad.length() > LargeFileDocument.THRESHOLD) {
+            ButtonType largeMode = new ButtonType("Large File Mode", ButtonBar.ButtonData.YES);
+            ButtonType loadAll = new ButtonType("Load Everything", ButtonBar.ButtonData.NO);
+            Alert alert = new Alert(Alert.AlertType.CONFIRMATION, null, largeMode, loadAll, ButtonType.CANCEL);
+            alert.setTitle("Large file");
+            alert.setHeaderText(fileToLoad.getName() + " is " + (fileToLoad.length() >> 20) + " MB");
+            alert.setContentText("Open it read only, showing one chunk at a time?");
+            Optional<ButtonType> answer = alert.showAndWait();
+            if (answer.isEmpty() || answer.get() == ButtonType.CANCEL)
+                return;
+            if (answer.get() == largeMode) {
+                openLargeFile(tab, fileToLoad);
+                return;
+            }
+        }
+
+        Task<String> loadTask = fileLoaderTask(tab, fileToLoad);
+        statusMessage.setText("Loading " + fileToLoad.getName() + "...");
+        statusBox.setVisible(true);
         progressBar.progressProperty().bind(loadTask.progressProperty());
-        loadTask.run();
+        fileLoader.execute(loadTask);
     }
 
     /**
      * Change to the ModelerEditor.fxml
-     * @throws IOException 
+     * @throws IOException
      */
     @FXML
     public void changeToModeler(ActionEvent event) throws IOException {
-        lexerThread.interrupt();
-        
         FXMLLoader loader = new FXMLLoader(getClass().getResource("/sql/ide/fxml/ModelerEditor.fxml"));
         Parent root = loader.load();
-        
+
+        // a window of its own, the editor stays open
         Stage stage = new Stage();
         stage.setTitle("Modeler Editor");
         stage.setScene(new Scene(root));
         stage.show();
-        // close window
-        ((Stage) ((Pane) codeArea.getParent()).getScene().getWindow()).close();
-
+        ModelerController modeler = loader.getController();
+        stage.setOnHidden(windowEvent -> modeler.dispose());
+        modeler.showDatabase(catalog.getFolder() == null ? null : catalog.tables());
     }
 
     /**
-     * Load file to text area asynchronously
-     * 
+     * Load file to the tab asynchronously
+     *
+     * @param tab
      * @param fileToLoad
      * @return
      */
-    private Task<String> fileLoaderTask(File fileToLoad) {
-        // Create a task to load the file asynchronously
-        Task<String> loadFileTask = new Task<>() {
-            @Override
-            protected String call() throws Exception {
-                BufferedReader reader = new BufferedReader(new FileReader(fileToLoad));
-                // Use Files.lines() to calculate total lines - used for progress
-                long lineCount;
-                try (Stream<String> stream = Files.lines(fileToLoad.toPath())) {
-                    lineCount = stream.count();
-                }
-                // Load in all lines one by one into a StringBuilder separated by "\n" -
-                // compatible with TextArea
-                String line;
-                StringBuilder totalFile = new StringBuilder();
-                long linesLoaded = 0;
-                while ((line = reader.readLine()) != null) {
-                    totalFile.append(line);
-                    totalFile.append("\n");
-                    updateProgress(++linesLoaded, lineCount);
-                }
-                return totalFile.toString();
-            }
-        };
+    private Task<String> fileLoaderTask(EditorTab tab, File fileToLoad) {
+        // Create a task to load the file asynchronously, in a single pass
+        Task<String> loadFileTask = new FileLoadTask(fileToLoad.toPath());
+        CodeArea codeArea = tab.codeArea;
         // If successful, update the text area, display a success message and store the
         // loaded file reference
         loadFileTask.setOnSucceeded(workerStateEvent -> {
+            finishLoading();
+            // the tab may have been closed while the file was read
+            if (!openTabs.containsKey(tab.tab))
+                return;
+            closeLargeFile(tab);
             try {
-                // textArea.setText(loadFileTask.get());
-                codeArea.replaceText(loadFileTask.get());
+                codeArea.replaceText(loadFileTask.getValue());
                 statusMessage.setText("File loaded: " + fileToLoad.getName());
-                loadedFileReference = fileToLoad;
-                lastModifiedTime = Files.readAttributes(fileToLoad.toPath(), BasicFileAttributes.class)
-                        .lastModifiedTime();
-            } catch (InterruptedException | ExecutionException | IOException e) {
-                // Logger.getLogger(getClass().getName()).log(SEVERE, null, e);
-                // textArea.setText("Could not load file from:\n " +
-                // fileToLoad.getAbsolutePath());
+                tab.file = fileToLoad;
+                tab.savedStamp = FileStamp.of(fileToLoad.toPath());
+                tab.savedVersion = tab.textVersion;
+            } catch (IOException e) {
                 Alert alert = new Alert(Alert.AlertType.ERROR);
                 alert.setTitle("Error");
                 alert.setHeaderText("An error occurred");
@@ -255,135 +410,382 @@ public class FileEditorController {
 
                 codeArea.clear();
             }
-            scheduleFileChecking(loadedFileReference);
+            tab.updateTitle();
+            watchLoadedFile(tab, tab.file);
         });
         // If unsuccessful, set text area with error message and status message to
         // failed
         loadFileTask.setOnFailed(workerStateEvent -> {
-            // textArea.setText("Could not load file from:\n " +
-            // fileToLoad.getAbsolutePath());
+            finishLoading();
             codeArea.clear();
             statusMessage.setText("Failed to load file");
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Error");
+            alert.setHeaderText("Could not load file from:\n " + fileToLoad.getAbsolutePath());
+            alert.setContentText(loadFileTask.getException() != null ? loadFileTask.getException().getMessage()
+                    : "Something went wrong.");
+            alert.showAndWait();
         });
         return loadFileTask;
     }
 
     /**
-     * Schedule file checking service, to check for changes in file
-     * 
-     * @param file
+     * Restore the status bar after a file is loaded
      */
-    private void scheduleFileChecking(File file) {
-        ScheduledService<Boolean> fileChangeCheckingService = createFileChangesCheckingService(file);
-        fileChangeCheckingService.setOnSucceeded(workerStateEvent -> {
-            if (fileChangeCheckingService.getLastValue() == null)
-                return;
-            if (fileChangeCheckingService.getLastValue()) {
-                // no need to keep checking
-                fileChangeCheckingService.cancel();
-                notifyUserOfChanges();
-            }
-        });
-        System.out.println("Starting Checking Service...");
-        fileChangeCheckingService.start();
+    private void finishLoading() {
+        progressBar.progressProperty().unbind();
+        statusBox.setVisible(false);
     }
 
+    /****************************************************************/
+    /* Large file mode */
+    /****************************************************************/
+
     /**
-     * Create file changes checking service, to check for changes in file
-     * 
-     * @param file
-     * @return
+     * Open a file read only, only the chunk being shown is in the text area
+     *
+     * @param tab
+     * @param fileToLoad
+     */
+    private void openLargeFile(EditorTab tab, File fileToLoad) {
+        try {
+            LargeFileDocument document = LargeFileDocument.open(fileToLoad.toPath());
+            closeLargeFile(tab);
+            tab.largeFile = document;
+            tab.file = fileToLoad;
+            tab.savedStamp = FileStamp.of(fileToLoad.toPath());
+        } catch (IOException e) {
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Error");
+            alert.setHeaderText("An error occurred");
+            alert.setContentText("Could not load file from:\n " + fileToLoad.getAbsolutePath());
+            alert.showAndWait();
+            return;
+        }
+        tab.codeArea.setEditable(false);
+        tab.updateTitle();
+        largeFileBox.setVisible(true);
+        showChunk(tab, 0);
+        statusMessage.setText("File loaded: " + fileToLoad.getName());
+        feedback.setText("Large file mode, the file is read only.");
+        watchLoadedFile(tab, tab.file);
+    }
+
+    /**
+     * Read a chunk of the large file in the background and show it
+     *
+     * @param tab
+     * @param index
      */
-    private ScheduledService<Boolean> createFileChangesCheckingService(File file) {
-        ScheduledService<Boolean> scheduledService = new ScheduledService<>() {
+    private void showChunk(EditorTab tab, int index) {
+        LargeFileDocument document = tab.largeFile;
+        Task<String> chunkTask = new Task<>() {
             @Override
-            protected Task<Boolean> createTask() {
-                return new Task<>() {
-                    @Override
-                    protected Boolean call() throws Exception {
-                        FileTime lastModifiedAsOfNow = Files.readAttributes(file.toPath(), BasicFileAttributes.class)
-                                .lastModifiedTime();
-                        return lastModifiedAsOfNow.compareTo(lastModifiedTime) > 0;
-                    }
-                };
+            protected String call() throws Exception {
+                return document.readChunk(index);
             }
         };
-        scheduledService.setPeriod(Duration.seconds(1));
-        return scheduledService;
+        previousChunkButton.setDisable(true);
+        nextChunkButton.setDisable(true);
+        chunkTask.setOnSucceeded(workerStateEvent -> {
+            // the file may have been closed while the chunk was read
+            if (tab.largeFile != document)
+                return;
+            tab.chunkIndex = index;
+            tab.codeArea.replaceText(chunkTask.getValue());
+            // showing a chunk is not an edit
+            tab.savedVersion = tab.textVersion;
+            tab.codeArea.moveTo(0);
+            tab.codeArea.requestFollowCaret();
+            if (tab.tab.isSelected())
+                updateChunkControls(tab);
+        });
+        chunkTask.setOnFailed(workerStateEvent -> {
+            if (tab.largeFile != document)
+                return;
+            if (tab.tab.isSelected())
+                updateChunkControls(tab);
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Error");
+            alert.setHeaderText("Could not read chunk " + (index + 1));
+            alert.setContentText(chunkTask.getException() != null ? chunkTask.getException().getMessage()
+                    : "Something went wrong.");
+            alert.showAndWait();
+        });
+        fileLoader.execute(chunkTask);
+    }
+
+    private void updateChunkControls(EditorTab tab) {
+        chunkLabel.setText("Chunk " + (tab.chunkIndex + 1) + " of " + tab.largeFile.chunkCount());
+        previousChunkButton.setDisable(tab.chunkIndex == 0);
+        nextChunkButton.setDisable(tab.chunkIndex == tab.largeFile.chunkCount() - 1);
+    }
+
+    /**
+     * Show the previous chunk of the large file
+     *
+     * @param event
+     */
+    public void previousChunk(ActionEvent event) {
+        EditorTab tab = currentTab();
+        if (tab.largeFile != null && tab.chunkIndex > 0)
+            showChunk(tab, tab.chunkIndex - 1);
+    }
+
+    /**
+     * Show the next chunk of the large file
+     *
+     * @param event
+     */
+    public void nextChunk(ActionEvent event) {
+        EditorTab tab = currentTab();
+        if (tab.largeFile != null && tab.chunkIndex < tab.largeFile.chunkCount() - 1)
+            showChunk(tab, tab.chunkIndex + 1);
+    }
+
+    /**
+     * Leave large file mode, the text area of the tab becomes editable again
+     */
+    private void closeLargeFile(EditorTab tab) {
+        if (tab.largeFile == null)
+            return;
+        try {
+            tab.largeFile.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        tab.largeFile = null;
+        tab.chunkIndex = 0;
+        tab.codeArea.setEditable(true);
+        if (tab.tab.isSelected())
+            largeFileBox.setVisible(false);
+    }
+
+    /**
+     * Tell the user an action can not be done on a read only large file
+     *
+     * @return true if the large file mode is active in the tab
+     */
+    private boolean rejectInLargeFileMode(EditorTab tab, String action) {
+        if (tab.largeFile == null)
+            return false;
+        Alert alert = new Alert(Alert.AlertType.ERROR);
+        alert.setTitle("Error");
+        alert.setHeaderText("Large file mode");
+        alert.setContentText(action + " is not available while a large file is open read only.");
+        alert.showAndWait();
+        return true;
+    }
+
+    /**
+     * Watch the file of a tab for changes made outside of the editor, the
+     * previous file of the tab is not watched anymore
+     *
+     * @param tab
+     * @param file
+     */
+    private void watchLoadedFile(EditorTab tab, File file) {
+        if (tab.registration != null) {
+            tab.registration.cancel();
+            tab.registration = null;
+        }
+        tab.changedOnDisk = false;
+        if (tab.tab.isSelected())
+            loadChangesButton.setVisible(false);
+        if (file == null || fileWatcher == null)
+            return;
+        try {
+            tab.registration = fileWatcher.watchFile(file.toPath(), () -> checkFileChanges(tab, file));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Called on the watcher thread when the file of a tab changes, our own
+     * saves are ignored because the file still has the stamp they left
+     *
+     * @param tab
+     * @param file
+     */
+    private void checkFileChanges(EditorTab tab, File file) {
+        try {
+            if (FileStamp.of(file.toPath()).equals(tab.savedStamp))
+                return;
+        } catch (IOException e) {
+            // the file was deleted or moved, there is nothing to load
+            return;
+        }
+        Platform.runLater(() -> {
+            if (file.equals(tab.file))
+                notifyUserOfChanges(tab);
+        });
     }
 
     /**
-     * Notify user of changes in file, activate load changes button
+     * Notify user of changes in file, activate load changes button while the
+     * tab is selected
      */
-    private void notifyUserOfChanges() {
-        loadChangesButton.setVisible(true);
+    private void notifyUserOfChanges(EditorTab tab) {
+        tab.changedOnDisk = true;
+        if (tab.tab.isSelected())
+            loadChangesButton.setVisible(true);
     }
 
     /**
      * Load changes from file, when user clicks load changes button
-     * 
+     *
      * @param event
      */
     public void loadChanges(ActionEvent event) {
-        loadFileToTextArea(loadedFileReference);
+        EditorTab tab = currentTab();
+        tab.changedOnDisk = false;
         loadChangesButton.setVisible(false);
+        if (tab.file != null)
+            loadFileToTextArea(tab, tab.file);
     }
 
     /**
-     * Save file to disk
-     * 
+     * Save the file of the selected tab to disk
+     *
      * @param event
      */
     public void saveFile(ActionEvent event) {
-        try {
-            if (loadedFileReference == null) {
-                // if no file is loaded, save as new file
-                FileChooser fileChooser = new FileChooser();
-                fileChooser.getExtensionFilters().add(
-                        new FileChooser.ExtensionFilter("SQL Files", "*.sql", "*.txt"));
-                fileChooser.setInitialDirectory(new File(System.getProperty("user.home")));
-                File fileToSave = fileChooser.showSaveDialog(null);
-                if (fileToSave == null)
-                    return;
-                loadedFileReference = fileToSave;
+        EditorTab tab = currentTab();
+        if (rejectInLargeFileMode(tab, "Save"))
+            return;
+        if (tab.file == null) {
+            // if no file is loaded, save as new file
+            FileChooser fileChooser = new FileChooser();
+            fileChooser.getExtensionFilters().add(
+                    new FileChooser.ExtensionFilter("SQL Files", "*.sql", "*.txt"));
+            fileChooser.setInitialDirectory(new File(System.getProperty("user.home")));
+            File fileToSave = fileChooser.showSaveDialog(null);
+            if (fileToSave == null)
+                return;
+            tab.file = fileToSave;
+            watchLoadedFile(tab, fileToSave);
+        }
+        startSave(tab, false);
+    }
+
+    /**
+     * Save the files of the tabs whose text changed since they were last
+     * written, called by the autosave timer
+     */
+    private void autosave() {
+        for (EditorTab tab : openTabs.values()) {
+            if (tab.file == null || !tab.isModified())
+                continue;
+            // the user saved a moment ago, the next tick writes what is left
+            if (tab.saving != null && !tab.saving.isDone())
+                continue;
+            startSave(tab, true);
+        }
+    }
+
+    /**
+     * Write a snapshot of the text of a tab to its file in the background,
+     * the user keeps editing while it is written
+     *
+     * @param tab
+     * @param automatic true for the autosave, its errors do not open a dialog
+     */
+    private void startSave(EditorTab tab, boolean automatic) {
+        File target = tab.file;
+        long version = tab.textVersion;
+        FileSaveTask task = new FileSaveTask(target.toPath(), tab.codeArea.getContent().snapshot(), stamp -> {
+            // before the move, the watcher may see it before the task finishes
+            if (target.equals(tab.file))
+                tab.savedStamp = stamp;
+        });
+        tab.saving = task;
+        feedback.setText(automatic ? "Autosaving..." : "Saving...");
 
+        task.setOnSucceeded(workerStateEvent -> {
+            if (target.equals(tab.file)) {
+                tab.savedStamp = task.getValue();
+                tab.savedVersion = version;
+                tab.updateTitle();
             }
-            FileWriter myWriter = new FileWriter(loadedFileReference);
-            // myWriter.write(textArea.getText());
-            myWriter.write(codeArea.getText());
-            myWriter.close();
-            lastModifiedTime = FileTime.fromMillis(System.currentTimeMillis() + 3000);
-            System.out.println("Successfully wrote to the file.");
-        } catch (IOException e) {
-            // Logger.getLogger(getClass().getName()).log(SEVERE, null, e);
-            System.out.println("An error occurred while saving the file.");
-            // TODO: add alert
+            feedback.setText((automatic ? "Autosaved " : "Saved ") + target.getName() + ".");
+        });
+        task.setOnFailed(workerStateEvent -> {
+            String message = task.getException() != null ? task.getException().getMessage()
+                    : "Something went wrong.";
+            if (automatic) {
+                feedback.setText("Autosave failed: " + message);
+                return;
+            }
+            feedback.setText("The file was not saved.");
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Error");
+            alert.setHeaderText("Could not save file to:\n " + target.getAbsolutePath());
+            alert.setContentText(message);
+            alert.showAndWait();
+        });
+        fileSaver.execute(task);
+    }
+
+    /**
+     * Wait for the saves still running, the file is never left half written
+     * but the last changes would be lost
+     */
+    private void closeSaver() {
+        if (autosaveTimer != null)
+            autosaveTimer.stop();
+        fileSaver.shutdown();
+        try {
+            fileSaver.awaitTermination(SAVE_WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
     /**
-     * Close file, clear text area and feedback that everything is cleared
-     * 
+     * Close the selected tab, clear the results and feedback that everything
+     * is cleared
+     *
      * @param event
      */
     public void closeFile(ActionEvent event) {
-        // textArea.clear();
-        codeArea.clear();
+        EditorTab tab = currentTab();
+        if (!confirmDiscard(tab))
+            return;
+        editorTabs.getTabs().remove(tab.tab);
+        disposeTab(tab);
         resultArea.clear();
+        resultGrid.clear();
+        profilePanel.clear();
         feedback.setText("Everything is cleared.");
-        loadedFileReference = null;
-        loadChangesButton.setVisible(false);
+    }
+
+    /**
+     * Stop the highlighters of every tab and their worker threads
+     */
+    private void stopHighlighting() {
+        if (idleTimer != null)
+            idleTimer.stop();
+        for (EditorTab tab : openTabs.values())
+            tab.highlighter.stop();
+        highlighting.shutdown();
     }
 
     /**
      * Exit application
-     * 
+     *
      * @param event
      */
     public void exitApplication(ActionEvent event) {
         // TODO: verify if file is saved before exiting
         // close the thread
-        lexerThread.interrupt();
+        stopHighlighting();
+        if (executionService != null)
+            executionService.shutdown();
+        fileLoader.shutdownNow();
+        catalogLoader.shutdownNow();
+        closeSaver();
+        closeWatcher();
         System.exit(0);
     }
 
@@ -392,19 +794,25 @@ public class FileEditorController {
      * @param event
      */
     public void closeApplication() {
-        lexerThread.interrupt();
+        stopHighlighting();
+        if (executionService != null)
+            executionService.shutdown();
+        fileLoader.shutdownNow();
+        catalogLoader.shutdownNow();
+        closeSaver();
+        closeWatcher();
         System.exit(0);
     }
 
     /**
      * Run user's selected query
-     * 
+     *
      * @param event
      */
     public void runQuery(ActionEvent event) {
         // get selected text
         // String selectedText = textArea.getSelectedText();
-        String selectedText = codeArea.getSelectedText();
+        String selectedText = currentTab().codeArea.getSelectedText();
 
         // verify if text is empty (no query selected)
         if (selectedText.isEmpty()) {
@@ -414,52 +822,22 @@ public class FileEditorController {
             alert.setContentText("Please select a query to run.");
             alert.showAndWait();
         } else {
-            System.out.println("Selected text: " + selectedText);
-            try {
-                // lexer
-                Lexer lexer = new Lexer(selectedText);
-                List<Token> tokens = lexer.scanTokens();
-
-                // parser
-                Parser parser = new Parser(tokens);
-                List<Clause> expressions = parser.parse();
-
-                // interpreter
-                for (Clause expression : expressions) {
-                    interpreter.interpret(expression);
-                    resultArea.appendText("Excecuting: " + expression.accept(new AstPrinter()) + "\n");
-                    resultArea.appendText(interpreter.getResult());
-                    resultArea.appendText("\n-----------------\n");
-                }
-
-            } catch (Error e) {
-                Alert alert = new Alert(Alert.AlertType.ERROR);
-                alert.setTitle("Error");
-                alert.setHeaderText("An error occurred");
-                alert.setContentText(e.getMessage());
-                alert.showAndWait();
-            } catch (Exception e) {
-                Alert alert = new Alert(Alert.AlertType.ERROR);
-                alert.setTitle("Error");
-                alert.setHeaderText("An error occurred");
-                alert.setContentText("Something went wrong.");
-                alert.showAndWait();
-            }
-
+            executeScript(selectedText);
         }
-
-        updateTree();
     }
 
     /**
-     * Run all queries in text area
-     * 
+     * Run all queries in the selected tab
+     *
      * @param event
      */
     public void runFile(ActionEvent event) {
         // get all text
         // String allText = textArea.getText();
-        String allText = codeArea.getText();
+        EditorTab tab = currentTab();
+        if (rejectInLargeFileMode(tab, "Run File"))
+            return;
+        String allText = tab.codeArea.getText();
 
         // verify if text is empty (no query selected)
         if (allText.isEmpty()) {
@@ -469,96 +847,273 @@ public class FileEditorController {
             alert.setContentText("Please select a query to run.");
             alert.showAndWait();
         } else {
-            try {
-                // lexer
-                Lexer lexer = new Lexer(allText);
-                List<Token> tokens = lexer.scanTokens();
-
-                // parser
-                Parser parser = new Parser(tokens);
-                List<Clause> expressions = parser.parse();
-
-                // interpreter
-                for (Clause expression : expressions) {
-                    System.out.println("Excecuting: " + expression.accept(new AstPrinter()));
-                    interpreter.interpret(expression);
-                    resultArea.appendText("Excecuting: " + expression.accept(new AstPrinter()) + "\n");
-                    resultArea.appendText("-----------------\n");
-                }
-                resultArea.setText(interpreter.getResult());
-            } catch (Error e) {
-                Alert alert = new Alert(Alert.AlertType.ERROR);
-                alert.setTitle("Error");
-                alert.setHeaderText("An error occurred");
-                alert.setContentText(e.getMessage());
-                alert.showAndWait();
-            } catch (Exception e) {
+            executeScript(allText);
+        }
+    }
+
+    /**
+     * Cancel the running script, a SELECT stops while it scans, any other
+     * statement is finished first
+     * 
+     * @param event
+     */
+    public void cancelExecution(ActionEvent event) {
+        if (executionService != null)
+            executionService.cancel();
+    }
+
+    /**
+     * Run a script in the background, the result of every statement is
+     * appended to the result area as soon as it is ready
+     * 
+     * @param script
+     */
+    private void executeScript(String script) {
+        if (executionService().isRunning())
+            return;
+
+        profilePanel.clear();
+        Task<Integer> task = executionService().execute(script, resultArea::appendText, table -> {
+            resultGrid.show(table);
+            resultTabs.getSelectionModel().select(1); // Result Grid tab
+        }, profilePanel::add);
+
+        // show the progress of the execution
+        statusBox.setVisible(true);
+        progressBar.progressProperty().bind(task.progressProperty());
+        statusMessage.textProperty().bind(task.messageProperty());
+        runFileButton.setDisable(true);
+        runQueryButton.setDisable(true);
+        cancelButton.setDisable(false);
+
+        task.setOnSucceeded(workerStateEvent -> {
+            finishExecution();
+            feedback.setText(task.getValue() + " statement(s) executed.");
+        });
+        task.setOnFailed(workerStateEvent -> {
+            finishExecution();
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Error");
+            alert.setHeaderText("An error occurred");
+            alert.setContentText(task.getException() != null ? task.getException().getMessage()
+                    : "Something went wrong.");
+            alert.showAndWait();
+        });
+        task.setOnCancelled(workerStateEvent -> afterCancel("Execution cancelled."));
+    }
+
+    /**
+     * Write the rows of the selected SELECT, or of the last one whose rows
+     * were shown, to a CSV or JSON Lines file. The query runs again and its
+     * rows go straight to the file, the result is never built in memory
+     *
+     * @param event
+     */
+    public void exportResults(ActionEvent event) {
+        if (executionService().isRunning())
+            return;
+        String selectedText = currentTab().codeArea.getSelectedText();
+        String statement = null;
+        if (!selectedText.isBlank()) {
+            List<Statement> statements = StatementSplitter.split(selectedText);
+            if (statements.size() != 1) {
                 Alert alert = new Alert(Alert.AlertType.ERROR);
                 alert.setTitle("Error");
-                alert.setHeaderText("An error occurred");
-                alert.setContentText("Something went wrong.");
+                alert.setHeaderText("Select one query");
+                alert.setContentText("Only one SELECT can be exported at a time.");
                 alert.showAndWait();
+                return;
             }
-
+            statement = statements.get(0).text;
         }
 
-        updateTree();
+        FileChooser fileChooser = new FileChooser();
+        FileChooser.ExtensionFilter csv = new FileChooser.ExtensionFilter("CSV Files", "*.csv");
+        FileChooser.ExtensionFilter json = new FileChooser.ExtensionFilter("JSON Lines Files", "*.jsonl", "*.json");
+        fileChooser.getExtensionFilters().addAll(csv, json);
+        fileChooser.setInitialDirectory(new File(System.getProperty("user.home")));
+        File target = fileChooser.showSaveDialog(null);
+        if (target == null)
+            return;
+        ResultWriter.Format format = fileChooser.getSelectedExtensionFilter() == json ? ResultWriter.Format.JSON
+                : ResultWriter.Format.of(target.toPath());
+
+        Task<String> task = executionService().export(statement, target.toPath(), format, resultArea::appendText);
+        statusBox.setVisible(true);
+        progressBar.setProgress(ProgressBar.INDETERMINATE_PROGRESS);
+        statusMessage.textProperty().bind(task.messageProperty());
+        runFileButton.setDisable(true);
+        runQueryButton.setDisable(true);
+        cancelButton.setDisable(false);
+
+        task.setOnSucceeded(workerStateEvent -> {
+            finishExecution();
+            feedback.setText("Exported to " + target.getName() + ": " + task.getValue());
+        });
+        task.setOnFailed(workerStateEvent -> {
+            finishExecution();
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Error");
+            alert.setHeaderText("Could not export to:\n " + target.getAbsolutePath());
+            alert.setContentText(task.getException() != null ? task.getException().getMessage()
+                    : "Something went wrong.");
+            alert.showAndWait();
+        });
+        task.setOnCancelled(workerStateEvent -> afterCancel("Export cancelled."));
+    }
+
+    /**
+     * The task is cancelled at once, but the worker may still be stopping
+     * the current statement: Run stays disabled until it is done
+     */
+    private void afterCancel(String message) {
+        cancelButton.setDisable(true);
+        feedback.setText("Cancelling...");
+        executionService().whenStopped(() -> {
+            finishExecution();
+            feedback.setText(message);
+        });
+    }
+
+    /**
+     * Restore the controls after a script finishes
+     */
+    private void finishExecution() {
+        statusMessage.textProperty().unbind();
+        progressBar.progressProperty().unbind();
+        statusBox.setVisible(false);
+        runFileButton.setDisable(false);
+        runQueryButton.setDisable(false);
+        cancelButton.setDisable(true);
+        // a USE statement may have changed the database, the changes to the
+        // tables themselves reach the tree through the watcher, if there is one
+        Path database = executionService().getDatabase();
+        if (!Objects.equals(database, watchedDatabase)) {
+            watchDatabase(database);
+            updateTree();
+        } else if (databaseRegistration == null) {
+            updateTree();
+        }
     }
 
     /****************************************************************/
     /* Tree View related methods */
     /****************************************************************/
     /**
-     * TODO: the tree should be updating all the time using threads
+     * Refresh the schema catalog in the background and patch the tree with
+     * the tables that changed
      */
     public void updateTree() {
-        Path path = interpreter.getDataBase();
-        if (path != null) {
-            try (Stream<Path> paths = Files.walk(path, 1)) {
-                // filter the paths to only get the csv files
-                List<String> csvFiles = paths.filter(Files::isRegularFile)
-                        .filter(p -> p.getFileName().toString().endsWith(".csv"))
-                        .map(p -> p.getFileName().toString()).toList();
-
-                // create a new tree item to hold the csv files
-                TreeItem<String> root = new TreeItem<>(path.toString());
-                root.setExpanded(true);
-
-                // read the first line of every csv file to get the columns
-                for (String csvFile : csvFiles) {
-                    try (BufferedReader reader = new BufferedReader(new FileReader(path.toString() + "/" + csvFile))) {
-                        String line = reader.readLine();
-                        String[] columns = line.split(",");
-                        TreeItem<String> item = new TreeItem<>(csvFile);
-                        for (String column : columns) {
-                            item.getChildren().add(new TreeItem<>(column));
-                        }
-                        root.getChildren().add(item);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                }
+        // a refresh is running, do one more when it finishes
+        if (treeRefreshing) {
+            treeRefreshPending = true;
+            return;
+        }
+        treeRefreshing = true;
 
-                // create a new tree view bc the old one is immutable
-                TreeView<String> newTreeView = new TreeView<>(root);
+        Path path = executionService == null ? null : executionService.getDatabase();
+        Task<SchemaCatalog.Changes> refreshTask = new Task<>() {
+            @Override
+            protected SchemaCatalog.Changes call() throws Exception {
+                SchemaCatalog.Changes changes = catalog.refresh(path);
+                // patched here, the completions never wait for the JavaFX thread
+                completer.apply(changes);
+                return changes;
+            }
+        };
+        refreshTask.setOnSucceeded(workerStateEvent -> {
+            applyCatalogChanges(refreshTask.getValue());
+            finishTreeRefresh();
+        });
+        refreshTask.setOnFailed(workerStateEvent -> {
+            refreshTask.getException().printStackTrace();
+            finishTreeRefresh();
+        });
+        catalogLoader.execute(refreshTask);
+    }
 
-                // set the new tree view
-                treeView.setRoot(newTreeView.getRoot());
-                treeView.setShowRoot(true);
+    private void finishTreeRefresh() {
+        treeRefreshing = false;
+        if (treeRefreshPending) {
+            treeRefreshPending = false;
+            updateTree();
+        }
+    }
 
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        } else {
+    /**
+     * Patch the tree items in place, only the tables that changed are touched
+     * 
+     * @param changes
+     */
+    private void applyCatalogChanges(SchemaCatalog.Changes changes) {
+        if (changes.folder == null) {
+            tableItems.clear();
             treeView.setRoot(null);
             treeView.setShowRoot(false);
+            return;
         }
+
+        TreeItem<String> root = treeView.getRoot();
+        if (changes.folderChanged || root == null) {
+            // another database, build the whole tree at once
+            root = new TreeItem<>(changes.folder.toString());
+            root.setExpanded(true);
+            tableItems.clear();
+            List<TreeItem<String>> items = new ArrayList<>();
+            for (SchemaCatalog.TableInfo table : catalog.tables()) {
+                TreeItem<String> item = tableItem(table);
+                tableItems.put(table.name, item);
+                items.add(item);
+            }
+            root.getChildren().setAll(items);
+            treeView.setRoot(root);
+            treeView.setShowRoot(true);
+            return;
+        }
+
+        for (String name : changes.removed)
+            root.getChildren().remove(tableItems.remove(name));
+        for (SchemaCatalog.TableInfo table : changes.modified) {
+            TreeItem<String> item = tableItems.get(table.name);
+            if (item != null)
+                item.getChildren().setAll(columnItems(table));
+        }
+        for (SchemaCatalog.TableInfo table : changes.added) {
+            TreeItem<String> item = tableItem(table);
+            tableItems.put(table.name, item);
+            // keep the tables sorted by name
+            int index = 0;
+            while (index < root.getChildren().size()
+                    && root.getChildren().get(index).getValue().compareTo(item.getValue()) < 0)
+                index++;
+            root.getChildren().add(index, item);
+        }
+    }
+
+    private TreeItem<String> tableItem(SchemaCatalog.TableInfo table) {
+        TreeItem<String> item = new TreeItem<>(table.file.getFileName().toString());
+        item.getChildren().setAll(columnItems(table));
+        return item;
+    }
+
+    private List<TreeItem<String>> columnItems(SchemaCatalog.TableInfo table) {
+        List<TreeItem<String>> items = new ArrayList<>();
+        for (int i = 0; i < table.columns.size(); i++)
+            items.add(new TreeItem<>(table.columns.get(i) + " (" + table.types.get(i) + ")"));
+        for (TableIndex.Header index : table.indexes)
+            items.add(new TreeItem<>(index.toString()));
+        return items;
     }
 
     /***************************************************************************
      * Set DataBase Menu
      ***************************************************************************/
     public void setDatabase(ActionEvent event) {
+        // the statements of a running script must all see the same database
+        if (executionService().isRunning()) {
+            feedback.setText("Wait for the script to finish to change the database.");
+            return;
+        }
         Path path = null;
 
         // open folder chooser
@@ -570,12 +1125,59 @@ public class FileEditorController {
             path = selectedDirectory.toPath();
         }
 
-        interpreter.setDataBase(path);
+        // switched on the executor, which also recovers the tables if the
+        // IDE crashed with changes in the log
+        executionService().useDatabase(path, folder -> {
+            // update tree view, and keep it updated
+            watchDatabase(folder);
+            updateTree();
 
-        // update tree view
-        updateTree();
+            // update the feedback
+            feedback.setText("Database connection successful.");
+        });
+    }
 
-        // update the feedback
-        feedback.setText("Database connection successful.");
+    /**
+     * Refresh the tree when the tables of the database folder change
+     * 
+     * @param path database folder, null to stop watching
+     */
+    private void watchDatabase(Path path) {
+        if (databaseRegistration != null) {
+            databaseRegistration.cancel();
+            databaseRegistration = null;
+        }
+        watchedDatabase = path;
+        if (path == null || fileWatcher == null)
+            return;
+        try {
+            Path folder = path.toAbsolutePath();
+            databaseRegistration = fileWatcher.watchDirectory(folder, changed -> {
+                for (Path file : changed) {
+                    // only the tables and their indexes are in the tree, the
+                    // folder itself means events were lost
+                    if (file.toString().endsWith(".csv") || file.toString().endsWith(".col")
+                            || file.toString().endsWith(".idx") || file.equals(folder)) {
+                        Platform.runLater(this::updateTree);
+                        return;
+                    }
+                }
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stop the watcher thread
+     */
+    private void closeWatcher() {
+        if (fileWatcher == null)
+            return;
+        try {
+            fileWatcher.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 }
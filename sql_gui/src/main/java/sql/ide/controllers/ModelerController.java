@@ -1,35 +1,160 @@
 package sql.ide.controllers;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.scene.canvas.Canvas;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Label;
+import javafx.scene.control.TreeItem;
+import javafx.scene.control.TreeView;
+import javafx.scene.layout.Pane;
+import javafx.stage.FileChooser;
+import javafx.stage.Stage;
+import sql.ide.modeler.DiagramSql;
+import sql.ide.modeler.DiagramView;
+import sql.ide.modeler.ErDiagram;
+import sql.ide.storage.SchemaCatalog;
 
 public class ModelerController {
     @FXML
     Canvas canva;
     @FXML
+    private Pane canvasPane;
+    @FXML
+    private TreeView<String> treeView;
+    @FXML
+    private Label status;
+
+    private DiagramView view;
+    // imports and exports the diagrams, away from the FX thread
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "sql-modeler");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     /**
-     * Initialize function to everything that will run when the program 
+     * Initialize function to everything that will run when the program
      * initilize
      */
     public void initialize () {
+        // the canvas follows the size of the window
+        canva.widthProperty().bind(canvasPane.widthProperty());
+        canva.heightProperty().bind(canvasPane.heightProperty());
+        view = new DiagramView(canva, status::setText);
+
+        treeView.setRoot(new TreeItem<>("Tables"));
+        treeView.getRoot().setExpanded(true);
+        treeView.getSelectionModel().selectedItemProperty().addListener((observable, previous, item) -> {
+            if (item == null)
+                return;
+            ErDiagram.Entity entity = view.getDiagram().entity(item.getValue());
+            if (entity != null)
+                view.center(entity);
+        });
+    }
 
+    /**
+     * Show the diagram of the tables of the database, from the catalog the
+     * editor keeps up to date
+     *
+     * @param tables tables of the database, null shows an empty diagram
+     */
+    public void showDatabase(List<SchemaCatalog.TableInfo> tables) {
+        if (tables == null) {
+            status.setText("No database selected, choose one in SQL Developer or import a diagram");
+            return;
+        }
+        setDiagram(ErDiagram.of(tables));
+    }
+
+    private void setDiagram(ErDiagram diagram) {
+        view.setDiagram(diagram);
+        TreeItem<String> root = treeView.getRoot();
+        root.getChildren().clear();
+        for (ErDiagram.Entity entity : diagram.entities())
+            root.getChildren().add(new TreeItem<>(entity.name));
     }
-    
+
     /**************************************************************************/
     /************************Import and Export Functions***********************/
     /**************************************************************************/
     public void importFile (ActionEvent event) {
-        
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.getExtensionFilters().add(
+                new FileChooser.ExtensionFilter("SQL Files", "*.sql", "*.txt"));
+        fileChooser.setInitialDirectory(new File(System.getProperty("user.home")));
+        File fileToLoad = fileChooser.showOpenDialog(canva.getScene().getWindow());
+        if (fileToLoad == null)
+            return;
+
+        Task<ErDiagram> task = new Task<>() {
+            @Override
+            protected ErDiagram call() throws Exception {
+                return DiagramSql.parse(Files.readString(fileToLoad.toPath(), StandardCharsets.UTF_8));
+            }
+        };
+        task.setOnSucceeded(workerStateEvent -> setDiagram(task.getValue()));
+        task.setOnFailed(workerStateEvent -> showError("Could not import " + fileToLoad.getName(),
+                task.getException()));
+        loader.execute(task);
     }
 
     public void exportFile (ActionEvent event) {
-
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.getExtensionFilters().add(
+                new FileChooser.ExtensionFilter("SQL Files", "*.sql", "*.txt"));
+        fileChooser.setInitialDirectory(new File(System.getProperty("user.home")));
+        File fileToSave = fileChooser.showSaveDialog(canva.getScene().getWindow());
+        if (fileToSave == null)
+            return;
+
+        // formatted on the FX thread, where the entities are moved
+        String script = DiagramSql.format(view.getDiagram());
+        Task<Void> task = new Task<>() {
+            @Override
+            protected Void call() throws Exception {
+                Files.writeString(fileToSave.toPath(), script, StandardCharsets.UTF_8);
+                return null;
+            }
+        };
+        task.setOnSucceeded(workerStateEvent -> status.setText("Diagram exported to " + fileToSave));
+        task.setOnFailed(workerStateEvent -> showError("Could not export " + fileToSave.getName(),
+                task.getException()));
+        loader.execute(task);
     }
 
+    /**
+     * Close the modeler, SQL Developer stays open
+     *
+     * @param event
+     */
     public void returnDeveloper (ActionEvent event) {
+        ((Stage) canva.getScene().getWindow()).close();
+    }
+
+    /**
+     * Stop drawing and reading once the window is closed
+     */
+    public void dispose() {
+        view.dispose();
+        loader.shutdownNow();
+    }
 
+    private void showError(String header, Throwable exception) {
+        Alert alert = new Alert(Alert.AlertType.ERROR);
+        alert.setTitle("Error");
+        alert.setHeaderText(header);
+        alert.setContentText(exception.getMessage());
+        alert.showAndWait();
     }
 
     /**************************************************************************/
@@ -64,4 +189,4 @@ public class ModelerController {
     }
 
 
-}
\ No newline at end of file
+}
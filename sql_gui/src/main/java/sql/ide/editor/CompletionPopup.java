@@ -0,0 +1,197 @@
+package sql.ide.editor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javafx.application.Platform;
+import javafx.event.EventHandler;
+import javafx.scene.control.ListView;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.input.MouseButton;
+import javafx.stage.Popup;
+
+//* richtext imports
+import org.fxmisc.richtext.CodeArea;
+import org.fxmisc.richtext.model.PlainTextChange;
+import org.reactfx.Subscription;
+
+/**
+ * As you type completion for a CodeArea: typing a word, or a dot, or
+ * pressing Ctrl+Space shows the SqlCompleter suggestions under the caret,
+ * Up and Down choose one, Enter or Tab insert it and Escape closes them.
+ *
+ * The JavaFX thread only copies the text around the caret; the suggestions
+ * are computed on the worker, and only the answer to the latest request is
+ * shown, so typing never waits for them and a burst of keys computes one
+ * completion, not one per key.
+ */
+public class CompletionPopup {
+    // chars copied each way around the caret, enough for a long statement
+    private static final int CONTEXT = 4096;
+    private static final int VISIBLE_ROWS = 10;
+    private static final double ROW_HEIGHT = 24;
+
+    private final CodeArea codeArea;
+    private final SqlCompleter completer;
+    private final Executor worker;
+    private final Popup popup = new Popup();
+    private final ListView<SqlCompleter.Suggestion> list = new ListView<>();
+    private final AtomicLong latest = new AtomicLong();
+    private final EventHandler<KeyEvent> keyHandler = this::keyPressed;
+
+    private Subscription subscription;
+    // offset of the word the shown suggestions complete
+    private int shownStart = -1;
+
+    /**
+     * @param codeArea
+     * @param completer shared by all the areas
+     * @param worker runs the completions, shared by all the areas
+     */
+    public CompletionPopup(CodeArea codeArea, SqlCompleter completer, Executor worker) {
+        this.codeArea = codeArea;
+        this.completer = completer;
+        this.worker = worker;
+        list.setFocusTraversable(false);
+        list.setPrefWidth(280);
+        list.setOnMouseClicked(event -> {
+            if (event.getButton() == MouseButton.PRIMARY && event.getClickCount() == 2)
+                accept();
+        });
+        popup.getContent().add(list);
+        popup.setAutoHide(true);
+    }
+
+    /**
+     * Start listening to the keys and the changes of the code area
+     */
+    public void start() {
+        if (subscription != null)
+            return;
+        subscription = codeArea.plainTextChanges()
+                .filter(change -> !change.isIdentity())
+                .subscribe(this::textChanged);
+        codeArea.addEventFilter(KeyEvent.KEY_PRESSED, keyHandler);
+        codeArea.focusedProperty().addListener((observable, previous, focused) -> {
+            if (!focused)
+                hide();
+        });
+    }
+
+    /**
+     * Stop listening and close the suggestions
+     */
+    public void stop() {
+        if (subscription != null) {
+            subscription.unsubscribe();
+            subscription = null;
+        }
+        codeArea.removeEventFilter(KeyEvent.KEY_PRESSED, keyHandler);
+        hide();
+    }
+
+    private void textChanged(PlainTextChange change) {
+        String inserted = change.getInserted();
+        boolean typed = inserted.length() == 1 && change.getRemoved().isEmpty()
+                && (SqlCompleter.isWordChar(inserted.charAt(0)) || inserted.charAt(0) == '.');
+        // a deletion updates the suggestions shown, anything else closes them
+        if (typed || (popup.isShowing() && inserted.isEmpty()))
+            request(change.getInsertionEnd());
+        else
+            hide();
+    }
+
+    private void keyPressed(KeyEvent event) {
+        if (event.getCode() == KeyCode.SPACE && event.isShortcutDown()) {
+            request(codeArea.getCaretPosition());
+            event.consume();
+            return;
+        }
+        if (!popup.isShowing())
+            return;
+        switch (event.getCode()) {
+            case UP:
+                list.getSelectionModel().selectPrevious();
+                list.scrollTo(list.getSelectionModel().getSelectedIndex());
+                break;
+            case DOWN:
+                list.getSelectionModel().selectNext();
+                list.scrollTo(list.getSelectionModel().getSelectedIndex());
+                break;
+            case ENTER:
+            case TAB:
+                accept();
+                break;
+            case ESCAPE:
+                hide();
+                break;
+            default:
+                return;
+        }
+        event.consume();
+    }
+
+    /**
+     * Copy the text around the caret and complete it on the worker
+     *
+     * @param caret where the caret is, or is about to be after a change
+     */
+    private void request(int caret) {
+        int from = Math.max(0, caret - CONTEXT);
+        int to = Math.min(codeArea.getLength(), caret + CONTEXT);
+        String text = codeArea.getText(from, to);
+        long request = latest.incrementAndGet();
+        worker.execute(() -> {
+            // a newer request replaces this one
+            if (request != latest.get())
+                return;
+            SqlCompleter.Completion completion = completer.complete(text, caret - from);
+            Platform.runLater(() -> show(request, caret, from, completion));
+        });
+    }
+
+    private void show(long request, int caret, int from, SqlCompleter.Completion completion) {
+        // the caret moved or the text changed since, a new request is coming
+        if (request != latest.get() || caret != codeArea.getCaretPosition() || completion == null
+                || completion.suggestions.isEmpty()) {
+            if (request == latest.get())
+                hide();
+            return;
+        }
+        shownStart = from + completion.start;
+        list.getItems().setAll(completion.suggestions);
+        list.getSelectionModel().selectFirst();
+        list.scrollTo(0);
+        list.setPrefHeight(Math.min(completion.suggestions.size(), VISIBLE_ROWS) * ROW_HEIGHT + 2);
+        codeArea.getCaretBounds().ifPresent(bounds -> {
+            if (popup.isShowing()) {
+                popup.setX(bounds.getMinX());
+                popup.setY(bounds.getMaxY());
+            } else {
+                popup.show(codeArea, bounds.getMinX(), bounds.getMaxY());
+            }
+        });
+    }
+
+    /**
+     * Replace the word being completed with the selected suggestion
+     */
+    private void accept() {
+        SqlCompleter.Suggestion suggestion = list.getSelectionModel().getSelectedItem();
+        int start = shownStart;
+        int caret = codeArea.getCaretPosition();
+        hide();
+        if (suggestion == null || start < 0 || start > caret)
+            return;
+        codeArea.replaceText(start, caret, suggestion.word);
+        // a one letter word looks typed, drop the request it made
+        hide();
+    }
+
+    private void hide() {
+        latest.incrementAndGet();
+        shownStart = -1;
+        popup.hide();
+    }
+}
@@ -0,0 +1,184 @@
+package sql.ide.editor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Prefix trie of the words the editor completes, each one marked with its
+ * kinds: a word can be a keyword, a table and a column at the same time, and
+ * the same column can belong to several tables.
+ *
+ * The children of a node are kept in sorted arrays, so the words come out in
+ * alphabetical order, and every node knows the kinds of the words below it,
+ * so a search for tables does not walk the columns. Finding the first
+ * suggestions costs the length of the prefix plus the nodes on the way to
+ * them, not the size of the trie. Words are added and removed one at a time
+ * as the schema changes. Not thread safe, SqlCompleter guards it.
+ */
+public class CompletionTrie {
+    public enum Kind {
+        STATEMENT, KEYWORD, FUNCTION, TYPE, TABLE, COLUMN;
+
+        int bit() {
+            return 1 << ordinal();
+        }
+    }
+
+    private static final char[] NO_KEYS = {};
+    private static final Node[] NO_CHILDREN = {};
+
+    private static final class Node {
+        char[] keys = NO_KEYS;
+        Node[] children = NO_CHILDREN;
+        int size = 0;
+        // kinds of the word ending here, and of the words in the subtree
+        int kinds = 0;
+        int subtreeKinds = 0;
+        // tables with the column ending here, null when it is not a column
+        Set<String> tables;
+
+        Node child(char key) {
+            int index = Arrays.binarySearch(keys, 0, size, key);
+            return index < 0 ? null : children[index];
+        }
+
+        Node addChild(char key) {
+            int index = Arrays.binarySearch(keys, 0, size, key);
+            if (index >= 0)
+                return children[index];
+            index = -index - 1;
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, Math.max(2, size * 2));
+                children = Arrays.copyOf(children, keys.length);
+            }
+            System.arraycopy(keys, index, keys, index + 1, size - index);
+            System.arraycopy(children, index, children, index + 1, size - index);
+            keys[index] = key;
+            children[index] = new Node();
+            size++;
+            return children[index];
+        }
+
+        void removeChild(char key) {
+            int index = Arrays.binarySearch(keys, 0, size, key);
+            if (index < 0)
+                return;
+            System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+            System.arraycopy(children, index + 1, children, index, size - index - 1);
+            children[--size] = null;
+        }
+
+        void updateSubtreeKinds() {
+            subtreeKinds = kinds;
+            for (int i = 0; i < size; i++)
+                subtreeKinds |= children[i].subtreeKinds;
+        }
+    }
+
+    private final Node root = new Node();
+    private int words = 0;
+
+    /**
+     * @param word
+     * @param kind
+     * @param table table of the column, ignored for the other kinds
+     */
+    public void add(String word, Kind kind, String table) {
+        String key = word.toUpperCase();
+        List<Node> path = new ArrayList<>(key.length() + 1);
+        Node node = root;
+        path.add(node);
+        for (int i = 0; i < key.length(); i++) {
+            node = node.addChild(key.charAt(i));
+            path.add(node);
+        }
+        if (node.kinds == 0)
+            words++;
+        node.kinds |= kind.bit();
+        if (kind == Kind.COLUMN) {
+            if (node.tables == null)
+                node.tables = new HashSet<>();
+            node.tables.add(table);
+        }
+        for (Node visited : path)
+            visited.subtreeKinds |= kind.bit();
+    }
+
+    /**
+     * Remove one kind of a word, a column only when no other table has it
+     *
+     * @param word
+     * @param kind
+     * @param table table of the column, ignored for the other kinds
+     */
+    public void remove(String word, Kind kind, String table) {
+        String key = word.toUpperCase();
+        Node[] path = new Node[key.length() + 1];
+        Node node = root;
+        path[0] = node;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.child(key.charAt(i));
+            if (node == null)
+                return;
+            path[i + 1] = node;
+        }
+        if ((node.kinds & kind.bit()) == 0)
+            return;
+        if (kind == Kind.COLUMN) {
+            node.tables.remove(table);
+            if (!node.tables.isEmpty())
+                return;
+            node.tables = null;
+        }
+        node.kinds &= ~kind.bit();
+        if (node.kinds == 0)
+            words--;
+
+        // drop the nodes left without words and fix the kinds up to the root
+        for (int i = key.length(); i >= 0; i--) {
+            path[i].updateSubtreeKinds();
+            if (i > 0 && path[i].subtreeKinds == 0)
+                path[i - 1].removeChild(key.charAt(i - 1));
+        }
+    }
+
+    /**
+     * @param prefix
+     * @param kind
+     * @param limit
+     * @return up to limit words of the kind starting with the prefix, in
+     *         alphabetical order
+     */
+    public List<String> complete(String prefix, Kind kind, int limit) {
+        List<String> found = new ArrayList<>();
+        String key = prefix.toUpperCase();
+        Node node = root;
+        for (int i = 0; i < key.length() && node != null; i++)
+            node = node.child(key.charAt(i));
+        if (node != null && limit > 0)
+            collect(node, new StringBuilder(key), kind.bit(), limit, found);
+        return found;
+    }
+
+    private static void collect(Node node, StringBuilder word, int bit, int limit, List<String> found) {
+        if ((node.subtreeKinds & bit) == 0)
+            return;
+        if ((node.kinds & bit) != 0)
+            found.add(word.toString());
+        for (int i = 0; i < node.size && found.size() < limit; i++) {
+            word.append(node.keys[i]);
+            collect(node.children[i], word, bit, limit, found);
+            word.setLength(word.length() - 1);
+        }
+    }
+
+    /**
+     * @return number of distinct words
+     */
+    public int size() {
+        return words;
+    }
+}
@@ -0,0 +1,113 @@
+package sql.ide.editor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Small pool of worker threads shared by the highlighters of all the editor
+ * tabs. The passes of the visible tab run before the ones of the tabs in the
+ * background, also the ones queued before it was selected, and the passes of
+ * the same priority run in the order they were submitted.
+ */
+public class HighlightScheduler {
+    /**
+     * Number of worker threads, -Dsqlide.highlighter.threads=...
+     */
+    static final int THREADS = Math.max(1, Integer.getInteger("sqlide.highlighter.threads", 2));
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final ThreadPoolExecutor pool;
+
+    public HighlightScheduler() {
+        this(THREADS);
+    }
+
+    /**
+     * @param threads number of worker threads
+     */
+    public HighlightScheduler(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "sql-highlighter-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Queue a highlighting pass
+     *
+     * @param owner highlighter of the tab
+     * @param visible true for the tab the user sees, it goes first
+     * @param pass
+     */
+    void submit(SyntaxHighlighter owner, boolean visible, Runnable pass) {
+        if (!pool.isShutdown())
+            pool.execute(new Pass(owner, visible, sequence.incrementAndGet(), pass));
+    }
+
+    /**
+     * Queue again the passes of a tab that was shown or hidden with its new
+     * priority, the queue orders them when they are added
+     *
+     * @param owner highlighter of the tab
+     * @param visible
+     */
+    void setVisible(SyntaxHighlighter owner, boolean visible) {
+        List<Runnable> queued = new ArrayList<>();
+        pool.getQueue().drainTo(queued);
+        for (Runnable runnable : queued) {
+            Pass pass = (Pass) runnable;
+            if (pass.owner == owner)
+                pass = new Pass(owner, visible, pass.sequence, pass.pass);
+            if (!pool.isShutdown())
+                pool.execute(pass);
+        }
+    }
+
+    /**
+     * @return number of passes waiting for a worker
+     */
+    public int pending() {
+        return pool.getQueue().size();
+    }
+
+    /**
+     * Drop the passes not started and release the worker threads
+     */
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private static class Pass implements Runnable, Comparable<Pass> {
+        private final SyntaxHighlighter owner;
+        private final boolean visible;
+        private final long sequence;
+        private final Runnable pass;
+
+        Pass(SyntaxHighlighter owner, boolean visible, long sequence, Runnable pass) {
+            this.owner = owner;
+            this.visible = visible;
+            this.sequence = sequence;
+            this.pass = pass;
+        }
+
+        @Override
+        public void run() {
+            pass.run();
+        }
+
+        @Override
+        public int compareTo(Pass other) {
+            if (visible != other.visible)
+                return visible ? -1 : 1;
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package sql.ide.editor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import sql.ide.editor.CompletionTrie.Kind;
+import sql.ide.storage.SchemaCatalog;
+
+/**
+ * Suggests the words that fit where the caret is: the statements at the
+ * start of one, table names after FROM, UPDATE, INTO, TABLE and ON, the
+ * data types in the columns of a CREATE TABLE, the columns of the tables of
+ * the statement (or of the table before a dot) in the SELECT list, WHERE,
+ * ORDER BY and SET, plus the functions and the keywords.
+ *
+ * The words come from one CompletionTrie. The keywords and functions are
+ * added once, the tables and columns follow the SchemaCatalog changes, so a
+ * refresh only touches the tables that changed. The statement is read with
+ * a small scanner of its own rather than the Lexer, which fails on the
+ * unfinished text being typed. Thread safe, it is used by the completion
+ * worker and updated by the catalog loader.
+ */
+public class SqlCompleter {
+    /**
+     * Suggestions of one completion, -Dsqlide.completion.max=...
+     */
+    static final int MAX_SUGGESTIONS = Integer.getInteger("sqlide.completion.max", 50);
+
+    // words that start a statement, those of the database manager and of the IDE
+    private static final List<String> STATEMENTS = List.of("SELECT", "INSERT", "UPDATE", "DELETE", "CREATE",
+            "DROP", "USE", "SHOW", "CONVERT", "IMPORT", "EXPORT");
+    // the rest of the keywords of the Lexer, and of the statements of the IDE
+    private static final List<String> KEYWORDS = List.of("WHERE", "FROM", "ORDER", "BY", "LIMIT", "VALUES",
+            "INTO", "AND", "OR", "NOT", "NULL", "TRUE", "FALSE", "PRIMARY", "KEY", "UNIQUE", "DATABASE", "TABLE",
+            "TABLES", "ASC", "DESC", "AS", "SET", "GROUP", "IS", "DISTINCT", "INDEX", "ON", "USING", "HASH",
+            "SORTED", "OUTFILE", "TO", "COLUMNAR", "CSV", "JSON");
+    private static final List<String> FUNCTIONS = List.of("UCASE", "LCASE", "CAPITALIZE", "FLOOR", "CEIL",
+            "ROUND", "RAND", "COUNT", "MIN", "MAX", "SUM", "AVG", "MOD", "DIV");
+    private static final List<String> TYPES = List.of("NUMBER", "STRING", "BOOLEAN", "DATE");
+
+    // the word before a table name
+    private static final Set<String> BEFORE_TABLE = Set.of("FROM", "UPDATE", "INTO", "TABLE", "ON");
+    // the clauses where the columns go
+    private static final Set<String> COLUMN_CLAUSES = Set.of("SELECT", "WHERE", "BY", "SET", "AND", "OR", "NOT",
+            "DISTINCT");
+    // the words that start a clause
+    private static final Set<String> CLAUSES = Set.of("SELECT", "FROM", "WHERE", "BY", "SET", "VALUES", "INTO",
+            "UPDATE", "TABLE", "ON", "LIMIT", "AND", "OR", "NOT", "DISTINCT", "TO", "AS", "USING");
+
+    /**
+     * One word to insert
+     */
+    public static class Suggestion {
+        public final String word;
+        public final Kind kind;
+
+        Suggestion(String word, Kind kind) {
+            this.word = word;
+            this.kind = kind;
+        }
+
+        @Override
+        public String toString() {
+            return word + "  " + kind.name().toLowerCase();
+        }
+    }
+
+    /**
+     * The suggestions for a position of the text
+     */
+    public static class Completion {
+        /**
+         * Offset of the word being completed, it ends at the caret
+         */
+        public final int start;
+        public final String prefix;
+        public final List<Suggestion> suggestions;
+
+        Completion(int start, String prefix, List<Suggestion> suggestions) {
+            this.start = start;
+            this.prefix = prefix;
+            this.suggestions = suggestions;
+        }
+    }
+
+    private final CompletionTrie trie = new CompletionTrie();
+    // the columns each table has in the trie, to remove them when it changes
+    private final Map<String, List<String>> columns = new HashMap<>();
+
+    public SqlCompleter() {
+        for (String word : STATEMENTS)
+            trie.add(word, Kind.STATEMENT, null);
+        for (String word : KEYWORDS)
+            trie.add(word, Kind.KEYWORD, null);
+        for (String word : FUNCTIONS)
+            trie.add(word, Kind.FUNCTION, null);
+        for (String word : TYPES)
+            trie.add(word, Kind.TYPE, null);
+    }
+
+    /**
+     * Bring the tables and columns up to date, only the tables that changed
+     * are touched
+     *
+     * @param changes
+     */
+    public synchronized void apply(SchemaCatalog.Changes changes) {
+        if (changes.folderChanged) {
+            for (String table : new ArrayList<>(columns.keySet()))
+                removeTable(table);
+        }
+        for (String table : changes.removed)
+            removeTable(table);
+        for (SchemaCatalog.TableInfo table : changes.modified) {
+            removeTable(table.name);
+            addTable(table);
+        }
+        for (SchemaCatalog.TableInfo table : changes.added)
+            addTable(table);
+    }
+
+    private void addTable(SchemaCatalog.TableInfo table) {
+        trie.add(table.name, Kind.TABLE, null);
+        for (String column : table.columns)
+            trie.add(column, Kind.COLUMN, table.name);
+        columns.put(table.name, table.columns);
+    }
+
+    private void removeTable(String table) {
+        List<String> previous = columns.remove(table);
+        if (previous == null)
+            return;
+        trie.remove(table, Kind.TABLE, null);
+        for (String column : previous)
+            trie.remove(column, Kind.COLUMN, table);
+    }
+
+    /**
+     * @param text text around the caret, it may cut statements at both ends
+     * @param caret offset of the caret in the text
+     * @return the suggestions for the word that ends at the caret, null in a
+     *         string or a comment
+     */
+    public synchronized Completion complete(String text, int caret) {
+        Scan scan = new Scan(text, caret);
+        if (scan.inLiteral)
+            return null;
+        int start = caret;
+        while (start > 0 && isWordChar(text.charAt(start - 1)))
+            start--;
+        String prefix = text.substring(start, caret).toUpperCase();
+
+        List<Suggestion> suggestions = new ArrayList<>();
+        // a number
+        if (!prefix.isEmpty() && Character.isDigit(prefix.charAt(0)))
+            return new Completion(start, prefix, suggestions);
+        List<String> before = scan.before;
+        String previous = before.isEmpty() ? null : before.get(before.size() - 1);
+
+        if (before.isEmpty()) {
+            add(suggestions, prefix, Kind.STATEMENT, null);
+        } else if (".".equals(previous)) {
+            // TABLE.column
+            String table = before.size() > 1 ? before.get(before.size() - 2) : "";
+            add(suggestions, prefix, Kind.COLUMN, List.of(table));
+        } else if (BEFORE_TABLE.contains(previous) || (",".equals(previous) && "FROM".equals(scan.clause))) {
+            add(suggestions, prefix, Kind.TABLE, null);
+        } else if (isColumnDefinition(before)) {
+            add(suggestions, prefix, Kind.TYPE, null);
+        } else if (COLUMN_CLAUSES.contains(scan.clause) || ("INTO".equals(scan.clause)
+                && ("(".equals(previous) || ",".equals(previous)))) {
+            // no tables yet, SELECT before FROM, gets the columns of all of them
+            add(suggestions, prefix, Kind.COLUMN, scan.tables.isEmpty() ? null : scan.tables);
+            if (!"INTO".equals(scan.clause))
+                add(suggestions, prefix, Kind.FUNCTION, null);
+            add(suggestions, prefix, Kind.KEYWORD, null);
+        } else {
+            add(suggestions, prefix, Kind.KEYWORD, null);
+            add(suggestions, prefix, Kind.FUNCTION, null);
+        }
+        return new Completion(start, prefix, suggestions);
+    }
+
+    private void add(List<Suggestion> suggestions, String prefix, Kind kind, Collection<String> tables) {
+        List<String> words = kind == Kind.COLUMN && tables != null ? columnsOf(prefix, tables)
+                : trie.complete(prefix, kind, MAX_SUGGESTIONS - suggestions.size());
+        for (String word : words) {
+            if (suggestions.size() == MAX_SUGGESTIONS)
+                return;
+            // nothing left to complete
+            if (!word.equals(prefix))
+                suggestions.add(new Suggestion(word, kind));
+        }
+    }
+
+    /**
+     * The columns of the few tables of a statement are read from their lists,
+     * the trie would walk the columns of every table to find them
+     */
+    private List<String> columnsOf(String prefix, Collection<String> tables) {
+        Set<String> found = new TreeSet<>();
+        for (String table : tables) {
+            for (String column : columns.getOrDefault(table, List.of())) {
+                if (column.startsWith(prefix))
+                    found.add(column);
+            }
+        }
+        return new ArrayList<>(found);
+    }
+
+    /**
+     * CREATE TABLE name ( column | or , column |
+     */
+    private static boolean isColumnDefinition(List<String> before) {
+        int size = before.size();
+        if (size < 5 || !"CREATE".equals(before.get(0)) || !"TABLE".equals(before.get(1)))
+            return false;
+        String name = before.get(size - 1);
+        String separator = before.get(size - 2);
+        return isWordChar(name.charAt(0)) && !CLAUSES.contains(name)
+                && ("(".equals(separator) || ",".equals(separator));
+    }
+
+    static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    /**
+     * The words and symbols of the statement around the caret, upper cased,
+     * without the strings and the comments
+     */
+    private static class Scan {
+        // tokens of the statement before the word at the caret
+        final List<String> before = new ArrayList<>();
+        // tables named anywhere in the statement
+        final Set<String> tables = new LinkedHashSet<>();
+        // last clause word before the caret
+        String clause;
+        boolean inLiteral = false;
+
+        Scan(String text, int caret) {
+            List<String> statement = new ArrayList<>();
+            int caretToken = -1;
+            int i = 0;
+            int length = text.length();
+            while (i < length) {
+                if (i >= caret && caretToken == -1)
+                    caretToken = statement.size();
+                char c = text.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (c == '-' && i + 1 < length && text.charAt(i + 1) == '-') {
+                    int end = text.indexOf('\n', i);
+                    end = end == -1 ? length : end;
+                    if (i < caret && caret <= end)
+                        inLiteral = true;
+                    i = end;
+                } else if (c == '\'' || c == '"') {
+                    int end = text.indexOf(c, i + 1);
+                    end = end == -1 ? length : end + 1;
+                    // an unclosed string goes on to the caret
+                    if (i < caret && (caret < end || end == length))
+                        inLiteral = true;
+                    i = end;
+                } else if (isWordChar(c)) {
+                    int end = i;
+                    while (end < length && isWordChar(text.charAt(end)))
+                        end++;
+                    // the word at the caret is the one being completed
+                    if (!(i < caret && caret <= end))
+                        statement.add(text.substring(i, end).toUpperCase());
+                    else
+                        caretToken = statement.size();
+                    i = end;
+                } else if (c == ';') {
+                    if (i < caret) {
+                        statement.clear();
+                        i++;
+                    } else {
+                        break;
+                    }
+                } else {
+                    statement.add(String.valueOf(c));
+                    i++;
+                }
+            }
+            if (caretToken == -1)
+                caretToken = statement.size();
+            before.addAll(statement.subList(0, caretToken));
+
+            for (int t = 0; t < statement.size(); t++) {
+                String word = statement.get(t);
+                if (t < caretToken && CLAUSES.contains(word))
+                    clause = word;
+                if (!BEFORE_TABLE.contains(word))
+                    continue;
+                // FROM a, b
+                for (int n = t + 1; n < statement.size(); n += 2) {
+                    String name = statement.get(n);
+                    if (!isWordChar(name.charAt(0)) || CLAUSES.contains(name))
+                        break;
+                    tables.add(name);
+                    if (n + 1 >= statement.size() || !",".equals(statement.get(n + 1)) || !"FROM".equals(word))
+                        break;
+                }
+            }
+        }
+    }
+}
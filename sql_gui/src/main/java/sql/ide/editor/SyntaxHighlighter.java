@@ -0,0 +1,383 @@
+package sql.ide.editor;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import javafx.application.Platform;
+
+//* richtext imports
+import org.fxmisc.richtext.CodeArea;
+import org.fxmisc.richtext.model.PlainTextChange;
+import org.fxmisc.richtext.model.StyleSpans;
+import org.fxmisc.richtext.model.StyleSpansBuilder;
+import org.fxmisc.richtext.model.TwoDimensional.Bias;
+import org.reactfx.Subscription;
+
+//* Import everything related to database manager
+import edu.upvictoria.fpoo.*;
+import sql.ide.execution.Statement;
+import sql.ide.execution.StatementCache;
+import sql.ide.execution.StatementSplitter;
+
+/**
+ * Change driven syntax highlighter for a CodeArea.
+ *
+ * Every text change marks a dirty range of the document, once the user stops
+ * typing for DEBOUNCE the dirty range is widened to the statements that
+ * contain it, lexed on a background worker and only those spans are applied
+ * back on the JavaFX thread. While the editor is idle nothing runs.
+ *
+ * The passes run on a HighlightScheduler that may be shared by several
+ * areas, the one visible goes first. An area hidden and not edited for IDLE
+ * drops its styles and the tokens of its statements, and is highlighted
+ * again when it is shown.
+ */
+public class SyntaxHighlighter {
+    /**
+     * Time without changes before the dirty region is re-lexed
+     */
+    private static final Duration DEBOUNCE = Duration.ofMillis(150);
+    /**
+     * Time a hidden area keeps its styles without changes,
+     * -Dsqlide.highlighter.idleSeconds=...
+     */
+    public static final Duration IDLE = Duration.ofSeconds(Integer.getInteger("sqlide.highlighter.idleSeconds", 300));
+
+    private final CodeArea codeArea;
+    private final Consumer<String> feedback;
+    private final StatementCache statementCache;
+    private final HighlightScheduler scheduler;
+    // a scheduler of its own is shut down with the highlighter
+    private final boolean ownScheduler;
+
+    private Subscription subscription;
+
+    // the next fields are only touched on the JavaFX thread
+    private long generation = 0;
+    private long lastRequest = 0;
+    private int dirtyStart = -1;
+    private int dirtyEnd = -1;
+    private int inFlightStart = -1;
+    private int inFlightEnd = -1;
+    private boolean visible = true;
+    // the styles and tokens were dropped, the whole text is highlighted when shown
+    private boolean dropped = false;
+    private long lastActive = System.nanoTime();
+
+    /**
+     * @param codeArea area to highlight
+     * @param feedback receives the lexer error message, or "" when the region is valid
+     */
+    public SyntaxHighlighter(CodeArea codeArea, Consumer<String> feedback) {
+        this(codeArea, feedback, new StatementCache());
+    }
+
+    /**
+     * @param codeArea area to highlight
+     * @param feedback receives the lexer error message, or "" when the region is valid
+     * @param statementCache cache the tokens are shared through
+     */
+    public SyntaxHighlighter(CodeArea codeArea, Consumer<String> feedback, StatementCache statementCache) {
+        this(codeArea, feedback, statementCache, new HighlightScheduler(1), true);
+    }
+
+    /**
+     * @param codeArea area to highlight
+     * @param feedback receives the lexer error message, or "" when the region is valid
+     * @param statementCache cache the tokens are shared through
+     * @param scheduler workers shared with the other areas, not shut down by stop
+     */
+    public SyntaxHighlighter(CodeArea codeArea, Consumer<String> feedback, StatementCache statementCache,
+            HighlightScheduler scheduler) {
+        this(codeArea, feedback, statementCache, scheduler, false);
+    }
+
+    private SyntaxHighlighter(CodeArea codeArea, Consumer<String> feedback, StatementCache statementCache,
+            HighlightScheduler scheduler, boolean ownScheduler) {
+        this.codeArea = codeArea;
+        this.feedback = feedback;
+        this.statementCache = statementCache;
+        this.scheduler = scheduler;
+        this.ownScheduler = ownScheduler;
+    }
+
+    /**
+     * Start listening to the changes of the code area
+     */
+    public void start() {
+        if (subscription != null)
+            return;
+        subscription = codeArea.plainTextChanges()
+                .filter(change -> !change.isIdentity())
+                .hook(this::markDirty)
+                .successionEnds(DEBOUNCE)
+                .subscribe(change -> highlightDirtyRegion());
+    }
+
+    /**
+     * Stop listening to changes, and release the worker thread if the
+     * scheduler is not shared
+     */
+    public void stop() {
+        if (subscription != null) {
+            subscription.unsubscribe();
+            subscription = null;
+        }
+        if (ownScheduler)
+            scheduler.shutdown();
+    }
+
+    /**
+     * Give the passes of the area priority while it is shown, an area shown
+     * after dropping its styles is highlighted again
+     *
+     * @param visible
+     */
+    public void setVisible(boolean visible) {
+        this.visible = visible;
+        lastActive = System.nanoTime();
+        scheduler.setVisible(this, visible);
+        if (!visible || !dropped || subscription == null)
+            return;
+        dropped = false;
+        dirtyStart = 0;
+        dirtyEnd = codeArea.getLength();
+        highlightDirtyRegion();
+    }
+
+    /**
+     * Drop the styles of a hidden area, and the tokens of its statements,
+     * when it was not edited for IDLE
+     *
+     * @return true if they were dropped
+     */
+    public boolean dropCachesIfIdle() {
+        if (visible || dropped || System.nanoTime() - lastActive < IDLE.toNanos())
+            return false;
+        dropped = true;
+        String text = codeArea.getText();
+        codeArea.clearStyle(0, codeArea.getLength());
+        scheduler.submit(this, false, () -> {
+            for (Statement statement : StatementSplitter.split(text))
+                statementCache.evict(statement.text);
+        });
+        return true;
+    }
+
+    /**
+     * Keep track of the region that changed since the last highlighting pass,
+     * shifting the pending regions so they keep pointing to the same text
+     *
+     * @param change
+     */
+    private void markDirty(PlainTextChange change) {
+        generation++;
+        lastActive = System.nanoTime();
+        int position = change.getPosition();
+        int removedEnd = change.getRemovalEnd();
+        int insertedEnd = change.getInsertionEnd();
+
+        if (inFlightStart != -1) {
+            inFlightStart = shift(inFlightStart, position, removedEnd, insertedEnd);
+            inFlightEnd = shift(inFlightEnd, position, removedEnd, insertedEnd);
+        }
+
+        if (dirtyStart == -1) {
+            dirtyStart = position;
+            dirtyEnd = insertedEnd;
+        } else {
+            dirtyStart = Math.min(shift(dirtyStart, position, removedEnd, insertedEnd), position);
+            dirtyEnd = Math.max(shift(dirtyEnd, position, removedEnd, insertedEnd), insertedEnd);
+        }
+    }
+
+    /**
+     * Translate an offset of the document before a change to the document after it
+     */
+    private static int shift(int offset, int position, int removedEnd, int insertedEnd) {
+        if (offset <= position)
+            return offset;
+        if (offset >= removedEnd)
+            return offset + insertedEnd - removedEnd;
+        return insertedEnd;
+    }
+
+    /**
+     * Widen the dirty region to whole statements, copy only that text and lex
+     * it on the worker thread
+     */
+    private void highlightDirtyRegion() {
+        if (dirtyStart == -1 || codeArea.getLength() == 0) {
+            dirtyStart = dirtyEnd = -1;
+            return;
+        }
+
+        // a region still being lexed is covered by this pass too
+        if (inFlightStart != -1) {
+            dirtyStart = Math.min(dirtyStart, inFlightStart);
+            dirtyEnd = Math.max(dirtyEnd, inFlightEnd);
+        }
+
+        int paragraphs = codeArea.getParagraphs().size();
+        int firstParagraph = codeArea.offsetToPosition(Math.min(dirtyStart, codeArea.getLength()),
+                Bias.Backward).getMajor();
+        int lastParagraph = codeArea.offsetToPosition(Math.min(dirtyEnd, codeArea.getLength()),
+                Bias.Forward).getMajor();
+
+        // a statement starts after the closest paragraph that ends one
+        while (firstParagraph > 0 && !endsStatement(firstParagraph - 1))
+            firstParagraph--;
+        // and ends in the first paragraph that closes it
+        while (lastParagraph < paragraphs - 1 && !endsStatement(lastParagraph))
+            lastParagraph++;
+
+        int start = codeArea.getAbsolutePosition(firstParagraph, 0);
+        int end = codeArea.getAbsolutePosition(lastParagraph, codeArea.getParagraphLength(lastParagraph));
+        String text = codeArea.getText(start, end);
+        long requestGeneration = generation;
+        long request = ++lastRequest;
+
+        inFlightStart = start;
+        inFlightEnd = end;
+        dirtyStart = dirtyEnd = -1;
+
+        scheduler.submit(this, visible, () -> {
+            StyleSpans<Collection<String>> spans;
+            String error = "";
+            try {
+                spans = highlight(text);
+            } catch (Error e) {
+                // if the lexer returns an error, show it to the user
+                spans = null;
+                error = e.getMessage();
+            }
+            StyleSpans<Collection<String>> result = spans;
+            String message = error;
+            Platform.runLater(() -> applyHighlighting(request, requestGeneration, start, result, message));
+        });
+    }
+
+    /**
+     * Apply the spans computed by the worker. A newer request already covers
+     * the region of an older one, and if the document changed in the meantime
+     * the region is marked dirty again so the pending pass covers it
+     */
+    private void applyHighlighting(long request, long requestGeneration, int start,
+            StyleSpans<Collection<String>> spans, String error) {
+        if (request != lastRequest)
+            return;
+        if (requestGeneration != generation) {
+            dirtyStart = dirtyStart == -1 ? inFlightStart : Math.min(dirtyStart, inFlightStart);
+            dirtyEnd = Math.max(dirtyEnd, inFlightEnd);
+            inFlightStart = inFlightEnd = -1;
+            return;
+        }
+        inFlightStart = inFlightEnd = -1;
+
+        feedback.accept(error);
+        if (spans != null)
+            codeArea.setStyleSpans(start, spans);
+    }
+
+    /**
+     * Check if the paragraph closes a statement
+     */
+    private boolean endsStatement(int paragraph) {
+        return codeArea.getParagraph(paragraph).getText().stripTrailing().endsWith(";");
+    }
+
+    /**
+     * Compute the highlighting of a region statement by statement, the tokens
+     * come from the statement cache so the statements that did not change
+     * are not lexed again, and a statement that is run reuses them
+     *
+     * @param text
+     * @return
+     */
+    private StyleSpans<Collection<String>> highlight(String text) {
+        StyleSpansBuilder<Collection<String>> spansBuilder = new StyleSpansBuilder<>();
+        int lastPos = 0;
+        for (Statement statement : StatementSplitter.split(text)) {
+            if (statement.offset > lastPos)
+                spansBuilder.add(Collections.emptyList(), statement.offset - lastPos);
+            addSpans(spansBuilder, statementCache.tokens(statement.text), statement.text.length());
+            lastPos = statement.offset + statement.text.length();
+        }
+        spansBuilder.add(Collections.emptyList(), Math.max(text.length() - lastPos, 0));
+        return spansBuilder.create();
+    }
+
+    /**
+     * Compute the highlighting for a piece of text, the spans cover the whole
+     * text so they can be applied at any offset of the document
+     *
+     * @param text
+     * @return
+     */
+    public static StyleSpans<Collection<String>> computeHighlighting(String text) {
+        return computeHighlighting(new Lexer(text).scanTokens(), text.length());
+    }
+
+    /**
+     * Compute the highlighting for already scanned tokens
+     *
+     * @param tokens
+     * @param length length of the text the tokens come from
+     * @return
+     */
+    public static StyleSpans<Collection<String>> computeHighlighting(List<Token> tokens, int length) {
+        StyleSpansBuilder<Collection<String>> spansBuilder = new StyleSpansBuilder<>();
+        addSpans(spansBuilder, tokens, length);
+        return spansBuilder.create();
+    }
+
+    /**
+     * Add the spans of the tokens to a builder, they cover length chars
+     */
+    private static void addSpans(StyleSpansBuilder<Collection<String>> spansBuilder, List<Token> tokens,
+            int length) {
+        int lastPos = 0;
+
+        for (Token token : tokens) {
+            if (token.type == TokenType.EOF)
+                break;
+
+            if (token.start > lastPos) {
+                spansBuilder.add(Collections.emptyList(), token.start - lastPos);
+            }
+
+            spansBuilder.add(Collections.singleton(styleOf(token.type)), token.end - token.start);
+            lastPos = token.end;
+        }
+
+        // the rest of the text (spaces, comments) has no style
+        spansBuilder.add(Collections.emptyList(), Math.max(length - lastPos, 0));
+    }
+
+    /**
+     * CSS class of a token type, see highlight.css
+     *
+     * @param type
+     * @return
+     */
+    public static String styleOf(TokenType type) {
+        if (type == null)
+            return "default";
+        return switch (type) {
+            case NUMBER_DATA_TYPE, BOOLEAN_DATA_TYPE, DATE_DATA_TYPE, STRING_DATA_TYPE -> "data-type";
+            case CREATE, DROP, USE -> "ddl";
+            case SELECT, INSERT, UPDATE, DELETE -> "dml";
+            case WHERE, FROM, ORDER, BY, LIMIT, VALUES, INTO, AND, OR, NOT, NULL, TRUE, FALSE, PRIMARY, KEY,
+                    DATABASE, TABLE, ASC, DESC, SET, UNIQUE, AS, GROUP, IS, PIPE_PIPE -> "keyword";
+            case NUMBER, STRING, IDENTIFIER -> "literal";
+            case LEFT_PAREN, RIGHT_PAREN, COMMA, MINUS, PLUS, SLASH, STAR, SEMICOLON, MOD, DIV, UCASE, LCASE,
+                    CAPITALIZE, FLOOR, ROUND, RAND, COUNT, DISTINCT, MIN, MAX, SUM, AVG, CEIL -> "operator";
+            case BANG_EQUAL, BANG, EQUAL_EQUAL, EQUAL, PORCENTAJE, LESS_EQUAL, LESS, GREATER_EQUAL, GREATER -> "operator";
+            case SHOW, TABLES -> "keyword";
+            default -> "default";
+        };
+    }
+}
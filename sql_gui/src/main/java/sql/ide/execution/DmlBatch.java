@@ -0,0 +1,273 @@
+package sql.ide.execution;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+//* Import everything related to database manager
+import edu.upvictoria.fpoo.*;
+import sql.ide.profiling.Phase;
+import sql.ide.profiling.Profiler;
+import sql.ide.query.DmlStatement;
+import sql.ide.query.Evaluator;
+import sql.ide.query.Expr;
+import sql.ide.query.ExprCompiler;
+import sql.ide.storage.IndexManager;
+import sql.ide.storage.RowChanges;
+import sql.ide.storage.TableFiles;
+import sql.ide.storage.TableIndex;
+import sql.ide.storage.WriteAheadLog;
+
+/**
+ * Consecutive INSERT, UPDATE and DELETE statements against the same table:
+ * the table is loaded once, every statement is applied to the copy in memory
+ * and the changes are written once when the StatementRunner closes the batch.
+ *
+ * With a WriteAheadLog the changed rows are appended to the log and the
+ * table is only loaded when an UPDATE or DELETE needs its rows; without it
+ * the whole table is written back to its file, and the rows the statements
+ * changed update the indexes of the table.
+ *
+ * Every statement is applied whole or not at all, so when one fails the
+ * statements before it can still be written, like the Interpreter would have
+ * left the table. Only the WHERE clauses that select the same rows in the
+ * Evaluator and in the Interpreter are batched, see accepts().
+ */
+class DmlBatch {
+    // statements applied before the table is written anyway
+    static final int MAX_STATEMENTS = Integer.getInteger("sqlide.dml.batchSize", 10_000);
+
+    final Path file;
+    // null to write the whole table
+    private final WriteAheadLog log;
+    private final Supplier<Table> loader;
+    private Table table;
+    private final List<String> columnNames;
+    private final Evaluator evaluator;
+    // INSERT values are evaluated without a row, like the Interpreter does
+    private final Evaluator valueEvaluator = new Evaluator(Collections.emptyList());
+    private int statements = 0;
+    // without a log, the changed rows for the indexes
+    private final RowChanges changes;
+    // the versions of the file before and after write() and where the rows
+    // landed
+    private TableIndex.Stamp replaced;
+    private TableIndex.Stamp written;
+    private long[] offsets;
+
+    /**
+     * @param file .csv or .col file of the table
+     * @param log where the changes are appended, null to write the table
+     * @param loader reads the rows of the table when they are needed, they
+     *        are modified in place
+     */
+    DmlBatch(Path file, WriteAheadLog log, Supplier<Table> loader) {
+        this.file = file;
+        this.log = log;
+        this.loader = loader;
+        this.columnNames = log != null ? TableFiles.columnNames(file) : table().getColumnNames();
+        this.evaluator = new Evaluator(columnNames);
+        this.changes = log == null ? new RowChanges(columnNames) : null;
+    }
+
+    private Table table() {
+        if (table == null) {
+            long begin = Profiler.begin();
+            table = loader.get();
+            Profiler.end(Phase.LOAD, begin);
+        }
+        return table;
+    }
+
+    /**
+     * The Interpreter adds an empty row before the WHERE of a statement over
+     * an empty table, and its WHERE differs from the Evaluator: >= compares
+     * like >, and a row whose WHERE is not TRUE or FALSE fails the
+     * statement. Those statements are left to it
+     *
+     * @param statement
+     * @return true if the statement can be applied to the batch
+     */
+    boolean accepts(DmlStatement statement) {
+        if (statement.kind == DmlStatement.Kind.INSERT)
+            return true;
+        return likeInterpreter(statement.where) && !table().getRows().isEmpty();
+    }
+
+    /**
+     * @return true for the comparisons other than >=, alone or joined by AND
+     *         and OR: they are TRUE, FALSE or fail in both
+     */
+    private static boolean likeInterpreter(Expr where) {
+        if (where instanceof Expr.Grouping)
+            return likeInterpreter(((Expr.Grouping) where).expression);
+        if (!(where instanceof Expr.Binary))
+            return false;
+        Expr.Binary binary = (Expr.Binary) where;
+        switch (binary.operator) {
+            case AND:
+            case OR:
+                return likeInterpreter(binary.left) && likeInterpreter(binary.right);
+            case EQUAL:
+            case EQUAL_EQUAL:
+            case BANG_EQUAL:
+            case GREATER:
+            case LESS:
+            case LESS_EQUAL:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Apply a statement to the rows in memory
+     *
+     * @param statement
+     * @return the text result, the same the Interpreter returns
+     * @throws Error if the statement fails, nothing of it is applied
+     */
+    String apply(DmlStatement statement) {
+        String result;
+        switch (statement.kind) {
+            case INSERT:
+                insert(statement);
+                result = "Row inserted";
+                break;
+            case UPDATE:
+                update(statement);
+                result = "Row updated";
+                break;
+            default:
+                delete(statement);
+                result = "Rows deleted";
+                break;
+        }
+        statements++;
+        return result;
+    }
+
+    private void insert(DmlStatement statement) {
+        HashMap<String, Object> row = new HashMap<>();
+        for (Map.Entry<String, Expr> value : statement.values.entrySet())
+            row.put(value.getKey(), valueEvaluator.evaluate(value.getValue(), row));
+        for (String columnName : row.keySet()) {
+            if (!columnNames.contains(columnName))
+                throw new Error("The column " + columnName + " does not exist in the table");
+        }
+        for (String columnName : columnNames)
+            row.putIfAbsent(columnName, null);
+        // an INSERT alone does not read the rows when there is a log
+        if (log != null)
+            log.insert(file, columnNames, row);
+        else
+            changes.insert(row);
+        if (log == null || table != null)
+            table().addRow(row);
+    }
+
+    /**
+     * The WHERE is evaluated over every row first and the assignments of a
+     * row see the values assigned before them, like in the Interpreter
+     */
+    private void update(DmlStatement statement) {
+        List<HashMap<String, Object>> rows = table().getRows();
+        List<Integer> indexes = matching(statement);
+        List<HashMap<String, Object>> updated = new ArrayList<>(indexes.size());
+        for (int index : indexes) {
+            HashMap<String, Object> row = new HashMap<>(rows.get(index));
+            for (Map.Entry<String, Expr> value : statement.values.entrySet())
+                row.put(value.getKey(), evaluator.evaluate(value.getValue(), row));
+            updated.add(row);
+        }
+        if (log != null)
+            log.update(file, columnNames, indexes, updated);
+        else
+            changes.update(indexes, updated);
+        for (int i = 0; i < indexes.size(); i++)
+            table.updateRow(updated.get(i), indexes.get(i));
+    }
+
+    private void delete(DmlStatement statement) {
+        List<Integer> indexes = matching(statement);
+        if (log != null)
+            log.delete(file, indexes);
+        else
+            changes.delete(indexes);
+        table.deleteRows(indexes);
+    }
+
+    /**
+     * @return indexes of the rows selected by the WHERE, in ascending order
+     */
+    private List<Integer> matching(DmlStatement statement) {
+        List<HashMap<String, Object>> rows = table().getRows();
+        long begin = Profiler.begin();
+        // compiled once for all the rows of the statement
+        ExprCompiler.CurrentRow current = new ExprCompiler.CurrentRow();
+        ExprCompiler.Test where = ExprCompiler.of(columnNames, current).predicate(statement.where);
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            current.row = rows.get(i);
+            if (where.test(i))
+                indexes.add(i);
+        }
+        Profiler.end(Phase.FILTER, begin);
+        Profiler.rowsScanned(rows.size());
+        return indexes;
+    }
+
+    /**
+     * Force the records to the log, or write the table to its file
+     *
+     * @throws RuntimeException if it can not be written, like Table.save
+     */
+    void write() {
+        long begin = Profiler.begin();
+        if (log != null) {
+            log.sync();
+        } else {
+            try {
+                replaced = TableIndex.Stamp.of(file);
+            } catch (IOException e) {
+                // the indexes are built again
+            }
+            offsets = TableFiles.save(table, file);
+            try {
+                written = TableIndex.Stamp.of(file);
+            } catch (IOException e) {
+                // the indexes are built again
+            }
+            Profiler.bytesWritten(file.toFile().length());
+        }
+        Profiler.end(Phase.SAVE, begin);
+    }
+
+    /**
+     * Bring the indexes of the table up to date after write() wrote it, from
+     * the rows the statements changed
+     *
+     * @param indexManager
+     * @throws IOException if an index can not be written
+     */
+    void updateIndexes(IndexManager indexManager) throws IOException {
+        if (log == null)
+            indexManager.tableWritten(file, replaced, written, changes, offsets);
+    }
+
+    /**
+     * @return number of statements applied
+     */
+    int size() {
+        return statements;
+    }
+
+    boolean isFull() {
+        return statements >= MAX_STATEMENTS;
+    }
+}
@@ -0,0 +1,393 @@
+package sql.ide.execution;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+
+//* Import everything related to database manager
+import edu.upvictoria.fpoo.*;
+import sql.ide.profiling.Phase;
+import sql.ide.profiling.Profiler;
+import sql.ide.profiling.StatementProfile;
+import sql.ide.query.SelectQuery;
+import sql.ide.storage.ResultWriter;
+import sql.ide.storage.TableCache;
+
+/**
+ * Runs scripts through the Lexer, Parser and Interpreter on a background
+ * thread.
+ *
+ * The script is split at its statement boundaries and every statement is
+ * lexed, parsed and interpreted on its own, so the run can be cancelled
+ * between statements, the progress is reported per statement and the result
+ * of each statement is published as soon as it is ready. A SELECT is also
+ * cancelled while it scans, between two chunks of rows.
+ *
+ * Every statement is run by a StatementRunner: the SELECT statements the
+ * query engine of the IDE understands are run by the SelectExecutor, their
+ * rows are handed over as a Table instead of the String the Interpreter
+ * builds; everything else goes to the Interpreter.
+ *
+ * Consecutive INSERT, UPDATE and DELETE statements against the same table
+ * are applied in memory and written once, when the batch ends or the script
+ * does, as records of the write-ahead log of the database.
+ *
+ * SELECT ... INTO OUTFILE and EXPORT TABLE report the rows they wrote in
+ * the message of the task, and are stopped by cancel() while they write.
+ *
+ * Every statement is profiled: the time of its phases, its rows and bytes
+ * are handed over with its results and sent to JFR and the JSON log.
+ *
+ * The lexed and parsed statements are kept in a StatementCache, running the
+ * same statements again skips the Lexer and the Parser, and the tables the
+ * SELECT statements read are kept in a TableCache.
+ */
+public class QueryExecutionService {
+    // time the shutdown waits for the tables to be written
+    private static final long CLOSE_SECONDS = 10;
+    // statements that load the classes of the whole pipeline, see warmUp()
+    private static final String WARM_UP_SELECT = "SELECT 1 + 1;";
+    private static final String WARM_UP_QUERY = "SELECT A, B FROM T WHERE A > 1 AND B = 'X' LIMIT 1;";
+
+    private final StatementRunner runner;
+
+    // the interpreter is not thread safe, so everything runs on one thread
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "sql-executor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Task<?> running;
+    // the run of the task on the executor, done only once call() returned
+    private Future<?> worker;
+    // the database of the interpreter, taken on the executor after every
+    // script, for the JavaFX thread
+    private volatile Path database;
+
+    public QueryExecutionService(Interpreter interpreter) {
+        this(interpreter, new StatementCache());
+    }
+
+    /**
+     * @param interpreter
+     * @param statementCache cache of the lexed and parsed statements
+     */
+    public QueryExecutionService(Interpreter interpreter, StatementCache statementCache) {
+        // the tables loaded by the SELECT statements are kept for the session
+        this.runner = new StatementRunner(interpreter, statementCache, new TableCache());
+        this.database = interpreter.getDataBase();
+    }
+
+    /**
+     * Execute a script in the background
+     *
+     * @param script text with one or more statements
+     * @param output receives the result of every statement on the JavaFX thread
+     * @param tables receives the rows returned by the SELECT statements on the JavaFX thread
+     * @return the task running the script, its value is the number of executed statements
+     */
+    public Task<Integer> execute(String script, Consumer<String> output, Consumer<Table> tables) {
+        return execute(script, output, tables, profile -> {
+        });
+    }
+
+    /**
+     * Execute a script in the background, profiling every statement
+     *
+     * @param script text with one or more statements
+     * @param output receives the result of every statement on the JavaFX thread
+     * @param tables receives the rows returned by the SELECT statements on the JavaFX thread
+     * @param profiles receives the profile of every statement on the JavaFX
+     *        thread, after its rows were rendered
+     * @return the task running the script, its value is the number of executed statements
+     */
+    public Task<Integer> execute(String script, Consumer<String> output, Consumer<Table> tables,
+            Consumer<StatementProfile> profiles) {
+        if (isRunning())
+            throw new IllegalStateException("A script is already running");
+
+        ResultPublisher publisher = new ResultPublisher(output);
+        Task<Integer> task = new Task<>() {
+            @Override
+            protected Integer call() throws Exception {
+                updateMessage("Splitting script...");
+                List<Statement> statements = StatementSplitter.split(script);
+                int executed = 0;
+                int line = 1;
+                try {
+                    for (int i = 0; i < statements.size(); i++) {
+                        if (isCancelled()) {
+                            publisher.publish("Execution cancelled after " + executed + " statement(s)\n");
+                            break;
+                        }
+
+                        Statement statement = statements.get(i);
+                        line = statement.line;
+                        String message = "Statement " + (i + 1) + " of " + statements.size();
+                        updateMessage(message);
+                        StatementProfile profile = Profiler.start(statement.line, statement.text);
+                        Throwable failure = null;
+                        try {
+                            executed += runner.run(statement, publisher::publish, table -> Platform.runLater(() -> {
+                                long begin = Profiler.begin();
+                                tables.accept(table);
+                                profile.add(Phase.RENDER, System.nanoTime() - begin);
+                            }), rows -> {
+                                if (isCancelled())
+                                    throw new Error("The export was cancelled");
+                                updateMessage(message + ", " + rows + " row(s) exported");
+                            }, this::isCancelled);
+                        } catch (Error | RuntimeException e) {
+                            failure = e;
+                            // a SELECT stopped in the middle of its scans
+                            if (isCancelled()) {
+                                publisher.publish("Execution cancelled in statement " + (i + 1) + ", after "
+                                        + executed + " statement(s)\n");
+                                break;
+                            }
+                            // stop the script on the first error, like the interpreter does
+                            publisher.publish("Error at line " + statement.line + ": " + e.getMessage() + "\n");
+                            throw new Exception("Error at line " + statement.line + ": " + e.getMessage(), e);
+                        } finally {
+                            publish(Profiler.finish(failure), profiles);
+                        }
+                        updateProgress(i + 1, statements.size());
+                    }
+                } finally {
+                    // a USE may have changed it
+                    database = runner.getInterpreter().getDataBase();
+                    flush(line, profiles);
+                }
+                return executed;
+            }
+        };
+
+        running = task;
+        worker = executor.submit(task);
+        return task;
+    }
+
+    /**
+     * Run a SELECT again in the background, writing its rows to a file as
+     * they are produced instead of showing them
+     *
+     * @param statement text of one SELECT, null for the last one whose rows were shown
+     * @param file file to write
+     * @param format
+     * @param output receives the result on the JavaFX thread
+     * @return the task writing the file, its value is the rows, bytes and
+     *         rows per second written
+     */
+    public Task<String> export(String statement, Path file, ResultWriter.Format format, Consumer<String> output) {
+        if (isRunning())
+            throw new IllegalStateException("A script is already running");
+
+        Task<String> task = new Task<>() {
+            @Override
+            protected String call() throws Exception {
+                SelectQuery query = statement != null ? runner.getStatementCache().lookup(statement).select()
+                        : runner.getLastSelect();
+                if (query == null)
+                    throw new Exception(statement != null ? "Only a SELECT the IDE runs can be exported."
+                            : "There are no results to export, run a SELECT first.");
+                query = query.into(file.toAbsolutePath().toString(), format);
+                updateMessage("Exporting...");
+                Profiler.start(1, query.toString());
+                Throwable failure = null;
+                try {
+                    String result = runner.export(query, rows -> {
+                        if (isCancelled())
+                            throw new Error("The export was cancelled");
+                        updateMessage(rows + " row(s) exported");
+                    }, this::isCancelled);
+                    String text = "Excecuting: " + query + "\n" + result + "\n-----------------\n";
+                    Platform.runLater(() -> output.accept(text));
+                    return result;
+                } catch (Error | RuntimeException e) {
+                    failure = e;
+                    throw new Exception(e.getMessage(), e);
+                } finally {
+                    StatementProfile profile = Profiler.finish(failure);
+                    Platform.runLater(() -> Profiler.emit(profile));
+                }
+            }
+        };
+
+        running = task;
+        worker = executor.submit(task);
+        return task;
+    }
+
+    /**
+     * Write the INSERT, UPDATE and DELETE statements still in memory, profiled
+     * as one more statement when there were any
+     */
+    private void flush(int line, Consumer<StatementProfile> profiles) {
+        Profiler.start(line, "-- end of script");
+        Throwable failure = null;
+        int written = 0;
+        try {
+            written = runner.flush();
+        } catch (Error | RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            StatementProfile profile = Profiler.finish(failure);
+            if (written > 0 || failure != null)
+                publish(profile, profiles);
+        }
+    }
+
+    private static void publish(StatementProfile profile, Consumer<StatementProfile> profiles) {
+        // the rows of the statement are rendered before this runs
+        Platform.runLater(() -> {
+            Profiler.emit(profile);
+            profiles.accept(profile);
+        });
+    }
+
+    /**
+     * Cancel the running script: a SELECT or an export stops at its next
+     * chunk of rows, any other statement is finished first so no table is
+     * left half written. The task is cancelled at once, but isRunning() is
+     * true until the worker stops, see whenStopped()
+     */
+    public void cancel() {
+        if (running != null)
+            running.cancel(false);
+    }
+
+    /**
+     * @param action runs on the JavaFX thread once the worker is done with
+     *        the running script, or right away when there is none
+     */
+    public void whenStopped(Runnable action) {
+        executor.execute(() -> Platform.runLater(action));
+    }
+
+    public TableCache getTableCache() {
+        return runner.getTableCache();
+    }
+
+    public StatementCache getStatementCache() {
+        return runner.getStatementCache();
+    }
+
+    /**
+     * @return true while a script is running, a cancelled one included until
+     *         its current statement stops
+     */
+    public boolean isRunning() {
+        return worker != null && !worker.isDone();
+    }
+
+    /**
+     * Switch the interpreter to another database on the executor thread,
+     * after the running script, and open its write-ahead log, which recovers
+     * its tables after a crash
+     *
+     * @param folder database folder, null for none
+     * @param done receives the folder on the JavaFX thread once it is in use
+     */
+    public void useDatabase(Path folder, Consumer<Path> done) {
+        executor.execute(() -> {
+            runner.getInterpreter().setDataBase(folder);
+            database = folder;
+            try {
+                runner.attachLog();
+            } catch (Error | RuntimeException e) {
+                // reported again by the first statement
+                e.printStackTrace();
+            }
+            Platform.runLater(() -> done.accept(folder));
+        });
+    }
+
+    /**
+     * @return the database folder as of the end of the last script or
+     *         useDatabase(), without touching the interpreter
+     */
+    public Path getDatabase() {
+        return database;
+    }
+
+    /**
+     * Load the classes of the Lexer, the Parser, the Interpreter and the query
+     * engine on the executor thread, so the first script the user runs does
+     * not pay for them
+     *
+     * @param done called on the JavaFX thread when they are loaded
+     */
+    public void warmUp(Runnable done) {
+        executor.execute(() -> {
+            try {
+                StatementCache.Entry entry = runner.getStatementCache().lookup(WARM_UP_QUERY);
+                entry.select();
+                entry.clauses();
+                runner.run(new Statement(WARM_UP_SELECT, 0, 1), text -> {
+                }, table -> {
+                });
+            } catch (Error | RuntimeException e) {
+                // without a database the SELECT fails, only the classes matter
+            } finally {
+                Platform.runLater(done);
+            }
+        });
+    }
+
+    /**
+     * Stop the executor thread, the changes still in the write-ahead log are
+     * written to the tables first
+     */
+    public void shutdown() {
+        cancel();
+        executor.execute(runner::close);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(CLOSE_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Collect the results produced by the worker and hand them to the JavaFX
+     * thread in batches, so a script with thousands of statements does not
+     * flood the event queue with one runLater per statement
+     */
+    private static class ResultPublisher {
+        private final Consumer<String> output;
+        private final StringBuilder pending = new StringBuilder();
+        private boolean scheduled = false;
+
+        ResultPublisher(Consumer<String> output) {
+            this.output = output;
+        }
+
+        synchronized void publish(String text) {
+            pending.append(text);
+            if (!scheduled) {
+                scheduled = true;
+                Platform.runLater(this::flush);
+            }
+        }
+
+        private void flush() {
+            String text;
+            synchronized (this) {
+                text = pending.toString();
+                pending.setLength(0);
+                scheduled = false;
+            }
+            output.accept(text);
+        }
+    }
+}
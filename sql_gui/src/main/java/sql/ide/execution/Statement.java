@@ -0,0 +1,30 @@
+package sql.ide.execution;
+
+/**
+ * One statement of a script, as found by the StatementSplitter
+ */
+public class Statement {
+    /**
+     * Text of the statement, including the ; that closes it
+     */
+    public final String text;
+    /**
+     * Offset of the statement inside the script
+     */
+    public final int offset;
+    /**
+     * Line of the script where the statement starts (1 based)
+     */
+    public final int line;
+
+    public Statement(String text, int offset, int line) {
+        this.text = text;
+        this.offset = offset;
+        this.line = line;
+    }
+
+    @Override
+    public String toString() {
+        return "[line " + line + "] " + text;
+    }
+}
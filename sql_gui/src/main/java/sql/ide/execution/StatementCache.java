@@ -0,0 +1,298 @@
+package sql.ide.execution;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//* Import everything related to database manager
+import edu.upvictoria.fpoo.*;
+import sql.ide.profiling.Phase;
+import sql.ide.profiling.Profiler;
+import sql.ide.query.DmlStatement;
+import sql.ide.query.IndexStatement;
+import sql.ide.query.QueryParser;
+import sql.ide.query.SelectQuery;
+import sql.ide.query.StorageStatement;
+
+/**
+ * Bounded LRU cache of lexed and parsed statements.
+ *
+ * The statements are looked up by their normalized text (comments removed
+ * and spaces collapsed outside the strings): running the same text again
+ * skips the Lexer and the Parser, and the same statement indented
+ * differently is only scanned again, so its errors report its own lines.
+ * The highlighter and the QueryExecutionService share one cache: the tokens
+ * scanned to highlight a statement are the ones executed when it runs.
+ */
+public class StatementCache {
+    // maximum number of statements kept
+    static final int CAPACITY = Integer.getInteger("sqlide.statementCache.size", 256);
+
+    /**
+     * A lexed statement, parsed lazily
+     */
+    public static class Entry {
+        /**
+         * Exact text the tokens were scanned from
+         */
+        public final String text;
+        public final List<Token> tokens;
+
+        // the statements only change when the text does, so once parsed
+        // they are kept; nothing is stored when the parser fails
+        private boolean selectParsed = false;
+        private SelectQuery select;
+        private boolean indexParsed = false;
+        private IndexStatement index;
+        private boolean storageParsed = false;
+        private StorageStatement storage;
+        private boolean dmlParsed = false;
+        private DmlStatement dml;
+        private List<Clause> clauses;
+
+        Entry(String text, List<Token> tokens) {
+            this.text = text;
+            this.tokens = tokens;
+        }
+
+        /**
+         * @return the query for the engine of the IDE, null if it can not run it
+         */
+        public synchronized SelectQuery select() {
+            if (!selectParsed) {
+                long begin = Profiler.begin();
+                select = QueryParser.parseSelect(tokens);
+                selectParsed = true;
+                Profiler.end(Phase.PARSE, begin);
+            }
+            return select;
+        }
+
+        /**
+         * @return the statement if it is CREATE INDEX or DROP INDEX, null if not
+         * @throws Error if it has a syntax error, the failure is not cached
+         */
+        public synchronized IndexStatement index() {
+            if (!indexParsed) {
+                long begin = Profiler.begin();
+                index = IndexStatement.parse(tokens);
+                indexParsed = true;
+                Profiler.end(Phase.PARSE, begin);
+            }
+            return index;
+        }
+
+        /**
+         * @return the statement if it is CONVERT, IMPORT or EXPORT, null if not
+         * @throws Error if it has a syntax error, the failure is not cached
+         */
+        public synchronized StorageStatement storage() {
+            if (!storageParsed) {
+                long begin = Profiler.begin();
+                storage = StorageStatement.parse(tokens);
+                storageParsed = true;
+                Profiler.end(Phase.PARSE, begin);
+            }
+            return storage;
+        }
+
+        /**
+         * @return the statement if it is an INSERT, UPDATE or DELETE the IDE
+         *         can apply by itself, null if not
+         */
+        public synchronized DmlStatement dml() {
+            if (!dmlParsed) {
+                long begin = Profiler.begin();
+                dml = QueryParser.parseDml(tokens);
+                dmlParsed = true;
+                Profiler.end(Phase.PARSE, begin);
+            }
+            return dml;
+        }
+
+        /**
+         * @return the clauses parsed by the database manager
+         */
+        public synchronized List<Clause> clauses() {
+            if (clauses == null) {
+                long begin = Profiler.begin();
+                clauses = new Parser(tokens).parse();
+                Profiler.end(Phase.PARSE, begin);
+            }
+            return clauses;
+        }
+
+        /**
+         * Keep what the IDE already parsed of an equivalent statement; the
+         * clauses of the database manager are not kept, the Interpreter
+         * reports its errors at the lines of their tokens
+         */
+        private synchronized void copyParsed(Entry other) {
+            synchronized (other) {
+                selectParsed = other.selectParsed;
+                select = other.select;
+                indexParsed = other.indexParsed;
+                index = other.index;
+                storageParsed = other.storageParsed;
+                storage = other.storage;
+                dmlParsed = other.dmlParsed;
+                dml = other.dml;
+            }
+        }
+    }
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > capacity;
+        }
+    };
+    private final int capacity;
+    private long hits = 0;
+    private long misses = 0;
+
+    public StatementCache() {
+        this(CAPACITY);
+    }
+
+    /**
+     * @param capacity maximum number of statements kept
+     */
+    public StatementCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Get a statement to execute. Only an entry scanned from the exact same
+     * text is reused: the lines of its tokens are the ones the errors report.
+     * An equivalent statement formatted differently is scanned again and
+     * keeps what the IDE already parsed of it
+     *
+     * @param text text of one statement
+     * @return the cached entry, or a new one if the text was not cached
+     * @throws Error if the Lexer fails, the failure is not cached
+     */
+    public Entry lookup(String text) {
+        String key = normalize(text);
+        Entry previous;
+        synchronized (this) {
+            previous = entries.get(key);
+            if (previous != null && previous.text.equals(text)) {
+                hits++;
+                return previous;
+            }
+            misses++;
+        }
+        long begin = Profiler.begin();
+        Entry entry = new Entry(text, new Lexer(text).scanTokens());
+        Profiler.end(Phase.LEX, begin);
+        if (previous != null)
+            entry.copyParsed(previous);
+        synchronized (this) {
+            entries.put(key, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Get the tokens of a statement to highlight it
+     *
+     * @param text text of one statement
+     * @return tokens with offsets relative to the text
+     * @throws Error if the Lexer fails
+     */
+    public List<Token> tokens(String text) {
+        return lookup(text).tokens;
+    }
+
+    /**
+     * Forget a statement, its tokens are scanned again the next time
+     *
+     * @param text text of one statement
+     */
+    public void evict(String text) {
+        String key = normalize(text);
+        synchronized (this) {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Remove the comments and collapse the spaces outside the strings,
+     * following the same rules as the Lexer
+     *
+     * @param text
+     * @return
+     */
+    static String normalize(String text) {
+        StringBuilder builder = new StringBuilder(text.length());
+        boolean pendingSpace = false;
+        int i = 0;
+        int length = text.length();
+        while (i < length) {
+            char c = text.charAt(i);
+            if (c == '-' && i + 1 < length && text.charAt(i + 1) == '-') {
+                while (i < length && text.charAt(i) != '\n')
+                    i++;
+                pendingSpace = true;
+                continue;
+            }
+            if (Character.isWhitespace(c)) {
+                pendingSpace = true;
+                i++;
+                continue;
+            }
+            if (pendingSpace && builder.length() > 0)
+                builder.append(' ');
+            pendingSpace = false;
+
+            if (c == '\'' || c == '"') {
+                int end = i + 1;
+                while (end < length && text.charAt(end) != '\'' && text.charAt(end) != '"')
+                    end++;
+                end = Math.min(end + 1, length);
+                builder.append(text, i, end);
+                i = end;
+                continue;
+            }
+            builder.append(c);
+            i++;
+        }
+        return builder.toString();
+    }
+
+    /****************************************************************/
+    /* Statistics */
+    /****************************************************************/
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return hits over lookups, 0 when nothing was looked up
+     */
+    public synchronized double hitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        hits = misses = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Statement cache: " + entries.size() + " statement(s), " + hits + " hit(s), " + misses
+                + " miss(es), " + Math.round(hitRate() * 100) + "% hit rate";
+    }
+}
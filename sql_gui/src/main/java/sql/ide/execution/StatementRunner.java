@@ -0,0 +1,608 @@
+package sql.ide.execution;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+//* Import everything related to database manager
+import edu.upvictoria.fpoo.*;
+import sql.ide.profiling.Phase;
+import sql.ide.profiling.Profiler;
+import sql.ide.query.DmlStatement;
+import sql.ide.query.IndexStatement;
+import sql.ide.query.SelectExecutor;
+import sql.ide.query.SelectQuery;
+import sql.ide.query.StorageStatement;
+import sql.ide.storage.ColumnarTable;
+import sql.ide.storage.IndexManager;
+import sql.ide.storage.ResultWriter;
+import sql.ide.storage.TableCache;
+import sql.ide.storage.TableFiles;
+import sql.ide.storage.TableIndex;
+import sql.ide.storage.WriteAheadLog;
+
+/**
+ * Runs one statement on the calling thread: the SELECT statements the query
+ * engine of the IDE understands go to the SelectExecutor, everything else to
+ * the Interpreter. It does not depend on JavaFX, the QueryExecutionService
+ * uses it from its worker thread.
+ *
+ * Consecutive INSERT, UPDATE and DELETE statements against the same table
+ * are batched: the table is loaded once and written when the batch closes,
+ * on a statement against another table or of another kind, on COMMIT, on an
+ * error, or when flush() is called at the end of the script.
+ *
+ * The batches are written to the WriteAheadLog of the database, forced to
+ * the disk once per batch; the SELECT statements read the tables merged with
+ * the log, and everything else runs after a checkpoint so it sees the .csv
+ * files up to date. -Dsqlide.wal=false writes the tables directly instead.
+ *
+ * A table may be stored as a .col file instead (see ColumnarFile), by the
+ * CONVERT and IMPORT statements the runner handles itself. The SELECT,
+ * INSERT, UPDATE and DELETE statements the IDE runs work on both formats;
+ * the ones that need the Interpreter fail on a .col table, except DROP TABLE.
+ *
+ * SELECT ... INTO OUTFILE and EXPORT TABLE write their rows to a file as
+ * CSV or JSON Lines while the query runs (see ResultWriter), the result is
+ * never built in memory nor shown.
+ */
+public class StatementRunner {
+    static final boolean WAL = Boolean.parseBoolean(System.getProperty("sqlide.wal", "true"));
+
+    private final Interpreter interpreter;
+    private final StatementCache statementCache;
+    private final TableCache tableCache;
+    private final IndexManager indexManager = new IndexManager();
+    private final SelectExecutor selectExecutor;
+    // INSERT, UPDATE and DELETE applied in memory and not written yet
+    private DmlBatch batch;
+    // log of the database in use, null without database or log
+    private WriteAheadLog log;
+    // the last SELECT whose rows were returned, what Export Results writes
+    private volatile SelectQuery lastSelect;
+
+    public StatementRunner(Interpreter interpreter) {
+        this(interpreter, new StatementCache(), new TableCache());
+    }
+
+    /**
+     * @param interpreter
+     * @param statementCache cache of the lexed and parsed statements
+     * @param tableCache cache of the tables read by the SELECT statements
+     */
+    public StatementRunner(Interpreter interpreter, StatementCache statementCache, TableCache tableCache) {
+        this.interpreter = interpreter;
+        this.statementCache = statementCache;
+        this.tableCache = tableCache;
+        this.selectExecutor = new SelectExecutor(tableCache, indexManager);
+    }
+
+    /**
+     * Run a statement
+     *
+     * @param statement
+     * @param output receives the text result of every clause
+     * @param tables receives the rows returned by the SELECT statements
+     * @return number of executed clauses
+     * @throws Error if the statement fails, like the Interpreter does
+     */
+    public int run(Statement statement, Consumer<String> output, Consumer<Table> tables) {
+        return run(statement, output, tables, rows -> {
+        }, () -> false);
+    }
+
+    /**
+     * Run a statement
+     *
+     * @param statement
+     * @param output receives the text result of every clause
+     * @param tables receives the rows returned by the SELECT statements
+     * @param exported receives the rows written so far by an export, it may
+     *        throw to stop it
+     * @param cancelled stops the scans of a SELECT or an export
+     * @return number of executed clauses
+     * @throws Error if the statement fails or was cancelled, like the
+     *         Interpreter does
+     */
+    public int run(Statement statement, Consumer<String> output, Consumer<Table> tables, LongConsumer exported,
+            BooleanSupplier cancelled) {
+        // statements that were run or highlighted before are not lexed again
+        StatementCache.Entry entry = statementCache.lookup(statement.text);
+        // a USE in the previous statement may have changed the database
+        attachLog();
+        DmlStatement dml = entry.dml();
+        if (dml != null && batch(entry, dml, output))
+            return 1;
+        // everything else sees the tables as the batch left them
+        int written = flush();
+        if (isCommit(entry.tokens)) {
+            output.accept("Excecuting: COMMIT\n" + written + " statement(s) written\n-----------------\n");
+            return 1;
+        }
+
+        SelectQuery query = entry.select();
+        if (query != null && query.outfile != null) {
+            output.accept("Excecuting: " + query + "\n" + export(query, exported, cancelled) + "\n-----------------\n");
+            return 1;
+        }
+        if (query != null) {
+            lastSelect = query;
+            Table table = selectExecutor.execute(query, interpreter.getDataBase(), cancelled);
+            Profiler.rowsReturned(table.getRows().size());
+            output.accept("Excecuting: " + query + "\n" + table.getRows().size()
+                    + " row(s) returned\n-----------------\n");
+            tables.accept(table);
+            return 1;
+        }
+
+        // the Interpreter and the indexes read the .csv files
+        checkpoint();
+
+        IndexStatement index = entry.index();
+        if (index != null) {
+            output.accept("Excecuting: " + index + "\n" + runIndexStatement(index) + "\n-----------------\n");
+            return 1;
+        }
+
+        StorageStatement storage = entry.storage();
+        if (storage != null) {
+            output.accept("Excecuting: " + storage + "\n" + runStorageStatement(storage, exported, cancelled)
+                    + "\n-----------------\n");
+            return 1;
+        }
+
+        // the database manager only reads .csv files
+        Path columnar = columnarTable(entry.tokens);
+        if (columnar != null) {
+            if (isDropTable(entry.tokens)) {
+                output.accept("Excecuting: DROP TABLE " + TableFiles.tableName(columnar) + "\n"
+                        + dropColumnar(columnar) + "\n-----------------\n");
+                return 1;
+            }
+            String name = TableFiles.tableName(columnar);
+            throw new Error("[" + name + "] The table is stored as COLUMNAR, run CONVERT TABLE " + name
+                    + " TO CSV; first");
+        }
+
+        int executed = 0;
+        try {
+            for (Clause clause : entry.clauses()) {
+                long begin = Profiler.begin();
+                interpreter.interpret(clause);
+                Profiler.end(Phase.INTERPRET, begin);
+                output.accept("Excecuting: " + clause.accept(new AstPrinter()) + "\n"
+                        + interpreter.getResult() + "\n-----------------\n");
+                executed++;
+            }
+        } finally {
+            tableWritten(entry.tokens);
+        }
+        return executed;
+    }
+
+    /**
+     * Apply an INSERT, UPDATE or DELETE to the batch of its table, the batch
+     * of another table is written first
+     *
+     * @return false if the statement must be run by the Interpreter
+     */
+    private boolean batch(StatementCache.Entry entry, DmlStatement statement, Consumer<String> output) {
+        Path folder = interpreter.getDataBase();
+        if (folder == null)
+            return false;
+        Path file = TableFiles.resolve(folder, statement.table);
+        if (batch != null && !batch.file.equals(file))
+            flush();
+        if (batch == null) {
+            if (!Files.exists(file))
+                return false;
+            WriteAheadLog log = this.log;
+            batch = new DmlBatch(file, log,
+                    log != null ? () -> log.read(file, tableCache) : () -> loadForWrite(file));
+        }
+        if (!batch.accepts(statement))
+            return false;
+
+        // the clause of the database manager reports the syntax errors and
+        // prints the statement like it always did
+        List<Clause> clauses;
+        String result;
+        try {
+            clauses = entry.clauses();
+            result = batch.apply(statement);
+        } catch (Error | RuntimeException e) {
+            // the statements before the failing one are kept
+            flush();
+            throw e;
+        }
+        output.accept("Excecuting: " + clauses.get(0).accept(new AstPrinter()) + "\n" + result
+                + "\n-----------------\n");
+        if (batch.isFull())
+            flush();
+        return true;
+    }
+
+    /**
+     * A writable copy of a table, from the TableCache if it has it
+     */
+    private Table loadForWrite(Path file) {
+        ColumnarTable cached = tableCache.peek(file);
+        return cached != null ? cached.toTable() : TableFiles.load(file);
+    }
+
+    /**
+     * Write the pending INSERT, UPDATE and DELETE statements to their table.
+     * Must be called when the script ends, the statements are not written
+     * otherwise
+     *
+     * @return number of statements written
+     * @throws RuntimeException if the table can not be written, like Table.save
+     */
+    public int flush() {
+        if (batch == null)
+            return 0;
+        DmlBatch written = batch;
+        batch = null;
+        if (written.size() == 0)
+            return 0;
+        try {
+            written.write();
+        } finally {
+            // with a log the file does not change until the checkpoint
+            if (log == null) {
+                tableCache.invalidate(written.file);
+                try {
+                    written.updateIndexes(indexManager);
+                } catch (IOException | Error e) {
+                    // the index is stale, it is built again the next time it is used
+                    e.printStackTrace();
+                }
+            }
+        }
+        return written.size();
+    }
+
+    /**
+     * Open the log of the database in use, recovering its tables after a
+     * crash; the log of the previous database is checkpointed and closed
+     *
+     * @return the log, null without database or with the log disabled
+     * @throws Error if the log can not be recovered
+     */
+    public WriteAheadLog attachLog() {
+        Path folder = interpreter.getDataBase();
+        if (log != null && log.getFolder().equals(folder))
+            return log;
+        // nothing to close, the batch is written when it moves to another table
+        if (log == null && (!WAL || folder == null))
+            return null;
+        flush();
+        closeLog();
+        if (folder == null)
+            return null;
+        try {
+            log = WriteAheadLog.open(folder);
+        } catch (IOException | RuntimeException e) {
+            throw new Error("[" + folder.getFileName() + "] The write-ahead log could not be recovered: "
+                    + e.getMessage());
+        }
+        selectExecutor.setLog(log);
+        log.setListener(indexManager::tableWritten);
+        return log;
+    }
+
+    /**
+     * Write the changes of the log into the tables
+     */
+    private void checkpoint() {
+        if (log == null)
+            return;
+        try {
+            long begin = Profiler.begin();
+            log.checkpoint();
+            Profiler.end(Phase.SAVE, begin);
+        } catch (IOException e) {
+            throw new Error("The write-ahead log could not be written to the tables: " + e.getMessage());
+        }
+    }
+
+    private void closeLog() {
+        if (log == null)
+            return;
+        WriteAheadLog closed = log;
+        log = null;
+        selectExecutor.setLog(null);
+        try {
+            closed.close();
+        } catch (IOException e) {
+            // the records stay in the log, they are recovered when it is opened
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Write the pending statements and close the log, the runner opens it
+     * again on the next statement
+     */
+    public void close() {
+        try {
+            flush();
+        } finally {
+            closeLog();
+        }
+    }
+
+    /**
+     * COMMIT; closes the batch explicitly
+     */
+    private static boolean isCommit(List<Token> tokens) {
+        return tokens.size() == 3 && tokens.get(0).type == TokenType.IDENTIFIER
+                && tokens.get(0).lexeme.equals("COMMIT") && tokens.get(1).type == TokenType.SEMICOLON;
+    }
+
+    /**
+     * CREATE INDEX or DROP INDEX
+     *
+     * @return the text result
+     */
+    private String runIndexStatement(IndexStatement statement) {
+        Path folder = interpreter.getDataBase();
+        if (folder == null)
+            throw new Error("You must USE a database first");
+        Path table = TableFiles.resolve(folder, statement.table);
+        if (!Files.exists(table))
+            throw new Error("[" + statement.table + "] The table does not exist");
+        if (TableFiles.isColumnar(table))
+            throw new Error("[" + statement.table + "] Only the .csv tables have indexes, the zone maps of the "
+                    + "COLUMNAR ones take their place");
+        try {
+            if (!statement.create) {
+                indexManager.drop(table, statement.name);
+                return "Index " + statement.name + " dropped";
+            }
+            TableIndex index = indexManager.create(table, statement.name, statement.column, statement.kind);
+            return "Index " + statement.name + " created, " + index.rows() + " row(s) indexed";
+        } catch (IOException e) {
+            throw new Error("[" + statement.name + "] The index could not be written: " + e.getMessage());
+        }
+    }
+
+    /**
+     * CONVERT, IMPORT or EXPORT
+     *
+     * @return the text result
+     */
+    private String runStorageStatement(StorageStatement statement, LongConsumer exported,
+            BooleanSupplier cancelled) {
+        Path folder = interpreter.getDataBase();
+        if (folder == null)
+            throw new Error("You must USE a database first");
+        String format = statement.columnar ? "COLUMNAR" : "CSV";
+        try {
+            switch (statement.kind) {
+                case CONVERT_DATABASE: {
+                    int converted = 0;
+                    for (Path table : tables(folder)) {
+                        if (convert(table, statement.columnar))
+                            converted++;
+                    }
+                    return converted + " table(s) converted to " + format;
+                }
+                case CONVERT_TABLE: {
+                    Path table = existingTable(folder, statement.table);
+                    if (!convert(table, statement.columnar))
+                        return "Table " + statement.table + " is already " + format;
+                    return "Table " + statement.table + " converted to " + format;
+                }
+                case IMPORT: {
+                    if (Files.exists(TableFiles.resolve(folder, statement.table)))
+                        throw new Error("[" + statement.table + "] The table already exists");
+                    Path source = folder.resolve(statement.file);
+                    if (!Files.isRegularFile(source))
+                        throw new Error("[" + statement.file + "] The file does not exist");
+                    ColumnarTable rows = ColumnarTable.load(source);
+                    Profiler.bytesRead(Files.size(source));
+                    Path table = folder.resolve(statement.table + (statement.columnar ? TableFiles.COLUMNAR
+                            : TableFiles.CSV));
+                    TableFiles.write(rows, table);
+                    tableCache.invalidate(table);
+                    return "Table " + statement.table + " imported as " + format + ", " + rows.size() + " row(s)";
+                }
+                default: {
+                    existingTable(folder, statement.table);
+                    SelectQuery all = new SelectQuery(false, List.of(), statement.table, null, List.of(), -1,
+                            statement.file, statement.exportFormat);
+                    return "Table " + statement.table + " exported to " + statement.file + ", "
+                            + export(all, exported, cancelled);
+                }
+            }
+        } catch (IOException e) {
+            throw new Error("[" + (statement.table != null ? statement.table : folder.getFileName())
+                    + "] The table could not be written: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Write the rows of a SELECT ... INTO OUTFILE to its file as they are
+     * produced, the file is replaced only once it is complete
+     *
+     * @param query query with an outfile
+     * @param exported receives the rows written so far, it may throw to stop
+     * @param cancelled stops the scans of the query
+     * @return the rows, bytes and rows per second written
+     * @throws Error if the query fails or the file can not be written
+     */
+    public String export(SelectQuery query, LongConsumer exported, BooleanSupplier cancelled) {
+        Path folder = interpreter.getDataBase();
+        if (folder == null)
+            throw new Error("You must USE a database first");
+        attachLog();
+        flush();
+        Path target = folder.resolve(query.outfile).toAbsolutePath().normalize();
+        // the tables are only written by the statements that change them
+        if (target.getParent().equals(folder.toAbsolutePath().normalize())
+                && (target.toString().endsWith(TableFiles.CSV) || TableFiles.isColumnar(target))
+                && Files.exists(target))
+            throw new Error("[" + query.outfile + "] The file is a table of the database");
+        ResultWriter.Format format = query.outfileFormat != null ? query.outfileFormat
+                : ResultWriter.Format.of(target);
+        try (ResultWriter writer = ResultWriter.open(target, format, exported)) {
+            selectExecutor.export(query, folder, writer, cancelled);
+            writer.commit();
+            Profiler.rowsReturned(writer.rows());
+            return writer.toString();
+        } catch (IOException e) {
+            throw new Error("[" + query.outfile + "] The file could not be written: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the last SELECT whose rows were returned, null before the first one
+     */
+    public SelectQuery getLastSelect() {
+        return lastSelect;
+    }
+
+    private static Path existingTable(Path folder, String name) {
+        Path table = TableFiles.resolve(folder, name);
+        if (!Files.exists(table))
+            throw new Error("[" + name + "] The table does not exist");
+        return table;
+    }
+
+    /**
+     * @return the file of every table of the folder
+     */
+    private static List<Path> tables(Path folder) throws IOException {
+        Set<String> names = new TreeSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder,
+                "*{" + TableFiles.CSV + "," + TableFiles.COLUMNAR + "}")) {
+            for (Path file : files)
+                names.add(TableFiles.tableName(file));
+        }
+        List<Path> tables = new ArrayList<>();
+        for (String name : names)
+            tables.add(TableFiles.resolve(folder, name));
+        return tables;
+    }
+
+    /**
+     * Store a table in a format, a .csv loses its indexes
+     *
+     * @return false if it already was in that format
+     */
+    private boolean convert(Path table, boolean columnar) throws IOException {
+        if (TableFiles.isColumnar(table) == columnar)
+            return false;
+        Path converted = TableFiles.convert(table);
+        tableCache.invalidate(table);
+        tableCache.invalidate(converted);
+        indexManager.tableDropped(table);
+        return true;
+    }
+
+    /**
+     * @return the columnar table one of the identifiers of the statement
+     *         names, null if none does
+     */
+    private Path columnarTable(List<Token> tokens) {
+        Path folder = interpreter.getDataBase();
+        if (folder == null)
+            return null;
+        for (Token token : tokens) {
+            if (token.type != TokenType.IDENTIFIER)
+                continue;
+            Path table = TableFiles.resolve(folder, token.lexeme);
+            if (TableFiles.isColumnar(table))
+                return table;
+        }
+        return null;
+    }
+
+    /**
+     * DROP TABLE name;
+     */
+    private static boolean isDropTable(List<Token> tokens) {
+        return tokens.size() == 5 && tokens.get(0).type == TokenType.DROP && tokens.get(1).type == TokenType.TABLE
+                && tokens.get(2).type == TokenType.IDENTIFIER && tokens.get(3).type == TokenType.SEMICOLON;
+    }
+
+    private String dropColumnar(Path table) {
+        try {
+            Files.delete(table);
+        } catch (IOException e) {
+            throw new Error("[" + TableFiles.tableName(table) + "] The table could not be dropped: " + e.getMessage());
+        }
+        tableCache.invalidate(table);
+        return "Table " + TableFiles.tableName(table) + " dropped";
+    }
+
+    /**
+     * Forget the cached copy of the table a statement writes and build its
+     * indexes again, the rows the Interpreter changed are not known
+     *
+     * @param tokens tokens of the statement
+     */
+    private void tableWritten(List<Token> tokens) {
+        if (tokens.isEmpty() || interpreter.getDataBase() == null)
+            return;
+        switch (tokens.get(0).type) {
+            case INSERT, UPDATE, DELETE, DROP, CREATE:
+                // the table is the first identifier in all of them
+                for (Token token : tokens) {
+                    if (token.type == TokenType.IDENTIFIER) {
+                        Path table = interpreter.getDataBase().resolve(token.lexeme + ".csv");
+                        tableCache.invalidate(table);
+                        updateIndexes(tokens.get(0).type, table);
+                        return;
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void updateIndexes(TokenType statement, Path table) {
+        try {
+            if (statement == TokenType.DROP)
+                indexManager.tableDropped(table);
+            else
+                indexManager.tableWritten(table);
+        } catch (IOException | Error e) {
+            // the index is stale, it is built again the next time it is used
+            e.printStackTrace();
+        }
+    }
+
+    public Interpreter getInterpreter() {
+        return interpreter;
+    }
+
+    public StatementCache getStatementCache() {
+        return statementCache;
+    }
+
+    public TableCache getTableCache() {
+        return tableCache;
+    }
+
+    public IndexManager getIndexManager() {
+        return indexManager;
+    }
+
+    /**
+     * @return log of the database in use, null if none is open
+     */
+    public WriteAheadLog getLog() {
+        return log;
+    }
+}
@@ -0,0 +1,87 @@
+package sql.ide.execution;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Split a script at its statement boundaries without lexing it.
+ *
+ * Follows the same rules as the Lexer: strings start with ' or " and end at
+ * the next quote of any kind, -- starts a comment until the end of the line
+ * and ; closes a statement. Pieces that only have spaces or comments are
+ * skipped.
+ */
+public class StatementSplitter {
+
+    private StatementSplitter() {
+    }
+
+    /**
+     * Split the script into statements
+     *
+     * @param script
+     * @return
+     */
+    public static List<Statement> split(String script) {
+        List<Statement> statements = new ArrayList<>();
+        int start = 0;
+        int line = 1;
+        int startLine = 1;
+        boolean hasContent = false;
+        int i = 0;
+        int length = script.length();
+
+        while (i < length) {
+            char c = script.charAt(i);
+
+            if (c == '\n') {
+                line++;
+                if (!hasContent) {
+                    // leading blank lines do not belong to the statement
+                    start = i + 1;
+                    startLine = line;
+                }
+                i++;
+                continue;
+            }
+
+            if (c == '-' && i + 1 < length && script.charAt(i + 1) == '-') {
+                // comment, skip until the end of the line
+                while (i < length && script.charAt(i) != '\n')
+                    i++;
+                continue;
+            }
+
+            if (c == '\'' || c == '"') {
+                hasContent = true;
+                i++;
+                while (i < length && script.charAt(i) != '\'' && script.charAt(i) != '"') {
+                    if (script.charAt(i) == '\n')
+                        line++;
+                    i++;
+                }
+                i++;
+                continue;
+            }
+
+            if (c == ';') {
+                statements.add(new Statement(script.substring(start, i + 1), start, startLine));
+                hasContent = false;
+                start = i + 1;
+                startLine = line;
+                i++;
+                continue;
+            }
+
+            if (!Character.isWhitespace(c))
+                hasContent = true;
+            i++;
+        }
+
+        // the last statement may not have a ; (the parser will report it)
+        if (hasContent)
+            statements.add(new Statement(script.substring(start), start, startLine));
+
+        return statements;
+    }
+}
@@ -0,0 +1,132 @@
+package sql.ide.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import javafx.concurrent.Task;
+
+/**
+ * Reads a script in a single pass with a FileChannel and a direct buffer.
+ *
+ * The progress is the number of bytes read over the size of the file, and it
+ * is only reported every few percent so the JavaFX thread is not flooded with
+ * updates while a large dump is loading. The line endings are normalized to
+ * "\n", like the BufferedReader used to do.
+ *
+ * The script is decoded in the charset of the platform, like the FileReader
+ * used to; a file that is not valid in it is not opened, so saving it can
+ * not write replacement characters over its text.
+ */
+public class FileLoadTask extends Task<String> {
+    /**
+     * Charset of the scripts, the one of the platform
+     */
+    public static final Charset CHARSET = Charset.defaultCharset();
+    // size of the direct buffer the file is read through
+    static final int BUFFER_SIZE = Integer.getInteger("sqlide.loader.bufferSize", 1 << 20);
+    // minimum progress between two updates, in bytes
+    private static final long PROGRESS_STEP = 1L << 20;
+
+    private final Path file;
+    // true when the last char of the previous chunk was a \r
+    private boolean pendingCarriageReturn = false;
+
+    /**
+     * @param file file to read
+     */
+    public FileLoadTask(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    protected String call() throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("The file is too big to be edited, open it in large file mode");
+
+            CharsetDecoder decoder = CHARSET.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT);
+            ByteBuffer bytes = ByteBuffer.allocateDirect((int) Math.min(BUFFER_SIZE, Math.max(size, 16)));
+            CharBuffer chars = CharBuffer.allocate(bytes.capacity());
+            StringBuilder text = new StringBuilder((int) size);
+
+            long read = 0;
+            long reported = 0;
+            updateProgress(0, size);
+            while (true) {
+                if (isCancelled())
+                    return null;
+                int count = channel.read(bytes);
+                boolean endOfInput = count == -1;
+                if (!endOfInput)
+                    read += count;
+
+                bytes.flip();
+                try {
+                    decode(decoder, bytes, chars, text, endOfInput);
+                } catch (CharacterCodingException e) {
+                    throw new IOException("The file is not " + CHARSET + " text, it was not opened so it is not"
+                            + " damaged when saved", e);
+                }
+                bytes.compact();
+
+                if (endOfInput)
+                    break;
+                if (read - reported >= PROGRESS_STEP) {
+                    reported = read;
+                    updateProgress(read, size);
+                }
+            }
+            decoder.flush(chars);
+            append(chars, text);
+            updateProgress(size, size);
+            return text.toString();
+        }
+    }
+
+    /**
+     * Decode the bytes in the buffer, the chars are moved to the text every
+     * time the char buffer fills up
+     */
+    private void decode(CharsetDecoder decoder, ByteBuffer bytes, CharBuffer chars, StringBuilder text,
+            boolean endOfInput) throws IOException {
+        while (true) {
+            CoderResult result = decoder.decode(bytes, chars, endOfInput);
+            if (result.isError())
+                result.throwException();
+            append(chars, text);
+            if (result.isUnderflow())
+                return;
+        }
+    }
+
+    /**
+     * Append the decoded chars turning \r\n and \r into \n
+     */
+    private void append(CharBuffer chars, StringBuilder text) {
+        chars.flip();
+        while (chars.hasRemaining()) {
+            char c = chars.get();
+            if (c == '\r') {
+                text.append('\n');
+                pendingCarriageReturn = true;
+                continue;
+            }
+            if (c != '\n' || !pendingCarriageReturn)
+                text.append(c);
+            pendingCarriageReturn = false;
+        }
+        chars.clear();
+    }
+}
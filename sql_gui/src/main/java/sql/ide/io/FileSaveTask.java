@@ -0,0 +1,159 @@
+package sql.ide.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+
+import javafx.concurrent.Task;
+
+//* richtext imports
+import org.fxmisc.richtext.model.Paragraph;
+import org.fxmisc.richtext.model.StyledDocument;
+
+/**
+ * Writes a script out of the JavaFX thread without ever leaving a half
+ * written file behind.
+ *
+ * The document is an immutable snapshot of the code area, taken on the
+ * JavaFX thread, so the user keeps editing while it is written. Its
+ * paragraphs are encoded one at a time into a direct buffer and written to a
+ * temporary file next to the script; once the temporary file is on the disk
+ * it is moved over the script in one step. A crash in the middle leaves the
+ * old script untouched.
+ *
+ * The script is encoded in the charset it was loaded with, FileLoadTask.CHARSET;
+ * a char that charset can not hold fails the save instead of being written
+ * as a replacement.
+ *
+ * The value of the task is the stamp of the written file. The stamp is also
+ * handed to the listener right before the move, so the watcher, which may
+ * see the move before the task finishes, knows the change is ours.
+ */
+public class FileSaveTask extends Task<FileStamp> {
+    // size of the direct buffer the file is written through
+    static final int BUFFER_SIZE = Integer.getInteger("sqlide.saver.bufferSize", 1 << 20);
+    // minimum progress between two updates, in chars
+    private static final long PROGRESS_STEP = 1L << 20;
+
+    private final Path file;
+    private final StyledDocument<?, ?, ?> document;
+    private final Consumer<FileStamp> beforeMove;
+
+    /**
+     * @param file file to write
+     * @param document snapshot of the text to write, its paragraphs are
+     *        separated by "\n"
+     * @param beforeMove receives the stamp the file will have, on the writer thread
+     */
+    public FileSaveTask(Path file, StyledDocument<?, ?, ?> document, Consumer<FileStamp> beforeMove) {
+        this.file = file.toAbsolutePath();
+        this.document = document;
+        this.beforeMove = beforeMove;
+    }
+
+    @Override
+    protected FileStamp call() throws IOException {
+        Path temporary = Files.createTempFile(file.getParent(), "." + file.getFileName(), ".tmp");
+        try {
+            copyPermissions(temporary);
+            write(temporary);
+            // the move keeps the time, the size and the key of the file
+            beforeMove.accept(FileStamp.of(temporary));
+            try {
+                Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return FileStamp.of(file);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private void write(Path temporary) throws IOException {
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            CharsetEncoder encoder = FileLoadTask.CHARSET.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT);
+            ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+            List<? extends Paragraph<?, ?, ?>> paragraphs = document.getParagraphs();
+            long size = document.length();
+            long written = 0;
+            long reported = 0;
+            updateProgress(0, size);
+            for (int i = 0; i < paragraphs.size(); i++) {
+                if (isCancelled())
+                    throw new IOException("The save was cancelled");
+                String text = paragraphs.get(i).getText();
+                try {
+                    encode(encoder, CharBuffer.wrap(text), bytes, channel);
+                } catch (CharacterCodingException e) {
+                    throw new IOException("Line " + (i + 1) + " has characters that can not be saved in "
+                            + FileLoadTask.CHARSET + ", the file was not changed", e);
+                }
+                if (i < paragraphs.size() - 1)
+                    encode(encoder, CharBuffer.wrap("\n"), bytes, channel);
+                written += text.length() + 1;
+                if (written - reported >= PROGRESS_STEP) {
+                    reported = written;
+                    updateProgress(written, size);
+                }
+            }
+            encoder.encode(CharBuffer.allocate(0), bytes, true);
+            encoder.flush(bytes);
+            drain(bytes, channel);
+            channel.force(true);
+            updateProgress(size, size);
+        }
+    }
+
+    /**
+     * Encode the chars, the buffer is written to the channel every time it fills up
+     */
+    private static void encode(CharsetEncoder encoder, CharBuffer chars, ByteBuffer bytes, FileChannel channel)
+            throws IOException {
+        while (true) {
+            CoderResult result = encoder.encode(chars, bytes, false);
+            if (result.isError())
+                result.throwException();
+            if (result.isUnderflow())
+                return;
+            drain(bytes, channel);
+        }
+    }
+
+    private static void drain(ByteBuffer bytes, FileChannel channel) throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining())
+            channel.write(bytes);
+        bytes.clear();
+    }
+
+    /**
+     * The temporary file is only readable by its owner, give it the
+     * permissions of the script it replaces
+     */
+    private void copyPermissions(Path temporary) throws IOException {
+        if (!Files.exists(file))
+            return;
+        try {
+            Files.setPosixFilePermissions(temporary, Files.getPosixFilePermissions(file));
+        } catch (UnsupportedOperationException e) {
+            // not a POSIX file system, the default permissions apply
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package sql.ide.io;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Objects;
+
+/**
+ * What a file looked like at some point: its modification time, its size and
+ * its file key (the inode on Unix). The editor keeps the stamp of the last
+ * version it loaded or wrote, a change event whose file still has that stamp
+ * was caused by the editor itself.
+ */
+public final class FileStamp {
+    public final FileTime lastModifiedTime;
+    public final long size;
+    // null where the file system has no file keys
+    public final Object fileKey;
+
+    private FileStamp(FileTime lastModifiedTime, long size, Object fileKey) {
+        this.lastModifiedTime = lastModifiedTime;
+        this.size = size;
+        this.fileKey = fileKey;
+    }
+
+    /**
+     * @param file
+     * @return the stamp of the file as it is now
+     * @throws IOException if the file does not exist
+     */
+    public static FileStamp of(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        return new FileStamp(attributes.lastModifiedTime(), attributes.size(), attributes.fileKey());
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof FileStamp))
+            return false;
+        FileStamp stamp = (FileStamp) other;
+        return lastModifiedTime.equals(stamp.lastModifiedTime) && size == stamp.size
+                && Objects.equals(fileKey, stamp.fileKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(lastModifiedTime, size, fileKey);
+    }
+
+    @Override
+    public String toString() {
+        return lastModifiedTime + ", " + size + " bytes, key " + fileKey;
+    }
+}
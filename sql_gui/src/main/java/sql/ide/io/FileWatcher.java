@@ -0,0 +1,201 @@
+package sql.ide.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * One WatchService shared by everything the IDE needs to watch, the open
+ * script and the database folder.
+ *
+ * A single daemon thread blocks on the service, so nothing runs while the
+ * files do not change. The events that arrive within COALESCE_MILLIS of each
+ * other are merged, an editor saving a file or a statement rewriting a table
+ * produces several events but the listeners are called only once, on the
+ * watcher thread.
+ */
+public class FileWatcher implements Closeable {
+    // time without events before the changes are delivered
+    static final int COALESCE_MILLIS = Integer.getInteger("sqlide.watcher.coalesceMillis", 200);
+
+    private final WatchService watchService;
+    private final Thread thread;
+
+    // directory watched by every key, and the listeners of each directory
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private final Map<Path, WatchKey> keys = new HashMap<>();
+    private final Map<Path, List<Registration>> listeners = new HashMap<>();
+
+    /**
+     * Handle returned for every watched file or directory
+     */
+    public class Registration {
+        private final Path directory;
+        // null when the whole directory is watched
+        private final Path fileName;
+        private final Consumer<Set<Path>> listener;
+
+        private Registration(Path directory, Path fileName, Consumer<Set<Path>> listener) {
+            this.directory = directory;
+            this.fileName = fileName;
+            this.listener = listener;
+        }
+
+        /**
+         * Stop receiving changes
+         */
+        public void cancel() {
+            unregister(this);
+        }
+    }
+
+    public FileWatcher() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        thread = new Thread(this::processEvents, "sql-file-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Watch a single file, the listener is called when it is created,
+     * modified or deleted
+     *
+     * @param file
+     * @param listener
+     * @return registration to cancel
+     * @throws IOException
+     */
+    public Registration watchFile(Path file, Runnable listener) throws IOException {
+        Path absolute = file.toAbsolutePath();
+        return register(absolute.getParent(), absolute.getFileName(), changed -> listener.run());
+    }
+
+    /**
+     * Watch the files of a directory, the listener receives the files that
+     * changed. When events were lost the directory itself is in the set, and
+     * everything in it has to be considered changed.
+     *
+     * @param directory
+     * @param listener
+     * @return registration to cancel
+     * @throws IOException
+     */
+    public Registration watchDirectory(Path directory, Consumer<Set<Path>> listener) throws IOException {
+        return register(directory.toAbsolutePath(), null, listener);
+    }
+
+    private synchronized Registration register(Path directory, Path fileName, Consumer<Set<Path>> listener)
+            throws IOException {
+        if (!keys.containsKey(directory)) {
+            WatchKey key = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            keys.put(directory, key);
+            directories.put(key, directory);
+        }
+        Registration registration = new Registration(directory, fileName, listener);
+        listeners.computeIfAbsent(directory, d -> new CopyOnWriteArrayList<>()).add(registration);
+        return registration;
+    }
+
+    private synchronized void unregister(Registration registration) {
+        List<Registration> registrations = listeners.get(registration.directory);
+        if (registrations == null || !registrations.remove(registration) || !registrations.isEmpty())
+            return;
+        // nobody else watches the directory
+        listeners.remove(registration.directory);
+        WatchKey key = keys.remove(registration.directory);
+        directories.remove(key);
+        key.cancel();
+    }
+
+    /****************************************************************/
+    /* Watcher thread */
+    /****************************************************************/
+
+    private void processEvents() {
+        try {
+            while (true) {
+                // block until something changes
+                Map<Path, Set<Path>> changes = new LinkedHashMap<>();
+                collect(watchService.take(), changes);
+
+                // merge everything that arrives while the burst lasts
+                WatchKey key;
+                while ((key = watchService.poll(COALESCE_MILLIS, TimeUnit.MILLISECONDS)) != null)
+                    collect(key, changes);
+
+                dispatch(changes);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // the watcher was closed
+        }
+    }
+
+    private void collect(WatchKey key, Map<Path, Set<Path>> changes) {
+        Path directory;
+        synchronized (this) {
+            directory = directories.get(key);
+        }
+        List<WatchEvent<?>> events = key.pollEvents();
+        key.reset();
+        if (directory == null)
+            return;
+
+        Set<Path> changed = changes.computeIfAbsent(directory, d -> new LinkedHashSet<>());
+        for (WatchEvent<?> event : events) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+                changed.add(directory);
+            else
+                changed.add(directory.resolve((Path) event.context()));
+        }
+    }
+
+    private void dispatch(Map<Path, Set<Path>> changes) {
+        for (Map.Entry<Path, Set<Path>> entry : changes.entrySet()) {
+            List<Registration> registrations;
+            synchronized (this) {
+                registrations = listeners.get(entry.getKey());
+            }
+            if (registrations == null)
+                continue;
+
+            Set<Path> changed = entry.getValue();
+            boolean overflow = changed.contains(entry.getKey());
+            for (Registration registration : registrations) {
+                if (registration.fileName != null && !overflow
+                        && !changed.contains(entry.getKey().resolve(registration.fileName)))
+                    continue;
+                try {
+                    registration.listener.accept(changed);
+                } catch (RuntimeException e) {
+                    // a broken listener must not stop the watcher
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop watching everything
+     */
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        thread.interrupt();
+    }
+}
@@ -0,0 +1,119 @@
+package sql.ide.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read only view of a file too big to be copied into the CodeArea.
+ *
+ * The file is split in chunks of about CHUNK_SIZE bytes, cut at line
+ * boundaries, and only the chunk being shown is mapped and decoded. Nothing
+ * is read in advance, so opening a dump of several gigabytes is immediate.
+ */
+public class LargeFileDocument implements Closeable {
+    // files bigger than this are offered to be opened in large file mode
+    public static final long THRESHOLD = Long.getLong("sqlide.loader.largeFileThreshold", 32L << 20);
+    // size of every chunk, in bytes
+    static final int CHUNK_SIZE = Integer.getInteger("sqlide.loader.chunkSize", 1 << 20);
+
+    private final Path file;
+    private final FileChannel channel;
+    private final long size;
+
+    private LargeFileDocument(Path file, FileChannel channel) throws IOException {
+        this.file = file;
+        this.channel = channel;
+        this.size = channel.size();
+    }
+
+    /**
+     * Open a file in large file mode
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static LargeFileDocument open(Path file) throws IOException {
+        return new LargeFileDocument(file, FileChannel.open(file, StandardOpenOption.READ));
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return size of the file in bytes
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return number of chunks, at least one
+     */
+    public int chunkCount() {
+        return (int) Math.max(1, (size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+    }
+
+    /**
+     * Read and decode one chunk
+     *
+     * @param index from 0 to chunkCount() - 1
+     * @return text of the chunk, with its line endings normalized to "\n"
+     * @throws IOException
+     */
+    public String readChunk(int index) throws IOException {
+        if (index < 0 || index >= chunkCount())
+            throw new IndexOutOfBoundsException("Chunk " + index + " of " + chunkCount());
+        long start = chunkStart(index);
+        long end = index + 1 < chunkCount() ? chunkStart(index + 1) : size;
+        if (end <= start)
+            return "";
+
+        MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        try {
+            return StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                    .decode(bytes).toString()
+                    .replace("\r\n", "\n").replace('\r', '\n');
+        } catch (CharacterCodingException e) {
+            throw new IOException("Could not decode " + file, e);
+        }
+    }
+
+    /**
+     * First byte of a chunk, the start of the first line that begins at or
+     * after index * CHUNK_SIZE. A line longer than a whole chunk is cut at a
+     * character boundary instead.
+     */
+    private long chunkStart(int index) throws IOException {
+        long position = (long) index * CHUNK_SIZE;
+        if (position == 0 || position >= size)
+            return Math.min(position, size);
+
+        long length = Math.min(CHUNK_SIZE, size - position + 1);
+        MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, position - 1, length);
+        for (int i = 0; i < length; i++) {
+            if (bytes.get(i) == '\n')
+                return position + i;
+        }
+        // no line break, do not split a UTF-8 sequence
+        int i = 1;
+        while (i < length && (bytes.get(i) & 0xC0) == 0x80)
+            i++;
+        return position - 1 + i;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,159 @@
+package sql.ide.modeler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+//* Import everything related to database manager
+import edu.upvictoria.fpoo.*;
+
+/**
+ * Diagrams as SQL scripts: one CREATE TABLE statement per entity, preceded
+ * by a comment with its position,
+ *
+ * -- @entity PEOPLE 40 40
+ * CREATE TABLE PEOPLE (ID NUMBER PRIMARY KEY, NAME STRING);
+ *
+ * so an exported diagram can be run to create the database, and any script
+ * with CREATE TABLE statements can be imported; the entities without a
+ * position are laid out.
+ */
+public class DiagramSql {
+    private static final Pattern POSITION = Pattern.compile(
+            "^--\\s*@entity\\s+(\\S+)\\s+(-?[\\d.]+)\\s+(-?[\\d.]+)\\s*$", Pattern.MULTILINE);
+
+    private DiagramSql() {
+    }
+
+    /**
+     * @param diagram
+     * @return the script of the diagram
+     */
+    public static String format(ErDiagram diagram) {
+        StringBuilder builder = new StringBuilder("-- ER diagram, run it to create the tables\n");
+        for (ErDiagram.Entity entity : diagram.entities()) {
+            builder.append("\n-- @entity ").append(entity.name).append(' ').append(Math.round(entity.x))
+                    .append(' ').append(Math.round(entity.y)).append('\n');
+            builder.append("CREATE TABLE ").append(entity.name).append(" (");
+            for (int i = 0; i < entity.columns.size(); i++) {
+                if (i > 0)
+                    builder.append(", ");
+                // the type of a column with only nulls is not known
+                String type = entity.types.get(i);
+                builder.append(entity.columns.get(i)).append(' ').append(type.equals("UNKNOWN") ? "STRING" : type);
+                if (entity.isKey(i))
+                    builder.append(" PRIMARY KEY");
+            }
+            builder.append(");\n");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @param script
+     * @return the diagram of the CREATE TABLE statements of the script, the
+     *         other statements are ignored
+     * @throws Error if the Lexer fails or a CREATE TABLE is malformed
+     */
+    public static ErDiagram parse(String script) {
+        Map<String, double[]> positions = new HashMap<>();
+        Matcher matcher = POSITION.matcher(script);
+        while (matcher.find()) {
+            positions.put(matcher.group(1).toUpperCase(),
+                    new double[] { Double.parseDouble(matcher.group(2)), Double.parseDouble(matcher.group(3)) });
+        }
+
+        ErDiagram diagram = new ErDiagram();
+        List<Token> tokens = new Lexer(script).scanTokens();
+        for (int i = 0; i + 1 < tokens.size(); i++) {
+            if (tokens.get(i).type == TokenType.CREATE && tokens.get(i + 1).type == TokenType.TABLE)
+                i = createTable(tokens, i + 2, diagram);
+        }
+
+        if (positions.isEmpty()) {
+            diagram.layout();
+            return diagram;
+        }
+        // the entities without a position go in a row below the others
+        double bottom = 0;
+        for (ErDiagram.Entity entity : diagram.entities()) {
+            double[] position = positions.get(entity.name);
+            if (position != null) {
+                entity.x = position[0];
+                entity.y = position[1];
+                bottom = Math.max(bottom, entity.y + entity.height);
+            }
+        }
+        double x = ErDiagram.GAP;
+        for (ErDiagram.Entity entity : diagram.entities()) {
+            if (positions.containsKey(entity.name))
+                continue;
+            entity.x = x;
+            entity.y = bottom + ErDiagram.GAP;
+            x += entity.width + ErDiagram.GAP;
+        }
+        diagram.index();
+        return diagram;
+    }
+
+    /**
+     * name ( column TYPE [constraints], ... );
+     *
+     * @return the position of the last token of the statement
+     */
+    private static int createTable(List<Token> tokens, int current, ErDiagram diagram) {
+        String name = expect(tokens, current++, TokenType.IDENTIFIER, "Expected table name.").lexeme;
+        expect(tokens, current++, TokenType.LEFT_PAREN, "Expected '(' after table name.");
+        List<String> columns = new ArrayList<>();
+        List<String> types = new ArrayList<>();
+        List<Boolean> keys = new ArrayList<>();
+        while (true) {
+            columns.add(expect(tokens, current++, TokenType.IDENTIFIER, "Expected column name.").lexeme);
+            Token type = tokens.get(current++);
+            switch (type.type) {
+                case NUMBER_DATA_TYPE, STRING_DATA_TYPE, BOOLEAN_DATA_TYPE, DATE_DATA_TYPE:
+                    types.add(type.lexeme);
+                    break;
+                default:
+                    throw error(type, "Expected data type.");
+            }
+            // constraints, and the size of a type like STRING(20)
+            boolean key = false;
+            int depth = 0;
+            while (depth > 0 || (tokens.get(current).type != TokenType.COMMA
+                    && tokens.get(current).type != TokenType.RIGHT_PAREN)) {
+                Token token = tokens.get(current++);
+                if (token.type == TokenType.EOF)
+                    throw error(token, "Expected ')' after columns.");
+                if (token.type == TokenType.LEFT_PAREN)
+                    depth++;
+                else if (token.type == TokenType.RIGHT_PAREN)
+                    depth--;
+                else if (token.type == TokenType.PRIMARY)
+                    key = true;
+            }
+            keys.add(key);
+            if (tokens.get(current++).type == TokenType.RIGHT_PAREN)
+                break;
+        }
+        diagram.add(name, columns, types, keys);
+        return current - 1;
+    }
+
+    private static Token expect(List<Token> tokens, int current, TokenType type, String message) {
+        if (tokens.get(current).type != type)
+            throw error(tokens.get(current), message);
+        return tokens.get(current);
+    }
+
+    /**
+     * Same format as the ErrorHandler of the database manager
+     */
+    private static Error error(Token token, String message) {
+        String where = token.type == TokenType.EOF ? " at end" : " at '" + token.lexeme + "'";
+        return new Error("[line " + token.line + "] Error" + where + ": " + message);
+    }
+}
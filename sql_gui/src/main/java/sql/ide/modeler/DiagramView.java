@@ -0,0 +1,337 @@
+package sql.ide.modeler;
+
+import java.util.function.Consumer;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.FontWeight;
+
+/**
+ * Draws an ErDiagram on a Canvas, which can be panned by dragging the
+ * background, zoomed with the wheel and whose entities can be dragged.
+ *
+ * Nothing is drawn in the event handlers: they only add the region that
+ * changed to a dirty rectangle, and the AnimationTimer redraws it once per
+ * frame, clipped to it. Dragging an entity repaints the boxes it left and
+ * entered and its relations; panning and zooming move every pixel, so the
+ * dirty region is the viewport. Either way only the entities and relations
+ * that intersect the region are drawn, the spatial grid of the diagram finds
+ * them, so the ones outside the viewport cost nothing. Zoomed out, the
+ * columns are left out.
+ */
+public class DiagramView {
+    private static final double MIN_SCALE = 0.05;
+    private static final double MAX_SCALE = 4;
+    // below this scale only the names of the entities are drawn
+    private static final double DETAIL_SCALE = 0.4;
+    // below this scale not even the names
+    private static final double TEXT_SCALE = 0.15;
+    // pixels around a dirty region for the strokes and the antialiasing
+    private static final double MARGIN = 3;
+
+    private static final Font FONT = Font.font("Monospaced", 12);
+    private static final Font BOLD = Font.font("Monospaced", FontWeight.BOLD, 12);
+    private static final Color BACKGROUND = Color.rgb(241, 248, 255);
+    private static final Color HEADER = Color.rgb(197, 184, 233);
+    private static final Color BORDER = Color.rgb(90, 70, 140);
+    private static final Color LINE = Color.rgb(120, 120, 150);
+
+    private final Canvas canvas;
+    private final Consumer<String> status;
+    private ErDiagram diagram = new ErDiagram();
+
+    // screen = world * scale + offset
+    private double offsetX = 0;
+    private double offsetY = 0;
+    private double scale = 1;
+
+    // dirty region in screen pixels, empty while dirtyMaxX < dirtyMinX
+    private double dirtyMinX = Double.MAX_VALUE;
+    private double dirtyMinY = Double.MAX_VALUE;
+    private double dirtyMaxX = -Double.MAX_VALUE;
+    private double dirtyMaxY = -Double.MAX_VALUE;
+
+    // entity being dragged and where it was grabbed, in world units
+    private ErDiagram.Entity dragged;
+    private double grabX;
+    private double grabY;
+    // last position of the mouse while the background is dragged
+    private double panX;
+    private double panY;
+
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            if (dirtyMaxX >= dirtyMinX)
+                redraw();
+        }
+    };
+
+    /**
+     * @param canvas
+     * @param status receives the number of entities drawn by every redraw
+     */
+    public DiagramView(Canvas canvas, Consumer<String> status) {
+        this.canvas = canvas;
+        this.status = status;
+        canvas.setOnMousePressed(this::pressed);
+        canvas.setOnMouseDragged(this::dragged);
+        canvas.setOnMouseReleased(event -> dragged = null);
+        canvas.setOnScroll(this::scrolled);
+        canvas.widthProperty().addListener((observable, previous, width) -> invalidateAll());
+        canvas.heightProperty().addListener((observable, previous, height) -> invalidateAll());
+        timer.start();
+    }
+
+    /**
+     * Show another diagram, zoomed to fit
+     *
+     * @param diagram
+     */
+    public void setDiagram(ErDiagram diagram) {
+        this.diagram = diagram;
+        dragged = null;
+        fit();
+    }
+
+    public ErDiagram getDiagram() {
+        return diagram;
+    }
+
+    /**
+     * Zoom so the whole diagram is in the viewport
+     */
+    public void fit() {
+        double[] bounds = diagram.bounds();
+        if (bounds == null || canvas.getWidth() == 0 || canvas.getHeight() == 0) {
+            offsetX = offsetY = 0;
+            scale = 1;
+        } else {
+            double width = bounds[2] - bounds[0] + 2 * ErDiagram.GAP;
+            double height = bounds[3] - bounds[1] + 2 * ErDiagram.GAP;
+            scale = clamp(Math.min(canvas.getWidth() / width, canvas.getHeight() / height), MIN_SCALE, 1);
+            offsetX = (canvas.getWidth() - (bounds[2] - bounds[0]) * scale) / 2 - bounds[0] * scale;
+            offsetY = (canvas.getHeight() - (bounds[3] - bounds[1]) * scale) / 2 - bounds[1] * scale;
+        }
+        invalidateAll();
+    }
+
+    /**
+     * Move the viewport so the entity is in its center, at least at the
+     * scale its columns are drawn
+     *
+     * @param entity
+     */
+    public void center(ErDiagram.Entity entity) {
+        scale = Math.max(scale, DETAIL_SCALE);
+        offsetX = canvas.getWidth() / 2 - (entity.x + entity.width / 2) * scale;
+        offsetY = canvas.getHeight() / 2 - (entity.y + entity.height / 2) * scale;
+        invalidateAll();
+    }
+
+    /**
+     * Stop redrawing, the view is not used anymore
+     */
+    public void dispose() {
+        timer.stop();
+    }
+
+    /****************************************************************/
+    /* Events */
+    /****************************************************************/
+
+    private void pressed(MouseEvent event) {
+        double x = toWorldX(event.getX());
+        double y = toWorldY(event.getY());
+        dragged = diagram.entityAt(x, y);
+        panX = event.getX();
+        panY = event.getY();
+        if (dragged != null) {
+            grabX = x - dragged.x;
+            grabY = y - dragged.y;
+            // brought to the front
+            diagram.move(dragged, dragged.x, dragged.y);
+            invalidate(dragged);
+        }
+    }
+
+    private void dragged(MouseEvent event) {
+        if (dragged != null) {
+            invalidate(dragged);
+            diagram.move(dragged, toWorldX(event.getX()) - grabX, toWorldY(event.getY()) - grabY);
+            invalidate(dragged);
+            return;
+        }
+        offsetX += event.getX() - panX;
+        offsetY += event.getY() - panY;
+        panX = event.getX();
+        panY = event.getY();
+        invalidateAll();
+    }
+
+    private void scrolled(ScrollEvent event) {
+        double zoom = clamp(scale * Math.exp(event.getDeltaY() * 0.002), MIN_SCALE, MAX_SCALE);
+        // the point under the mouse stays where it is
+        double x = toWorldX(event.getX());
+        double y = toWorldY(event.getY());
+        scale = zoom;
+        offsetX = event.getX() - x * scale;
+        offsetY = event.getY() - y * scale;
+        invalidateAll();
+    }
+
+    /****************************************************************/
+    /* Dirty region */
+    /****************************************************************/
+
+    private void invalidateAll() {
+        invalidateScreen(0, 0, canvas.getWidth(), canvas.getHeight());
+    }
+
+    /**
+     * Mark the box of the entity and the lines of its relations dirty
+     */
+    private void invalidate(ErDiagram.Entity entity) {
+        invalidateWorld(entity.x, entity.y, entity.x + entity.width, entity.y + entity.height);
+        for (ErDiagram.Relation relation : diagram.relationsOf(entity)) {
+            double x1 = relation.from.x + relation.from.width / 2;
+            double y1 = relation.from.y + relation.from.height / 2;
+            double x2 = relation.to.x + relation.to.width / 2;
+            double y2 = relation.to.y + relation.to.height / 2;
+            invalidateWorld(Math.min(x1, x2), Math.min(y1, y2), Math.max(x1, x2), Math.max(y1, y2));
+        }
+    }
+
+    private void invalidateWorld(double minX, double minY, double maxX, double maxY) {
+        invalidateScreen(minX * scale + offsetX, minY * scale + offsetY, maxX * scale + offsetX,
+                maxY * scale + offsetY);
+    }
+
+    private void invalidateScreen(double minX, double minY, double maxX, double maxY) {
+        dirtyMinX = Math.min(dirtyMinX, minX - MARGIN);
+        dirtyMinY = Math.min(dirtyMinY, minY - MARGIN);
+        dirtyMaxX = Math.max(dirtyMaxX, maxX + MARGIN);
+        dirtyMaxY = Math.max(dirtyMaxY, maxY + MARGIN);
+    }
+
+    /****************************************************************/
+    /* Drawing */
+    /****************************************************************/
+
+    /**
+     * Draw the dirty region, clipped to it, and clear it
+     */
+    private void redraw() {
+        double minX = Math.max(Math.floor(dirtyMinX), 0);
+        double minY = Math.max(Math.floor(dirtyMinY), 0);
+        double maxX = Math.min(Math.ceil(dirtyMaxX), canvas.getWidth());
+        double maxY = Math.min(Math.ceil(dirtyMaxY), canvas.getHeight());
+        dirtyMinX = dirtyMinY = Double.MAX_VALUE;
+        dirtyMaxX = dirtyMaxY = -Double.MAX_VALUE;
+        if (maxX <= minX || maxY <= minY)
+            return;
+
+        long begin = System.nanoTime();
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        gc.save();
+        gc.beginPath();
+        gc.rect(minX, minY, maxX - minX, maxY - minY);
+        gc.closePath();
+        gc.clip();
+        gc.setFill(BACKGROUND);
+        gc.fillRect(minX, minY, maxX - minX, maxY - minY);
+
+        gc.translate(offsetX, offsetY);
+        gc.scale(scale, scale);
+        double worldMinX = toWorldX(minX);
+        double worldMinY = toWorldY(minY);
+        double worldMaxX = toWorldX(maxX);
+        double worldMaxY = toWorldY(maxY);
+
+        gc.setStroke(LINE);
+        gc.setLineWidth(1.5 / scale);
+        for (ErDiagram.Relation relation : diagram.relations()) {
+            if (relation.intersects(worldMinX, worldMinY, worldMaxX, worldMaxY))
+                drawRelation(gc, relation);
+        }
+        int drawn = 0;
+        for (ErDiagram.Entity entity : diagram.entitiesIn(worldMinX, worldMinY, worldMaxX, worldMaxY)) {
+            drawEntity(gc, entity);
+            drawn++;
+        }
+        gc.restore();
+
+        status.accept(diagram.size() + " table(s), " + diagram.relations().size() + " relation(s), "
+                + drawn + " drawn in " + (System.nanoTime() - begin) / 1000 + " us, zoom "
+                + Math.round(scale * 100) + "%");
+    }
+
+    private void drawRelation(GraphicsContext gc, ErDiagram.Relation relation) {
+        double x1 = relation.from.x + relation.from.width / 2;
+        double y1 = relation.from.y + relation.from.height / 2;
+        double x2 = relation.to.x + relation.to.width / 2;
+        double y2 = relation.to.y + relation.to.height / 2;
+        gc.strokeLine(x1, y1, x2, y2);
+
+        // a dot where the line enters the referenced entity
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double t = Math.min(dx == 0 ? Double.MAX_VALUE : relation.to.width / 2 / Math.abs(dx),
+                dy == 0 ? Double.MAX_VALUE : relation.to.height / 2 / Math.abs(dy));
+        if (t == Double.MAX_VALUE)
+            return;
+        double radius = 4;
+        gc.setFill(LINE);
+        gc.fillOval(x2 - dx * t - radius, y2 - dy * t - radius, 2 * radius, 2 * radius);
+    }
+
+    private void drawEntity(GraphicsContext gc, ErDiagram.Entity entity) {
+        double x = entity.x;
+        double y = entity.y;
+        double header = ErDiagram.LINE_HEIGHT + ErDiagram.PADDING;
+        gc.setFill(Color.WHITE);
+        gc.fillRect(x, y, entity.width, entity.height);
+        gc.setFill(HEADER);
+        gc.fillRect(x, y, entity.width, header);
+        gc.setStroke(BORDER);
+        gc.setLineWidth(1 / scale);
+        gc.strokeRect(x, y, entity.width, entity.height);
+        if (scale < TEXT_SCALE)
+            return;
+
+        gc.setFill(Color.BLACK);
+        gc.setFont(BOLD);
+        gc.fillText(entity.name, x + ErDiagram.PADDING, y + ErDiagram.LINE_HEIGHT);
+        if (scale < DETAIL_SCALE)
+            return;
+
+        gc.strokeLine(x, y + header, x + entity.width, y + header);
+        for (int i = 0; i < entity.columns.size(); i++) {
+            double baseline = y + header + (i + 1) * ErDiagram.LINE_HEIGHT;
+            String type = entity.types.get(i);
+            gc.setFont(entity.isKey(i) ? BOLD : FONT);
+            gc.setFill(Color.BLACK);
+            gc.fillText(entity.columns.get(i), x + ErDiagram.PADDING, baseline);
+            gc.setFont(FONT);
+            gc.setFill(BORDER);
+            gc.fillText(type, x + entity.width - ErDiagram.PADDING - type.length() * ErDiagram.CHAR_WIDTH, baseline);
+        }
+    }
+
+    private double toWorldX(double screenX) {
+        return (screenX - offsetX) / scale;
+    }
+
+    private double toWorldY(double screenY) {
+        return (screenY - offsetY) / scale;
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -0,0 +1,361 @@
+package sql.ide.modeler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import sql.ide.storage.SchemaCatalog;
+
+/**
+ * Entity relationship diagram of a database: one box per table with its
+ * columns and their types, and a line for every column that refers to
+ * another table by name (PERSON_ID or ID_PERSON refers to PERSON, PERSONS or
+ * PERSONES).
+ *
+ * The boxes are kept in a uniform grid of CELL world units, so the boxes in
+ * a region of the diagram are found without looking at the others: the view
+ * only draws what the viewport shows. It does not depend on JavaFX, the
+ * sizes come from the fixed width font the view draws with.
+ */
+public class ErDiagram {
+    // size of the font the view draws with, see DiagramView
+    static final double CHAR_WIDTH = 7.2;
+    static final double LINE_HEIGHT = 16;
+    static final double PADDING = 6;
+    // space between two boxes laid out next to each other
+    static final double GAP = 40;
+    // side of a cell of the spatial grid, in world units
+    static final double CELL = 256;
+
+    /**
+     * One table of the diagram, in world coordinates
+     */
+    public static class Entity {
+        public final String name;
+        public final List<String> columns;
+        public final List<String> types;
+        // columns declared PRIMARY KEY, only known for imported diagrams
+        final List<Boolean> keys;
+        double x;
+        double y;
+        final double width;
+        final double height;
+        // drawn after the entities with a lower order
+        int order;
+
+        Entity(String name, List<String> columns, List<String> types, List<Boolean> keys) {
+            this.name = name;
+            this.columns = Collections.unmodifiableList(columns);
+            this.types = Collections.unmodifiableList(types);
+            this.keys = keys;
+            int chars = name.length();
+            for (int i = 0; i < columns.size(); i++)
+                chars = Math.max(chars, columns.get(i).length() + types.get(i).length() + 4);
+            this.width = chars * CHAR_WIDTH + 2 * PADDING;
+            this.height = (columns.size() + 1) * LINE_HEIGHT + 2 * PADDING;
+        }
+
+        public double getX() {
+            return x;
+        }
+
+        public double getY() {
+            return y;
+        }
+
+        public double getWidth() {
+            return width;
+        }
+
+        public double getHeight() {
+            return height;
+        }
+
+        boolean isKey(int column) {
+            return keys != null && keys.get(column);
+        }
+
+        boolean intersects(double minX, double minY, double maxX, double maxY) {
+            return x < maxX && x + width > minX && y < maxY && y + height > minY;
+        }
+
+        boolean contains(double px, double py) {
+            return px >= x && px <= x + width && py >= y && py <= y + height;
+        }
+    }
+
+    /**
+     * A column of one entity naming another entity
+     */
+    public static class Relation {
+        public final Entity from;
+        public final String column;
+        public final Entity to;
+
+        Relation(Entity from, String column, Entity to) {
+            this.from = from;
+            this.column = column;
+            this.to = to;
+        }
+
+        /**
+         * @return true if the line between the two entities may cross the region
+         */
+        boolean intersects(double minX, double minY, double maxX, double maxY) {
+            double x1 = from.x + from.width / 2;
+            double y1 = from.y + from.height / 2;
+            double x2 = to.x + to.width / 2;
+            double y2 = to.y + to.height / 2;
+            return Math.min(x1, x2) <= maxX && Math.max(x1, x2) >= minX && Math.min(y1, y2) <= maxY
+                    && Math.max(y1, y2) >= minY;
+        }
+    }
+
+    private final Map<String, Entity> entities = new LinkedHashMap<>();
+    private final List<Relation> relations = new ArrayList<>();
+    private final Map<Entity, List<Relation>> relationsOf = new HashMap<>();
+    // entities by cell of the grid, the key packs the column and the row
+    private final Map<Long, List<Entity>> grid = new HashMap<>();
+    private int nextOrder = 0;
+
+    /**
+     * @param tables tables of the catalog
+     * @return the diagram of the tables, laid out
+     */
+    public static ErDiagram of(List<SchemaCatalog.TableInfo> tables) {
+        ErDiagram diagram = new ErDiagram();
+        for (SchemaCatalog.TableInfo table : tables)
+            diagram.add(table.name, table.columns, table.types, null);
+        diagram.layout();
+        return diagram;
+    }
+
+    /**
+     * Add an entity at the origin, call layout() or index() once they are
+     * all added
+     *
+     * @param keys PRIMARY KEY of every column, null when it is not known
+     */
+    Entity add(String name, List<String> columns, List<String> types, List<Boolean> keys) {
+        Entity entity = new Entity(name, new ArrayList<>(columns), new ArrayList<>(types), keys);
+        entity.order = nextOrder++;
+        entities.put(name, entity);
+        return entity;
+    }
+
+    /**
+     * Place the entities in rows of about the same width, the diagram ends
+     * up roughly square; finds the relations
+     */
+    void layout() {
+        double area = 0;
+        for (Entity entity : entities.values())
+            area += (entity.width + GAP) * (entity.height + GAP);
+        double rowWidth = Math.max(Math.sqrt(area) * 1.2, 400);
+
+        double x = GAP;
+        double y = GAP;
+        double rowHeight = 0;
+        for (Entity entity : entities.values()) {
+            if (x > GAP && x + entity.width > rowWidth) {
+                x = GAP;
+                y += rowHeight + GAP;
+                rowHeight = 0;
+            }
+            entity.x = x;
+            entity.y = y;
+            x += entity.width + GAP;
+            rowHeight = Math.max(rowHeight, entity.height);
+        }
+        index();
+    }
+
+    /**
+     * Index the entities where they are and find the relations, for a
+     * diagram whose positions were set by hand
+     */
+    void index() {
+        grid.clear();
+        for (Entity entity : entities.values())
+            addToGrid(entity);
+        findRelations();
+    }
+
+    private void findRelations() {
+        relations.clear();
+        relationsOf.clear();
+        for (Entity entity : entities.values()) {
+            for (String column : entity.columns) {
+                Entity target = referenced(column);
+                if (target == null || target == entity)
+                    continue;
+                Relation relation = new Relation(entity, column, target);
+                relations.add(relation);
+                relationsOf.computeIfAbsent(entity, key -> new ArrayList<>()).add(relation);
+                relationsOf.computeIfAbsent(target, key -> new ArrayList<>()).add(relation);
+            }
+        }
+    }
+
+    /**
+     * @return the entity a column is named after, null if there is none
+     */
+    private Entity referenced(String column) {
+        String base;
+        if (column.endsWith("_ID"))
+            base = column.substring(0, column.length() - 3);
+        else if (column.startsWith("ID_"))
+            base = column.substring(3);
+        else
+            return null;
+        for (String name : new String[] { base, base + "S", base + "ES" }) {
+            Entity entity = entities.get(name);
+            if (entity != null)
+                return entity;
+        }
+        return null;
+    }
+
+    /****************************************************************/
+    /* Spatial grid */
+    /****************************************************************/
+
+    private static long cell(int column, int row) {
+        return ((long) column << 32) | (row & 0xffffffffL);
+    }
+
+    private void addToGrid(Entity entity) {
+        forEachCell(entity, key -> grid.computeIfAbsent(key, k -> new ArrayList<>()).add(entity));
+    }
+
+    private void removeFromGrid(Entity entity) {
+        forEachCell(entity, key -> {
+            List<Entity> cell = grid.get(key);
+            if (cell != null && cell.remove(entity) && cell.isEmpty())
+                grid.remove(key);
+        });
+    }
+
+    private interface CellVisitor {
+        void visit(long key);
+    }
+
+    private static void forEachCell(Entity entity, CellVisitor visitor) {
+        int firstColumn = (int) Math.floor(entity.x / CELL);
+        int lastColumn = (int) Math.floor((entity.x + entity.width) / CELL);
+        int firstRow = (int) Math.floor(entity.y / CELL);
+        int lastRow = (int) Math.floor((entity.y + entity.height) / CELL);
+        for (int column = firstColumn; column <= lastColumn; column++)
+            for (int row = firstRow; row <= lastRow; row++)
+                visitor.visit(cell(column, row));
+    }
+
+    /**
+     * @return the entities that intersect the region, in drawing order
+     */
+    public List<Entity> entitiesIn(double minX, double minY, double maxX, double maxY) {
+        List<Entity> found = new ArrayList<>();
+        int firstColumn = (int) Math.floor(minX / CELL);
+        int lastColumn = (int) Math.floor(maxX / CELL);
+        int firstRow = (int) Math.floor(minY / CELL);
+        int lastRow = (int) Math.floor(maxY / CELL);
+        // a region bigger than the diagram looks at the entities instead
+        if ((long) (lastColumn - firstColumn + 1) * (lastRow - firstRow + 1) > grid.size()) {
+            for (Entity entity : entities.values()) {
+                if (entity.intersects(minX, minY, maxX, maxY))
+                    found.add(entity);
+            }
+        } else {
+            Set<Entity> seen = new HashSet<>();
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                for (int row = firstRow; row <= lastRow; row++) {
+                    List<Entity> cell = grid.get(cell(column, row));
+                    if (cell == null)
+                        continue;
+                    for (Entity entity : cell) {
+                        // an entity in several cells is only added once
+                        if (entity.intersects(minX, minY, maxX, maxY) && seen.add(entity))
+                            found.add(entity);
+                    }
+                }
+            }
+        }
+        found.sort(Comparator.comparingInt(entity -> entity.order));
+        return found;
+    }
+
+    /**
+     * @return the entity drawn on top at the point, null if there is none
+     */
+    public Entity entityAt(double x, double y) {
+        Entity top = null;
+        List<Entity> cell = grid.get(cell((int) Math.floor(x / CELL), (int) Math.floor(y / CELL)));
+        if (cell == null)
+            return null;
+        for (Entity entity : cell) {
+            if (entity.contains(x, y) && (top == null || entity.order > top.order))
+                top = entity;
+        }
+        return top;
+    }
+
+    /**
+     * Move an entity, it is drawn on top of the others from now on
+     */
+    public void move(Entity entity, double x, double y) {
+        removeFromGrid(entity);
+        entity.x = x;
+        entity.y = y;
+        entity.order = nextOrder++;
+        addToGrid(entity);
+    }
+
+    /****************************************************************/
+    /* Queries */
+    /****************************************************************/
+
+    public List<Entity> entities() {
+        return new ArrayList<>(entities.values());
+    }
+
+    public Entity entity(String name) {
+        return entities.get(name);
+    }
+
+    public List<Relation> relations() {
+        return Collections.unmodifiableList(relations);
+    }
+
+    /**
+     * @return the relations from or to the entity
+     */
+    public List<Relation> relationsOf(Entity entity) {
+        return relationsOf.getOrDefault(entity, Collections.emptyList());
+    }
+
+    /**
+     * @return minX, minY, maxX and maxY of all the entities, null if there are none
+     */
+    public double[] bounds() {
+        if (entities.isEmpty())
+            return null;
+        double[] bounds = { Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE };
+        for (Entity entity : entities.values()) {
+            bounds[0] = Math.min(bounds[0], entity.x);
+            bounds[1] = Math.min(bounds[1], entity.y);
+            bounds[2] = Math.max(bounds[2], entity.x + entity.width);
+            bounds[3] = Math.max(bounds[3], entity.y + entity.height);
+        }
+        return bounds;
+    }
+
+    public int size() {
+        return entities.size();
+    }
+}
@@ -0,0 +1,26 @@
+package sql.ide.profiling;
+
+/**
+ * Steps a statement goes through, the time of each one is measured
+ */
+public enum Phase {
+    LEX("Lex"),
+    PARSE("Parse"),
+    LOAD("Load"),
+    FILTER("Filter"),
+    SORT("Sort"),
+    PROJECT("Project"),
+    SAVE("Save"),
+    /**
+     * Clauses run by the Interpreter, which loads, filters and saves by
+     * itself
+     */
+    INTERPRET("Interpret"),
+    RENDER("Render");
+
+    public final String label;
+
+    Phase(String label) {
+        this.label = label;
+    }
+}
@@ -0,0 +1,197 @@
+package sql.ide.profiling;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Collects the profile of the statement running on the current thread.
+ *
+ * The execution code marks its phases with begin() and end(); when no
+ * statement is being profiled on the thread (the highlighter, the
+ * benchmarks) they only read the clock. The work done by the threads of a
+ * parallel scan is measured as the wall time of the phase that started it,
+ * their allocations are not counted.
+ *
+ * A finished profile goes to JFR as a sql.ide.Statement event, when a
+ * recording was started, and, with -Dsqlide.profile.log=FILE, as one line
+ * of JSON appended to the file.
+ */
+public final class Profiler {
+    static final String LOG_FILE = System.getProperty("sqlide.profile.log");
+
+    private static final ThreadLocal<Running> CURRENT = new ThreadLocal<>();
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+    private static BufferedWriter log;
+
+    /**
+     * A profile and where it started
+     */
+    private static class Running {
+        final StatementProfile profile;
+        final long start;
+        final long allocatedBefore;
+
+        Running(StatementProfile profile, long start, long allocatedBefore) {
+            this.profile = profile;
+            this.start = start;
+            this.allocatedBefore = allocatedBefore;
+        }
+    }
+
+    private Profiler() {
+    }
+
+    /**
+     * Start profiling a statement on the current thread
+     *
+     * @param line line of the script where the statement starts
+     * @param statement text of the statement
+     * @return the profile, filled until finish() is called
+     */
+    public static StatementProfile start(int line, String statement) {
+        StatementProfile profile = new StatementProfile(line, statement);
+        if (profile.event != null)
+            profile.event.begin();
+        CURRENT.set(new Running(profile, System.nanoTime(), allocatedBytes()));
+        return profile;
+    }
+
+    /**
+     * Stop profiling the statement of the current thread
+     *
+     * @param error the statement failed with it, null if it did not fail
+     * @return the profile, null if none was started
+     */
+    public static StatementProfile finish(Throwable error) {
+        Running running = CURRENT.get();
+        if (running == null)
+            return null;
+        CURRENT.remove();
+        long allocated = running.allocatedBefore < 0 ? -1 : allocatedBytes() - running.allocatedBefore;
+        running.profile.finish(System.nanoTime() - running.start, allocated,
+                error == null ? null : error.getMessage());
+        if (running.profile.event != null)
+            running.profile.event.end();
+        return running.profile;
+    }
+
+    /**
+     * @return the profile of the current thread, null if none
+     */
+    public static StatementProfile current() {
+        Running running = CURRENT.get();
+        return running == null ? null : running.profile;
+    }
+
+    /**
+     * @return the time a phase starts at, to pass to end()
+     */
+    public static long begin() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Add the time since begin() to a phase of the current statement
+     *
+     * @param phase
+     * @param begin value returned by begin()
+     */
+    public static void end(Phase phase, long begin) {
+        Running running = CURRENT.get();
+        if (running != null)
+            running.profile.add(phase, System.nanoTime() - begin);
+    }
+
+    public static void rowsScanned(long rows) {
+        Running running = CURRENT.get();
+        if (running != null)
+            running.profile.addRowsScanned(rows);
+    }
+
+    public static void rowsReturned(long rows) {
+        Running running = CURRENT.get();
+        if (running != null)
+            running.profile.setRowsReturned(rows);
+    }
+
+    public static void bytesRead(long bytes) {
+        Running running = CURRENT.get();
+        if (running != null)
+            running.profile.addBytesRead(bytes);
+    }
+
+    public static void bytesWritten(long bytes) {
+        Running running = CURRENT.get();
+        if (running != null)
+            running.profile.addBytesWritten(bytes);
+    }
+
+    /**
+     * Send a finished profile to JFR and to the JSON log. Called once the
+     * rows of the statement were rendered, so the render time is included
+     *
+     * @param profile
+     */
+    public static void emit(StatementProfile profile) {
+        StatementEvent event = profile.event;
+        if (event != null && event.shouldCommit()) {
+            event.line = profile.line;
+            event.statement = profile.statement;
+            event.lex = profile.getNanos(Phase.LEX);
+            event.parse = profile.getNanos(Phase.PARSE);
+            event.load = profile.getNanos(Phase.LOAD);
+            event.filter = profile.getNanos(Phase.FILTER);
+            event.sort = profile.getNanos(Phase.SORT);
+            event.project = profile.getNanos(Phase.PROJECT);
+            event.save = profile.getNanos(Phase.SAVE);
+            event.interpret = profile.getNanos(Phase.INTERPRET);
+            event.render = profile.getNanos(Phase.RENDER);
+            event.rowsScanned = profile.getRowsScanned();
+            event.rowsReturned = profile.getRowsReturned();
+            event.bytesRead = profile.getBytesRead();
+            event.bytesWritten = profile.getBytesWritten();
+            event.allocatedBytes = profile.getAllocatedBytes();
+            event.error = profile.getError();
+            event.commit();
+        }
+        if (LOG_FILE != null)
+            writeLog(profile);
+    }
+
+    private static synchronized void writeLog(StatementProfile profile) {
+        try {
+            if (log == null)
+                log = Files.newBufferedWriter(Path.of(LOG_FILE), StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            log.write(profile.toJson());
+            log.newLine();
+            log.flush();
+        } catch (IOException e) {
+            // the profile is still shown, only the log misses it
+            e.printStackTrace();
+        }
+    }
+
+    private static long allocatedBytes() {
+        if (THREADS == null)
+            return -1;
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean))
+            return null;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported())
+            return null;
+        if (!threads.isThreadAllocatedMemoryEnabled())
+            threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+}
@@ -0,0 +1,84 @@
+package sql.ide.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event with the profile of a statement, recorded with
+ * -XX:StartFlightRecording or from JDK Mission Control
+ */
+@Name("sql.ide.Statement")
+@Label("SQL Statement")
+@Category("SQL IDE")
+@Description("A statement executed by the IDE and the time of its phases")
+// committed after the rows are rendered, the stack says nothing
+@StackTrace(false)
+class StatementEvent extends jdk.jfr.Event {
+    @Label("Line")
+    int line;
+
+    @Label("Statement")
+    String statement;
+
+    @Label("Lex")
+    @Timespan(Timespan.NANOSECONDS)
+    long lex;
+
+    @Label("Parse")
+    @Timespan(Timespan.NANOSECONDS)
+    long parse;
+
+    @Label("Load")
+    @Timespan(Timespan.NANOSECONDS)
+    long load;
+
+    @Label("Filter")
+    @Timespan(Timespan.NANOSECONDS)
+    long filter;
+
+    @Label("Sort")
+    @Timespan(Timespan.NANOSECONDS)
+    long sort;
+
+    @Label("Project")
+    @Timespan(Timespan.NANOSECONDS)
+    long project;
+
+    @Label("Save")
+    @Timespan(Timespan.NANOSECONDS)
+    long save;
+
+    @Label("Interpret")
+    @Timespan(Timespan.NANOSECONDS)
+    long interpret;
+
+    @Label("Render")
+    @Timespan(Timespan.NANOSECONDS)
+    long render;
+
+    @Label("Rows Scanned")
+    long rowsScanned;
+
+    @Label("Rows Returned")
+    long rowsReturned;
+
+    @Label("Bytes Read")
+    @DataAmount
+    long bytesRead;
+
+    @Label("Bytes Written")
+    @DataAmount
+    long bytesWritten;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocatedBytes;
+
+    @Label("Error")
+    String error;
+}
@@ -0,0 +1,174 @@
+package sql.ide.profiling;
+
+import jdk.jfr.FlightRecorder;
+
+/**
+ * What one statement cost: the time spent in every phase, the rows it read
+ * and returned, the bytes it read and wrote and the bytes its thread
+ * allocated. The phases may add up to less than the total, the rest is the
+ * glue between them.
+ */
+public class StatementProfile {
+    public final int line;
+    public final String statement;
+    private final long[] phaseNanos = new long[Phase.values().length];
+    private long totalNanos;
+    private long rowsScanned;
+    private long rowsReturned = -1;
+    private long bytesRead;
+    private long bytesWritten;
+    private long allocatedBytes = -1;
+    private String error;
+
+    // the JFR event, begun when the statement starts; null when no recording
+    // was ever started, registering the event class starts JFR and costs
+    // the batch runner most of its startup
+    final StatementEvent event = FlightRecorder.isInitialized() ? new StatementEvent() : null;
+
+    /**
+     * @param line line of the script where the statement starts
+     * @param statement text of the statement
+     */
+    public StatementProfile(int line, String statement) {
+        this.line = line;
+        this.statement = statement.strip().replaceAll("\\s+", " ");
+    }
+
+    public void add(Phase phase, long nanos) {
+        phaseNanos[phase.ordinal()] += nanos;
+    }
+
+    void addRowsScanned(long rows) {
+        rowsScanned += rows;
+    }
+
+    void setRowsReturned(long rows) {
+        rowsReturned = rows;
+    }
+
+    void addBytesRead(long bytes) {
+        bytesRead += bytes;
+    }
+
+    void addBytesWritten(long bytes) {
+        bytesWritten += bytes;
+    }
+
+    void finish(long totalNanos, long allocatedBytes, String error) {
+        this.totalNanos = totalNanos;
+        this.allocatedBytes = allocatedBytes;
+        this.error = error;
+    }
+
+    public long getNanos(Phase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    /**
+     * @return wall time of the statement, the rendering of its rows included
+     */
+    public long getTotalNanos() {
+        return totalNanos + getNanos(Phase.RENDER);
+    }
+
+    public long getRowsScanned() {
+        return rowsScanned;
+    }
+
+    /**
+     * @return rows returned, -1 for the statements that return none
+     */
+    public long getRowsReturned() {
+        return rowsReturned;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * @return bytes allocated by the executor thread, -1 if the JVM does not
+     *         measure them
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return message of the error the statement failed with, null if it did
+     *         not fail
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * @return the profile as one line of JSON
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"line\":").append(line);
+        json.append(",\"statement\":");
+        quote(json, statement);
+        json.append(",\"totalMillis\":").append(millis(getTotalNanos()));
+        json.append(",\"phases\":{");
+        for (Phase phase : Phase.values()) {
+            if (phase.ordinal() > 0)
+                json.append(',');
+            json.append('"').append(phase.name().toLowerCase()).append("\":").append(millis(getNanos(phase)));
+        }
+        json.append("},\"rowsScanned\":").append(rowsScanned);
+        json.append(",\"rowsReturned\":").append(rowsReturned);
+        json.append(",\"bytesRead\":").append(bytesRead);
+        json.append(",\"bytesWritten\":").append(bytesWritten);
+        json.append(",\"allocatedBytes\":").append(allocatedBytes);
+        if (error != null) {
+            json.append(",\"error\":");
+            quote(json, error);
+        }
+        return json.append('}').toString();
+    }
+
+    static double millis(long nanos) {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
+
+    private static void quote(StringBuilder json, String text) {
+        json.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20)
+                        json.append(String.format("\\u%04x", (int) c));
+                    else
+                        json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    @Override
+    public String toString() {
+        return "[line " + line + "] " + millis(getTotalNanos()) + " ms " + statement;
+    }
+}
@@ -0,0 +1,545 @@
+package sql.ide.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.BooleanSupplier;
+
+import edu.upvictoria.fpoo.TokenType;
+import sql.ide.storage.Column;
+import sql.ide.storage.ColumnarTable;
+
+/**
+ * Filter, sort and aggregate kernels over a ColumnarTable.
+ *
+ * The common shapes (a column compared to a literal, AND, OR, NOT, IS NULL,
+ * ORDER BY columns, aggregates of a column) run as loops over the primitive
+ * arrays; everything else runs as the closures of an ExprCompiler, compiled
+ * once per query, so the results and the errors are the ones of the row
+ * oriented engine. The
+ * filter runs on the ParallelScan pool when the table is big.
+ */
+class ColumnarOperators {
+    // rows evaluated at a time by a filter that stops at its LIMIT
+    private static final int LIMIT_CHUNK = 1024;
+    // rows between two checks of the cancellation in a row loop
+    private static final int CANCEL_CHECK = 4096;
+
+    private ColumnarOperators() {
+    }
+
+    /**
+     * @param table
+     * @return indexes of all the rows
+     */
+    static int[] all(ColumnarTable table) {
+        int[] rows = new int[table.size()];
+        for (int i = 0; i < rows.length; i++)
+            rows[i] = i;
+        return rows;
+    }
+
+    /****************************************************************/
+    /* WHERE */
+    /****************************************************************/
+
+    /**
+     * Run the predicate over the table, in parallel on big tables
+     *
+     * @param table
+     * @param where
+     * @param compiler compiler of the table
+     * @param cancelled stops the scan between two chunks
+     * @return indexes of the rows the predicate selects, in table order
+     */
+    static int[] filter(ColumnarTable table, Expr where, ExprCompiler compiler, BooleanSupplier cancelled) {
+        if (table.size() == 0)
+            return new int[0];
+        List<int[]> chunks = ParallelScan.map(table.size(), cancelled,
+                (from, to) -> filter(table, where, compiler, from, to));
+        if (chunks.size() == 1)
+            return chunks.get(0);
+
+        int count = 0;
+        for (int[] chunk : chunks)
+            count += chunk.length;
+        int[] rows = new int[count];
+        count = 0;
+        for (int[] chunk : chunks) {
+            System.arraycopy(chunk, 0, rows, count, chunk.length);
+            count += chunk.length;
+        }
+        return rows;
+    }
+
+    /**
+     * Run the predicate until it selects limit rows, for a LIMIT without
+     * ORDER BY: the rest of the table is never evaluated
+     *
+     * @param table
+     * @param where
+     * @param limit
+     * @param compiler compiler of the table
+     * @param cancelled stops the scan between two chunks
+     * @return indexes of the first limit rows the predicate selects
+     */
+    static int[] filter(ColumnarTable table, Expr where, int limit, ExprCompiler compiler,
+            BooleanSupplier cancelled) {
+        int[] rows = new int[0];
+        for (int from = 0; from < table.size() && rows.length < limit; from += LIMIT_CHUNK) {
+            ParallelScan.checkCancelled(cancelled);
+            int[] chunk = filter(table, where, compiler, from, Math.min(table.size(), from + LIMIT_CHUNK));
+            int length = Math.min(limit, rows.length + chunk.length);
+            int previous = rows.length;
+            rows = Arrays.copyOf(rows, length);
+            System.arraycopy(chunk, 0, rows, previous, length - previous);
+        }
+        return rows;
+    }
+
+    /**
+     * Run the predicate over the rows [from, to)
+     */
+    private static int[] filter(ColumnarTable table, Expr where, ExprCompiler compiler, int from, int to) {
+        boolean[] mask = kernel(table, where, compiler, from, to);
+        if (mask == null) {
+            ExprCompiler.Test predicate = compiler.predicate(where);
+            mask = new boolean[to - from];
+            for (int i = 0; i < mask.length; i++)
+                mask[i] = predicate.test(from + i);
+        }
+
+        int count = 0;
+        for (boolean selected : mask) {
+            if (selected)
+                count++;
+        }
+        int[] rows = new int[count];
+        count = 0;
+        for (int i = 0; i < mask.length; i++) {
+            if (mask[i])
+                rows[count++] = from + i;
+        }
+        return rows;
+    }
+
+    /**
+     * Mask of an operand of AND and OR, they only keep the true values
+     */
+    private static boolean[] operand(ColumnarTable table, Expr expression, ExprCompiler compiler, int from, int to) {
+        boolean[] mask = kernel(table, expression, compiler, from, to);
+        if (mask == null) {
+            ExprCompiler.Test truth = compiler.truth(expression);
+            mask = new boolean[to - from];
+            for (int i = 0; i < mask.length; i++)
+                mask[i] = truth.test(from + i);
+        }
+        return mask;
+    }
+
+    /**
+     * Evaluate a boolean expression over the rows [from, to) at once
+     *
+     * @return one value per row, or null when the expression has no kernel
+     */
+    private static boolean[] kernel(ColumnarTable table, Expr expression, ExprCompiler compiler, int from, int to) {
+        if (expression instanceof Expr.Grouping)
+            return kernel(table, ((Expr.Grouping) expression).expression, compiler, from, to);
+
+        if (expression instanceof Expr.Literal) {
+            Object value = ((Expr.Literal) expression).value;
+            if (!(value instanceof Boolean))
+                return null;
+            boolean[] mask = new boolean[to - from];
+            Arrays.fill(mask, (Boolean) value);
+            return mask;
+        }
+
+        if (expression instanceof Expr.Unary) {
+            Expr.Unary unary = (Expr.Unary) expression;
+            if (unary.operator == TokenType.IS && unary.right instanceof Expr.Column) {
+                Column column = column(table, (Expr.Column) unary.right);
+                boolean[] mask = new boolean[to - from];
+                for (int i = 0; i < mask.length; i++)
+                    mask[i] = column.isNull(from + i);
+                return mask;
+            }
+            if (unary.operator == TokenType.NOT || unary.operator == TokenType.BANG) {
+                // only the kernels are sure to return booleans, NOT fails on anything else
+                boolean[] mask = kernel(table, unary.right, compiler, from, to);
+                if (mask != null) {
+                    for (int i = 0; i < mask.length; i++)
+                        mask[i] = !mask[i];
+                }
+                return mask;
+            }
+            return null;
+        }
+
+        if (!(expression instanceof Expr.Binary))
+            return null;
+        Expr.Binary binary = (Expr.Binary) expression;
+        switch (binary.operator) {
+            case AND:
+            case OR: {
+                boolean[] left = operand(table, binary.left, compiler, from, to);
+                boolean[] right = operand(table, binary.right, compiler, from, to);
+                for (int i = 0; i < left.length; i++)
+                    left[i] = binary.operator == TokenType.AND ? left[i] && right[i] : left[i] || right[i];
+                return left;
+            }
+            default:
+                break;
+        }
+
+        // a column against a literal, in any order
+        TokenType operator = binary.operator;
+        Expr.Column columnExpr;
+        Expr.Literal literal;
+        if (binary.left instanceof Expr.Column && binary.right instanceof Expr.Literal) {
+            columnExpr = (Expr.Column) binary.left;
+            literal = (Expr.Literal) binary.right;
+        } else if (binary.left instanceof Expr.Literal && binary.right instanceof Expr.Column) {
+            columnExpr = (Expr.Column) binary.right;
+            literal = (Expr.Literal) binary.left;
+            operator = flip(operator);
+        } else {
+            return null;
+        }
+
+        switch (operator) {
+            case EQUAL:
+            case EQUAL_EQUAL:
+                return equal(column(table, columnExpr), literal.value, false, from, to);
+            case BANG_EQUAL:
+                return equal(column(table, columnExpr), literal.value, true, from, to);
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL:
+                return compare(column(table, columnExpr), operator, literal.value, from, to);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Operator with the operands swapped, 5 < AGE is AGE > 5
+     */
+    static TokenType flip(TokenType operator) {
+        switch (operator) {
+            case GREATER:
+                return TokenType.LESS;
+            case GREATER_EQUAL:
+                return TokenType.LESS_EQUAL;
+            case LESS:
+                return TokenType.GREATER;
+            case LESS_EQUAL:
+                return TokenType.GREATER_EQUAL;
+            default:
+                return operator;
+        }
+    }
+
+    private static Column column(ColumnarTable table, Expr.Column expression) {
+        Column column = table.column(expression.name);
+        if (column == null)
+            throw new Error("The column " + expression.name + " does not exist");
+        return column;
+    }
+
+    /**
+     * column = literal, the same as Objects.equals on the boxed values
+     */
+    private static boolean[] equal(Column column, Object value, boolean negate, int from, int to) {
+        boolean[] mask = new boolean[to - from];
+        if (column instanceof Column.Doubles && value instanceof Double) {
+            double[] values = ((Column.Doubles) column).values;
+            long bits = Double.doubleToLongBits((Double) value);
+            for (int i = 0; i < mask.length; i++)
+                mask[i] = (Double.doubleToLongBits(values[from + i]) == bits && !column.isNull(from + i)) != negate;
+        } else if (column instanceof Column.Strings && value instanceof String) {
+            int[] codes = ((Column.Strings) column).codes;
+            int code = ((Column.Strings) column).codeOf((String) value);
+            for (int i = 0; i < mask.length; i++)
+                mask[i] = (codes[from + i] == code && code != -1 && !column.isNull(from + i)) != negate;
+        } else {
+            for (int i = 0; i < mask.length; i++)
+                mask[i] = Objects.equals(column.get(from + i), value) != negate;
+        }
+        return mask;
+    }
+
+    /**
+     * column > literal and the like, only for numbers
+     *
+     * @return null when the operands are not numbers, so the Evaluator
+     *         reports the error
+     */
+    private static boolean[] compare(Column column, TokenType operator, Object value, int from, int to) {
+        if (!(column instanceof Column.Doubles) || !(value instanceof Double))
+            return null;
+        if (column.hasNulls())
+            throw new Error("Cannot use null in a comparation");
+
+        double[] values = ((Column.Doubles) column).values;
+        double literal = (Double) value;
+        boolean[] mask = new boolean[to - from];
+        switch (operator) {
+            case GREATER:
+                for (int i = 0; i < mask.length; i++)
+                    mask[i] = values[from + i] > literal;
+                break;
+            case GREATER_EQUAL:
+                for (int i = 0; i < mask.length; i++)
+                    mask[i] = values[from + i] >= literal;
+                break;
+            case LESS:
+                for (int i = 0; i < mask.length; i++)
+                    mask[i] = values[from + i] < literal;
+                break;
+            default:
+                for (int i = 0; i < mask.length; i++)
+                    mask[i] = values[from + i] <= literal;
+                break;
+        }
+        return mask;
+    }
+
+    /****************************************************************/
+    /* ORDER BY */
+    /****************************************************************/
+
+    private interface RowComparator {
+        int compare(int first, int second);
+    }
+
+    /**
+     * Sort the rows by the keys, stable like List.sort, the null values
+     * always go at the end
+     *
+     * @param table
+     * @param rows indexes of the rows, sorted in place
+     * @param keys
+     * @param compiler
+     * @param cancelled stops the sort
+     */
+    static void sort(ColumnarTable table, int[] rows, List<SelectQuery.OrderKey> keys, ExprCompiler compiler,
+            BooleanSupplier cancelled) {
+        if (rows.length < 2)
+            return;
+        mergeSort(rows, rows.clone(), 0, rows.length, comparator(table, rows, keys, compiler, cancelled),
+                cancelled);
+    }
+
+    /**
+     * The first rows by the keys, the same ones sort would leave at the
+     * start, with a heap of limit rows instead of sorting them all
+     *
+     * @param table
+     * @param rows indexes of the rows, in table order
+     * @param keys
+     * @param compiler
+     * @param limit
+     * @param cancelled stops the sort
+     * @return the first limit rows, sorted
+     */
+    static int[] topN(ColumnarTable table, int[] rows, List<SelectQuery.OrderKey> keys, ExprCompiler compiler,
+            int limit, BooleanSupplier cancelled) {
+        if (rows.length < 2)
+            return rows;
+        RowComparator comparator = comparator(table, rows, keys, compiler, cancelled);
+        TopN<Integer> top = new TopN<>(limit, comparator::compare);
+        for (int i = 0; i < rows.length; i++) {
+            if (i % CANCEL_CHECK == 0)
+                ParallelScan.checkCancelled(cancelled);
+            top.add(rows[i]);
+        }
+        List<Integer> sorted = top.sorted();
+        int[] result = new int[sorted.size()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = sorted.get(i);
+        return result;
+    }
+
+    private static RowComparator comparator(ColumnarTable table, int[] rows, List<SelectQuery.OrderKey> keys,
+            ExprCompiler compiler, BooleanSupplier cancelled) {
+        List<RowComparator> comparators = new ArrayList<>();
+        for (SelectQuery.OrderKey key : keys)
+            comparators.add(comparator(table, rows, key, compiler, cancelled));
+        return (first, second) -> {
+            for (RowComparator keyComparator : comparators) {
+                int comparison = keyComparator.compare(first, second);
+                if (comparison != 0)
+                    return comparison;
+            }
+            return 0;
+        };
+    }
+
+    private static RowComparator comparator(ColumnarTable table, int[] rows, SelectQuery.OrderKey key,
+            ExprCompiler compiler, BooleanSupplier cancelled) {
+        int sign = key.descending ? -1 : 1;
+        Column column = key.expression instanceof Expr.Column ? table.column(((Expr.Column) key.expression).name)
+                : null;
+
+        if (column instanceof Column.Doubles) {
+            double[] values = ((Column.Doubles) column).values;
+            return (first, second) -> {
+                int nulls = compareNulls(column, first, second);
+                return nulls != 2 ? nulls : sign * Double.compare(values[first], values[second]);
+            };
+        }
+        if (column instanceof Column.Longs) {
+            long[] values = ((Column.Longs) column).values;
+            return (first, second) -> {
+                int nulls = compareNulls(column, first, second);
+                return nulls != 2 ? nulls : sign * Long.compare(values[first], values[second]);
+            };
+        }
+        if (column instanceof Column.Strings) {
+            int[] codes = ((Column.Strings) column).codes;
+            int[] ranks = ((Column.Strings) column).ranks();
+            return (first, second) -> {
+                int nulls = compareNulls(column, first, second);
+                return nulls != 2 ? nulls : sign * Integer.compare(ranks[codes[first]], ranks[codes[second]]);
+            };
+        }
+
+        // any other expression is evaluated once per row
+        ExprCompiler.Program program = compiler.compile(key.expression);
+        Object[] values = new Object[table.size()];
+        for (int i = 0; i < rows.length; i++) {
+            if (i % CANCEL_CHECK == 0)
+                ParallelScan.checkCancelled(cancelled);
+            values[rows[i]] = program.evaluate(rows[i]);
+        }
+        return (first, second) -> SelectExecutor.compareValues(values[first], values[second], key.descending);
+    }
+
+    /**
+     * @return the comparison when a value is null, 2 when none is
+     */
+    private static int compareNulls(Column column, int first, int second) {
+        boolean firstNull = column.isNull(first);
+        boolean secondNull = column.isNull(second);
+        if (firstNull || secondNull)
+            return firstNull == secondNull ? 0 : firstNull ? 1 : -1;
+        return 2;
+    }
+
+    /**
+     * Stable merge sort of rows[from, to), buffer holds the same values
+     */
+    private static void mergeSort(int[] rows, int[] buffer, int from, int to, RowComparator comparator,
+            BooleanSupplier cancelled) {
+        if (to - from <= 16) {
+            for (int i = from + 1; i < to; i++) {
+                int row = rows[i];
+                int j = i - 1;
+                while (j >= from && comparator.compare(rows[j], row) > 0) {
+                    rows[j + 1] = rows[j];
+                    j--;
+                }
+                rows[j + 1] = row;
+            }
+            return;
+        }
+        if (to - from >= CANCEL_CHECK)
+            ParallelScan.checkCancelled(cancelled);
+        int middle = (from + to) >>> 1;
+        // sort the halves into the buffer, then merge them back into rows
+        mergeSort(buffer, rows, from, middle, comparator, cancelled);
+        mergeSort(buffer, rows, middle, to, comparator, cancelled);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || left < middle && comparator.compare(buffer[left], buffer[right]) <= 0)
+                rows[i] = buffer[left++];
+            else
+                rows[i] = buffer[right++];
+        }
+    }
+
+    /****************************************************************/
+    /* Aggregates */
+    /****************************************************************/
+
+    /**
+     * Evaluate an aggregate function over the selected rows
+     *
+     * @param table
+     * @param rows indexes of the rows
+     * @param call
+     * @param compiler
+     * @return
+     */
+    static Object aggregate(ColumnarTable table, int[] rows, Expr.FunctionCall call, ExprCompiler compiler) {
+        Expr argument = call.arguments.size() == 1 ? call.arguments.get(0) : null;
+        Column column = argument instanceof Expr.Column ? table.column(((Expr.Column) argument).name) : null;
+
+        if (call.name == TokenType.COUNT && column != null) {
+            int count = 0;
+            for (int row : rows) {
+                if (!column.isNull(row))
+                    count++;
+            }
+            return count;
+        }
+
+        if (column instanceof Column.Doubles) {
+            double[] values = ((Column.Doubles) column).values;
+            switch (call.name) {
+                case SUM:
+                case AVG: {
+                    double sum = 0;
+                    for (int row : rows) {
+                        if (column.isNull(row))
+                            throw new Error(call.lexeme + " function expects a list of numbers");
+                        sum += values[row];
+                    }
+                    return call.name == TokenType.SUM ? sum : sum / rows.length;
+                }
+                case MIN:
+                case MAX: {
+                    int sign = call.name == TokenType.MIN ? 1 : -1;
+                    int best = -1;
+                    for (int row : rows) {
+                        if (!column.isNull(row)
+                                && (best == -1 || sign * Double.compare(values[row], values[best]) < 0))
+                            best = row;
+                    }
+                    return best == -1 ? null : values[best];
+                }
+                default:
+                    break;
+            }
+        }
+
+        if (column instanceof Column.Strings && (call.name == TokenType.MIN || call.name == TokenType.MAX)) {
+            Column.Strings strings = (Column.Strings) column;
+            int[] ranks = strings.ranks();
+            int sign = call.name == TokenType.MIN ? 1 : -1;
+            int best = -1;
+            for (int row : rows) {
+                if (!column.isNull(row)
+                        && (best == -1 || sign * Integer.compare(ranks[strings.codes[row]],
+                                ranks[strings.codes[best]]) < 0))
+                    best = row;
+            }
+            return best == -1 ? null : strings.dictionary[strings.codes[best]];
+        }
+
+        if (argument == null)
+            throw new Error(call.lexeme + " function expects exactly one argument");
+        if (call.name == TokenType.COUNT && argument instanceof Expr.Literal
+                && ((Expr.Literal) argument).value instanceof Character)
+            return rows.length; // COUNT(*)
+        ExprCompiler.Program program = compiler.compile(argument);
+        List<Object> values = new ArrayList<>(rows.length);
+        for (int row : rows)
+            values.add(program.evaluate(row));
+        return Evaluator.aggregate(call.name, call.lexeme, values);
+    }
+}
@@ -0,0 +1,52 @@
+package sql.ide.query;
+
+import java.util.HashMap;
+
+/**
+ * INSERT, UPDATE or DELETE statement understood by the IDE, so consecutive
+ * statements against the same table can be applied to one copy of it
+ */
+public class DmlStatement {
+    public enum Kind {
+        INSERT, UPDATE, DELETE
+    }
+
+    public final Kind kind;
+    public final String table;
+    /**
+     * Values of the INSERT or assignments of the UPDATE, a HashMap like the
+     * one of the Clause so they are evaluated in the same order; empty for
+     * DELETE
+     */
+    public final HashMap<String, Expr> values;
+    /**
+     * null for INSERT
+     */
+    public final Expr where;
+
+    DmlStatement(Kind kind, String table, HashMap<String, Expr> values, Expr where) {
+        this.kind = kind;
+        this.table = table;
+        this.values = values;
+        this.where = where;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        switch (kind) {
+            case INSERT:
+                builder.append("INSERT INTO ").append(table).append(' ').append(values.keySet());
+                break;
+            case UPDATE:
+                builder.append("UPDATE ").append(table).append(" SET ").append(values);
+                break;
+            case DELETE:
+                builder.append("DELETE FROM ").append(table);
+                break;
+        }
+        if (where != null)
+            builder.append(" WHERE ").append(where);
+        return builder.toString();
+    }
+}
@@ -0,0 +1,384 @@
+package sql.ide.query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import edu.upvictoria.fpoo.TokenType;
+
+/**
+ * Evaluate expressions over the rows of a table, with the semantics of the
+ * Interpreter of the database manager except for:
+ *
+ * - >= is inclusive, the Interpreter compares it like >
+ * - <= fails on null, like > and <, where the Interpreter returns null
+ * - AND and OR take a null or a value that is not a boolean as false, the
+ *   Interpreter fails on them
+ * - a WHERE that is null does not select the row, the Interpreter fails
+ * - NOT and IS NULL, which the Interpreter does not have
+ *
+ * The ExprCompiler and the queries of the IDE inherit them; the DmlBatch
+ * leaves the WHERE clauses they change to the Interpreter.
+ * Errors are thrown as java.lang.Error, like the ErrorHandler does.
+ */
+public class Evaluator implements Expr.Visitor<Object> {
+    private final Set<String> columnNames;
+    private Map<String, Object> currentRow;
+    private List<? extends Map<String, Object>> rows;
+
+    /**
+     * @param columnNames columns of the table the rows come from
+     */
+    public Evaluator(Collection<String> columnNames) {
+        this.columnNames = new HashSet<>(columnNames);
+    }
+
+    /**
+     * Evaluate a row level expression
+     *
+     * @param expression
+     * @param row
+     * @return
+     */
+    public Object evaluate(Expr expression, Map<String, Object> row) {
+        currentRow = row;
+        return expression.accept(this);
+    }
+
+    /**
+     * Evaluate a predicate, only a true result selects the row
+     *
+     * @param expression
+     * @param row
+     * @return
+     */
+    public boolean test(Expr expression, Map<String, Object> row) {
+        Object value = evaluate(expression, row);
+        if (value != null && !(value instanceof Boolean))
+            throw new Error("The WHERE clause must return a list of booleans");
+        return Boolean.TRUE.equals(value);
+    }
+
+    /**
+     * Evaluate an aggregate function over all the rows
+     *
+     * @param call
+     * @param rows
+     * @return
+     */
+    public Object aggregate(Expr.FunctionCall call, List<? extends Map<String, Object>> rows) {
+        this.rows = rows;
+        try {
+            return call.accept(this);
+        } finally {
+            this.rows = null;
+        }
+    }
+
+    @Override
+    public Object visitBinary(Expr.Binary expr) {
+        Object left = expr.left.accept(this);
+        Object right = expr.right.accept(this);
+        return binary(expr.operator, left, right);
+    }
+
+    /**
+     * Apply a binary operator to two values
+     */
+    static Object binary(TokenType operator, Object left, Object right) {
+        switch (operator) {
+            case PLUS:
+                if (left == null || right == null)
+                    return null;
+                checkNumberOperands(left, right);
+                return (Double) left + (Double) right;
+            case MINUS:
+                if (left == null || right == null)
+                    return null;
+                checkNumberOperands(left, right);
+                return (Double) left - (Double) right;
+            case SLASH:
+                if (left == null || right == null)
+                    return null;
+                checkNumberOperands(left, right);
+                return (Double) left / (Double) right;
+            case DIV: {
+                if (left == null || right == null)
+                    return null;
+                checkNumberOperands(left, right);
+                Double result = (Double) left / (Double) right;
+                if (result % 1 != 0)
+                    throw new Error("DIV can only result in an integer");
+                return result;
+            }
+            case MOD:
+            case PORCENTAJE:
+                if (left == null || right == null)
+                    return null;
+                checkNumberOperands(left, right);
+                return (Double) left % (Double) right;
+            case STAR:
+                if (left == null || right == null)
+                    return null;
+                checkNumberOperands(left, right);
+                return (Double) left * (Double) right;
+            case GREATER:
+                checkComparable(left, right);
+                return (Double) left > (Double) right;
+            case GREATER_EQUAL:
+                checkComparable(left, right);
+                return (Double) left >= (Double) right;
+            case LESS:
+                checkComparable(left, right);
+                return (Double) left < (Double) right;
+            case LESS_EQUAL:
+                checkComparable(left, right);
+                return (Double) left <= (Double) right;
+            case BANG_EQUAL:
+                return !Objects.equals(left, right);
+            case EQUAL_EQUAL:
+            case EQUAL:
+                return Objects.equals(left, right);
+            case AND:
+                return Boolean.TRUE.equals(left) && Boolean.TRUE.equals(right);
+            case OR:
+                return Boolean.TRUE.equals(left) || Boolean.TRUE.equals(right);
+            default:
+                throw new Error("Unknown operator");
+        }
+    }
+
+    private static void checkComparable(Object left, Object right) {
+        if (left == null || right == null)
+            throw new Error("Cannot use null in a comparation");
+        checkNumberOperands(left, right);
+    }
+
+    private static void checkNumberOperands(Object left, Object right) {
+        if (left instanceof Double && right instanceof Double)
+            return;
+        throw new Error("Operands [" + left + ", " + right + "] must be numbers");
+    }
+
+    /**
+     * Tell whether a WHERE clause can not fail on any row, so the rows a
+     * planner leaves out do not hide an error: it only compares values with
+     * = and !=, numbers with > and <, and joins them with AND, OR, NOT and
+     * IS NULL. Both sides of AND and OR are always evaluated.
+     *
+     * @param where
+     * @param hasColumn true for the columns of the table
+     * @param onlyNumbers true for the columns with a number in every row
+     * @return false when it may fail or it can not tell
+     */
+    static boolean cannotFail(Expr where, Predicate<String> hasColumn, Predicate<String> onlyNumbers) {
+        while (where instanceof Expr.Grouping)
+            where = ((Expr.Grouping) where).expression;
+        if (where instanceof Expr.Literal)
+            return ((Expr.Literal) where).value instanceof Boolean;
+        if (where instanceof Expr.Unary) {
+            Expr.Unary unary = (Expr.Unary) where;
+            if (unary.operator == TokenType.IS)
+                return isValue(unary.right, hasColumn, onlyNumbers);
+            if (unary.operator == TokenType.NOT || unary.operator == TokenType.BANG)
+                return cannotFail(unary.right, hasColumn, onlyNumbers);
+            return false;
+        }
+        if (!(where instanceof Expr.Binary))
+            return false;
+        Expr.Binary binary = (Expr.Binary) where;
+        switch (binary.operator) {
+            case AND:
+            case OR:
+                return cannotFail(binary.left, hasColumn, onlyNumbers)
+                        && cannotFail(binary.right, hasColumn, onlyNumbers);
+            case EQUAL:
+            case EQUAL_EQUAL:
+            case BANG_EQUAL:
+                return isValue(binary.left, hasColumn, onlyNumbers) && isValue(binary.right, hasColumn, onlyNumbers);
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL:
+                return isNumber(binary.left, hasColumn, onlyNumbers) && isNumber(binary.right, hasColumn, onlyNumbers);
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isValue(Expr expression, Predicate<String> hasColumn, Predicate<String> onlyNumbers) {
+        while (expression instanceof Expr.Grouping)
+            expression = ((Expr.Grouping) expression).expression;
+        if (expression instanceof Expr.Literal)
+            return true;
+        if (expression instanceof Expr.Column)
+            return hasColumn.test(((Expr.Column) expression).name);
+        return cannotFail(expression, hasColumn, onlyNumbers);
+    }
+
+    private static boolean isNumber(Expr expression, Predicate<String> hasColumn, Predicate<String> onlyNumbers) {
+        while (expression instanceof Expr.Grouping)
+            expression = ((Expr.Grouping) expression).expression;
+        if (expression instanceof Expr.Literal)
+            return ((Expr.Literal) expression).value instanceof Double;
+        if (expression instanceof Expr.Column) {
+            String name = ((Expr.Column) expression).name;
+            return hasColumn.test(name) && onlyNumbers.test(name);
+        }
+        return false;
+    }
+
+    @Override
+    public Object visitUnary(Expr.Unary expr) {
+        Object right = expr.right.accept(this);
+        return unary(expr.operator, right);
+    }
+
+    /**
+     * Apply a unary operator to a value
+     */
+    static Object unary(TokenType operator, Object right) {
+        switch (operator) {
+            case MINUS:
+                if (!(right instanceof Double))
+                    throw new Error("When using - the value must be a number");
+                return -(Double) right;
+            case BANG:
+            case NOT:
+                if (!(right instanceof Boolean))
+                    throw new Error("When using ! the value must be a boolean");
+                return !(Boolean) right;
+            case IS:
+                return right == null;
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public Object visitLiteral(Expr.Literal expr) {
+        return expr.value;
+    }
+
+    @Override
+    public Object visitColumn(Expr.Column expr) {
+        if (!columnNames.contains(expr.name))
+            throw new Error("The column " + expr.name + " does not exist");
+        return currentRow.get(expr.name);
+    }
+
+    @Override
+    public Object visitGrouping(Expr.Grouping expr) {
+        return expr.expression.accept(this);
+    }
+
+    @Override
+    public Object visitFunctionCall(Expr.FunctionCall expr) {
+        if (expr.isAggregate())
+            return aggregateCall(expr);
+        if (expr.name == TokenType.RAND)
+            return Math.random();
+        if (expr.arguments.size() != 1)
+            throw new Error("[" + expr.lexeme + "] " + expr.lexeme + " function expects exactly one argument");
+        return scalar(expr.name, expr.lexeme, expr.arguments.get(0).accept(this));
+    }
+
+    /**
+     * Apply a one argument function to a value
+     */
+    static Object scalar(TokenType name, String lexeme, Object value) {
+        switch (name) {
+            case UCASE:
+                return string(lexeme, value).toUpperCase();
+            case LCASE:
+                return string(lexeme, value).toLowerCase();
+            case CAPITALIZE: {
+                String text = string(lexeme, value);
+                return text.isEmpty() ? text : text.substring(0, 1).toUpperCase() + text.substring(1);
+            }
+            case FLOOR:
+                return Math.floor(number(lexeme, value));
+            case CEIL:
+                return Math.ceil(number(lexeme, value));
+            case ROUND:
+                return Math.round(number(lexeme, value));
+            default:
+                throw new Error("[" + lexeme + "] Function does not exist");
+        }
+    }
+
+    private static String string(String function, Object value) {
+        if (!(value instanceof String))
+            throw new Error(function + " function expects a string argument");
+        return (String) value;
+    }
+
+    private static Double number(String function, Object value) {
+        if (!(value instanceof Double))
+            throw new Error(function + " function expects a numeric argument");
+        return (Double) value;
+    }
+
+    /**
+     * COUNT, MIN, MAX, SUM and AVG over the rows being aggregated
+     */
+    private Object aggregateCall(Expr.FunctionCall expr) {
+        if (rows == null)
+            throw new Error(expr.lexeme + " function can only be used in the select list");
+        if (expr.arguments.size() != 1)
+            throw new Error(expr.lexeme + " function expects exactly one argument");
+
+        Expr argument = expr.arguments.get(0);
+        if (expr.name == TokenType.COUNT && argument instanceof Expr.Literal
+                && ((Expr.Literal) argument).value instanceof Character)
+            return rows.size(); // COUNT(*)
+
+        List<Object> values = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows)
+            values.add(evaluate(argument, row));
+        return aggregate(expr.name, expr.lexeme, values);
+    }
+
+    /**
+     * Reduce the values of a column with an aggregate function
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    static Object aggregate(TokenType name, String lexeme, List<Object> values) {
+        switch (name) {
+            case COUNT: {
+                int count = 0;
+                for (Object value : values) {
+                    if (value != null)
+                        count++;
+                }
+                return count;
+            }
+            case MIN:
+            case MAX: {
+                values.removeIf(Objects::isNull);
+                if (values.isEmpty())
+                    return null;
+                List<Comparable> comparables = (List<Comparable>) (List) values;
+                return name == TokenType.MIN ? Collections.min(comparables) : Collections.max(comparables);
+            }
+            case SUM:
+            case AVG: {
+                double sum = 0;
+                for (Object value : values) {
+                    if (!(value instanceof Double))
+                        throw new Error(lexeme + " function expects a list of numbers");
+                    sum += (Double) value;
+                }
+                return name == TokenType.SUM ? sum : sum / values.size();
+            }
+            default:
+                throw new Error("[" + lexeme + "] Function does not exist");
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package sql.ide.query;
+
+import java.util.List;
+
+import edu.upvictoria.fpoo.TokenType;
+
+/**
+ * Expression tree used by the query engine of the IDE.
+ *
+ * It mirrors edu.upvictoria.fpoo.Expression (which is not visible outside of
+ * the database manager), toString prints the same text as the AstPrinter so
+ * the result columns keep the names the interpreter gives them.
+ */
+public abstract class Expr {
+
+    public abstract <R> R accept(Visitor<R> visitor);
+
+    public interface Visitor<R> {
+        R visitBinary(Binary expr);
+
+        R visitUnary(Unary expr);
+
+        R visitLiteral(Literal expr);
+
+        R visitColumn(Column expr);
+
+        R visitFunctionCall(FunctionCall expr);
+
+        R visitGrouping(Grouping expr);
+    }
+
+    /**
+     * left operator right
+     */
+    public static class Binary extends Expr {
+        public final Expr left;
+        public final TokenType operator;
+        public final String lexeme;
+        public final Expr right;
+
+        public Binary(Expr left, TokenType operator, String lexeme, Expr right) {
+            this.left = left;
+            this.operator = operator;
+            this.lexeme = lexeme;
+            this.right = right;
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitBinary(this);
+        }
+
+        @Override
+        public String toString() {
+            return "(" + lexeme + " " + left + " " + right + ")";
+        }
+    }
+
+    /**
+     * operator right
+     */
+    public static class Unary extends Expr {
+        public final TokenType operator;
+        public final String lexeme;
+        public final Expr right;
+
+        public Unary(TokenType operator, String lexeme, Expr right) {
+            this.operator = operator;
+            this.lexeme = lexeme;
+            this.right = right;
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitUnary(this);
+        }
+
+        @Override
+        public String toString() {
+            return "(" + lexeme + " " + right + ")";
+        }
+    }
+
+    /**
+     * Constant value: Double, String, Boolean or null
+     */
+    public static class Literal extends Expr {
+        public final Object value;
+
+        public Literal(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitLiteral(this);
+        }
+
+        @Override
+        public String toString() {
+            return value == null ? "nil" : value.toString();
+        }
+    }
+
+    /**
+     * Reference to a column of the current row
+     */
+    public static class Column extends Expr {
+        public final String name;
+
+        public Column(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitColumn(this);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * name(arguments)
+     */
+    public static class FunctionCall extends Expr {
+        public final TokenType name;
+        public final String lexeme;
+        public final List<Expr> arguments;
+
+        public FunctionCall(TokenType name, String lexeme, List<Expr> arguments) {
+            this.name = name;
+            this.lexeme = lexeme;
+            this.arguments = arguments;
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitFunctionCall(this);
+        }
+
+        /**
+         * @return true for COUNT, MIN, MAX, SUM and AVG
+         */
+        public boolean isAggregate() {
+            return name == TokenType.COUNT || name == TokenType.MIN || name == TokenType.MAX
+                    || name == TokenType.SUM || name == TokenType.AVG;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append(lexeme).append("(");
+            for (int i = 0; i < arguments.size(); i++) {
+                builder.append(arguments.get(i));
+                if (i != arguments.size() - 1)
+                    builder.append(", ");
+            }
+            return builder.append(")").toString();
+        }
+    }
+
+    /**
+     * ( expression )
+     */
+    public static class Grouping extends Expr {
+        public final Expr expression;
+
+        public Grouping(Expr expression) {
+            this.expression = expression;
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitGrouping(this);
+        }
+
+        @Override
+        public String toString() {
+            return "(group " + expression + ")";
+        }
+    }
+}
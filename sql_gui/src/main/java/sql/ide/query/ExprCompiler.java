@@ -0,0 +1,544 @@
+package sql.ide.query;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import edu.upvictoria.fpoo.TokenType;
+import sql.ide.storage.Column;
+import sql.ide.storage.ColumnarTable;
+
+/**
+ * Compiles an Expr once per query into a tree of closures, so the rows are
+ * evaluated without walking the tree with the Evaluator: the columns are
+ * resolved up front to the arrays or the keys they are read from, the
+ * arithmetic and the comparisons of numbers run on doubles without boxing
+ * nor type checks when the types of their operands are known, the
+ * predicates return booleans, and the parts without columns are folded into
+ * constants.
+ *
+ * The results and the errors are the ones of the Evaluator. An error that
+ * depends on the rows (a missing column, an operand of the wrong type, a
+ * null in a comparison) is still thrown when a row is evaluated, never at
+ * compile time, so a query over an empty table does not fail, and the
+ * operands of AND and OR that may fail are evaluated even when the other
+ * one decides the result. The programs over a ColumnarTable only read its
+ * arrays, the threads of a ParallelScan can share them.
+ */
+public class ExprCompiler {
+    /**
+     * A compiled expression
+     */
+    @FunctionalInterface
+    public interface Program {
+        Object evaluate(int row);
+    }
+
+    /**
+     * A compiled boolean expression
+     */
+    @FunctionalInterface
+    public interface Test {
+        boolean test(int row);
+    }
+
+    @FunctionalInterface
+    private interface Numeric {
+        double evaluate(int row);
+    }
+
+    /**
+     * The row the programs of a compiler over maps read, set before every
+     * evaluation; the row index they get is ignored
+     */
+    public static final class CurrentRow {
+        public Map<String, Object> row;
+    }
+
+    private enum Type {
+        NUMBER, STRING, BOOLEAN, ANY
+    }
+
+    /**
+     * A compiled node and what is known of its values
+     */
+    private static final class Node {
+        Program value;
+        Type type = Type.ANY;
+        boolean nullable = true;
+        // the evaluation may throw
+        boolean mayFail = false;
+        // true when the node does not read the row
+        boolean constant = false;
+        // NUMBER nodes: the value as a double, when it is not null
+        Numeric number;
+        // NUMBER nodes: true when the value is null, null when it never is
+        Test isNull;
+        // BOOLEAN nodes: the value, they are never null
+        Test test;
+
+        /**
+         * Fill in the boxed value of the NUMBER and BOOLEAN nodes
+         */
+        Node done() {
+            if (value != null)
+                return this;
+            Test test = this.test;
+            Numeric number = this.number;
+            Test isNull = this.isNull;
+            if (test != null)
+                value = row -> test.test(row);
+            else if (isNull == null)
+                value = row -> number.evaluate(row);
+            else
+                value = row -> isNull.test(row) ? null : (Object) number.evaluate(row);
+            return this;
+        }
+    }
+
+    // how the columns are read, by name
+    private final Map<String, Node> columns = new HashMap<>();
+    // compiled nodes by expression, shared by the chunks of a scan
+    private final Map<Expr, Node> compiled = new IdentityHashMap<>();
+
+    private ExprCompiler() {
+    }
+
+    /**
+     * @param table
+     * @return a compiler for the rows of the table, by index
+     */
+    public static ExprCompiler of(ColumnarTable table) {
+        ExprCompiler compiler = new ExprCompiler();
+        for (String name : table.getColumnNames())
+            compiler.columns.put(name, column(table.column(name)));
+        return compiler;
+    }
+
+    /**
+     * @param columnNames columns of the rows
+     * @param current the row the programs read
+     * @return a compiler for rows given as maps
+     */
+    public static ExprCompiler of(Collection<String> columnNames, CurrentRow current) {
+        ExprCompiler compiler = new ExprCompiler();
+        for (String name : columnNames) {
+            Node node = new Node();
+            node.value = row -> current.row.get(name);
+            compiler.columns.put(name, node);
+        }
+        return compiler;
+    }
+
+    private static Node column(Column column) {
+        Node node = new Node();
+        node.value = column::get;
+        node.nullable = column.hasNulls();
+        if (column instanceof Column.Doubles) {
+            double[] values = ((Column.Doubles) column).values;
+            node.type = Type.NUMBER;
+            node.number = row -> values[row];
+            node.isNull = column.hasNulls() ? column::isNull : null;
+        } else if (column instanceof Column.Strings) {
+            node.type = Type.STRING;
+        }
+        return node;
+    }
+
+    /**
+     * @param expression
+     * @return the program of the expression, Evaluator.evaluate
+     */
+    public Program compile(Expr expression) {
+        return node(expression).value;
+    }
+
+    /**
+     * @param items
+     * @return the programs of the select list, in order
+     */
+    public Program[] compile(List<SelectQuery.Item> items) {
+        Program[] programs = new Program[items.size()];
+        for (int i = 0; i < programs.length; i++)
+            programs[i] = compile(items.get(i).expression);
+        return programs;
+    }
+
+    /**
+     * @param where
+     * @return the program of a WHERE clause, Evaluator.test
+     */
+    public Test predicate(Expr where) {
+        Node node = node(where);
+        if (node.test != null)
+            return node.test;
+        Program value = node.value;
+        return row -> {
+            Object result = value.evaluate(row);
+            if (result != null && !(result instanceof Boolean))
+                throw new Error("The WHERE clause must return a list of booleans");
+            return Boolean.TRUE.equals(result);
+        };
+    }
+
+    /**
+     * @param expression
+     * @return true for the rows the expression is TRUE, like the operands
+     *         of AND and OR
+     */
+    public Test truth(Expr expression) {
+        return truth(node(expression));
+    }
+
+    private static Test truth(Node node) {
+        if (node.test != null)
+            return node.test;
+        Program value = node.value;
+        return row -> Boolean.TRUE.equals(value.evaluate(row));
+    }
+
+    private synchronized Node node(Expr expression) {
+        Node node = compiled.get(expression);
+        if (node == null) {
+            node = fold(build(expression));
+            compiled.put(expression, node);
+        }
+        return node;
+    }
+
+    /**
+     * Evaluate a node that does not read the row once, a node that fails
+     * is left to fail on the rows
+     */
+    private static Node fold(Node node) {
+        if (!node.constant || node.value instanceof Constant)
+            return node;
+        try {
+            return literal(node.value.evaluate(0));
+        } catch (Error e) {
+            return node;
+        }
+    }
+
+    /**
+     * The program of a constant, recognized by fold
+     */
+    private static final class Constant implements Program {
+        private final Object value;
+
+        Constant(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        public Object evaluate(int row) {
+            return value;
+        }
+    }
+
+    private static Node literal(Object value) {
+        Node node = new Node();
+        node.value = new Constant(value);
+        node.constant = true;
+        node.nullable = value == null;
+        if (value instanceof Double) {
+            double number = (Double) value;
+            node.type = Type.NUMBER;
+            node.number = row -> number;
+        } else if (value instanceof String) {
+            node.type = Type.STRING;
+        } else if (value instanceof Boolean) {
+            boolean test = (Boolean) value;
+            node.type = Type.BOOLEAN;
+            node.test = row -> test;
+        }
+        return node;
+    }
+
+    private static Node failing(String message) {
+        Node node = new Node();
+        node.value = row -> {
+            throw new Error(message);
+        };
+        node.mayFail = true;
+        return node;
+    }
+
+    private Node build(Expr expression) {
+        if (expression instanceof Expr.Literal)
+            return literal(((Expr.Literal) expression).value);
+        if (expression instanceof Expr.Grouping)
+            return node(((Expr.Grouping) expression).expression);
+        if (expression instanceof Expr.Column) {
+            String name = ((Expr.Column) expression).name;
+            Node column = columns.get(name);
+            return column != null ? column : failing("The column " + name + " does not exist");
+        }
+        if (expression instanceof Expr.Unary)
+            return unary((Expr.Unary) expression);
+        if (expression instanceof Expr.Binary)
+            return binary((Expr.Binary) expression);
+        return function((Expr.FunctionCall) expression);
+    }
+
+    /****************************************************************/
+    /* Operators */
+    /****************************************************************/
+
+    private Node binary(Expr.Binary expr) {
+        Node left = node(expr.left);
+        Node right = node(expr.right);
+        TokenType operator = expr.operator;
+        boolean numbers = left.type == Type.NUMBER && right.type == Type.NUMBER;
+        Node node = new Node();
+        node.constant = left.constant && right.constant;
+        node.mayFail = left.mayFail || right.mayFail;
+
+        switch (operator) {
+            case PLUS:
+            case MINUS:
+            case STAR:
+            case SLASH:
+            case MOD:
+            case PORCENTAJE:
+                if (!numbers)
+                    break;
+                node.type = Type.NUMBER;
+                node.nullable = left.nullable || right.nullable;
+                node.number = arithmetic(operator, left.number, right.number);
+                node.isNull = either(left.isNull, right.isNull);
+                return node.done();
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL:
+                if (!numbers)
+                    break;
+                node.type = Type.BOOLEAN;
+                node.nullable = false;
+                node.mayFail |= left.nullable || right.nullable;
+                node.test = comparison(operator, left, right);
+                return node.done();
+            case EQUAL:
+            case EQUAL_EQUAL:
+            case BANG_EQUAL: {
+                node.type = Type.BOOLEAN;
+                node.nullable = false;
+                Test equal = numbers ? numbersEqual(left, right) : objectsEqual(left.value, right.value);
+                node.test = operator == TokenType.BANG_EQUAL ? row -> !equal.test(row) : equal;
+                return node.done();
+            }
+            case AND:
+            case OR: {
+                node.type = Type.BOOLEAN;
+                node.nullable = false;
+                Test first = truth(left);
+                Test second = truth(right);
+                boolean and = operator == TokenType.AND;
+                if (right.mayFail) {
+                    // the Evaluator evaluates both operands, and so their errors
+                    node.test = and ? row -> first.test(row) & second.test(row)
+                            : row -> first.test(row) | second.test(row);
+                } else {
+                    node.test = and ? row -> first.test(row) && second.test(row)
+                            : row -> first.test(row) || second.test(row);
+                }
+                return node.done();
+            }
+            default:
+                break;
+        }
+
+        // any other operand type, checked on every row
+        Program first = left.value;
+        Program second = right.value;
+        node.mayFail = true;
+        switch (operator) {
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL:
+                node.type = Type.BOOLEAN;
+                node.nullable = false;
+                node.test = row -> (Boolean) Evaluator.binary(operator, first.evaluate(row), second.evaluate(row));
+                return node.done();
+            default:
+                node.value = row -> Evaluator.binary(operator, first.evaluate(row), second.evaluate(row));
+                return node;
+        }
+    }
+
+    private static Numeric arithmetic(TokenType operator, Numeric left, Numeric right) {
+        switch (operator) {
+            case PLUS:
+                return row -> left.evaluate(row) + right.evaluate(row);
+            case MINUS:
+                return row -> left.evaluate(row) - right.evaluate(row);
+            case STAR:
+                return row -> left.evaluate(row) * right.evaluate(row);
+            case SLASH:
+                return row -> left.evaluate(row) / right.evaluate(row);
+            default:
+                return row -> left.evaluate(row) % right.evaluate(row);
+        }
+    }
+
+    /**
+     * @return true when any of the two is null, null when none can be
+     */
+    private static Test either(Test left, Test right) {
+        if (left == null)
+            return right;
+        if (right == null)
+            return left;
+        return row -> left.test(row) | right.test(row);
+    }
+
+    private static Test comparison(TokenType operator, Node left, Node right) {
+        Numeric first = left.number;
+        Numeric second = right.number;
+        Test nulls = either(left.isNull, right.isNull);
+        Test compare;
+        switch (operator) {
+            case GREATER:
+                compare = row -> first.evaluate(row) > second.evaluate(row);
+                break;
+            case GREATER_EQUAL:
+                compare = row -> first.evaluate(row) >= second.evaluate(row);
+                break;
+            case LESS:
+                compare = row -> first.evaluate(row) < second.evaluate(row);
+                break;
+            default:
+                compare = row -> first.evaluate(row) <= second.evaluate(row);
+                break;
+        }
+        if (nulls == null)
+            return compare;
+        return row -> {
+            if (nulls.test(row))
+                throw new Error("Cannot use null in a comparation");
+            return compare.test(row);
+        };
+    }
+
+    /**
+     * Objects.equals of two Doubles: the same bits, or both null
+     */
+    private static Test numbersEqual(Node left, Node right) {
+        Numeric first = left.number;
+        Numeric second = right.number;
+        Test equal = row -> Double.doubleToLongBits(first.evaluate(row)) == Double
+                .doubleToLongBits(second.evaluate(row));
+        if (left.isNull == null && right.isNull == null)
+            return equal;
+        Test firstNull = left.isNull != null ? left.isNull : row -> false;
+        Test secondNull = right.isNull != null ? right.isNull : row -> false;
+        return row -> {
+            boolean a = firstNull.test(row);
+            boolean b = secondNull.test(row);
+            return a || b ? a && b : equal.test(row);
+        };
+    }
+
+    private static Test objectsEqual(Program left, Program right) {
+        return row -> Objects.equals(left.evaluate(row), right.evaluate(row));
+    }
+
+    private Node unary(Expr.Unary expr) {
+        Node right = node(expr.right);
+        TokenType operator = expr.operator;
+        Node node = new Node();
+        node.constant = right.constant;
+        node.mayFail = right.mayFail;
+
+        switch (operator) {
+            case MINUS:
+                // a null fails, like any other value that is not a number
+                if (right.type != Type.NUMBER || right.nullable)
+                    break;
+                Numeric number = right.number;
+                node.type = Type.NUMBER;
+                node.nullable = false;
+                node.number = row -> -number.evaluate(row);
+                return node.done();
+            case BANG:
+            case NOT:
+                if (right.test == null)
+                    break;
+                Test test = right.test;
+                node.type = Type.BOOLEAN;
+                node.nullable = false;
+                node.test = row -> !test.test(row);
+                return node.done();
+            case IS: {
+                node.type = Type.BOOLEAN;
+                node.nullable = false;
+                Program value = right.value;
+                if (right.isNull != null && !right.mayFail)
+                    node.test = right.isNull;
+                else if (!right.nullable && !right.mayFail)
+                    node.test = row -> false;
+                else
+                    node.test = row -> value.evaluate(row) == null;
+                return node.done();
+            }
+            default:
+                break;
+        }
+
+        Program value = right.value;
+        node.mayFail = true;
+        if (operator == TokenType.BANG || operator == TokenType.NOT) {
+            node.type = Type.BOOLEAN;
+            node.nullable = false;
+            node.test = row -> (Boolean) Evaluator.unary(operator, value.evaluate(row));
+            return node.done();
+        }
+        node.value = row -> Evaluator.unary(operator, value.evaluate(row));
+        return node;
+    }
+
+    /****************************************************************/
+    /* Functions */
+    /****************************************************************/
+
+    private Node function(Expr.FunctionCall expr) {
+        if (expr.isAggregate())
+            return failing(expr.lexeme + " function can only be used in the select list");
+        if (expr.name == TokenType.RAND) {
+            Node node = new Node();
+            node.type = Type.NUMBER;
+            node.nullable = false;
+            node.number = row -> Math.random();
+            return node.done();
+        }
+        if (expr.arguments.size() != 1)
+            return failing("[" + expr.lexeme + "] " + expr.lexeme + " function expects exactly one argument");
+
+        Node argument = node(expr.arguments.get(0));
+        Node node = new Node();
+        node.constant = argument.constant;
+        node.mayFail = argument.mayFail;
+        if ((expr.name == TokenType.FLOOR || expr.name == TokenType.CEIL) && argument.type == Type.NUMBER
+                && !argument.nullable) {
+            Numeric number = argument.number;
+            node.type = Type.NUMBER;
+            node.nullable = false;
+            node.number = expr.name == TokenType.FLOOR ? row -> Math.floor(number.evaluate(row))
+                    : row -> Math.ceil(number.evaluate(row));
+            return node.done();
+        }
+
+        // the argument type is checked on every row
+        TokenType name = expr.name;
+        String lexeme = expr.lexeme;
+        Program value = argument.value;
+        node.mayFail = true;
+        node.value = row -> Evaluator.scalar(name, lexeme, value.evaluate(row));
+        return node;
+    }
+}
@@ -0,0 +1,217 @@
+package sql.ide.query;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import edu.upvictoria.fpoo.TokenType;
+import sql.ide.storage.TableIndex;
+
+/**
+ * Finds the rows a WHERE clause may select with the indexes of the table.
+ *
+ * The result is a superset of the rows the clause selects: the clause is
+ * still evaluated on them, the indexes only save reading the other rows.
+ * Only a WHERE the Evaluator can not fail on is planned, so a row that
+ * would have failed is never left out.
+ */
+class IndexPlanner {
+    // the index is only used when it leaves at most one row in SCAN_RATIO,
+    // otherwise scanning the whole table is cheaper than seeking every line
+    static final int SCAN_RATIO = Integer.getInteger("sqlide.index.scanRatio", 8);
+
+    private IndexPlanner() {
+    }
+
+    /**
+     * @param where
+     * @param indexes indexes of the table, up to date
+     * @param columnNames columns of the table
+     * @return byte offsets of the candidate rows in table order, or null when
+     *         the table must be scanned
+     */
+    static long[] candidates(Expr where, List<TableIndex> indexes, Collection<String> columnNames) {
+        if (indexes.isEmpty() || !Evaluator.cannotFail(where, columnNames::contains, name -> onlyNumbers(name, indexes)))
+            return null;
+        long[] offsets = plan(where, indexes);
+        if (offsets == null || (long) offsets.length * SCAN_RATIO > indexes.get(0).rows())
+            return null;
+        return offsets;
+    }
+
+    /**
+     * @return true if an index of the column tells it has only numbers
+     */
+    private static boolean onlyNumbers(String column, List<TableIndex> indexes) {
+        for (TableIndex index : indexes) {
+            if (index.header.column.equals(column) && index.onlyNumbers())
+                return true;
+        }
+        return false;
+    }
+
+    private static long[] plan(Expr expression, List<TableIndex> indexes) {
+        if (expression instanceof Expr.Grouping)
+            return plan(((Expr.Grouping) expression).expression, indexes);
+        if (!(expression instanceof Expr.Binary))
+            return null;
+
+        Expr.Binary binary = (Expr.Binary) expression;
+        if (binary.operator == TokenType.AND) {
+            // AGE >= 18 AND AGE < 30 is one range, not two halves of the table
+            long[] between = between(binary.left, binary.right, indexes);
+            if (between != null)
+                return between;
+            long[] left = plan(binary.left, indexes);
+            long[] right = plan(binary.right, indexes);
+            if (left == null)
+                return right;
+            return right == null ? left : intersect(left, right);
+        }
+        if (binary.operator == TokenType.OR) {
+            long[] left = plan(binary.left, indexes);
+            long[] right = plan(binary.right, indexes);
+            return left == null || right == null ? null : union(left, right);
+        }
+
+        // a column against a literal, in any order
+        TokenType operator = binary.operator;
+        Expr.Column column;
+        Object value;
+        if (binary.left instanceof Expr.Column && binary.right instanceof Expr.Literal) {
+            column = (Expr.Column) binary.left;
+            value = ((Expr.Literal) binary.right).value;
+        } else if (binary.left instanceof Expr.Literal && binary.right instanceof Expr.Column) {
+            column = (Expr.Column) binary.right;
+            value = ((Expr.Literal) binary.left).value;
+            operator = ColumnarOperators.flip(operator);
+        } else {
+            return null;
+        }
+
+        for (TableIndex index : indexes) {
+            if (!index.header.column.equals(column.name))
+                continue;
+            long[] offsets = lookup(index, operator, value);
+            if (offsets != null)
+                return offsets;
+        }
+        return null;
+    }
+
+    /**
+     * A lower and an upper bound on the same column, looked up as one range
+     */
+    private static long[] between(Expr first, Expr second, List<TableIndex> indexes) {
+        Expr.Binary low = bound(first);
+        Expr.Binary high = bound(second);
+        if (low == null || high == null)
+            return null;
+        if (isLower(high.operator)) {
+            Expr.Binary swap = low;
+            low = high;
+            high = swap;
+        }
+        String column = ((Expr.Column) low.left).name;
+        if (!isLower(low.operator) || isLower(high.operator) || !column.equals(((Expr.Column) high.left).name))
+            return null;
+
+        for (TableIndex index : indexes) {
+            if (!index.header.column.equals(column))
+                continue;
+            long[] offsets = index.range((Double) ((Expr.Literal) low.right).value,
+                    low.operator == TokenType.GREATER_EQUAL, (Double) ((Expr.Literal) high.right).value,
+                    high.operator == TokenType.LESS_EQUAL);
+            if (offsets != null)
+                return offsets;
+        }
+        return null;
+    }
+
+    /**
+     * @return the comparison as column operator number, null if it is not one
+     */
+    private static Expr.Binary bound(Expr expression) {
+        while (expression instanceof Expr.Grouping)
+            expression = ((Expr.Grouping) expression).expression;
+        if (!(expression instanceof Expr.Binary))
+            return null;
+        Expr.Binary binary = (Expr.Binary) expression;
+        switch (binary.operator) {
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL:
+                break;
+            default:
+                return null;
+        }
+        if (binary.left instanceof Expr.Column && binary.right instanceof Expr.Literal
+                && ((Expr.Literal) binary.right).value instanceof Double)
+            return binary;
+        if (binary.left instanceof Expr.Literal && binary.right instanceof Expr.Column
+                && ((Expr.Literal) binary.left).value instanceof Double)
+            return new Expr.Binary(binary.right, ColumnarOperators.flip(binary.operator), binary.lexeme,
+                    binary.left);
+        return null;
+    }
+
+    private static boolean isLower(TokenType operator) {
+        return operator == TokenType.GREATER || operator == TokenType.GREATER_EQUAL;
+    }
+
+    private static long[] lookup(TableIndex index, TokenType operator, Object value) {
+        switch (operator) {
+            case EQUAL:
+            case EQUAL_EQUAL:
+                return index.equal(value);
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL:
+                if (!(value instanceof Double))
+                    return null;
+                Double bound = (Double) value;
+                if (operator == TokenType.GREATER || operator == TokenType.GREATER_EQUAL)
+                    return index.range(bound, operator == TokenType.GREATER_EQUAL, null, false);
+                return index.range(null, false, bound, operator == TokenType.LESS_EQUAL);
+            default:
+                return null;
+        }
+    }
+
+    private static long[] intersect(long[] first, long[] second) {
+        long[] result = new long[Math.min(first.length, second.length)];
+        int count = 0;
+        for (int i = 0, j = 0; i < first.length && j < second.length;) {
+            if (first[i] < second[j])
+                i++;
+            else if (first[i] > second[j])
+                j++;
+            else {
+                result[count++] = first[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static long[] union(long[] first, long[] second) {
+        long[] result = new long[first.length + second.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < first.length || j < second.length) {
+            if (j == second.length || (i < first.length && first[i] < second[j]))
+                result[count++] = first[i++];
+            else if (i == first.length || second[j] < first[i])
+                result[count++] = second[j++];
+            else {
+                result[count++] = first[i++];
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+}
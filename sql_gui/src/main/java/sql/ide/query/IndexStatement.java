@@ -0,0 +1,106 @@
+package sql.ide.query;
+
+import java.util.List;
+
+//* Import everything related to database manager
+import edu.upvictoria.fpoo.*;
+import sql.ide.storage.TableIndex;
+
+/**
+ * CREATE INDEX and DROP INDEX, handled by the IDE since the database manager
+ * does not know about indexes:
+ *
+ * CREATE INDEX name ON table (column) [USING HASH | SORTED];
+ * DROP INDEX name ON table;
+ */
+public class IndexStatement {
+    public final boolean create;
+    public final String name;
+    public final String table;
+    /**
+     * null for DROP INDEX
+     */
+    public final String column;
+    public final TableIndex.Kind kind;
+
+    IndexStatement(boolean create, String name, String table, String column, TableIndex.Kind kind) {
+        this.create = create;
+        this.name = name;
+        this.table = table;
+        this.column = column;
+        this.kind = kind;
+    }
+
+    /**
+     * @param tokens tokens of one statement, as returned by the Lexer
+     * @return the statement, or null if it is not about an index
+     * @throws Error if it is about an index but has a syntax error
+     */
+    public static IndexStatement parse(List<Token> tokens) {
+        if (tokens.size() < 2 || (tokens.get(0).type != TokenType.CREATE && tokens.get(0).type != TokenType.DROP)
+                || !isWord(tokens.get(1), "INDEX"))
+            return null;
+
+        boolean create = tokens.get(0).type == TokenType.CREATE;
+        int current = 2;
+        String name = identifier(tokens, current++, "Expected index name.");
+        word(tokens, current++, "ON");
+        String table = identifier(tokens, current++, "Expected table name.");
+
+        String column = null;
+        TableIndex.Kind kind = TableIndex.Kind.HASH;
+        if (create) {
+            expect(tokens, current++, TokenType.LEFT_PAREN, "Expected '(' after table name.");
+            column = identifier(tokens, current++, "Expected column name.");
+            expect(tokens, current++, TokenType.RIGHT_PAREN, "Expected ')' after column name.");
+            if (isWord(tokens.get(current), "USING")) {
+                current++;
+                if (isWord(tokens.get(current), "HASH"))
+                    kind = TableIndex.Kind.HASH;
+                else if (isWord(tokens.get(current), "SORTED"))
+                    kind = TableIndex.Kind.SORTED;
+                else
+                    throw error(tokens.get(current), "Expected HASH or SORTED after USING.");
+                current++;
+            }
+        }
+        expect(tokens, current++, TokenType.SEMICOLON, "Expected ';' after statement.");
+        if (tokens.get(current).type != TokenType.EOF)
+            throw error(tokens.get(current), "Expected end of statement.");
+        return new IndexStatement(create, name, table, column, kind);
+    }
+
+    private static boolean isWord(Token token, String word) {
+        return token.type == TokenType.IDENTIFIER && token.lexeme.equals(word);
+    }
+
+    private static void word(List<Token> tokens, int current, String word) {
+        if (!isWord(tokens.get(current), word))
+            throw error(tokens.get(current), "Expected " + word + ".");
+    }
+
+    private static String identifier(List<Token> tokens, int current, String message) {
+        expect(tokens, current, TokenType.IDENTIFIER, message);
+        return tokens.get(current).lexeme;
+    }
+
+    private static void expect(List<Token> tokens, int current, TokenType type, String message) {
+        if (tokens.get(current).type != type)
+            throw error(tokens.get(current), message);
+    }
+
+    /**
+     * Same format as the ErrorHandler of the database manager
+     */
+    private static Error error(Token token, String message) {
+        String where = token.type == TokenType.EOF ? " at end" : " at '" + token.lexeme + "'";
+        return new Error("[line " + token.line + "] Error" + where + ": " + message);
+    }
+
+    @Override
+    public String toString() {
+        if (create)
+            return "CREATE INDEX " + name + " ON " + table + " (" + column + ") USING " + kind;
+        return "DROP INDEX " + name + " ON " + table;
+    }
+}
@@ -0,0 +1,115 @@
+package sql.ide.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Splits the rows of a scan in chunks and runs them on a fork-join pool,
+ * the results come back in row order.
+ *
+ * Scans under the threshold run on the calling thread. A cancelled query
+ * stops before its next chunk.
+ */
+class ParallelScan {
+    // threads of the pool, 1 runs every scan on the calling thread
+    static final int PARALLELISM = Integer.getInteger("sqlide.scan.parallelism",
+            Runtime.getRuntime().availableProcessors());
+    // rows under which a scan is not split
+    static final int THRESHOLD = Integer.getInteger("sqlide.scan.parallelThreshold", 50_000);
+    // smallest chunk, so the tasks are not smaller than their overhead
+    private static final int MIN_CHUNK = 4096;
+
+    private static ForkJoinPool pool;
+
+    /**
+     * Work on the rows [from, to) of a scan
+     */
+    interface Chunk<T> {
+        T run(int from, int to);
+    }
+
+    private ParallelScan() {
+    }
+
+    /**
+     * @param cancelled true once the query was cancelled
+     * @throws Error when it was, the scan stops where it is
+     */
+    static void checkCancelled(BooleanSupplier cancelled) {
+        if (cancelled.getAsBoolean())
+            throw new Error("The query was cancelled");
+    }
+
+    /**
+     * @param rows number of rows of the scan
+     * @param cancelled checked before every chunk
+     * @param chunk work on a range of rows
+     * @return the result of every chunk, in row order
+     * @throws Error the error of the first chunk that failed, like a serial
+     *         scan would, or when the query was cancelled
+     */
+    static <T> List<T> map(int rows, BooleanSupplier cancelled, Chunk<T> chunk) {
+        checkCancelled(cancelled);
+        if (rows < THRESHOLD)
+            return Collections.singletonList(chunk.run(0, rows));
+
+        // a few chunks per thread, so a slow one does not hold the others
+        int size = Math.max(MIN_CHUNK, (rows + PARALLELISM * 4 - 1) / (PARALLELISM * 4));
+        if (PARALLELISM <= 1) {
+            // one chunk after the other on the calling thread
+            List<T> results = new ArrayList<>();
+            for (int from = 0; from < rows; from += size) {
+                checkCancelled(cancelled);
+                results.add(chunk.run(from, Math.min(rows, from + size)));
+            }
+            return results;
+        }
+        List<Callable<T>> tasks = new ArrayList<>();
+        for (int from = 0; from < rows; from += size) {
+            int start = from;
+            int end = Math.min(rows, from + size);
+            tasks.add(() -> {
+                checkCancelled(cancelled);
+                return chunk.run(start, end);
+            });
+        }
+
+        List<T> results = new ArrayList<>(tasks.size());
+        for (Future<T> future : pool().invokeAll(tasks)) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                // the Evaluator throws java.lang.Error, keep it as it is
+                Throwable cause = e.getCause();
+                if (cause instanceof Error)
+                    throw (Error) cause;
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                throw new RuntimeException(cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new Error("The query was interrupted");
+            }
+        }
+        return results;
+    }
+
+    private static synchronized ForkJoinPool pool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(PARALLELISM, forkJoinPool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+                thread.setName("sql-scan-" + thread.getPoolIndex());
+                thread.setDaemon(true);
+                return thread;
+            }, null, false);
+        }
+        return pool;
+    }
+}
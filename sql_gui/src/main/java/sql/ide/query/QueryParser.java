@@ -0,0 +1,436 @@
+package sql.ide.query;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+//* Import everything related to database manager
+import edu.upvictoria.fpoo.*;
+import sql.ide.storage.ResultWriter;
+
+/**
+ * Parser for the statements the query engine of the IDE can run by itself.
+ *
+ * It follows the grammar of edu.upvictoria.fpoo.Parser. When a statement
+ * uses something the engine does not support (or has a syntax error) the
+ * parser returns null and the statement is left to the Interpreter, which
+ * reports the error the same way it always did.
+ */
+public class QueryParser {
+    private final List<Token> tokens;
+    private int current = 0;
+
+    /**
+     * Thrown internally when the statement is not supported
+     */
+    private static class Unsupported extends RuntimeException {
+        Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+
+    private QueryParser(List<Token> tokens) {
+        this.tokens = tokens;
+    }
+
+    /**
+     * Parse the tokens of a single SELECT statement
+     *
+     * @param tokens tokens of one statement, as returned by the Lexer
+     * @return the query, or null if the engine can not run it
+     */
+    public static SelectQuery parseSelect(List<Token> tokens) {
+        if (tokens.isEmpty() || tokens.get(0).type != TokenType.SELECT)
+            return null;
+        try {
+            QueryParser parser = new QueryParser(tokens);
+            SelectQuery query = parser.select();
+            parser.endOfStatement();
+            return query;
+        } catch (Unsupported e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parse the tokens of a single INSERT, UPDATE or DELETE statement
+     *
+     * @param tokens tokens of one statement, as returned by the Lexer
+     * @return the statement, or null if the engine can not run it
+     */
+    public static DmlStatement parseDml(List<Token> tokens) {
+        if (tokens.isEmpty())
+            return null;
+        try {
+            QueryParser parser = new QueryParser(tokens);
+            DmlStatement statement;
+            switch (tokens.get(0).type) {
+                case INSERT:
+                    statement = parser.insert();
+                    break;
+                case UPDATE:
+                    statement = parser.update();
+                    break;
+                case DELETE:
+                    statement = parser.delete();
+                    break;
+                default:
+                    return null;
+            }
+            parser.endOfStatement();
+            return statement;
+        } catch (Unsupported e) {
+            return null;
+        }
+    }
+
+    /****************************************************************/
+    /* Statements */
+    /****************************************************************/
+
+    private SelectQuery select() {
+        consume(TokenType.SELECT);
+        boolean distinct = match(TokenType.DISTINCT);
+
+        List<SelectQuery.Item> items = new ArrayList<>();
+        if (!match(TokenType.STAR)) {
+            do {
+                Expr expression = expression();
+                String alias = null;
+                if (match(TokenType.AS))
+                    alias = consume(TokenType.IDENTIFIER).lexeme;
+                items.add(new SelectQuery.Item(expression, alias));
+            } while (match(TokenType.COMMA));
+        }
+        if (distinct && items.size() != 1)
+            throw new Unsupported();
+        checkSelectList(items);
+
+        String table = null;
+        if (match(TokenType.FROM))
+            table = consume(TokenType.IDENTIFIER).lexeme;
+
+        Expr where = null;
+        if (match(TokenType.WHERE)) {
+            where = expression();
+            if (containsAggregate(where))
+                throw new Unsupported();
+        }
+
+        List<SelectQuery.OrderKey> orderBy = new ArrayList<>();
+        if (match(TokenType.ORDER)) {
+            // the Lexer scans BY as a COUNT token, so look at the lexeme
+            if (!check(TokenType.BY) && !"BY".equals(peek().lexeme))
+                throw new Unsupported();
+            advance();
+            do {
+                Expr expression = expression();
+                boolean descending = false;
+                if (match(TokenType.DESC))
+                    descending = true;
+                else
+                    match(TokenType.ASC);
+                orderBy.add(new SelectQuery.OrderKey(expression, descending));
+            } while (match(TokenType.COMMA));
+        }
+
+        int limit = -1;
+        if (match(TokenType.LIMIT))
+            limit = (int) ((Double) consume(TokenType.NUMBER).literal).doubleValue();
+
+        // INTO OUTFILE 'file' [AS CSV | JSON]
+        String outfile = null;
+        ResultWriter.Format format = null;
+        if (match(TokenType.INTO)) {
+            if (!"OUTFILE".equals(advance().lexeme))
+                throw new Unsupported();
+            outfile = (String) consume(TokenType.STRING).literal;
+            if (match(TokenType.AS)) {
+                try {
+                    format = ResultWriter.Format.valueOf(consume(TokenType.IDENTIFIER).lexeme);
+                } catch (IllegalArgumentException e) {
+                    throw new Unsupported();
+                }
+            }
+        }
+
+        return new SelectQuery(distinct, items, table, where, orderBy, limit, outfile, format);
+    }
+
+    private DmlStatement insert() {
+        consume(TokenType.INSERT);
+        consume(TokenType.INTO);
+        String table = consume(TokenType.IDENTIFIER).lexeme;
+        List<String> columns = new ArrayList<>();
+        consume(TokenType.LEFT_PAREN);
+        do {
+            columns.add(consume(TokenType.IDENTIFIER).lexeme);
+        } while (match(TokenType.COMMA));
+        consume(TokenType.RIGHT_PAREN);
+        consume(TokenType.VALUES);
+        List<Expr> values = new ArrayList<>();
+        consume(TokenType.LEFT_PAREN);
+        do {
+            values.add(rowExpression());
+        } while (match(TokenType.COMMA));
+        consume(TokenType.RIGHT_PAREN);
+        // the Parser reports the error
+        if (columns.size() != values.size())
+            throw new Unsupported();
+
+        HashMap<String, Expr> valuesMap = new HashMap<>();
+        for (int i = 0; i < columns.size(); i++)
+            valuesMap.put(columns.get(i), values.get(i));
+        return new DmlStatement(DmlStatement.Kind.INSERT, table, valuesMap, null);
+    }
+
+    private DmlStatement update() {
+        consume(TokenType.UPDATE);
+        String table = consume(TokenType.IDENTIFIER).lexeme;
+        consume(TokenType.SET);
+        HashMap<String, Expr> valuesMap = new HashMap<>();
+        do {
+            String column = consume(TokenType.IDENTIFIER).lexeme;
+            consume(TokenType.EQUAL);
+            valuesMap.put(column, rowExpression());
+        } while (match(TokenType.COMMA));
+        consume(TokenType.WHERE);
+        return new DmlStatement(DmlStatement.Kind.UPDATE, table, valuesMap, rowExpression());
+    }
+
+    private DmlStatement delete() {
+        consume(TokenType.DELETE);
+        consume(TokenType.FROM);
+        String table = consume(TokenType.IDENTIFIER).lexeme;
+        // without WHERE the Interpreter has its own behaviour, it is left to it
+        consume(TokenType.WHERE);
+        return new DmlStatement(DmlStatement.Kind.DELETE, table, new HashMap<>(), rowExpression());
+    }
+
+    /**
+     * An expression evaluated row by row, aggregates are left to the
+     * Interpreter
+     */
+    private Expr rowExpression() {
+        Expr expression = expression();
+        if (containsAggregate(expression))
+            throw new Unsupported();
+        return expression;
+    }
+
+    /**
+     * The engine runs lists made only of plain expressions or only of
+     * aggregate functions, aggregates can not be nested
+     */
+    private void checkSelectList(List<SelectQuery.Item> items) {
+        int aggregates = 0;
+        for (SelectQuery.Item item : items) {
+            Expr expression = item.expression;
+            if (expression instanceof Expr.FunctionCall && ((Expr.FunctionCall) expression).isAggregate()) {
+                aggregates++;
+                for (Expr argument : ((Expr.FunctionCall) expression).arguments) {
+                    if (containsAggregate(argument))
+                        throw new Unsupported();
+                }
+            } else if (containsAggregate(expression)) {
+                throw new Unsupported();
+            }
+        }
+        if (aggregates != 0 && aggregates != items.size())
+            throw new Unsupported();
+    }
+
+    private void endOfStatement() {
+        consume(TokenType.SEMICOLON);
+        if (!check(TokenType.EOF))
+            throw new Unsupported();
+    }
+
+    /****************************************************************/
+    /* Expressions, same precedence as the database manager */
+    /****************************************************************/
+
+    private Expr expression() {
+        Expr left = andExpression();
+        while (match(TokenType.OR)) {
+            Token operator = previous();
+            left = new Expr.Binary(left, operator.type, operator.lexeme, andExpression());
+        }
+        return left;
+    }
+
+    private Expr andExpression() {
+        Expr left = notExpression();
+        while (match(TokenType.AND)) {
+            Token operator = previous();
+            left = new Expr.Binary(left, operator.type, operator.lexeme, notExpression());
+        }
+        return left;
+    }
+
+    private Expr notExpression() {
+        if (match(TokenType.NOT)) {
+            Token operator = previous();
+            return new Expr.Unary(operator.type, operator.lexeme, isNullExpression());
+        }
+        return isNullExpression();
+    }
+
+    private Expr isNullExpression() {
+        Expr left = equalExpression();
+        if (match(TokenType.IS)) {
+            Token operator = previous();
+            if (match(TokenType.NOT))
+                operator = previous();
+            consume(TokenType.NULL);
+            // IS NULL is kept as an IS unary, IS NOT NULL as a NOT of it
+            Expr isNull = new Expr.Unary(TokenType.IS, "IS", left);
+            return operator.type == TokenType.NOT ? new Expr.Unary(TokenType.NOT, "NOT", isNull) : isNull;
+        }
+        return left;
+    }
+
+    private Expr equalExpression() {
+        Expr left = compareExpression();
+        while (match(TokenType.EQUAL_EQUAL, TokenType.BANG_EQUAL, TokenType.EQUAL)) {
+            Token operator = previous();
+            left = new Expr.Binary(left, operator.type, operator.lexeme, compareExpression());
+        }
+        return left;
+    }
+
+    private Expr compareExpression() {
+        Expr left = concatExpression();
+        while (match(TokenType.GREATER, TokenType.GREATER_EQUAL, TokenType.LESS, TokenType.LESS_EQUAL)) {
+            Token operator = previous();
+            left = new Expr.Binary(left, operator.type, operator.lexeme, concatExpression());
+        }
+        return left;
+    }
+
+    private Expr concatExpression() {
+        Expr left = addExpression();
+        // the interpreter has no || operator yet
+        if (check(TokenType.PIPE_PIPE))
+            throw new Unsupported();
+        return left;
+    }
+
+    private Expr addExpression() {
+        Expr left = multiplyExpression();
+        while (match(TokenType.PLUS, TokenType.MINUS)) {
+            Token operator = previous();
+            left = new Expr.Binary(left, operator.type, operator.lexeme, multiplyExpression());
+        }
+        return left;
+    }
+
+    private Expr multiplyExpression() {
+        Expr left = unaryExpression();
+        while (match(TokenType.STAR, TokenType.SLASH, TokenType.DIV, TokenType.MOD, TokenType.PORCENTAJE)) {
+            Token operator = previous();
+            left = new Expr.Binary(left, operator.type, operator.lexeme, unaryExpression());
+        }
+        return left;
+    }
+
+    private Expr unaryExpression() {
+        if (match(TokenType.MINUS)) {
+            Token operator = previous();
+            return new Expr.Unary(operator.type, operator.lexeme, unaryExpression());
+        }
+        if (match(TokenType.UCASE, TokenType.LCASE, TokenType.CAPITALIZE, TokenType.FLOOR, TokenType.ROUND,
+                TokenType.CEIL, TokenType.RAND, TokenType.COUNT, TokenType.MIN, TokenType.MAX, TokenType.SUM,
+                TokenType.AVG)) {
+            Token name = previous();
+            consume(TokenType.LEFT_PAREN);
+            List<Expr> arguments = new ArrayList<>();
+            if (!check(TokenType.RIGHT_PAREN)) {
+                do {
+                    arguments.add(expression());
+                } while (match(TokenType.COMMA));
+            }
+            consume(TokenType.RIGHT_PAREN);
+            return new Expr.FunctionCall(name.type, name.lexeme, arguments);
+        }
+        if (match(TokenType.IDENTIFIER))
+            return new Expr.Column((String) previous().literal);
+        if (match(TokenType.TRUE))
+            return new Expr.Literal(true);
+        if (match(TokenType.FALSE))
+            return new Expr.Literal(false);
+        if (match(TokenType.NULL, TokenType.NUMBER, TokenType.STRING, TokenType.STAR))
+            return new Expr.Literal(previous().literal);
+        if (match(TokenType.LEFT_PAREN)) {
+            Expr expression = expression();
+            consume(TokenType.RIGHT_PAREN);
+            return new Expr.Grouping(expression);
+        }
+        throw new Unsupported();
+    }
+
+    /**
+     * Check if an expression has an aggregate function somewhere
+     *
+     * @param expression
+     * @return
+     */
+    static boolean containsAggregate(Expr expression) {
+        if (expression instanceof Expr.FunctionCall) {
+            Expr.FunctionCall call = (Expr.FunctionCall) expression;
+            if (call.isAggregate())
+                return true;
+            for (Expr argument : call.arguments) {
+                if (containsAggregate(argument))
+                    return true;
+            }
+            return false;
+        }
+        if (expression instanceof Expr.Binary)
+            return containsAggregate(((Expr.Binary) expression).left)
+                    || containsAggregate(((Expr.Binary) expression).right);
+        if (expression instanceof Expr.Unary)
+            return containsAggregate(((Expr.Unary) expression).right);
+        if (expression instanceof Expr.Grouping)
+            return containsAggregate(((Expr.Grouping) expression).expression);
+        return false;
+    }
+
+    /****************************************************************/
+    /* Token helpers */
+    /****************************************************************/
+
+    private Token consume(TokenType type) {
+        if (check(type))
+            return advance();
+        throw new Unsupported();
+    }
+
+    private boolean match(TokenType... types) {
+        for (TokenType type : types) {
+            if (check(type)) {
+                advance();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean check(TokenType type) {
+        return peek().type == type;
+    }
+
+    private Token advance() {
+        if (peek().type != TokenType.EOF)
+            current++;
+        return previous();
+    }
+
+    private Token peek() {
+        return tokens.get(current);
+    }
+
+    private Token previous() {
+        return tokens.get(current - 1);
+    }
+}
@@ -0,0 +1,431 @@
+package sql.ide.query;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+//* Import everything related to database manager
+import edu.upvictoria.fpoo.*;
+import sql.ide.profiling.Phase;
+import sql.ide.profiling.Profiler;
+import sql.ide.storage.ColumnarFile;
+import sql.ide.storage.ColumnarTable;
+import sql.ide.storage.IndexManager;
+import sql.ide.storage.ResultWriter;
+import sql.ide.storage.TableCache;
+import sql.ide.storage.TableFiles;
+import sql.ide.storage.TableIndex;
+import sql.ide.storage.WriteAheadLog;
+
+/**
+ * Runs a SelectQuery against the tables of a database folder and returns
+ * the result as a Table, so it can be shown row by row instead of as one big
+ * String.
+ */
+public class SelectExecutor {
+    private final TableCache tableCache;
+    private final IndexManager indexManager;
+    private WriteAheadLog log;
+
+    public SelectExecutor() {
+        this(new TableCache());
+    }
+
+    /**
+     * @param tableCache the tables are loaded through it
+     */
+    public SelectExecutor(TableCache tableCache) {
+        this(tableCache, null);
+    }
+
+    /**
+     * @param tableCache the tables are loaded through it
+     * @param indexManager indexes used for the WHERE clauses, null for none
+     */
+    public SelectExecutor(TableCache tableCache, IndexManager indexManager) {
+        this.tableCache = tableCache;
+        this.indexManager = indexManager;
+    }
+
+    /**
+     * @param log changes not written to the tables yet, the queries see them;
+     *        null for none
+     */
+    public void setLog(WriteAheadLog log) {
+        this.log = log;
+    }
+
+    /**
+     * Execute the query
+     *
+     * @param query
+     * @param folder database folder, as returned by Interpreter.getDataBase()
+     * @return table with the result rows
+     */
+    public Table execute(SelectQuery query, Path folder) {
+        return execute(query, folder, () -> false);
+    }
+
+    /**
+     * Execute the query, it can be cancelled while it scans
+     *
+     * @param query
+     * @param folder database folder, as returned by Interpreter.getDataBase()
+     * @param cancelled checked between the chunks of the scans
+     * @return table with the result rows
+     * @throws Error when the query fails or was cancelled
+     */
+    public Table execute(SelectQuery query, Path folder, BooleanSupplier cancelled) {
+        if (folder == null)
+            throw new Error("You must USE a database first");
+
+        if (query.table == null)
+            return selectWithoutTable(query);
+
+        Path file = TableFiles.resolve(folder, query.table);
+        if (!Files.exists(file))
+            throw new Error("[" + query.table + "] The table does not exist");
+
+        long begin = Profiler.begin();
+        ColumnarTable source = source(query, file);
+        if (source == null) {
+            // a LIMIT over a table that is not in memory reads only what it needs
+            if (StreamingSelect.supports(query)) {
+                Profiler.end(Phase.LOAD, begin);
+                return StreamingSelect.execute(query, file, cancelled);
+            }
+            source = tableCache.load(file);
+        }
+        Profiler.end(Phase.LOAD, begin);
+        Profiler.rowsScanned(source.size());
+        // the expressions are compiled once, for all the rows
+        ExprCompiler compiler = ExprCompiler.of(source);
+
+        int[] rows = filter(query, source, compiler, cancelled);
+
+        if (query.isAggregate()) {
+            begin = Profiler.begin();
+            Table result = aggregate(query, compiler, source, rows);
+            Profiler.end(Phase.PROJECT, begin);
+            return result;
+        }
+
+        rows = order(query, source, rows, compiler, cancelled);
+
+        // SELECT list, in parallel on big results
+        begin = Profiler.begin();
+        List<String> columnNames = columnNames(query, source.getColumnNames());
+        List<HashMap<String, Object>> result = project(query, compiler, source, rows, cancelled);
+
+        if (query.distinct)
+            result = new ArrayList<>(new LinkedHashSet<>(result));
+
+        // LIMIT
+        if (query.limit != -1 && query.limit < result.size())
+            result = result.subList(0, query.limit);
+
+        Table table = toTable(columnNames, result);
+        Profiler.end(Phase.PROJECT, begin);
+        return table;
+    }
+
+    /**
+     * Execute the query, writing every row to the writer as soon as it is
+     * projected instead of returning them. The rows of a table that is not in
+     * memory are streamed from its file when there is no ORDER BY; DISTINCT
+     * and the aggregates, which need the whole result anyway, are executed
+     * first and then written
+     *
+     * @param query
+     * @param folder database folder, as returned by Interpreter.getDataBase()
+     * @param writer receives the columns and the rows
+     * @param cancelled checked between the chunks of the scans
+     * @throws IOException if the writer fails
+     */
+    public void export(SelectQuery query, Path folder, ResultWriter writer, BooleanSupplier cancelled)
+            throws IOException {
+        if (folder == null)
+            throw new Error("You must USE a database first");
+
+        if (query.table == null || query.distinct || query.isAggregate()) {
+            Table table = execute(query, folder, cancelled);
+            writer.columns(table.getColumnNames());
+            for (HashMap<String, Object> row : table.getRows())
+                writer.write(row);
+            return;
+        }
+
+        Path file = TableFiles.resolve(folder, query.table);
+        if (!Files.exists(file))
+            throw new Error("[" + query.table + "] The table does not exist");
+
+        long begin = Profiler.begin();
+        ColumnarTable source = source(query, file);
+        if (source == null && query.orderBy.isEmpty()) {
+            Profiler.end(Phase.LOAD, begin);
+            StreamingSelect.export(query, file, writer, cancelled);
+            return;
+        }
+        if (source == null)
+            source = tableCache.load(file);
+        Profiler.end(Phase.LOAD, begin);
+        Profiler.rowsScanned(source.size());
+        ExprCompiler compiler = ExprCompiler.of(source);
+        ExprCompiler.Program[] items = compiler.compile(query.items);
+
+        int[] rows = order(query, source, filter(query, source, compiler, cancelled), compiler, cancelled);
+
+        // one row projected at a time, the result is never in memory
+        begin = Profiler.begin();
+        writer.columns(columnNames(query, source.getColumnNames()));
+        for (int row : rows)
+            writer.write(query.isStar() ? source.row(row) : project(query, items, row));
+        Profiler.end(Phase.PROJECT, begin);
+    }
+
+    /**
+     * The table merged with the log, only the rows an index found, or the
+     * whole table shared with the cache; it is never modified. The indexes
+     * and the file are behind a table with changes in the log
+     *
+     * @return the rows, or null when the table is not in memory
+     */
+    private ColumnarTable source(SelectQuery query, Path file) {
+        ColumnarTable source = log != null ? log.merged(file, tableCache) : null;
+        if (source == null && TableFiles.isColumnar(file))
+            source = columnarRows(query, file);
+        if (source == null)
+            source = indexedRows(query, file);
+        if (source == null)
+            source = tableCache.peek(file);
+        return source;
+    }
+
+    /**
+     * FROM ... WHERE, the rows are indexes into the columns; a LIMIT without
+     * ORDER BY stops at the first rows that match
+     */
+    private static int[] filter(SelectQuery query, ColumnarTable source, ExprCompiler compiler,
+            BooleanSupplier cancelled) {
+        long begin = Profiler.begin();
+        int[] rows;
+        if (query.where == null)
+            rows = ColumnarOperators.all(source);
+        else if (query.limit != -1 && query.orderBy.isEmpty() && !query.distinct && !query.isAggregate())
+            rows = ColumnarOperators.filter(source, query.where, query.limit, compiler, cancelled);
+        else
+            rows = ColumnarOperators.filter(source, query.where, compiler, cancelled);
+        Profiler.end(Phase.FILTER, begin);
+        return rows;
+    }
+
+    /**
+     * ORDER BY, only the first rows when there is a LIMIT; without DISTINCT
+     * the rows past the LIMIT are dropped before they are projected
+     */
+    private static int[] order(SelectQuery query, ColumnarTable source, int[] rows, ExprCompiler compiler,
+            BooleanSupplier cancelled) {
+        if (!query.orderBy.isEmpty()) {
+            long begin = Profiler.begin();
+            if (!query.distinct && query.limit != -1 && query.limit < rows.length)
+                rows = ColumnarOperators.topN(source, rows, query.orderBy, compiler, query.limit, cancelled);
+            else
+                ColumnarOperators.sort(source, rows, query.orderBy, compiler, cancelled);
+            Profiler.end(Phase.SORT, begin);
+        }
+        if (!query.distinct && query.limit != -1 && query.limit < rows.length)
+            rows = Arrays.copyOf(rows, query.limit);
+        return rows;
+    }
+
+    /**
+     * @param query
+     * @param tableColumns columns of the table, the result of SELECT *
+     * @return the columns of the result
+     */
+    static List<String> columnNames(SelectQuery query, List<String> tableColumns) {
+        if (query.isStar())
+            return tableColumns;
+        List<String> columnNames = new ArrayList<>();
+        for (SelectQuery.Item item : query.items)
+            columnNames.add(item.name());
+        return columnNames;
+    }
+
+    /**
+     * Read a columnar table: from the cache if it has it, whole when the
+     * query needs all of it, otherwise only the columns the query uses and
+     * the blocks its WHERE may select, which are not cached
+     */
+    private ColumnarTable columnarRows(SelectQuery query, Path file) {
+        ColumnarTable cached = tableCache.peek(file);
+        if (cached != null)
+            return cached;
+        if (query.isStar() && query.where == null)
+            return tableCache.load(file);
+        try {
+            ColumnarFile columnar = ColumnarFile.open(file);
+            Collection<String> columns = query.isStar() ? columnar.getColumnNames() : columns(query);
+            return columnar.read(columns, ZoneMapPlanner.blocks(query.where, columnar));
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading .col file", e);
+        }
+    }
+
+    /**
+     * @return the names of the columns the query refers to
+     */
+    private static Set<String> columns(SelectQuery query) {
+        Set<String> columns = new HashSet<>();
+        for (SelectQuery.Item item : query.items)
+            columns(item.expression, columns);
+        columns(query.where, columns);
+        for (SelectQuery.OrderKey key : query.orderBy)
+            columns(key.expression, columns);
+        return columns;
+    }
+
+    private static void columns(Expr expression, Set<String> columns) {
+        if (expression instanceof Expr.Column) {
+            columns.add(((Expr.Column) expression).name);
+        } else if (expression instanceof Expr.Binary) {
+            columns(((Expr.Binary) expression).left, columns);
+            columns(((Expr.Binary) expression).right, columns);
+        } else if (expression instanceof Expr.Unary) {
+            columns(((Expr.Unary) expression).right, columns);
+        } else if (expression instanceof Expr.Grouping) {
+            columns(((Expr.Grouping) expression).expression, columns);
+        } else if (expression instanceof Expr.FunctionCall) {
+            for (Expr argument : ((Expr.FunctionCall) expression).arguments)
+                columns(argument, columns);
+        }
+    }
+
+    /**
+     * Read the rows the indexes of the table find for the WHERE clause
+     *
+     * @return the rows, or null when the table must be scanned
+     */
+    private ColumnarTable indexedRows(SelectQuery query, Path file) {
+        if (query.where == null || indexManager == null)
+            return null;
+        List<TableIndex> indexes;
+        try {
+            indexes = indexManager.indexes(file);
+        } catch (IOException e) {
+            // an index that can not be read is not used
+            e.printStackTrace();
+            return null;
+        }
+        if (indexes.isEmpty())
+            return null;
+        long[] offsets = IndexPlanner.candidates(query.where, indexes, TableFiles.columnNames(file));
+        return offsets == null ? null : ColumnarTable.loadRows(file, offsets);
+    }
+
+    /**
+     * Evaluate the select list over the rows, the chunks share its compiled
+     * programs
+     */
+    private List<HashMap<String, Object>> project(SelectQuery query, ExprCompiler compiler, ColumnarTable source,
+            int[] rows, BooleanSupplier cancelled) {
+        ExprCompiler.Program[] items = query.isStar() ? null : compiler.compile(query.items);
+        List<List<HashMap<String, Object>>> chunks = ParallelScan.map(rows.length, cancelled, (from, to) -> {
+            List<HashMap<String, Object>> chunk = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++)
+                chunk.add(query.isStar() ? source.copyRow(rows[i]) : project(query, items, rows[i]));
+            return chunk;
+        });
+        if (chunks.size() == 1)
+            return chunks.get(0);
+        List<HashMap<String, Object>> result = new ArrayList<>(rows.length);
+        for (List<HashMap<String, Object>> chunk : chunks)
+            result.addAll(chunk);
+        return result;
+    }
+
+    /**
+     * Evaluate the compiled select list over a row
+     */
+    static HashMap<String, Object> project(SelectQuery query, ExprCompiler.Program[] items, int row) {
+        HashMap<String, Object> result = new HashMap<>();
+        for (int i = 0; i < items.length; i++)
+            result.put(query.items.get(i).name(), items[i].evaluate(row));
+        return result;
+    }
+
+    /**
+     * Evaluate the select list over a row
+     */
+    private static HashMap<String, Object> project(SelectQuery query, Evaluator evaluator,
+            Map<String, Object> row) {
+        HashMap<String, Object> result = new HashMap<>();
+        for (SelectQuery.Item item : query.items)
+            result.put(item.name(), evaluator.evaluate(item.expression, row));
+        return result;
+    }
+
+    /**
+     * Compare two values the way Table.sort and Table.sortReverse do
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    static int compareValues(Object first, Object second, boolean descending) {
+        if (first == null && second == null)
+            return 0;
+        if (first == null)
+            return 1;
+        if (second == null)
+            return -1;
+        if (!(first instanceof Comparable) || !(second instanceof Comparable)
+                || first.getClass() != second.getClass())
+            throw new Error("Values [" + first + ", " + second + "] are not comparable");
+        int comparison = ((Comparable) first).compareTo(second);
+        return descending ? -comparison : comparison;
+    }
+
+    /**
+     * SELECT COUNT(...), SUM(...) ... one row with the aggregated values
+     */
+    private Table aggregate(SelectQuery query, ExprCompiler compiler, ColumnarTable source, int[] rows) {
+        List<String> columnNames = new ArrayList<>();
+        HashMap<String, Object> result = new HashMap<>();
+        for (SelectQuery.Item item : query.items) {
+            columnNames.add(item.name());
+            result.put(item.name(),
+                    ColumnarOperators.aggregate(source, rows, (Expr.FunctionCall) item.expression, compiler));
+        }
+        return toTable(columnNames, Collections.singletonList(result));
+    }
+
+    /**
+     * SELECT without FROM, evaluates the select list once
+     */
+    private Table selectWithoutTable(SelectQuery query) {
+        if (query.isStar() || query.isAggregate())
+            throw new Error("No table specified, use FROM");
+        Evaluator evaluator = new Evaluator(Collections.emptyList());
+        List<String> columnNames = new ArrayList<>();
+        for (SelectQuery.Item item : query.items)
+            columnNames.add(item.name());
+        return toTable(columnNames, Collections.singletonList(project(query, evaluator, new HashMap<>())));
+    }
+
+    static Table toTable(List<String> columnNames, List<HashMap<String, Object>> rows) {
+        Table table = new Table();
+        table.writeColumnNames(columnNames);
+        for (HashMap<String, Object> row : rows)
+            table.addRow(row);
+        return table;
+    }
+}
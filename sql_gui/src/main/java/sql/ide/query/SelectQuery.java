@@ -0,0 +1,151 @@
+package sql.ide.query;
+
+import java.util.List;
+
+import sql.ide.storage.ResultWriter;
+
+/**
+ * SELECT statement understood by the query engine of the IDE
+ */
+public class SelectQuery {
+    /**
+     * One entry of the select list
+     */
+    public static class Item {
+        public final Expr expression;
+        public final String alias;
+
+        public Item(Expr expression, String alias) {
+            this.expression = expression;
+            this.alias = alias;
+        }
+
+        /**
+         * Name of the result column, the alias or the expression text
+         */
+        public String name() {
+            return alias != null ? alias : expression.toString();
+        }
+    }
+
+    /**
+     * One entry of the ORDER BY list
+     */
+    public static class OrderKey {
+        public final Expr expression;
+        public final boolean descending;
+
+        public OrderKey(Expr expression, boolean descending) {
+            this.expression = expression;
+            this.descending = descending;
+        }
+    }
+
+    public final boolean distinct;
+    /**
+     * Empty when the query is SELECT *
+     */
+    public final List<Item> items;
+    /**
+     * null when there is no FROM
+     */
+    public final String table;
+    public final Expr where;
+    public final List<OrderKey> orderBy;
+    /**
+     * -1 when there is no LIMIT
+     */
+    public final int limit;
+    /**
+     * File of INTO OUTFILE, relative to the database folder; null when the
+     * rows are returned
+     */
+    public final String outfile;
+    /**
+     * Format of INTO OUTFILE ... AS, null to take it from the extension
+     */
+    public final ResultWriter.Format outfileFormat;
+
+    public SelectQuery(boolean distinct, List<Item> items, String table, Expr where, List<OrderKey> orderBy,
+            int limit) {
+        this(distinct, items, table, where, orderBy, limit, null, null);
+    }
+
+    public SelectQuery(boolean distinct, List<Item> items, String table, Expr where, List<OrderKey> orderBy,
+            int limit, String outfile, ResultWriter.Format outfileFormat) {
+        this.distinct = distinct;
+        this.items = items;
+        this.table = table;
+        this.where = where;
+        this.orderBy = orderBy;
+        this.limit = limit;
+        this.outfile = outfile;
+        this.outfileFormat = outfileFormat;
+    }
+
+    /**
+     * @param outfile
+     * @param format null to take it from the extension
+     * @return the same query, writing its rows to the file
+     */
+    public SelectQuery into(String outfile, ResultWriter.Format format) {
+        return new SelectQuery(distinct, items, table, where, orderBy, limit, outfile, format);
+    }
+
+    /**
+     * @return true for SELECT *
+     */
+    public boolean isStar() {
+        return items.isEmpty();
+    }
+
+    /**
+     * @return true when the select list is made of aggregate functions
+     */
+    public boolean isAggregate() {
+        for (Item item : items) {
+            if (item.expression instanceof Expr.FunctionCall
+                    && ((Expr.FunctionCall) item.expression).isAggregate())
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("SELECT ");
+        if (distinct)
+            builder.append("DISTINCT ");
+        if (isStar()) {
+            builder.append("*");
+        } else {
+            for (int i = 0; i < items.size(); i++) {
+                builder.append(items.get(i).expression);
+                if (items.get(i).alias != null)
+                    builder.append(" AS ").append(items.get(i).alias);
+                if (i != items.size() - 1)
+                    builder.append(", ");
+            }
+        }
+        if (table != null)
+            builder.append(" FROM ").append(table);
+        if (where != null)
+            builder.append(" WHERE ").append(where);
+        if (!orderBy.isEmpty()) {
+            builder.append(" ORDER BY ");
+            for (int i = 0; i < orderBy.size(); i++) {
+                builder.append(orderBy.get(i).expression).append(orderBy.get(i).descending ? " DESC" : " ASC");
+                if (i != orderBy.size() - 1)
+                    builder.append(", ");
+            }
+        }
+        if (limit != -1)
+            builder.append(" LIMIT ").append(limit);
+        if (outfile != null) {
+            builder.append(" INTO OUTFILE '").append(outfile).append("'");
+            if (outfileFormat != null)
+                builder.append(" AS ").append(outfileFormat);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,171 @@
+package sql.ide.query;
+
+import java.util.List;
+
+//* Import everything related to database manager
+import edu.upvictoria.fpoo.*;
+import sql.ide.storage.ResultWriter;
+
+/**
+ * Statements about the format the tables are stored in, handled by the IDE
+ * since the database manager only knows .csv files:
+ *
+ * CONVERT TABLE table TO COLUMNAR | CSV;
+ * CONVERT DATABASE TO COLUMNAR | CSV;
+ * IMPORT TABLE table FROM 'file.csv' [AS COLUMNAR | CSV];
+ * EXPORT TABLE table TO 'file.csv' [AS CSV | JSON];
+ *
+ * The files are relative to the database folder. EXPORT streams the rows
+ * like SELECT * FROM table INTO OUTFILE does.
+ */
+public class StorageStatement {
+    public enum Kind {
+        CONVERT_TABLE, CONVERT_DATABASE, IMPORT, EXPORT
+    }
+
+    public final Kind kind;
+    /**
+     * null for CONVERT DATABASE
+     */
+    public final String table;
+    /**
+     * file of IMPORT and EXPORT, null for the others
+     */
+    public final String file;
+    /**
+     * format CONVERT and IMPORT write
+     */
+    public final boolean columnar;
+    /**
+     * format EXPORT writes, null to take it from the extension of the file
+     */
+    public final ResultWriter.Format exportFormat;
+
+    StorageStatement(Kind kind, String table, String file, boolean columnar) {
+        this(kind, table, file, columnar, null);
+    }
+
+    StorageStatement(Kind kind, String table, String file, boolean columnar, ResultWriter.Format exportFormat) {
+        this.kind = kind;
+        this.table = table;
+        this.file = file;
+        this.columnar = columnar;
+        this.exportFormat = exportFormat;
+    }
+
+    /**
+     * @param tokens tokens of one statement, as returned by the Lexer
+     * @return the statement, or null if it is not about the storage
+     * @throws Error if it is about the storage but has a syntax error
+     */
+    public static StorageStatement parse(List<Token> tokens) {
+        if (tokens.isEmpty() || !(isWord(tokens.get(0), "CONVERT") || isWord(tokens.get(0), "IMPORT")
+                || isWord(tokens.get(0), "EXPORT")))
+            return null;
+
+        String verb = tokens.get(0).lexeme;
+        int current = 1;
+        StorageStatement statement;
+        if (verb.equals("CONVERT") && tokens.get(current).type == TokenType.DATABASE) {
+            current++;
+            word(tokens, current++, "TO");
+            statement = new StorageStatement(Kind.CONVERT_DATABASE, null, null, format(tokens, current++));
+        } else {
+            expect(tokens, current++, TokenType.TABLE, "Expected TABLE after " + verb + ".");
+            String table = identifier(tokens, current++, "Expected table name.");
+            if (verb.equals("CONVERT")) {
+                word(tokens, current++, "TO");
+                statement = new StorageStatement(Kind.CONVERT_TABLE, table, null, format(tokens, current++));
+            } else if (verb.equals("IMPORT")) {
+                expect(tokens, current++, TokenType.FROM, "Expected FROM after table name.");
+                String file = string(tokens, current++);
+                boolean columnar = false;
+                if (tokens.get(current).type == TokenType.AS) {
+                    current++;
+                    columnar = format(tokens, current++);
+                }
+                statement = new StorageStatement(Kind.IMPORT, table, file, columnar);
+            } else {
+                word(tokens, current++, "TO");
+                String file = string(tokens, current++);
+                ResultWriter.Format format = null;
+                if (tokens.get(current).type == TokenType.AS) {
+                    current++;
+                    format = exportFormat(tokens, current++);
+                }
+                statement = new StorageStatement(Kind.EXPORT, table, file, false, format);
+            }
+        }
+        expect(tokens, current++, TokenType.SEMICOLON, "Expected ';' after statement.");
+        if (tokens.get(current).type != TokenType.EOF)
+            throw error(tokens.get(current), "Expected end of statement.");
+        return statement;
+    }
+
+    /**
+     * @return true for COLUMNAR, false for CSV
+     */
+    private static boolean format(List<Token> tokens, int current) {
+        if (isWord(tokens.get(current), "COLUMNAR"))
+            return true;
+        if (isWord(tokens.get(current), "CSV"))
+            return false;
+        throw error(tokens.get(current), "Expected COLUMNAR or CSV.");
+    }
+
+    private static ResultWriter.Format exportFormat(List<Token> tokens, int current) {
+        if (isWord(tokens.get(current), "CSV"))
+            return ResultWriter.Format.CSV;
+        if (isWord(tokens.get(current), "JSON"))
+            return ResultWriter.Format.JSON;
+        throw error(tokens.get(current), "Expected CSV or JSON.");
+    }
+
+    private static boolean isWord(Token token, String word) {
+        return token.type == TokenType.IDENTIFIER && token.lexeme.equals(word);
+    }
+
+    private static void word(List<Token> tokens, int current, String word) {
+        if (!isWord(tokens.get(current), word))
+            throw error(tokens.get(current), "Expected " + word + ".");
+    }
+
+    private static String identifier(List<Token> tokens, int current, String message) {
+        expect(tokens, current, TokenType.IDENTIFIER, message);
+        return tokens.get(current).lexeme;
+    }
+
+    private static String string(List<Token> tokens, int current) {
+        expect(tokens, current, TokenType.STRING, "Expected file name.");
+        return (String) tokens.get(current).literal;
+    }
+
+    private static void expect(List<Token> tokens, int current, TokenType type, String message) {
+        if (tokens.get(current).type != type)
+            throw error(tokens.get(current), message);
+    }
+
+    /**
+     * Same format as the ErrorHandler of the database manager
+     */
+    private static Error error(Token token, String message) {
+        String where = token.type == TokenType.EOF ? " at end" : " at '" + token.lexeme + "'";
+        return new Error("[line " + token.line + "] Error" + where + ": " + message);
+    }
+
+    @Override
+    public String toString() {
+        String format = columnar ? "COLUMNAR" : "CSV";
+        switch (kind) {
+            case CONVERT_TABLE:
+                return "CONVERT TABLE " + table + " TO " + format;
+            case CONVERT_DATABASE:
+                return "CONVERT DATABASE TO " + format;
+            case IMPORT:
+                return "IMPORT TABLE " + table + " FROM '" + file + "' AS " + format;
+            default:
+                return "EXPORT TABLE " + table + " TO '" + file + "'"
+                        + (exportFormat != null ? " AS " + exportFormat : "");
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package sql.ide.query;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+//* Import everything related to database manager
+import edu.upvictoria.fpoo.*;
+import sql.ide.profiling.Phase;
+import sql.ide.profiling.Profiler;
+import sql.ide.storage.CsvScan;
+import sql.ide.storage.ResultWriter;
+
+/**
+ * SELECT ... LIMIT over a table that is not in memory, as a pipeline of
+ * iterators: scan, filter, top N (for ORDER BY), project, distinct and limit.
+ * Every step pulls rows from the one before only when it needs them, so
+ * without ORDER BY the file stops being read once the LIMIT is reached; with
+ * ORDER BY the whole file is read but only LIMIT rows are kept. An export
+ * pulls the rows the same way, with or without a LIMIT. A cancelled query
+ * stops pulling rows, every few thousand rows read.
+ */
+class StreamingSelect {
+    // rows read between two checks of the cancellation
+    private static final int CANCEL_CHECK = 4096;
+
+    private StreamingSelect() {
+    }
+
+    /**
+     * @param query
+     * @return true when the query can run as a pipeline
+     */
+    static boolean supports(SelectQuery query) {
+        // DISTINCT goes after ORDER BY, the top N rows may have duplicates
+        return query.limit != -1 && !query.isAggregate() && !(query.distinct && !query.orderBy.isEmpty());
+    }
+
+    /**
+     * @param query a query the pipeline supports
+     * @param file .csv file of the table
+     * @param cancelled checked while the file is read
+     * @return table with the result rows
+     */
+    static Table execute(SelectQuery query, Path file, BooleanSupplier cancelled) {
+        try (CsvScan scan = CsvScan.open(file)) {
+            // the expressions are compiled once and read the row being pulled
+            ExprCompiler.CurrentRow current = new ExprCompiler.CurrentRow();
+            ExprCompiler compiler = ExprCompiler.of(scan.getColumnNames(), current);
+
+            Iterator<HashMap<String, Object>> rows = new Cancellable(scan, cancelled);
+            if (query.where != null)
+                rows = new Filter(rows, compiler.predicate(query.where), current);
+            // ORDER BY reads the whole file up front, the rest is read,
+            // filtered and projected as the rows are pulled
+            if (!query.orderBy.isEmpty()) {
+                long begin = Profiler.begin();
+                rows = top(rows, query, compiler, current);
+                Profiler.end(Phase.SORT, begin);
+            }
+
+            List<String> columnNames = SelectExecutor.columnNames(query, scan.getColumnNames());
+            ExprCompiler.Program[] items = compiler.compile(query.items);
+
+            List<HashMap<String, Object>> result = new ArrayList<>(Math.min(query.limit, 1024));
+            Set<HashMap<String, Object>> seen = query.distinct ? new HashSet<>() : null;
+            long begin = Profiler.begin();
+            while (result.size() < query.limit && rows.hasNext()) {
+                HashMap<String, Object> row = rows.next();
+                HashMap<String, Object> projected = query.isStar() ? row : project(query, items, current, row);
+                if (seen == null || seen.add(projected))
+                    result.add(projected);
+            }
+            Profiler.end(Phase.FILTER, begin);
+            Profiler.rowsScanned(scan.getRowsRead());
+            Profiler.bytesRead(scan.getBytesRead());
+            return SelectExecutor.toTable(columnNames, result);
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading .csv file", e);
+        }
+    }
+
+    /**
+     * Write the rows of a query without ORDER BY, DISTINCT nor aggregates to
+     * the writer while the file is read, only one row is in memory at a time
+     *
+     * @param query
+     * @param file .csv file of the table
+     * @param writer
+     * @param cancelled checked while the file is read
+     * @throws IOException if the file can not be read or the writer fails
+     */
+    static void export(SelectQuery query, Path file, ResultWriter writer, BooleanSupplier cancelled)
+            throws IOException {
+        try (CsvScan scan = CsvScan.open(file)) {
+            ExprCompiler.CurrentRow current = new ExprCompiler.CurrentRow();
+            ExprCompiler compiler = ExprCompiler.of(scan.getColumnNames(), current);
+            Iterator<HashMap<String, Object>> rows = new Cancellable(scan, cancelled);
+            if (query.where != null)
+                rows = new Filter(rows, compiler.predicate(query.where), current);
+            ExprCompiler.Program[] items = compiler.compile(query.items);
+
+            writer.columns(SelectExecutor.columnNames(query, scan.getColumnNames()));
+            long limit = query.limit == -1 ? Long.MAX_VALUE : query.limit;
+            long written = 0;
+            long begin = Profiler.begin();
+            while (written < limit && rows.hasNext()) {
+                HashMap<String, Object> row = rows.next();
+                writer.write(query.isStar() ? row : project(query, items, current, row));
+                written++;
+            }
+            Profiler.end(Phase.FILTER, begin);
+            Profiler.rowsScanned(scan.getRowsRead());
+            Profiler.bytesRead(scan.getBytesRead());
+        }
+    }
+
+    /**
+     * The select list over a row
+     */
+    private static HashMap<String, Object> project(SelectQuery query, ExprCompiler.Program[] items,
+            ExprCompiler.CurrentRow current, HashMap<String, Object> row) {
+        current.row = row;
+        return SelectExecutor.project(query, items, 0);
+    }
+
+    /**
+     * ORDER BY ... LIMIT n, keeps n rows with their keys evaluated once
+     */
+    private static Iterator<HashMap<String, Object>> top(Iterator<HashMap<String, Object>> rows,
+            SelectQuery query, ExprCompiler compiler, ExprCompiler.CurrentRow current) {
+        List<SelectQuery.OrderKey> keys = query.orderBy;
+        ExprCompiler.Program[] programs = new ExprCompiler.Program[keys.size()];
+        for (int i = 0; i < programs.length; i++)
+            programs[i] = compiler.compile(keys.get(i).expression);
+        TopN<Object[]> top = new TopN<>(query.limit, (first, second) -> {
+            for (int i = 0; i < keys.size(); i++) {
+                int comparison = SelectExecutor.compareValues(first[i + 1], second[i + 1], keys.get(i).descending);
+                if (comparison != 0)
+                    return comparison;
+            }
+            return 0;
+        });
+        while (rows.hasNext()) {
+            HashMap<String, Object> row = rows.next();
+            // the row, then the value of every key
+            Object[] keyed = new Object[keys.size() + 1];
+            keyed[0] = row;
+            current.row = row;
+            for (int i = 0; i < programs.length; i++)
+                keyed[i + 1] = programs[i].evaluate(0);
+            top.add(keyed);
+        }
+
+        List<HashMap<String, Object>> sorted = new ArrayList<>();
+        for (Object[] keyed : top.sorted()) {
+            @SuppressWarnings("unchecked")
+            HashMap<String, Object> row = (HashMap<String, Object>) keyed[0];
+            sorted.add(row);
+        }
+        return sorted.iterator();
+    }
+
+    /**
+     * The rows of the scan until the query is cancelled
+     */
+    private static class Cancellable implements Iterator<HashMap<String, Object>> {
+        private final Iterator<HashMap<String, Object>> source;
+        private final BooleanSupplier cancelled;
+        private int read = 0;
+
+        Cancellable(Iterator<HashMap<String, Object>> source, BooleanSupplier cancelled) {
+            this.source = source;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return source.hasNext();
+        }
+
+        @Override
+        public HashMap<String, Object> next() {
+            if (read++ % CANCEL_CHECK == 0)
+                ParallelScan.checkCancelled(cancelled);
+            return source.next();
+        }
+    }
+
+    /**
+     * The rows the predicate selects, evaluated as they are pulled
+     */
+    private static class Filter implements Iterator<HashMap<String, Object>> {
+        private final Iterator<HashMap<String, Object>> source;
+        private final ExprCompiler.Test predicate;
+        private final ExprCompiler.CurrentRow current;
+        private HashMap<String, Object> next;
+
+        Filter(Iterator<HashMap<String, Object>> source, ExprCompiler.Test predicate,
+                ExprCompiler.CurrentRow current) {
+            this.source = source;
+            this.predicate = predicate;
+            this.current = current;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && source.hasNext()) {
+                HashMap<String, Object> row = source.next();
+                current.row = row;
+                if (predicate.test(0))
+                    next = row;
+            }
+            return next != null;
+        }
+
+        @Override
+        public HashMap<String, Object> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            HashMap<String, Object> row = next;
+            next = null;
+            return row;
+        }
+    }
+}
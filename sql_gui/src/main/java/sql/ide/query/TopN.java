@@ -0,0 +1,68 @@
+package sql.ide.query;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The first n values in the order of a comparator, kept in a bounded heap so
+ * ORDER BY ... LIMIT n needs memory for n rows instead of the whole table.
+ * Equal values keep the order they were added in, like a stable sort.
+ */
+class TopN<T> {
+    private static class Entry<T> {
+        final T value;
+        final long sequence;
+
+        Entry(T value, long sequence) {
+            this.value = value;
+            this.sequence = sequence;
+        }
+    }
+
+    private final int n;
+    private final Comparator<T> comparator;
+    private final Comparator<Entry<T>> order;
+    // the last of the n values on top
+    private final PriorityQueue<Entry<T>> heap;
+    private long sequence = 0;
+
+    /**
+     * @param n number of values kept
+     * @param comparator
+     */
+    TopN(int n, Comparator<T> comparator) {
+        this.n = n;
+        this.comparator = comparator;
+        this.order = (first, second) -> {
+            int comparison = comparator.compare(first.value, second.value);
+            return comparison != 0 ? comparison : Long.compare(first.sequence, second.sequence);
+        };
+        this.heap = new PriorityQueue<>(Math.max(1, Math.min(n, 1024) + 1), order.reversed());
+    }
+
+    void add(T value) {
+        if (n == 0)
+            return;
+        if (heap.size() == n) {
+            // a value equal to the last one came later, so it goes after it
+            if (comparator.compare(value, heap.peek().value) >= 0)
+                return;
+            heap.poll();
+        }
+        heap.add(new Entry<>(value, sequence++));
+    }
+
+    /**
+     * @return the values kept, in order
+     */
+    List<T> sorted() {
+        List<Entry<T>> entries = new ArrayList<>(heap);
+        entries.sort(order);
+        List<T> values = new ArrayList<>(entries.size());
+        for (Entry<T> entry : entries)
+            values.add(entry.value);
+        return values;
+    }
+}
@@ -0,0 +1,98 @@
+package sql.ide.query;
+
+import edu.upvictoria.fpoo.TokenType;
+import sql.ide.storage.ColumnarFile;
+
+/**
+ * Finds the blocks of a columnar table a WHERE clause may select, with the
+ * minimum and maximum values the footer keeps for every block.
+ *
+ * Like the IndexPlanner it only rules out: the clause is still evaluated on
+ * the rows of the blocks it keeps. Only the comparisons the columnar kernels
+ * run on primitive values are planned, and only in a WHERE the Evaluator can
+ * not fail on, so a block is never skipped for a row that would have failed.
+ */
+class ZoneMapPlanner {
+
+    private ZoneMapPlanner() {
+    }
+
+    /**
+     * @param where
+     * @param file
+     * @return the blocks to read, or null when all of them must be
+     */
+    static boolean[] blocks(Expr where, ColumnarFile file) {
+        if (where == null || file.blocks() == 0)
+            return null;
+        if (!Evaluator.cannotFail(where, name -> file.column(name) != null, name -> {
+            ColumnarFile.ColumnInfo info = file.column(name);
+            return info != null && info.onlyNumbers();
+        }))
+            return null;
+        return plan(where, file);
+    }
+
+    private static boolean[] plan(Expr expression, ColumnarFile file) {
+        if (expression instanceof Expr.Grouping)
+            return plan(((Expr.Grouping) expression).expression, file);
+        if (!(expression instanceof Expr.Binary))
+            return null;
+
+        Expr.Binary binary = (Expr.Binary) expression;
+        if (binary.operator == TokenType.AND || binary.operator == TokenType.OR) {
+            boolean[] left = plan(binary.left, file);
+            boolean[] right = plan(binary.right, file);
+            if (binary.operator == TokenType.AND) {
+                if (left == null)
+                    return right;
+                for (int i = 0; right != null && i < left.length; i++)
+                    left[i] &= right[i];
+                return left;
+            }
+            if (left == null || right == null)
+                return null;
+            for (int i = 0; i < left.length; i++)
+                left[i] |= right[i];
+            return left;
+        }
+
+        // a column against a literal, in any order
+        TokenType operator = binary.operator;
+        Expr.Column column;
+        Object value;
+        if (binary.left instanceof Expr.Column && binary.right instanceof Expr.Literal) {
+            column = (Expr.Column) binary.left;
+            value = ((Expr.Literal) binary.right).value;
+        } else if (binary.left instanceof Expr.Literal && binary.right instanceof Expr.Column) {
+            column = (Expr.Column) binary.right;
+            value = ((Expr.Literal) binary.left).value;
+            operator = ColumnarOperators.flip(operator);
+        } else {
+            return null;
+        }
+        ColumnarFile.ColumnInfo info = file.column(column.name);
+
+        boolean[] blocks = new boolean[file.blocks()];
+        for (int block = 0; block < blocks.length; block++) {
+            switch (operator) {
+                case EQUAL:
+                case EQUAL_EQUAL:
+                    // NULL = NULL is true, the zone maps have no nulls
+                    blocks[block] = value == null || info.mayEqual(block, value);
+                    break;
+                case GREATER:
+                case GREATER_EQUAL:
+                    blocks[block] = info.mayBeAbove(block, value, operator == TokenType.GREATER_EQUAL);
+                    break;
+                case LESS:
+                case LESS_EQUAL:
+                    blocks[block] = info.mayBeBelow(block, value, operator == TokenType.LESS_EQUAL);
+                    break;
+                default:
+                    return null;
+            }
+        }
+        return blocks;
+    }
+}
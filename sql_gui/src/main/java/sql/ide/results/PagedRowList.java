@@ -0,0 +1,68 @@
+package sql.ide.results;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javafx.collections.ObservableListBase;
+
+/**
+ * Read only list of rows that loads them from a RowSource one page at a time,
+ * when the grid asks for them.
+ *
+ * Only the most recently used pages are kept, so the rows materialized for
+ * the grid never go over maxRows no matter the size of the result.
+ */
+public class PagedRowList extends ObservableListBase<Object[]> {
+    private final RowSource source;
+    private final int pageSize;
+    private final int maxPages;
+    private final Map<Integer, List<Object[]>> pages;
+
+    /**
+     * @param source   where the rows come from
+     * @param pageSize rows loaded at once
+     * @param maxRows  cap of rows kept in memory by the list
+     */
+    public PagedRowList(RowSource source, int pageSize, int maxRows) {
+        this.source = source;
+        this.pageSize = pageSize;
+        this.maxPages = Math.max(1, maxRows / pageSize);
+        // access ordered, so the eldest entry is the least recently used page
+        this.pages = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<Object[]>> eldest) {
+                return size() > maxPages;
+            }
+        };
+    }
+
+    @Override
+    public Object[] get(int index) {
+        if (index < 0 || index >= size())
+            throw new IndexOutOfBoundsException(index);
+        int page = index / pageSize;
+        List<Object[]> rows = pages.get(page);
+        if (rows == null) {
+            int from = page * pageSize;
+            rows = source.rows(from, Math.min(from + pageSize, size()));
+            pages.put(page, rows);
+        }
+        return rows.get(index % pageSize);
+    }
+
+    @Override
+    public int size() {
+        return source.size();
+    }
+
+    /**
+     * @return number of rows currently materialized
+     */
+    public int materializedRows() {
+        int rows = 0;
+        for (List<Object[]> page : pages.values())
+            rows += page.size();
+        return rows;
+    }
+}
@@ -0,0 +1,110 @@
+package sql.ide.results;
+
+import java.util.function.Function;
+
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableRow;
+import javafx.scene.control.TableView;
+
+import sql.ide.profiling.Phase;
+import sql.ide.profiling.StatementProfile;
+
+/**
+ * Shows the profile of every statement of the last script in a TableView,
+ * one row per statement with the time of its phases, its rows and bytes.
+ * The statements slower than sqlide.profile.slowMillis are marked with the
+ * slow-statement style class, and the columns can be sorted to find them.
+ */
+public class ProfilePanel {
+    /**
+     * Statements that take longer are marked, -Dsqlide.profile.slowMillis=...
+     */
+    public static final long SLOW_MILLIS = Long.getLong("sqlide.profile.slowMillis", 100);
+
+    private final TableView<StatementProfile> view;
+    private final Label summary;
+    private final ObservableList<StatementProfile> profiles = FXCollections.observableArrayList();
+
+    public ProfilePanel(TableView<StatementProfile> view, Label summary) {
+        this.view = view;
+        this.summary = summary;
+        view.setPlaceholder(new Label("Run a script to profile its statements"));
+        view.setItems(profiles);
+
+        view.getColumns().add(column("Line", profile -> profile.line));
+        TableColumn<StatementProfile, Object> statement = column("Statement", profile -> profile.statement);
+        statement.setPrefWidth(260);
+        view.getColumns().add(statement);
+        view.getColumns().add(column("Total ms", profile -> millis(profile.getTotalNanos())));
+        for (Phase phase : Phase.values())
+            view.getColumns().add(column(phase.label + " ms", profile -> millis(profile.getNanos(phase))));
+        view.getColumns().add(column("Rows scanned", StatementProfile::getRowsScanned));
+        view.getColumns().add(column("Rows returned",
+                profile -> profile.getRowsReturned() < 0 ? null : profile.getRowsReturned()));
+        view.getColumns().add(column("Read KB", profile -> kilobytes(profile.getBytesRead())));
+        view.getColumns().add(column("Written KB", profile -> kilobytes(profile.getBytesWritten())));
+        view.getColumns().add(column("Allocated KB",
+                profile -> profile.getAllocatedBytes() < 0 ? null : kilobytes(profile.getAllocatedBytes())));
+
+        view.setRowFactory(table -> new TableRow<>() {
+            @Override
+            protected void updateItem(StatementProfile profile, boolean empty) {
+                super.updateItem(profile, empty);
+                getStyleClass().remove("slow-statement");
+                if (!empty && profile != null && profile.getTotalNanos() >= SLOW_MILLIS * 1_000_000)
+                    getStyleClass().add("slow-statement");
+            }
+        });
+    }
+
+    private static TableColumn<StatementProfile, Object> column(String name,
+            Function<StatementProfile, Object> value) {
+        TableColumn<StatementProfile, Object> column = new TableColumn<>(name);
+        column.setCellValueFactory(row -> new ReadOnlyObjectWrapper<>(value.apply(row.getValue())));
+        return column;
+    }
+
+    /**
+     * Add the profile of a statement
+     *
+     * @param profile
+     */
+    public void add(StatementProfile profile) {
+        profiles.add(profile);
+        // the render time arrives after the row, show it
+        view.refresh();
+        updateSummary();
+    }
+
+    /**
+     * Forget the profiles, before running another script
+     */
+    public void clear() {
+        profiles.clear();
+        summary.setText("");
+    }
+
+    private void updateSummary() {
+        long total = 0;
+        StatementProfile slowest = null;
+        for (StatementProfile profile : profiles) {
+            total += profile.getTotalNanos();
+            if (slowest == null || profile.getTotalNanos() > slowest.getTotalNanos())
+                slowest = profile;
+        }
+        summary.setText(profiles.size() + " statement(s) in " + millis(total) + " ms, the slowest at line "
+                + slowest.line + " (" + millis(slowest.getTotalNanos()) + " ms)");
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 10_000.0) / 100.0;
+    }
+
+    private static long kilobytes(long bytes) {
+        return (bytes + 1023) >> 10;
+    }
+}
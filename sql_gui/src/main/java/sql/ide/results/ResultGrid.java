@@ -0,0 +1,75 @@
+package sql.ide.results;
+
+import java.util.List;
+
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.collections.FXCollections;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+
+import edu.upvictoria.fpoo.Table;
+
+/**
+ * Shows query results in a TableView.
+ *
+ * The TableView only creates cells for the rows on screen and the rows are
+ * paged in from the result as the user scrolls, so showing a result costs
+ * the same whatever its size.
+ */
+public class ResultGrid {
+    /**
+     * Rows loaded at once when the user scrolls
+     */
+    public static final int PAGE_SIZE = Integer.getInteger("sqlide.grid.pageSize", 500);
+    /**
+     * Cap of rows kept in memory by the grid, -Dsqlide.grid.maxRows=...
+     */
+    public static final int MAX_ROWS = Integer.getInteger("sqlide.grid.maxRows", 10_000);
+
+    private final TableView<Object[]> view;
+
+    public ResultGrid(TableView<Object[]> view) {
+        this.view = view;
+        view.setPlaceholder(new Label("No rows to show"));
+        // with a fixed row height the view does not measure every row
+        view.setFixedCellSize(24);
+    }
+
+    /**
+     * Show the rows of a table
+     *
+     * @param table
+     */
+    public void show(Table table) {
+        show(new TableRowSource(table));
+    }
+
+    /**
+     * Show the rows of any source
+     *
+     * @param source
+     */
+    public void show(RowSource source) {
+        List<String> columnNames = source.columnNames();
+        view.getColumns().clear();
+        for (int i = 0; i < columnNames.size(); i++) {
+            final int column = i;
+            TableColumn<Object[], Object> tableColumn = new TableColumn<>(columnNames.get(i));
+            tableColumn.setCellValueFactory(row -> new ReadOnlyObjectWrapper<>(row.getValue()[column]));
+            // the rows are paged in, so they can not be sorted by the view
+            tableColumn.setSortable(false);
+            view.getColumns().add(tableColumn);
+        }
+        view.setItems(new PagedRowList(source, PAGE_SIZE, MAX_ROWS));
+        view.scrollTo(0);
+    }
+
+    /**
+     * Remove the rows and the columns
+     */
+    public void clear() {
+        view.getColumns().clear();
+        view.setItems(FXCollections.observableArrayList());
+    }
+}
@@ -0,0 +1,29 @@
+package sql.ide.results;
+
+import java.util.List;
+
+/**
+ * Source of the rows shown by the result grid. The grid only asks for the
+ * rows that are on screen, so a source can keep its rows anywhere.
+ */
+public interface RowSource {
+
+    /**
+     * @return names of the columns, in display order
+     */
+    List<String> columnNames();
+
+    /**
+     * @return number of rows
+     */
+    int size();
+
+    /**
+     * Read a range of rows, every row has one value per column
+     *
+     * @param from first row (inclusive)
+     * @param to   last row (exclusive)
+     * @return
+     */
+    List<Object[]> rows(int from, int to);
+}
@@ -0,0 +1,43 @@
+package sql.ide.results;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import edu.upvictoria.fpoo.Table;
+
+/**
+ * Rows of a Table, read from its row list (getRows()/getColumnNames())
+ */
+public class TableRowSource implements RowSource {
+    private final List<String> columnNames;
+    private final List<HashMap<String, Object>> rows;
+
+    public TableRowSource(Table table) {
+        this.columnNames = new ArrayList<>(table.getColumnNames());
+        this.rows = table.getRows();
+    }
+
+    @Override
+    public List<String> columnNames() {
+        return columnNames;
+    }
+
+    @Override
+    public int size() {
+        return rows.size();
+    }
+
+    @Override
+    public List<Object[]> rows(int from, int to) {
+        List<Object[]> page = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            HashMap<String, Object> row = rows.get(i);
+            Object[] values = new Object[columnNames.size()];
+            for (int column = 0; column < values.length; column++)
+                values[column] = row.get(columnNames.get(column));
+            page.add(values);
+        }
+        return page;
+    }
+}
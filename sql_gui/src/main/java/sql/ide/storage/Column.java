@@ -0,0 +1,207 @@
+package sql.ide.storage;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One column of a ColumnarTable. The values are kept in a primitive array
+ * where possible and the nulls in a bitmap, instead of one boxed value and
+ * one map entry per cell.
+ */
+public abstract class Column {
+    public final String name;
+    protected final int size;
+    // bit i is set when row i is null
+    protected final long[] nulls;
+    protected final int nullCount;
+
+    protected Column(String name, int size, long[] nulls) {
+        this.name = name;
+        this.size = size;
+        this.nulls = nulls;
+        int count = 0;
+        for (long word : nulls)
+            count += Long.bitCount(word);
+        this.nullCount = count;
+    }
+
+    /**
+     * @param row
+     * @return the value boxed the way Table keeps it, null for a null
+     */
+    public abstract Object get(int row);
+
+    public boolean isNull(int row) {
+        return (nulls[row >>> 6] & (1L << row)) != 0;
+    }
+
+    public boolean hasNulls() {
+        return nullCount != 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return heap used by the arrays of the column
+     */
+    public long estimateBytes() {
+        return 32 + 16 + 8L * nulls.length;
+    }
+
+    static long[] bitmap(int size) {
+        return new long[(size + 63) >>> 6];
+    }
+
+    static void setNull(long[] nulls, int row) {
+        nulls[row >>> 6] |= 1L << row;
+    }
+
+    /****************************************************************/
+    /* Implementations */
+    /****************************************************************/
+
+    /**
+     * Double values, the numbers of a .csv
+     */
+    public static class Doubles extends Column {
+        public final double[] values;
+
+        Doubles(String name, int size, long[] nulls, double[] values) {
+            super(name, size, nulls);
+            this.values = values;
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+        @Override
+        public long estimateBytes() {
+            return super.estimateBytes() + 16 + 8L * values.length;
+        }
+    }
+
+    /**
+     * Long values, or Integer values when integers is true (ROUND and COUNT
+     * results)
+     */
+    public static class Longs extends Column {
+        public final long[] values;
+        public final boolean integers;
+
+        Longs(String name, int size, long[] nulls, long[] values, boolean integers) {
+            super(name, size, nulls);
+            this.values = values;
+            this.integers = integers;
+        }
+
+        @Override
+        public Object get(int row) {
+            if (isNull(row))
+                return null;
+            return integers ? (Object) (int) values[row] : (Object) values[row];
+        }
+
+        @Override
+        public long estimateBytes() {
+            return super.estimateBytes() + 16 + 8L * values.length;
+        }
+    }
+
+    /**
+     * Dictionary encoded strings, every distinct string is kept once
+     */
+    public static class Strings extends Column {
+        public final int[] codes;
+        public final String[] dictionary;
+        private Map<String, Integer> lookup;
+        private int[] ranks;
+
+        Strings(String name, int size, long[] nulls, int[] codes, String[] dictionary) {
+            super(name, size, nulls);
+            this.codes = codes;
+            this.dictionary = dictionary;
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : dictionary[codes[row]];
+        }
+
+        /**
+         * @param value
+         * @return code of the value, -1 if no row has it
+         */
+        public int codeOf(String value) {
+            Map<String, Integer> lookup;
+            synchronized (this) {
+                if (this.lookup == null) {
+                    this.lookup = new HashMap<>(dictionary.length * 2);
+                    for (int i = 0; i < dictionary.length; i++)
+                        this.lookup.put(dictionary[i], i);
+                }
+                lookup = this.lookup;
+            }
+            Integer code = lookup.get(value);
+            return code == null ? -1 : code;
+        }
+
+        /**
+         * @return position of every code in the sorted dictionary, comparing
+         *         two ranks is comparing the two strings
+         */
+        public synchronized int[] ranks() {
+            if (ranks == null) {
+                Integer[] order = new Integer[dictionary.length];
+                for (int i = 0; i < order.length; i++)
+                    order[i] = i;
+                Arrays.sort(order, (a, b) -> dictionary[a].compareTo(dictionary[b]));
+                ranks = new int[dictionary.length];
+                for (int i = 0; i < order.length; i++)
+                    ranks[order[i]] = i;
+            }
+            return ranks;
+        }
+
+        @Override
+        public long estimateBytes() {
+            long bytes = super.estimateBytes() + 16 + 4L * codes.length + 16 + 4L * dictionary.length;
+            for (String value : dictionary)
+                bytes += 40 + value.length();
+            return bytes;
+        }
+    }
+
+    /**
+     * Anything else, or columns mixing types
+     */
+    public static class Mixed extends Column {
+        public final Object[] values;
+
+        Mixed(String name, int size, long[] nulls, Object[] values) {
+            super(name, size, nulls);
+            this.values = values;
+        }
+
+        @Override
+        public Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        public long estimateBytes() {
+            long bytes = super.estimateBytes() + 16 + 4L * values.length;
+            for (Object value : values) {
+                if (value instanceof String)
+                    bytes += 40 + ((String) value).length();
+                else if (value != null)
+                    bytes += 16;
+            }
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package sql.ide.storage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Builds a Column value by value, the representation is chosen by the values
+ * themselves: the first non null value decides it, and a value of another
+ * type turns the column into a Mixed one.
+ */
+class ColumnBuilder {
+    private enum Kind {
+        EMPTY, DOUBLE, LONG, INTEGER, STRING, MIXED
+    }
+
+    private final String name;
+    private Kind kind = Kind.EMPTY;
+    private int size = 0;
+    private long[] nulls = new long[1];
+
+    private double[] doubles;
+    private long[] longs;
+    private int[] codes;
+    private HashMap<String, Integer> dictionary;
+    private List<String> strings;
+    private Object[] objects;
+
+    ColumnBuilder(String name) {
+        this.name = name;
+    }
+
+    void add(Object value) {
+        ensureCapacity(size + 1);
+        if (value == null) {
+            Column.setNull(nulls, size);
+            if (kind == Kind.MIXED)
+                objects[size] = null;
+            size++;
+            return;
+        }
+
+        if (kind == Kind.EMPTY)
+            start(kindOf(value));
+        else if (kind != Kind.MIXED && kindOf(value) != kind)
+            toMixed();
+
+        switch (kind) {
+            case DOUBLE:
+                doubles[size] = (Double) value;
+                break;
+            case LONG:
+                longs[size] = (Long) value;
+                break;
+            case INTEGER:
+                longs[size] = (Integer) value;
+                break;
+            case STRING: {
+                String text = (String) value;
+                Integer code = dictionary.get(text);
+                if (code == null) {
+                    code = strings.size();
+                    dictionary.put(text, code);
+                    strings.add(text);
+                }
+                codes[size] = code;
+                break;
+            }
+            default:
+                objects[size] = value;
+                break;
+        }
+        size++;
+    }
+
+    private static Kind kindOf(Object value) {
+        if (value instanceof Double)
+            return Kind.DOUBLE;
+        if (value instanceof Long)
+            return Kind.LONG;
+        if (value instanceof Integer)
+            return Kind.INTEGER;
+        if (value instanceof String)
+            return Kind.STRING;
+        return Kind.MIXED;
+    }
+
+    private void start(Kind kind) {
+        this.kind = kind;
+        int capacity = nulls.length * 64;
+        switch (kind) {
+            case DOUBLE:
+                doubles = new double[capacity];
+                break;
+            case LONG:
+            case INTEGER:
+                longs = new long[capacity];
+                break;
+            case STRING:
+                codes = new int[capacity];
+                dictionary = new HashMap<>();
+                strings = new ArrayList<>();
+                break;
+            default:
+                objects = new Object[capacity];
+                break;
+        }
+    }
+
+    /**
+     * Box the values added so far, the column holds values of several types
+     */
+    private void toMixed() {
+        Object[] boxed = new Object[nulls.length * 64];
+        Column current = build();
+        for (int i = 0; i < size; i++)
+            boxed[i] = current.get(i);
+        doubles = null;
+        longs = null;
+        codes = null;
+        dictionary = null;
+        strings = null;
+        objects = boxed;
+        kind = Kind.MIXED;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= nulls.length * 64)
+            return;
+        int words = Math.max(nulls.length * 2, (capacity + 63) >>> 6);
+        nulls = Arrays.copyOf(nulls, words);
+        int length = words * 64;
+        if (doubles != null)
+            doubles = Arrays.copyOf(doubles, length);
+        if (longs != null)
+            longs = Arrays.copyOf(longs, length);
+        if (codes != null)
+            codes = Arrays.copyOf(codes, length);
+        if (objects != null)
+            objects = Arrays.copyOf(objects, length);
+    }
+
+    /**
+     * @return the column, its arrays trimmed to the number of values
+     */
+    Column build() {
+        long[] bitmap = Arrays.copyOf(nulls, (size + 63) >>> 6);
+        switch (kind) {
+            case DOUBLE:
+                return new Column.Doubles(name, size, bitmap, Arrays.copyOf(doubles, size));
+            case LONG:
+            case INTEGER:
+                return new Column.Longs(name, size, bitmap, Arrays.copyOf(longs, size), kind == Kind.INTEGER);
+            case STRING:
+                return new Column.Strings(name, size, bitmap, Arrays.copyOf(codes, size),
+                        strings.toArray(new String[0]));
+            case MIXED:
+                return new Column.Mixed(name, size, bitmap, Arrays.copyOf(objects, size));
+            default:
+                // only nulls
+                return new Column.Mixed(name, size, bitmap, new Object[size]);
+        }
+    }
+}
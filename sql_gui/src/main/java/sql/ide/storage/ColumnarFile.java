@@ -0,0 +1,753 @@
+package sql.ide.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import sql.ide.profiling.Profiler;
+
+/**
+ * Binary, column oriented file of a table, TABLE.col, an alternative to its
+ * .csv that is read without parsing any text.
+ *
+ * Every column is stored on its own: its null bitmap, then its values. The
+ * numbers are fixed width arrays of doubles or longs, the strings are the
+ * codes of a dictionary sorted by value, and the columns mixing types are
+ * tagged values. A footer at the end of the file has, for every column,
+ * where it starts and, for every block of sqlide.columnar.blockRows rows,
+ * the minimum and the maximum value (the codes for the strings), so a scan
+ * knows which blocks can not match its WHERE clause. The numbers are little
+ * endian.
+ *
+ * The file is memory mapped to be read: only the columns and the blocks a
+ * query needs are copied out of it, the rest is never touched. It is written
+ * to a temporary file that is moved over the table once it is on the disk.
+ */
+public class ColumnarFile {
+    public static final String EXTENSION = ".col";
+    // rows per block of the zone maps, a multiple of 64 so the blocks start
+    // at a word of the null bitmaps
+    static final int BLOCK_ROWS = Math.max(64, Integer.getInteger("sqlide.columnar.blockRows", 65536) & ~63);
+
+    private static final int MAGIC = 0x53514C43; // SQLC
+    private static final byte VERSION = 1;
+    private static final int TRAILER_BYTES = 12;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte DOUBLE = 1, LONG = 2, INTEGER = 3, STRING = 4, MIXED = 5;
+    // tags of the values of the MIXED columns
+    private static final byte NULL_VALUE = 0, DOUBLE_VALUE = 1, STRING_VALUE = 2, BOOLEAN_VALUE = 3, LONG_VALUE = 4,
+            INTEGER_VALUE = 5;
+
+    /**
+     * Footer entry of one column, with its zone map
+     */
+    public static class ColumnInfo {
+        public final String name;
+        final byte kind;
+        final long nullsOffset;
+        final int nullCount;
+        final long dataOffset;
+        // DOUBLE: per block minimum and maximum, +Infinity and -Infinity
+        // for a block without values
+        double[] minimums;
+        double[] maximums;
+        // STRING: where the dictionary is, and per block smallest and
+        // largest code, MAX_VALUE and -1 for a block without values
+        long dictionaryOffset;
+        int dictionarySize;
+        int[] minimumCodes;
+        int[] maximumCodes;
+        // MIXED: where every block starts
+        long[] blockOffsets;
+        // the dictionary is read the first time it is needed
+        private ByteBuffer buffer;
+        private String[] dictionary;
+        private Map<String, Integer> codes;
+
+        ColumnInfo(String name, byte kind, long nullsOffset, int nullCount, long dataOffset) {
+            this.name = name;
+            this.kind = kind;
+            this.nullsOffset = nullsOffset;
+            this.nullCount = nullCount;
+            this.dataOffset = dataOffset;
+        }
+
+        /**
+         * @return NUMBER, STRING or UNKNOWN, like the SchemaCatalog names them
+         */
+        public String type() {
+            switch (kind) {
+                case DOUBLE:
+                case LONG:
+                case INTEGER:
+                    return "NUMBER";
+                case STRING:
+                    return "STRING";
+                default:
+                    return "UNKNOWN";
+            }
+        }
+
+        public boolean hasNulls() {
+            return nullCount != 0;
+        }
+
+        /**
+         * @return true when every row has a Double, what the comparisons of
+         *         the queries take
+         */
+        public boolean onlyNumbers() {
+            return kind == DOUBLE && nullCount == 0;
+        }
+
+        /**
+         * @param block
+         * @param value
+         * @return false if no row of the block can be equal to the value,
+         *         true if it may or the zone map can not tell
+         */
+        public boolean mayEqual(int block, Object value) {
+            if (kind == DOUBLE && value instanceof Double) {
+                double number = (Double) value;
+                return minimums[block] <= number && number <= maximums[block];
+            }
+            if (kind == STRING && value instanceof String) {
+                int code = codeOf((String) value);
+                return code != -1 && minimumCodes[block] <= code && code <= maximumCodes[block];
+            }
+            return true;
+        }
+
+        /**
+         * @param block
+         * @param bound
+         * @param inclusive
+         * @return false if no row of the block is below the bound
+         */
+        public boolean mayBeBelow(int block, Object bound, boolean inclusive) {
+            if (kind != DOUBLE || !(bound instanceof Double))
+                return true;
+            double number = (Double) bound;
+            return inclusive ? minimums[block] <= number : minimums[block] < number;
+        }
+
+        /**
+         * @param block
+         * @param bound
+         * @param inclusive
+         * @return false if no row of the block is above the bound
+         */
+        public boolean mayBeAbove(int block, Object bound, boolean inclusive) {
+            if (kind != DOUBLE || !(bound instanceof Double))
+                return true;
+            double number = (Double) bound;
+            return inclusive ? maximums[block] >= number : maximums[block] > number;
+        }
+
+        synchronized String[] dictionary() {
+            if (dictionary == null)
+                dictionary = readDictionary(buffer, dictionaryOffset, dictionarySize);
+            return dictionary;
+        }
+
+        private synchronized int codeOf(String value) {
+            if (codes == null) {
+                String[] dictionary = dictionary();
+                codes = new HashMap<>(dictionary.length * 2);
+                for (int i = 0; i < dictionary.length; i++)
+                    codes.put(dictionary[i], i);
+            }
+            Integer code = codes.get(value);
+            return code == null ? -1 : code;
+        }
+    }
+
+    private final Path file;
+    private final ByteBuffer buffer;
+    private final int rows;
+    private final int blockRows;
+    private final List<ColumnInfo> columns;
+    private final List<String> columnNames;
+
+    private ColumnarFile(Path file, ByteBuffer buffer, int rows, int blockRows, List<ColumnInfo> columns) {
+        this.file = file;
+        this.buffer = buffer;
+        this.rows = rows;
+        this.blockRows = blockRows;
+        this.columns = Collections.unmodifiableList(columns);
+        List<String> columnNames = new ArrayList<>();
+        for (ColumnInfo column : columns)
+            columnNames.add(column.name);
+        this.columnNames = Collections.unmodifiableList(columnNames);
+    }
+
+    /****************************************************************/
+    /* Reads */
+    /****************************************************************/
+
+    /**
+     * Map a file and read its footer, the columns are read when asked for
+     *
+     * @param file .col file of the table
+     * @return
+     * @throws IOException if it can not be read or is not a columnar table
+     */
+    public static ColumnarFile open(Path file) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("[" + file.getFileName() + "] The columnar table is too big to be mapped");
+            // the mapping outlives the channel
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+        int size = buffer.capacity();
+        if (size < 8 + TRAILER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(size - 4) != MAGIC)
+            throw new IOException("[" + file.getFileName() + "] Not a columnar table");
+        if (buffer.get(4) != VERSION)
+            throw new IOException("[" + file.getFileName() + "] Unknown version " + buffer.get(4));
+
+        try {
+            ByteBuffer footer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            footer.position((int) buffer.getLong(size - TRAILER_BYTES));
+            int rows = footer.getInt();
+            int blockRows = footer.getInt();
+            int blocks = blocks(rows, blockRows);
+            int count = footer.getInt();
+            List<ColumnInfo> columns = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                ColumnInfo column = new ColumnInfo(readString(footer), footer.get(), footer.getLong(),
+                        footer.getInt(), footer.getLong());
+                switch (column.kind) {
+                    case DOUBLE:
+                        column.minimums = new double[blocks];
+                        column.maximums = new double[blocks];
+                        for (int block = 0; block < blocks; block++) {
+                            column.minimums[block] = footer.getDouble();
+                            column.maximums[block] = footer.getDouble();
+                        }
+                        break;
+                    case STRING:
+                        column.buffer = buffer;
+                        column.dictionaryOffset = footer.getLong();
+                        column.dictionarySize = footer.getInt();
+                        column.minimumCodes = new int[blocks];
+                        column.maximumCodes = new int[blocks];
+                        for (int block = 0; block < blocks; block++) {
+                            column.minimumCodes[block] = footer.getInt();
+                            column.maximumCodes[block] = footer.getInt();
+                        }
+                        break;
+                    case MIXED:
+                        column.blockOffsets = new long[blocks];
+                        for (int block = 0; block < blocks; block++)
+                            column.blockOffsets[block] = footer.getLong();
+                        break;
+                    case LONG:
+                    case INTEGER:
+                        break;
+                    default:
+                        throw new IOException("[" + file.getFileName() + "] Unknown column kind " + column.kind);
+                }
+                columns.add(column);
+            }
+            return new ColumnarFile(file, buffer, rows, blockRows, columns);
+        } catch (RuntimeException e) {
+            throw new IOException("[" + file.getFileName() + "] The columnar table is damaged", e);
+        }
+    }
+
+    /**
+     * Read a whole table
+     *
+     * @param file .col file of the table
+     * @return
+     * @throws IOException if it can not be read
+     */
+    public static ColumnarTable read(Path file) throws IOException {
+        ColumnarFile columnar = open(file);
+        return columnar.read(columnar.getColumnNames(), null);
+    }
+
+    /**
+     * Copy some columns and blocks out of the file
+     *
+     * @param names columns to read, the ones the table does not have are left out
+     * @param blocks blocks to read, null for all of them
+     * @return the rows of the blocks, in table order
+     * @throws IOException if the file is damaged
+     */
+    public ColumnarTable read(Collection<String> names, boolean[] blocks) throws IOException {
+        int[] starts = new int[blocks()];
+        int size = 0;
+        for (int block = 0; block < starts.length; block++) {
+            starts[block] = -1;
+            if (blocks == null || blocks[block]) {
+                starts[block] = size;
+                size += blockSize(block);
+            }
+        }
+
+        List<String> columnNames = new ArrayList<>();
+        List<Column> read = new ArrayList<>();
+        try {
+            for (ColumnInfo column : columns) {
+                if (!names.contains(column.name))
+                    continue;
+                columnNames.add(column.name);
+                read.add(readColumn(column, starts, size));
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("[" + file.getFileName() + "] The columnar table is damaged", e);
+        }
+        return new ColumnarTable(columnNames, read.toArray(new Column[0]), size);
+    }
+
+    private Column readColumn(ColumnInfo column, int[] starts, int size) {
+        long[] nulls = Column.bitmap(size);
+        for (int block = 0; block < starts.length; block++) {
+            if (starts[block] != -1)
+                slice(column.nullsOffset + 8L * block * (blockRows >>> 6)).asLongBuffer().get(nulls,
+                        starts[block] >>> 6, (blockSize(block) + 63) >>> 6);
+        }
+
+        long bytes = 8L * nulls.length;
+        Column result;
+        switch (column.kind) {
+            case DOUBLE: {
+                double[] values = new double[size];
+                for (int block = 0; block < starts.length; block++) {
+                    if (starts[block] != -1)
+                        slice(column.dataOffset + 8L * block * blockRows).asDoubleBuffer().get(values,
+                                starts[block], blockSize(block));
+                }
+                bytes += 8L * size;
+                result = new Column.Doubles(column.name, size, nulls, values);
+                break;
+            }
+            case LONG:
+            case INTEGER: {
+                long[] values = new long[size];
+                for (int block = 0; block < starts.length; block++) {
+                    if (starts[block] != -1)
+                        slice(column.dataOffset + 8L * block * blockRows).asLongBuffer().get(values, starts[block],
+                                blockSize(block));
+                }
+                bytes += 8L * size;
+                result = new Column.Longs(column.name, size, nulls, values, column.kind == INTEGER);
+                break;
+            }
+            case STRING: {
+                int[] codes = new int[size];
+                for (int block = 0; block < starts.length; block++) {
+                    if (starts[block] != -1)
+                        slice(column.dataOffset + 4L * block * blockRows).asIntBuffer().get(codes, starts[block],
+                                blockSize(block));
+                }
+                bytes += 4L * size;
+                result = new Column.Strings(column.name, size, nulls, codes, column.dictionary());
+                break;
+            }
+            default: {
+                Object[] values = new Object[size];
+                for (int block = 0; block < starts.length; block++) {
+                    if (starts[block] == -1)
+                        continue;
+                    ByteBuffer input = slice(column.blockOffsets[block]);
+                    for (int i = 0; i < blockSize(block); i++)
+                        values[starts[block] + i] = readValue(input);
+                    bytes += input.position();
+                }
+                result = new Column.Mixed(column.name, size, nulls, values);
+                break;
+            }
+        }
+        Profiler.bytesRead(bytes);
+        return result;
+    }
+
+    private ByteBuffer slice(long offset) {
+        ByteBuffer slice = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        slice.position((int) offset);
+        return slice.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static Object readValue(ByteBuffer input) {
+        byte tag = input.get();
+        switch (tag) {
+            case NULL_VALUE:
+                return null;
+            case DOUBLE_VALUE:
+                return input.getDouble();
+            case STRING_VALUE:
+                return readString(input);
+            case BOOLEAN_VALUE:
+                return input.get() != 0;
+            case LONG_VALUE:
+                return input.getLong();
+            case INTEGER_VALUE:
+                return input.getInt();
+            default:
+                throw new IllegalStateException("Unknown value tag " + tag);
+        }
+    }
+
+    private static String readString(ByteBuffer input) {
+        byte[] bytes = new byte[input.getInt()];
+        input.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String[] readDictionary(ByteBuffer buffer, long offset, int size) {
+        ByteBuffer input = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        input.position((int) offset);
+        String[] dictionary = new String[size];
+        for (int i = 0; i < size; i++)
+            dictionary[i] = readString(input);
+        return dictionary;
+    }
+
+    /**
+     * @return the columns of the table, with their zone maps
+     */
+    public List<ColumnInfo> columns() {
+        return columns;
+    }
+
+    /**
+     * @param name
+     * @return the column, or null if the table does not have it
+     */
+    public ColumnInfo column(String name) {
+        for (ColumnInfo column : columns) {
+            if (column.name.equals(name))
+                return column;
+        }
+        return null;
+    }
+
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    /**
+     * @return number of rows
+     */
+    public int size() {
+        return rows;
+    }
+
+    public int blocks() {
+        return blocks(rows, blockRows);
+    }
+
+    /**
+     * @param block
+     * @return number of rows of the block, only the last one is not full
+     */
+    public int blockSize(int block) {
+        return Math.min(blockRows, rows - block * blockRows);
+    }
+
+    private static int blocks(int rows, int blockRows) {
+        return (rows + blockRows - 1) / blockRows;
+    }
+
+    /****************************************************************/
+    /* Writes */
+    /****************************************************************/
+
+    /**
+     * Write a table, the file is replaced in one step once it is on the disk
+     *
+     * @param table
+     * @param file .col file of the table
+     * @throws IOException if it can not be written
+     */
+    public static void write(ColumnarTable table, Path file) throws IOException {
+        Path temporary = TableFiles.temporaryFile(file);
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                Output output = new Output(channel);
+                write(table, output);
+                output.flush();
+                channel.force(true);
+                Profiler.bytesWritten(channel.size());
+            }
+            TableFiles.copyPermissions(file, temporary);
+            try {
+                Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static void write(ColumnarTable table, Output output) throws IOException {
+        int rows = table.size();
+        int blocks = blocks(rows, BLOCK_ROWS);
+        output.putInt(MAGIC);
+        output.put(VERSION);
+        output.align();
+
+        // the regions of the columns, the footer is filled as they are written
+        Output footer = new Output(null);
+        footer.putInt(rows);
+        footer.putInt(BLOCK_ROWS);
+        footer.putInt(table.getColumnNames().size());
+        for (int i = 0; i < table.getColumnNames().size(); i++) {
+            Column column = table.column(i);
+            byte kind = kindOf(column);
+            long nullsOffset = output.position();
+            for (int word = 0; word < (rows + 63) >>> 6; word++)
+                output.putLong(word < column.nulls.length ? column.nulls[word] : 0);
+            output.align();
+            long dataOffset = output.position();
+
+            footer.putString(column.name);
+            footer.put(kind);
+            footer.putLong(nullsOffset);
+            footer.putInt(column.nullCount);
+            footer.putLong(dataOffset);
+            switch (kind) {
+                case DOUBLE:
+                    writeDoubles((Column.Doubles) column, blocks, output, footer);
+                    break;
+                case LONG:
+                case INTEGER:
+                    for (long value : ((Column.Longs) column).values)
+                        output.putLong(value);
+                    break;
+                case STRING:
+                    writeStrings((Column.Strings) column, blocks, output, footer);
+                    break;
+                default:
+                    for (int block = 0; block < blocks; block++) {
+                        footer.putLong(output.position());
+                        int end = Math.min(rows, (block + 1) * BLOCK_ROWS);
+                        for (int row = block * BLOCK_ROWS; row < end; row++)
+                            writeValue(column.get(row), output);
+                    }
+                    break;
+            }
+            output.align();
+        }
+
+        long footerOffset = output.position();
+        footer.copyTo(output);
+        output.putLong(footerOffset);
+        output.putInt(MAGIC);
+    }
+
+    private static void writeDoubles(Column.Doubles column, int blocks, Output output, Output footer)
+            throws IOException {
+        double[] values = column.values;
+        for (int block = 0; block < blocks; block++) {
+            double minimum = Double.POSITIVE_INFINITY;
+            double maximum = Double.NEGATIVE_INFINITY;
+            int end = Math.min(column.size, (block + 1) * BLOCK_ROWS);
+            for (int row = block * BLOCK_ROWS; row < end; row++) {
+                output.putDouble(values[row]);
+                if (column.isNull(row))
+                    continue;
+                minimum = Math.min(minimum, values[row]);
+                maximum = Math.max(maximum, values[row]);
+            }
+            footer.putDouble(minimum);
+            footer.putDouble(maximum);
+        }
+    }
+
+    /**
+     * The dictionary is written sorted, so the order of the codes is the
+     * order of the strings and they can be zone mapped
+     */
+    private static void writeStrings(Column.Strings column, int blocks, Output output, Output footer)
+            throws IOException {
+        String[] dictionary = column.dictionary;
+        Integer[] order = new Integer[dictionary.length];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        Arrays.sort(order, (a, b) -> dictionary[a].compareTo(dictionary[b]));
+        int[] recode = new int[dictionary.length];
+        for (int i = 0; i < order.length; i++)
+            recode[order[i]] = i;
+
+        int[] codes = column.codes;
+        int[] minimums = new int[blocks];
+        int[] maximums = new int[blocks];
+        for (int block = 0; block < blocks; block++) {
+            int minimum = Integer.MAX_VALUE;
+            int maximum = -1;
+            int end = Math.min(column.size, (block + 1) * BLOCK_ROWS);
+            for (int row = block * BLOCK_ROWS; row < end; row++) {
+                if (column.isNull(row)) {
+                    output.putInt(0);
+                    continue;
+                }
+                int code = recode[codes[row]];
+                output.putInt(code);
+                minimum = Math.min(minimum, code);
+                maximum = Math.max(maximum, code);
+            }
+            minimums[block] = minimum;
+            maximums[block] = maximum;
+        }
+        output.align();
+
+        footer.putLong(output.position());
+        footer.putInt(dictionary.length);
+        for (int block = 0; block < blocks; block++) {
+            footer.putInt(minimums[block]);
+            footer.putInt(maximums[block]);
+        }
+        for (Integer code : order)
+            output.putString(dictionary[code]);
+    }
+
+    private static byte kindOf(Column column) {
+        if (column instanceof Column.Doubles)
+            return DOUBLE;
+        if (column instanceof Column.Longs)
+            return ((Column.Longs) column).integers ? INTEGER : LONG;
+        if (column instanceof Column.Strings)
+            return STRING;
+        return MIXED;
+    }
+
+    /**
+     * Any other type is written as its text, the .csv would keep nothing of it
+     */
+    private static void writeValue(Object value, Output output) throws IOException {
+        if (value == null) {
+            output.put(NULL_VALUE);
+        } else if (value instanceof Double) {
+            output.put(DOUBLE_VALUE);
+            output.putDouble((Double) value);
+        } else if (value instanceof Boolean) {
+            output.put(BOOLEAN_VALUE);
+            output.put((byte) ((Boolean) value ? 1 : 0));
+        } else if (value instanceof Long) {
+            output.put(LONG_VALUE);
+            output.putLong((Long) value);
+        } else if (value instanceof Integer) {
+            output.put(INTEGER_VALUE);
+            output.putInt((Integer) value);
+        } else {
+            output.put(STRING_VALUE);
+            output.putString(value.toString());
+        }
+    }
+
+    /**
+     * Little endian writes through a buffer, to a channel or kept in memory
+     * when there is none
+     */
+    private static class Output {
+        private final FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private long flushed = 0;
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        long position() {
+            return flushed + buffer.position();
+        }
+
+        void put(byte value) throws IOException {
+            ensure(1);
+            buffer.put(value);
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void putDouble(double value) throws IOException {
+            ensure(8);
+            buffer.putDouble(value);
+        }
+
+        void putString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            for (int written = 0; written < bytes.length;) {
+                ensure(1);
+                int length = Math.min(buffer.remaining(), bytes.length - written);
+                buffer.put(bytes, written, length);
+                written += length;
+            }
+        }
+
+        /**
+         * Pad to a multiple of 8 bytes, so the arrays can be read in one go
+         */
+        void align() throws IOException {
+            while (position() % 8 != 0)
+                put((byte) 0);
+        }
+
+        /**
+         * Append what this output kept in memory to another one
+         */
+        void copyTo(Output output) throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                output.ensure(1);
+                int length = Math.min(buffer.remaining(), output.buffer.remaining());
+                ByteBuffer part = buffer.slice();
+                part.limit(length);
+                output.buffer.put(part);
+                buffer.position(buffer.position() + length);
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes)
+                return;
+            if (channel == null) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes))
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+                return;
+            }
+            flush();
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            flushed += buffer.remaining();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            buffer.clear();
+        }
+    }
+}
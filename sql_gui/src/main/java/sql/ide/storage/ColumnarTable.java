@@ -0,0 +1,297 @@
+package sql.ide.storage;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+//* Import everything related to database manager
+import edu.upvictoria.fpoo.*;
+
+/**
+ * Column oriented copy of a Table, used by the query engine of the IDE.
+ *
+ * Every column is a primitive array (or the codes of a dictionary for the
+ * strings) plus a null bitmap, so a table takes a fraction of the heap of
+ * its List of HashMaps and the scans read contiguous memory. It converts
+ * from and to Table, so the results are still rendered the same way.
+ */
+public class ColumnarTable {
+    // same pattern Table.load uses to recognise the numbers
+    private static final Pattern NUMBER = Pattern.compile("-?\\d+(\\.\\d+)?");
+
+    private final List<String> columnNames;
+    private final Column[] columns;
+    private final Map<String, Integer> positions = new HashMap<>();
+    private final int size;
+
+    ColumnarTable(List<String> columnNames, Column[] columns, int size) {
+        this.columnNames = Collections.unmodifiableList(new ArrayList<>(columnNames));
+        this.columns = columns;
+        this.size = size;
+        for (int i = 0; i < columns.length; i++)
+            positions.put(columnNames.get(i), i);
+    }
+
+    /**
+     * Read a .csv file straight into columns, with the same rules as
+     * Table.load but without building a HashMap per row
+     *
+     * @param csvFile
+     * @return
+     * @throws RuntimeException if the file can not be read, like Table.load
+     */
+    public static ColumnarTable load(Path csvFile) {
+        try (BufferedReader reader = TableFiles.reader(csvFile)) {
+            String header = reader.readLine();
+            List<String> columnNames = new ArrayList<>();
+            if (header != null) {
+                for (String columnName : header.split(","))
+                    columnNames.add(columnName.toUpperCase());
+            }
+            ColumnBuilder[] builders = builders(columnNames);
+
+            String line;
+            int size = 0;
+            while ((line = reader.readLine()) != null) {
+                String[] values = line.split(",");
+                if (values.length > builders.length)
+                    throw new RuntimeException("Error reading .csv file, row " + (size + 1) + " of " + csvFile
+                            + " has more values than columns");
+                for (int i = 0; i < builders.length; i++)
+                    builders[i].add(i < values.length ? parseValue(values[i]) : null);
+                size++;
+            }
+            return build(columnNames, builders, size);
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading .csv file", e);
+        }
+    }
+
+    /**
+     * Read only some rows of a .csv file, the ones an index found
+     *
+     * @param csvFile
+     * @param offsets byte offsets of the lines of the rows, in table order
+     * @return
+     * @throws RuntimeException if the file can not be read, like Table.load
+     */
+    public static ColumnarTable loadRows(Path csvFile, long[] offsets) {
+        try (FileChannel channel = FileChannel.open(csvFile, StandardOpenOption.READ)) {
+            List<String> columnNames = new ArrayList<>();
+            String header = readLine(channel, 0);
+            if (header != null) {
+                for (String columnName : header.split(","))
+                    columnNames.add(columnName.toUpperCase());
+            }
+            ColumnBuilder[] builders = builders(columnNames);
+            for (long offset : offsets) {
+                String line = readLine(channel, offset);
+                String[] values = line == null ? new String[] { "" } : line.split(",");
+                for (int i = 0; i < builders.length; i++)
+                    builders[i].add(i < values.length ? parseValue(values[i]) : null);
+            }
+            return build(columnNames, builders, offsets.length);
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading .csv file", e);
+        }
+    }
+
+    /**
+     * @return the line starting at the offset, without its line ending
+     */
+    private static String readLine(FileChannel channel, long offset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        int scanned = 0;
+        while (true) {
+            int read = channel.read(buffer, offset + buffer.position());
+            for (; scanned < buffer.position(); scanned++) {
+                byte b = buffer.get(scanned);
+                if (b == '\n' || b == '\r')
+                    return new String(buffer.array(), 0, scanned, TableFiles.CHARSET);
+            }
+            if (read == -1)
+                return scanned == 0 ? null : new String(buffer.array(), 0, scanned, TableFiles.CHARSET);
+            if (!buffer.hasRemaining()) {
+                ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+    }
+
+    static Object parseValue(String value) {
+        if (value.startsWith("\"") && value.endsWith("\""))
+            return value.substring(1, value.length() - 1);
+        if (NUMBER.matcher(value).matches())
+            return Double.parseDouble(value);
+        return null;
+    }
+
+    /**
+     * @param table
+     * @return columnar copy of the table
+     */
+    public static ColumnarTable from(Table table) {
+        List<String> columnNames = table.getColumnNames();
+        ColumnBuilder[] builders = builders(columnNames);
+        for (HashMap<String, Object> row : table.getRows()) {
+            for (int i = 0; i < builders.length; i++)
+                builders[i].add(row.get(columnNames.get(i)));
+        }
+        return build(columnNames, builders, table.getRows().size());
+    }
+
+    private static ColumnBuilder[] builders(List<String> columnNames) {
+        ColumnBuilder[] builders = new ColumnBuilder[columnNames.size()];
+        for (int i = 0; i < builders.length; i++)
+            builders[i] = new ColumnBuilder(columnNames.get(i));
+        return builders;
+    }
+
+    private static ColumnarTable build(List<String> columnNames, ColumnBuilder[] builders, int size) {
+        Column[] columns = new Column[builders.length];
+        for (int i = 0; i < builders.length; i++)
+            columns[i] = builders[i].build();
+        return new ColumnarTable(columnNames, columns, size);
+    }
+
+    /**
+     * @return every row as a Table
+     */
+    public Table toTable() {
+        int[] rows = new int[size];
+        for (int i = 0; i < size; i++)
+            rows[i] = i;
+        return toTable(rows);
+    }
+
+    /**
+     * @param rows indexes of the rows, in the order they must have
+     * @return the rows as a Table
+     */
+    public Table toTable(int[] rows) {
+        Table table = new Table();
+        table.writeColumnNames(columnNames);
+        for (int row : rows)
+            table.addRow(copyRow(row));
+        return table;
+    }
+
+    /**
+     * @param row
+     * @return a new HashMap with the values of the row, like the ones of Table
+     */
+    public HashMap<String, Object> copyRow(int row) {
+        HashMap<String, Object> copy = new HashMap<>();
+        for (Column column : columns)
+            copy.put(column.name, column.get(row));
+        return copy;
+    }
+
+    /**
+     * @param row
+     * @return read only view of the row, for the Evaluator
+     */
+    public Map<String, Object> row(int row) {
+        return new RowView(row);
+    }
+
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    /**
+     * @param name
+     * @return the column, or null if the table does not have it
+     */
+    public Column column(String name) {
+        Integer position = positions.get(name);
+        return position == null ? null : columns[position];
+    }
+
+    public Column column(int position) {
+        return columns[position];
+    }
+
+    /**
+     * @return number of rows
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return heap used by the columns
+     */
+    public long estimateBytes() {
+        long bytes = 64 + 64L * columns.length;
+        for (Column column : columns)
+            bytes += column.estimateBytes();
+        return bytes;
+    }
+
+    /**
+     * Map over one row, nothing is copied
+     */
+    private class RowView extends AbstractMap<String, Object> {
+        private final int row;
+
+        RowView(int row) {
+            this.row = row;
+        }
+
+        @Override
+        public Object get(Object key) {
+            Integer position = positions.get(key);
+            return position == null ? null : columns[position].get(row);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return positions.containsKey(key);
+        }
+
+        @Override
+        public Set<Map.Entry<String, Object>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Map.Entry<String, Object>> iterator() {
+                    return new Iterator<>() {
+                        private int position = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return position < columns.length;
+                        }
+
+                        @Override
+                        public Map.Entry<String, Object> next() {
+                            Column column = columns[position++];
+                            return new SimpleImmutableEntry<>(column.name, column.get(row));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return columns.length;
+                }
+            };
+        }
+    }
+}
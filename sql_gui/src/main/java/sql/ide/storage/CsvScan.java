@@ -0,0 +1,113 @@
+package sql.ide.storage;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the rows of a .csv table one at a time, with the same rules as
+ * Table.load, so a query that needs only the first rows stops reading the
+ * file once it has them.
+ */
+public class CsvScan implements Iterator<HashMap<String, Object>>, Closeable {
+    private final Path file;
+    private final BufferedReader reader;
+    private final List<String> columnNames = new ArrayList<>();
+    private String nextLine;
+    private long rowsRead = 0;
+    // characters of the lines read, the bytes of an ASCII file
+    private long bytesRead = 0;
+
+    private CsvScan(Path file, BufferedReader reader) throws IOException {
+        this.file = file;
+        this.reader = reader;
+        String header = reader.readLine();
+        if (header != null) {
+            bytesRead += header.length() + 1;
+            for (String columnName : header.split(","))
+                columnNames.add(columnName.toUpperCase());
+            nextLine = reader.readLine();
+        }
+    }
+
+    /**
+     * @param file .csv file
+     * @return the scan, positioned before the first row
+     * @throws RuntimeException if the file can not be read, like Table.load
+     */
+    public static CsvScan open(Path file) {
+        BufferedReader reader = null;
+        try {
+            reader = TableFiles.reader(file);
+            return new CsvScan(file, reader);
+        } catch (IOException e) {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw new RuntimeException("Error reading .csv file", e);
+        }
+    }
+
+    public List<String> getColumnNames() {
+        return Collections.unmodifiableList(columnNames);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return nextLine != null;
+    }
+
+    /**
+     * @return the next row, as Table.load would have it
+     */
+    @Override
+    public HashMap<String, Object> next() {
+        if (nextLine == null)
+            throw new NoSuchElementException();
+        String[] values = nextLine.split(",");
+        if (values.length > columnNames.size())
+            throw new RuntimeException("Error reading .csv file, row " + (rowsRead + 1) + " of " + file
+                    + " has more values than columns");
+        HashMap<String, Object> row = new HashMap<>();
+        for (int i = 0; i < columnNames.size(); i++)
+            row.put(columnNames.get(i), i < values.length ? ColumnarTable.parseValue(values[i]) : null);
+        rowsRead++;
+        bytesRead += nextLine.length() + 1;
+        try {
+            nextLine = reader.readLine();
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading .csv file", e);
+        }
+        return row;
+    }
+
+    /**
+     * @return rows returned so far
+     */
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    /**
+     * @return characters of the lines read so far, newlines included
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,213 @@
+package sql.ide.storage;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The secondary indexes of the tables, kept in memory once read.
+ *
+ * Every write rewrites the whole .csv, so every offset may move. When the
+ * IDE wrote the table it knows the rows the statements changed and where
+ * every row landed, the indexes are updated from those and their sidecars
+ * rewritten; after a statement run by the Interpreter the indexes are built
+ * again. An index found stale (the table was edited outside the IDE) is
+ * rebuilt before it is used.
+ */
+public class IndexManager {
+    private static class Loaded {
+        final TableIndex index;
+        final FileTime fileModified;
+
+        Loaded(TableIndex index, FileTime fileModified) {
+            this.index = index;
+            this.fileModified = fileModified;
+        }
+    }
+
+    // by sidecar file
+    private final Map<Path, Loaded> loaded = new HashMap<>();
+    private long rebuilds = 0;
+    private long updates = 0;
+
+    /**
+     * Build an index and write its sidecar
+     *
+     * @param table .csv file
+     * @param name name of the index, in upper case
+     * @param column column to index, in upper case
+     * @param kind
+     * @return the index
+     * @throws Error if the index exists, or the table does not have the column
+     */
+    public synchronized TableIndex create(Path table, String name, String column, TableIndex.Kind kind)
+            throws IOException {
+        Path file = TableIndex.file(table, name);
+        if (Files.exists(file))
+            throw new Error("[" + name + "] The index already exists");
+        TableIndex index = TableIndex.build(table, name, column, kind);
+        index.write(file);
+        remember(file, index);
+        return index;
+    }
+
+    /**
+     * Delete an index
+     *
+     * @param table .csv file
+     * @param name name of the index, in upper case
+     * @throws Error if the index does not exist
+     */
+    public synchronized void drop(Path table, String name) throws IOException {
+        Path file = TableIndex.file(table, name);
+        if (!Files.deleteIfExists(file))
+            throw new Error("[" + name + "] The index does not exist");
+        loaded.remove(file.toAbsolutePath());
+    }
+
+    /**
+     * The indexes of a table, rebuilt if the table changed since they were
+     * built
+     *
+     * @param table .csv file
+     * @return the indexes, empty when the table has none
+     */
+    public synchronized List<TableIndex> indexes(Path table) throws IOException {
+        List<TableIndex> indexes = new ArrayList<>();
+        if (!Files.exists(table))
+            return indexes;
+        for (Path file : sidecars(table)) {
+            TableIndex index = load(file);
+            if (index.isStale(table))
+                index = rebuild(table, file, index);
+            indexes.add(index);
+        }
+        return indexes;
+    }
+
+    /**
+     * Build the indexes of a table again, called after a statement the IDE
+     * can not follow row by row wrote it
+     *
+     * @param table .csv file
+     */
+    public synchronized void tableWritten(Path table) throws IOException {
+        if (!Files.exists(table))
+            return;
+        for (Path file : sidecars(table))
+            rebuild(table, file, load(file));
+    }
+
+    /**
+     * Update the indexes of a table from the rows a write changed, without
+     * reading the table; an index that was not built on the version the
+     * write replaced is built again. The writes of a table must be told in
+     * order, a late one only rebuilds the indexes
+     *
+     * @param table .csv file
+     * @param before version of the table the changes were applied to
+     * @param after version the write left, null if not known
+     * @param changes rows changed by the write
+     * @param offsets byte offsets of the rows in the new file, null if not
+     *        known
+     */
+    public synchronized void tableWritten(Path table, TableIndex.Stamp before, TableIndex.Stamp after,
+            RowChanges changes, long[] offsets) throws IOException {
+        if (!Files.exists(table))
+            return;
+        TableIndex.Stamp current = TableIndex.Stamp.of(table);
+        for (Path file : sidecars(table)) {
+            TableIndex index = load(file);
+            // a query, or a later write, brought it up to date
+            if (index.isBuiltOn(current))
+                continue;
+            TableIndex updated = offsets != null && after != null && index.isBuiltOn(before)
+                    ? index.apply(changes, offsets, after)
+                    : null;
+            if (updated == null) {
+                rebuild(table, file, index);
+                continue;
+            }
+            updated.write(file);
+            remember(file, updated);
+            updates++;
+        }
+    }
+
+    private TableIndex rebuild(Path table, Path file, TableIndex index) throws IOException {
+        index = TableIndex.build(table, index.header.name, index.header.column, index.header.kind);
+        index.write(file);
+        remember(file, index);
+        rebuilds++;
+        return index;
+    }
+
+    /**
+     * Delete the indexes of a table that no longer exists
+     *
+     * @param table .csv file
+     */
+    public synchronized void tableDropped(Path table) throws IOException {
+        if (Files.exists(table))
+            return;
+        for (Path file : sidecars(table)) {
+            Files.deleteIfExists(file);
+            loaded.remove(file.toAbsolutePath());
+        }
+    }
+
+    private TableIndex load(Path file) throws IOException {
+        Path key = file.toAbsolutePath();
+        FileTime modified = Files.getLastModifiedTime(file);
+        Loaded entry = loaded.get(key);
+        if (entry != null && entry.fileModified.equals(modified))
+            return entry.index;
+        TableIndex index = TableIndex.read(file);
+        loaded.put(key, new Loaded(index, modified));
+        return index;
+    }
+
+    private void remember(Path file, TableIndex index) throws IOException {
+        loaded.put(file.toAbsolutePath(), new Loaded(index, Files.getLastModifiedTime(file)));
+    }
+
+    /**
+     * @param table .csv file
+     * @return the sidecar files of the table
+     */
+    static List<Path> sidecars(Path table) throws IOException {
+        String fileName = table.getFileName().toString();
+        String tableName = fileName.endsWith(".csv") ? fileName.substring(0, fileName.length() - 4) : fileName;
+        List<Path> files = new ArrayList<>();
+        Path folder = table.toAbsolutePath().getParent();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder, tableName + ".*.idx")) {
+            for (Path file : stream) {
+                // TABLE.NAME.idx, not OTHER.TABLE.NAME.idx
+                String name = file.getFileName().toString();
+                if (name.indexOf('.', tableName.length() + 1) == name.length() - ".idx".length())
+                    files.add(file);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * @return number of indexes built again from their table
+     */
+    public synchronized long getRebuilds() {
+        return rebuilds;
+    }
+
+    /**
+     * @return number of indexes updated from the rows a write changed
+     */
+    public synchronized long getUpdates() {
+        return updates;
+    }
+}
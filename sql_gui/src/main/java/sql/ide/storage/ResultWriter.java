@@ -0,0 +1,284 @@
+package sql.ide.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+import sql.ide.profiling.Profiler;
+
+/**
+ * Writes the rows of a query to a file as they are produced, one row at a
+ * time, so a result of any size is exported in constant memory.
+ *
+ * Every row is formatted into one reused line, encoded into a buffer and
+ * written to a temporary file next to the target when the buffer fills up;
+ * commit() moves it over the target once it is on the disk. A CSV has the
+ * format of the .csv tables, so it can be imported back; JSON writes one
+ * object per line (JSON Lines).
+ */
+public class ResultWriter implements Closeable {
+    public enum Format {
+        CSV, JSON;
+
+        /**
+         * @return JSON for a .json or .jsonl file, CSV for anything else
+         */
+        public static Format of(Path file) {
+            String name = file.getFileName().toString().toLowerCase();
+            return name.endsWith(".json") || name.endsWith(".jsonl") ? JSON : CSV;
+        }
+    }
+
+    // size of the buffer the file is written through
+    static final int BUFFER_SIZE = Integer.getInteger("sqlide.export.bufferSize", 1 << 16);
+    // rows between two progress reports
+    private static final long PROGRESS_ROWS = 10_000;
+
+    private final Path file;
+    private final Path temporary;
+    private final Format format;
+    private final LongConsumer progress;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final StringBuilder line = new StringBuilder();
+    private final long started = System.nanoTime();
+
+    private List<String> columns;
+    // "NAME": of every column, escaped once
+    private List<String> keys;
+    private long rows = 0;
+    private long bytes = 0;
+    private long elapsed = -1;
+    private boolean committed = false;
+
+    private ResultWriter(Path file, Format format, LongConsumer progress) throws IOException {
+        this.file = file;
+        this.temporary = TableFiles.temporaryFile(file);
+        this.format = format;
+        this.progress = progress;
+        // created with the default permissions, not only for the owner
+        this.channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * @param file file to write, replaced when the writer commits
+     * @param format
+     * @param progress receives the number of rows written every PROGRESS_ROWS
+     *        rows, on the writer thread
+     * @return
+     * @throws IOException if the temporary file can not be created
+     */
+    public static ResultWriter open(Path file, Format format, LongConsumer progress) throws IOException {
+        return new ResultWriter(file.toAbsolutePath(), format, progress);
+    }
+
+    /**
+     * Set the columns of the rows, must be called before the first row; a
+     * CSV starts with them
+     *
+     * @param names
+     * @throws IOException
+     */
+    public void columns(List<String> names) throws IOException {
+        columns = names;
+        if (format == Format.CSV) {
+            line.setLength(0);
+            line.append(String.join(",", names));
+            encode();
+            return;
+        }
+        keys = new ArrayList<>(names.size());
+        for (String name : names) {
+            line.setLength(0);
+            appendString(name);
+            keys.add(line.append(':').toString());
+        }
+    }
+
+    /**
+     * @param row values by column name, the columns not in it are null
+     * @throws IOException
+     */
+    public void write(Map<String, Object> row) throws IOException {
+        line.setLength(0);
+        if (format == Format.CSV) {
+            // like Table.writeToCSV: a new line before every row
+            line.append('\n');
+            for (int i = 0; i < columns.size(); i++) {
+                if (i > 0)
+                    line.append(',');
+                Object value = row.get(columns.get(i));
+                if (value instanceof String)
+                    line.append('"').append((String) value).append('"');
+                else
+                    line.append(value);
+            }
+        } else {
+            line.append('{');
+            for (int i = 0; i < columns.size(); i++) {
+                if (i > 0)
+                    line.append(',');
+                line.append(keys.get(i));
+                appendValue(row.get(columns.get(i)));
+            }
+            line.append("}\n");
+        }
+        encode();
+        rows++;
+        if (rows % PROGRESS_ROWS == 0)
+            progress.accept(rows);
+    }
+
+    private void appendValue(Object value) {
+        if (value == null) {
+            line.append("null");
+        } else if (value instanceof Double || value instanceof Float) {
+            double number = ((Number) value).doubleValue();
+            // JSON has no NaN nor infinity
+            if (Double.isFinite(number))
+                line.append(value);
+            else
+                line.append("null");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            line.append(value);
+        } else {
+            appendString(value.toString());
+        }
+    }
+
+    private void appendString(String text) {
+        line.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    line.append("\\\"");
+                    break;
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                case '\t':
+                    line.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20)
+                        line.append(String.format("\\u%04x", (int) c));
+                    else
+                        line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    /**
+     * Encode the line, the buffer is written to the channel every time it fills up
+     */
+    private void encode() throws IOException {
+        CharBuffer chars = CharBuffer.wrap(line);
+        while (true) {
+            CoderResult result = encoder.encode(chars, buffer, false);
+            if (result.isError())
+                result.throwException();
+            if (result.isUnderflow())
+                return;
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        bytes += buffer.remaining();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Write what is left, force it to the disk and move it over the file
+     *
+     * @throws IOException
+     */
+    public void commit() throws IOException {
+        encoder.encode(CharBuffer.allocate(0), buffer, true);
+        encoder.flush(buffer);
+        drain();
+        channel.force(true);
+        channel.close();
+        TableFiles.copyPermissions(file, temporary);
+        try {
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        committed = true;
+        elapsed = System.nanoTime() - started;
+        Profiler.bytesWritten(bytes);
+        progress.accept(rows);
+    }
+
+    /**
+     * Delete the temporary file if the writer did not commit, the target is
+     * left as it was
+     */
+    @Override
+    public void close() throws IOException {
+        if (committed)
+            return;
+        channel.close();
+        Files.deleteIfExists(temporary);
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * @return rows written so far
+     */
+    public long rows() {
+        return rows;
+    }
+
+    /**
+     * @return bytes written to the file so far
+     */
+    public long bytes() {
+        return bytes;
+    }
+
+    /**
+     * @return rows, bytes, time and rows per second
+     */
+    @Override
+    public String toString() {
+        long nanos = elapsed != -1 ? elapsed : System.nanoTime() - started;
+        long perSecond = nanos == 0 ? rows : Math.round(rows * 1e9 / nanos);
+        return rows + " row(s), " + bytes + " byte(s) written as " + format + " in " + nanos / 1_000_000
+                + " ms (" + perSecond + " rows/s)";
+    }
+}
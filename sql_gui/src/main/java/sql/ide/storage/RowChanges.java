@@ -0,0 +1,85 @@
+package sql.ide.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The rows INSERT, UPDATE and DELETE statements changed in a table since it
+ * was last written, by their position and in the order they were applied,
+ * so the indexes of the table follow a write without reading it again.
+ *
+ * The rows are kept as the lines Table.writeToCSV writes for them.
+ */
+public class RowChanges {
+    enum Type {
+        INSERT, UPDATE, DELETE
+    }
+
+    static class Change {
+        final Type type;
+        final int[] rows;
+        final List<String> lines;
+
+        Change(Type type, int[] rows, List<String> lines) {
+            this.type = type;
+            this.rows = rows;
+            this.lines = lines;
+        }
+    }
+
+    final List<String> columnNames;
+    final List<Change> changes = new ArrayList<>();
+
+    /**
+     * @param columnNames columns of the table, in the order of its file
+     */
+    public RowChanges(List<String> columnNames) {
+        this.columnNames = columnNames;
+    }
+
+    /**
+     * A new row at the end of the table
+     *
+     * @param row
+     */
+    public void insert(Map<String, ?> row) {
+        changes.add(new Change(Type.INSERT, new int[0], List.of(TableFiles.csvLine(columnNames, row))));
+    }
+
+    /**
+     * Rows replaced
+     *
+     * @param rows positions of the rows
+     * @param values new rows, in the same order
+     */
+    public void update(List<Integer> rows, List<? extends Map<String, ?>> values) {
+        List<String> lines = new ArrayList<>(values.size());
+        for (Map<String, ?> row : values)
+            lines.add(TableFiles.csvLine(columnNames, row));
+        changes.add(new Change(Type.UPDATE, toArray(rows), lines));
+    }
+
+    /**
+     * Rows deleted at once
+     *
+     * @param rows positions of the rows, in ascending order
+     */
+    public void delete(List<Integer> rows) {
+        changes.add(new Change(Type.DELETE, toArray(rows), List.of()));
+    }
+
+    /**
+     * @return number of statements recorded
+     */
+    public int size() {
+        return changes.size();
+    }
+
+    private static int[] toArray(List<Integer> rows) {
+        int[] array = new int[rows.size()];
+        for (int i = 0; i < array.length; i++)
+            array[i] = rows.get(i);
+        return array;
+    }
+}
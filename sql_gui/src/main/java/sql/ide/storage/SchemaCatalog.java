@@ -0,0 +1,313 @@
+package sql.ide.storage;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Tables, columns and indexes of the database folder.
+ *
+ * The header and the column types of every table, stored as a .csv or as a
+ * .col file, are cached together with the modification time and the size of
+ * the file and of its index sidecars, a refresh only reads again the files
+ * that changed. The refresh does IO, so it is meant to be called out of the
+ * JavaFX thread; the queries can be made from any thread.
+ */
+public class SchemaCatalog {
+    // number of rows read to guess the type of the columns
+    static final int SAMPLE_ROWS = Integer.getInteger("sqlide.catalog.sampleRows", 100);
+    // same pattern Table.load uses to recognise the numbers
+    private static final Pattern NUMBER = Pattern.compile("-?\\d+(\\.\\d+)?");
+
+    /**
+     * One table of the catalog
+     */
+    public static class TableInfo {
+        public final String name;
+        public final Path file;
+        public final long lastModified;
+        public final long size;
+        public final List<String> columns;
+        /**
+         * NUMBER, STRING, BOOLEAN or UNKNOWN when the sample only had nulls
+         */
+        public final List<String> types;
+        /**
+         * Secondary indexes, sorted by name
+         */
+        public final List<TableIndex.Header> indexes;
+        // names, sizes and modification times of the sidecars of the indexes
+        final String indexFiles;
+
+        TableInfo(String name, Path file, long lastModified, long size, List<String> columns, List<String> types,
+                List<TableIndex.Header> indexes, String indexFiles) {
+            this.name = name;
+            this.file = file;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.columns = Collections.unmodifiableList(columns);
+            this.types = Collections.unmodifiableList(types);
+            this.indexes = Collections.unmodifiableList(indexes);
+            this.indexFiles = indexFiles;
+        }
+
+        /**
+         * @param column
+         * @return type of the column, or null if the table does not have it
+         */
+        public String typeOf(String column) {
+            int index = columns.indexOf(column.toUpperCase());
+            return index == -1 ? null : types.get(index);
+        }
+    }
+
+    /**
+     * What a refresh changed, so the views can be patched instead of rebuilt
+     */
+    public static class Changes {
+        public final Path folder;
+        /**
+         * true when the folder is not the one of the previous refresh
+         */
+        public final boolean folderChanged;
+        public final List<TableInfo> added = new ArrayList<>();
+        public final List<TableInfo> modified = new ArrayList<>();
+        public final List<String> removed = new ArrayList<>();
+
+        Changes(Path folder, boolean folderChanged) {
+            this.folder = folder;
+            this.folderChanged = folderChanged;
+        }
+
+        public boolean isEmpty() {
+            return !folderChanged && added.isEmpty() && modified.isEmpty() && removed.isEmpty();
+        }
+    }
+
+    private Path folder;
+    // sorted by name, like the tree shows them
+    private final Map<String, TableInfo> tables = new TreeMap<>();
+    // two refreshes must not compare against the same previous state
+    private final Object refreshLock = new Object();
+
+    /**
+     * Bring the catalog up to date with the folder
+     *
+     * @param folder database folder, null when no database is selected
+     * @return the tables that were added, modified or removed
+     * @throws IOException if the folder can not be listed
+     */
+    public Changes refresh(Path folder) throws IOException {
+        synchronized (refreshLock) {
+            return doRefresh(folder);
+        }
+    }
+
+    private Changes doRefresh(Path folder) throws IOException {
+        Map<String, TableInfo> previous;
+        boolean folderChanged;
+        synchronized (this) {
+            folderChanged = folder == null ? this.folder != null : !folder.equals(this.folder);
+            previous = folderChanged ? new TreeMap<>() : new TreeMap<>(tables);
+        }
+        Changes changes = new Changes(folder, folderChanged);
+
+        Map<String, TableInfo> current = new TreeMap<>();
+        if (folder != null) {
+            Map<Path, BasicFileAttributes> tables = new TreeMap<>();
+            // TABLE.NAME.idx sidecars by table name
+            Map<String, Map<Path, BasicFileAttributes>> sidecars = new TreeMap<>();
+            try (Stream<Path> paths = Files.list(folder)) {
+                for (Path file : (Iterable<Path>) paths::iterator) {
+                    String fileName = file.getFileName().toString();
+                    if (!fileName.endsWith(TableFiles.CSV) && !fileName.endsWith(TableFiles.COLUMNAR)
+                            && !fileName.endsWith(".idx"))
+                        continue;
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                    } catch (IOException e) {
+                        continue; // deleted while listing
+                    }
+                    if (!attributes.isRegularFile())
+                        continue;
+                    if (!fileName.endsWith(".idx")) {
+                        tables.put(file, attributes);
+                    } else {
+                        String[] parts = fileName.split("\\.");
+                        if (parts.length == 3)
+                            sidecars.computeIfAbsent(parts[0], table -> new TreeMap<>()).put(file, attributes);
+                    }
+                }
+            }
+
+            for (Map.Entry<Path, BasicFileAttributes> entry : tables.entrySet()) {
+                Path file = entry.getKey();
+                BasicFileAttributes attributes = entry.getValue();
+                String name = TableFiles.tableName(file);
+                // while a conversion did not finish the .csv is the table
+                if (TableFiles.isColumnar(file) && tables.containsKey(file.resolveSibling(name + TableFiles.CSV)))
+                    continue;
+                Map<Path, BasicFileAttributes> indexFiles = sidecars.getOrDefault(name, Collections.emptyMap());
+                String indexSignature = signature(indexFiles);
+
+                TableInfo known = previous.remove(name);
+                long lastModified = attributes.lastModifiedTime().toMillis();
+                if (known != null && known.file.equals(file) && known.lastModified == lastModified
+                        && known.size == attributes.size() && known.indexFiles.equals(indexSignature)) {
+                    current.put(name, known);
+                    continue;
+                }
+
+                TableInfo table = read(name, file, lastModified, attributes.size(), indexFiles, indexSignature);
+                if (table == null) {
+                    // keep what we knew, the next refresh reads it again
+                    if (known != null)
+                        current.put(name, known);
+                    continue;
+                }
+                current.put(name, table);
+                (known == null ? changes.added : changes.modified).add(table);
+            }
+        }
+        changes.removed.addAll(previous.keySet());
+
+        synchronized (this) {
+            this.folder = folder;
+            tables.clear();
+            tables.putAll(current);
+        }
+        return changes;
+    }
+
+    private static String signature(Map<Path, BasicFileAttributes> files) {
+        StringBuilder signature = new StringBuilder();
+        for (Map.Entry<Path, BasicFileAttributes> entry : files.entrySet()) {
+            signature.append(entry.getKey().getFileName()).append(':').append(entry.getValue().size()).append(':')
+                    .append(entry.getValue().lastModifiedTime().toMillis()).append(';');
+        }
+        return signature.toString();
+    }
+
+    /**
+     * Read the header and a sample of the rows of a table, and the headers of
+     * its indexes
+     */
+    private static TableInfo read(String name, Path file, long lastModified, long size,
+            Map<Path, BasicFileAttributes> indexFiles, String indexSignature) {
+        List<TableIndex.Header> indexes = new ArrayList<>();
+        for (Path indexFile : indexFiles.keySet()) {
+            try {
+                indexes.add(TableIndex.readHeader(indexFile));
+            } catch (IOException e) {
+                // being written, or not an index
+            }
+        }
+
+        if (TableFiles.isColumnar(file))
+            return readColumnar(name, file, lastModified, size, indexes, indexSignature);
+        // invalid bytes are replaced, only a file that can not be read
+        // is left for the next refresh
+        try (BufferedReader reader = TableFiles.reader(file)) {
+            String header = reader.readLine();
+            if (header == null)
+                return new TableInfo(name, file, lastModified, size, new ArrayList<>(), new ArrayList<>(), indexes,
+                        indexSignature);
+
+            List<String> columns = new ArrayList<>();
+            for (String column : header.split(","))
+                columns.add(column.toUpperCase());
+            String[] types = new String[columns.size()];
+            Arrays.fill(types, "UNKNOWN");
+
+            String line;
+            for (int row = 0; row < SAMPLE_ROWS && (line = reader.readLine()) != null; row++) {
+                String[] values = line.split(",");
+                for (int i = 0; i < values.length && i < types.length; i++) {
+                    if (types[i].equals("UNKNOWN"))
+                        types[i] = typeOf(values[i]);
+                }
+            }
+            return new TableInfo(name, file, lastModified, size, columns, Arrays.asList(types), indexes,
+                    indexSignature);
+        } catch (IOException e) {
+            // the file is being written, it will be read in the next refresh
+            return null;
+        }
+    }
+
+    /**
+     * The columns and their types are in the footer of a .col file, nothing
+     * has to be sampled
+     */
+    private static TableInfo readColumnar(String name, Path file, long lastModified, long size,
+            List<TableIndex.Header> indexes, String indexSignature) {
+        try {
+            List<String> columns = new ArrayList<>();
+            List<String> types = new ArrayList<>();
+            for (ColumnarFile.ColumnInfo column : ColumnarFile.open(file).columns()) {
+                columns.add(column.name);
+                types.add(column.type());
+            }
+            return new TableInfo(name, file, lastModified, size, columns, types, indexes, indexSignature);
+        } catch (IOException e) {
+            // being written, or damaged
+            return null;
+        }
+    }
+
+    private static String typeOf(String value) {
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\""))
+            return "STRING";
+        if (NUMBER.matcher(value).matches())
+            return "NUMBER";
+        if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false"))
+            return "BOOLEAN";
+        return "UNKNOWN";
+    }
+
+    /****************************************************************/
+    /* Queries */
+    /****************************************************************/
+
+    /**
+     * @return folder of the last refresh
+     */
+    public synchronized Path getFolder() {
+        return folder;
+    }
+
+    /**
+     * @return all the tables, sorted by name
+     */
+    public synchronized List<TableInfo> tables() {
+        return new ArrayList<>(tables.values());
+    }
+
+    /**
+     * @param name table name, in any case
+     * @return the table, or null if the catalog does not have it
+     */
+    public synchronized TableInfo table(String name) {
+        return tables.get(name.toUpperCase());
+    }
+
+    /**
+     * @param table
+     * @return columns of the table, empty if the catalog does not have it
+     */
+    public List<String> columns(String table) {
+        TableInfo info = table(table);
+        return info == null ? Collections.emptyList() : info.columns;
+    }
+}
@@ -0,0 +1,237 @@
+package sql.ide.storage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//* Import everything related to database manager
+import edu.upvictoria.fpoo.*;
+import sql.ide.profiling.Profiler;
+
+/**
+ * Tables loaded during the session, so back to back queries against the same
+ * table do not read and parse its file again.
+ *
+ * A cached table is only used while the modification time and the size of
+ * its file are the ones it was loaded with; the statements that write a
+ * table invalidate it explicitly too, in case the file changes within the
+ * resolution of the clock. The least recently used tables are evicted when
+ * the estimated size of the cache goes over the budget.
+ *
+ * The tables are kept as ColumnarTable, a fraction of the heap of the List of
+ * HashMaps Table.load returns. They are shared, they must not be modified.
+ */
+public class TableCache {
+    // heap the cached tables may use, a quarter of the heap by default
+    static final long MAX_BYTES = Long.getLong("sqlide.tableCache.maxBytes", Runtime.getRuntime().maxMemory() / 4);
+
+    private static class Entry {
+        final ColumnarTable table;
+        final long lastModified;
+        final long size;
+        final long bytes;
+
+        Entry(ColumnarTable table, long lastModified, long size, long bytes) {
+            this.table = table;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.bytes = bytes;
+        }
+    }
+
+    // in access order, the first entry is the least recently used
+    private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxBytes;
+    private long residentBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public TableCache() {
+        this(MAX_BYTES);
+    }
+
+    /**
+     * @param maxBytes estimated heap the cached tables may use
+     */
+    public TableCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Get a table, from the cache if its file did not change
+     *
+     * @param file .csv or .col file of the table
+     * @return the table, shared with the next callers
+     * @throws RuntimeException if the file can not be read, like Table.load
+     */
+    public ColumnarTable load(Path file) {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading .csv file", e);
+        }
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        Path key = file.toAbsolutePath();
+
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.lastModified == lastModified && entry.size == attributes.size()) {
+                hits++;
+                return entry.table;
+            }
+            misses++;
+            if (entry != null)
+                remove(key);
+        }
+
+        ColumnarTable table = TableFiles.loadColumnar(file);
+        Profiler.bytesRead(attributes.size());
+        long bytes = table.estimateBytes();
+        synchronized (this) {
+            if (bytes <= maxBytes) {
+                Entry previous = entries.put(key, new Entry(table, lastModified, attributes.size(), bytes));
+                if (previous != null)
+                    residentBytes -= previous.bytes;
+                residentBytes += bytes;
+                evict();
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Get a table only if the cache has it and its file did not change, the
+     * table is not loaded otherwise
+     *
+     * @param file .csv file of the table
+     * @return the table, or null
+     */
+    public ColumnarTable peek(Path file) {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+        synchronized (this) {
+            Entry entry = entries.get(file.toAbsolutePath());
+            if (entry == null || entry.lastModified != attributes.lastModifiedTime().toMillis()
+                    || entry.size != attributes.size())
+                return null;
+            hits++;
+            return entry.table;
+        }
+    }
+
+    /**
+     * Forget a table, called when a statement writes it
+     *
+     * @param file .csv file of the table
+     */
+    public synchronized void invalidate(Path file) {
+        remove(file.toAbsolutePath());
+    }
+
+    /**
+     * Forget every table
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+        residentBytes = 0;
+    }
+
+    private void remove(Path key) {
+        Entry entry = entries.remove(key);
+        if (entry != null)
+            residentBytes -= entry.bytes;
+    }
+
+    /**
+     * Drop the least recently used tables until the cache fits the budget
+     */
+    private void evict() {
+        Iterator<Map.Entry<Path, Entry>> iterator = entries.entrySet().iterator();
+        while (residentBytes > maxBytes && iterator.hasNext()) {
+            residentBytes -= iterator.next().getValue().bytes;
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Rough heap used by a table as Table.load returns it: the row maps, their
+     * entries and the boxed values, on a 64 bit JVM with compressed pointers
+     *
+     * @param table
+     * @return
+     */
+    public static long estimateBytes(Table table) {
+        List<HashMap<String, Object>> rows = table.getRows();
+        long bytes = 64 + 16L * rows.size();
+        for (HashMap<String, Object> row : rows) {
+            // the map, its bucket array and one node per column
+            bytes += 48 + 4L * Integer.highestOneBit(Math.max(row.size() * 4 / 3, 1) * 2) + 32L * row.size();
+            for (Object value : row.values()) {
+                if (value instanceof String)
+                    bytes += 40 + ((String) value).length();
+                else if (value != null)
+                    bytes += 16;
+            }
+        }
+        return bytes;
+    }
+
+    /****************************************************************/
+    /* Statistics */
+    /****************************************************************/
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return hits over lookups, 0 when nothing was looked up
+     */
+    public synchronized double hitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * @return estimated heap used by the cached tables
+     */
+    public synchronized long residentBytes() {
+        return residentBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Table cache: " + entries.size() + " table(s), " + (residentBytes >> 10) + " KB of "
+                + (maxBytes >> 10) + " KB, " + hits + " hit(s), " + misses + " miss(es), "
+                + Math.round(hitRate() * 100) + "% hit rate, " + evictions + " eviction(s)";
+    }
+}
@@ -0,0 +1,274 @@
+package sql.ide.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//* Import everything related to database manager
+import edu.upvictoria.fpoo.*;
+import sql.ide.profiling.Profiler;
+
+/**
+ * The file of a table, TABLE.csv or TABLE.col, and the reads and writes that
+ * depend on its format. A table is stored in one of them; while both exist,
+ * after a conversion that did not finish, the .csv is the table, the one the
+ * database manager sees.
+ */
+public final class TableFiles {
+    public static final String CSV = ".csv";
+    public static final String COLUMNAR = ColumnarFile.EXTENSION;
+    /**
+     * Charset of the .csv files: the database manager reads and writes them
+     * through FileReader and FileWriter, in the charset of the platform
+     */
+    public static final Charset CHARSET = Charset.defaultCharset();
+
+    private TableFiles() {
+    }
+
+    /**
+     * @param folder database folder
+     * @param table table name, in upper case
+     * @return the file of the table, its .csv if it has none
+     */
+    public static Path resolve(Path folder, String table) {
+        Path csv = folder.resolve(table + CSV);
+        Path columnar = folder.resolve(table + COLUMNAR);
+        return !Files.exists(csv) && Files.exists(columnar) ? columnar : csv;
+    }
+
+    /**
+     * @param file
+     * @return true for a .col file
+     */
+    public static boolean isColumnar(Path file) {
+        return file.getFileName().toString().endsWith(COLUMNAR);
+    }
+
+    /**
+     * @param file .csv or .col file
+     * @return the name of the table
+     */
+    public static String tableName(Path file) {
+        String name = file.getFileName().toString();
+        if (name.endsWith(CSV) || name.endsWith(COLUMNAR))
+            return name.substring(0, name.lastIndexOf('.'));
+        return name;
+    }
+
+    /**
+     * Open a .csv for reading like the FileReader of the database manager:
+     * in CHARSET, and the bytes that are not valid in it are replaced
+     * instead of failing
+     *
+     * @param file .csv file
+     * @return
+     * @throws IOException if the file can not be opened
+     */
+    public static BufferedReader reader(Path file) throws IOException {
+        return new BufferedReader(new InputStreamReader(Files.newInputStream(file), CHARSET));
+    }
+
+    /**
+     * @param file .csv or .col file
+     * @return the rows, to be modified
+     * @throws RuntimeException if the file can not be read, like Table.load
+     */
+    public static Table load(Path file) {
+        return isColumnar(file) ? loadColumnar(file).toTable() : Table.load(file);
+    }
+
+    /**
+     * @param file .csv or .col file
+     * @return the rows in columns
+     * @throws RuntimeException if the file can not be read, like Table.load
+     */
+    public static ColumnarTable loadColumnar(Path file) {
+        if (!isColumnar(file))
+            return ColumnarTable.load(file);
+        try {
+            return ColumnarFile.read(file);
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading .col file", e);
+        }
+    }
+
+    /**
+     * Replace the rows of a table in its format
+     *
+     * @param table
+     * @param file .csv or .col file
+     * @return byte offsets of the rows in a .csv, null for a .col
+     * @throws RuntimeException if it can not be written, like Table.save
+     */
+    public static long[] save(Table table, Path file) {
+        try {
+            if (!isColumnar(file))
+                return writeCsv(table, file);
+            ColumnarFile.write(ColumnarTable.from(table), file);
+            return null;
+        } catch (SecurityException e) {
+            throw new RuntimeException("The program does not have permission to write the database files");
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing database files", e);
+        }
+    }
+
+    /**
+     * Write a table to a .csv byte for byte like Table.writeToCSV does,
+     * keeping where every row starts for the indexes
+     *
+     * @param table
+     * @param file
+     * @return byte offsets of the lines of the rows, in table order
+     * @throws IOException if it can not be written
+     */
+    public static long[] writeCsv(Table table, Path file) throws IOException {
+        // Table.writeToCSV goes through a FileWriter and newLine()
+        byte[] newLine = System.lineSeparator().getBytes(CHARSET);
+        List<String> columnNames = table.getColumnNames();
+        List<HashMap<String, Object>> rows = table.getRows();
+        long[] offsets = new long[rows.size()];
+        try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+            byte[] line = String.join(",", columnNames).getBytes(CHARSET);
+            output.write(line);
+            long offset = line.length;
+            for (int i = 0; i < offsets.length; i++) {
+                output.write(newLine);
+                offsets[i] = offset + newLine.length;
+                line = csvLine(columnNames, rows.get(i)).getBytes(CHARSET);
+                output.write(line);
+                offset = offsets[i] + line.length;
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * @param columnNames
+     * @param row values by column name
+     * @return the line Table.writeToCSV writes for the row
+     */
+    public static String csvLine(List<String> columnNames, Map<String, ?> row) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < columnNames.size(); i++) {
+            if (i > 0)
+                line.append(',');
+            Object value = row.get(columnNames.get(i));
+            if (value instanceof String)
+                line.append('"').append(value).append('"');
+            else
+                line.append(value);
+        }
+        return line.toString();
+    }
+
+    /**
+     * Write rows in the format of the file, to a temporary file that is moved
+     * over it once it is on the disk
+     *
+     * @param rows
+     * @param file .csv or .col file
+     * @throws IOException if it can not be written
+     */
+    public static void write(ColumnarTable rows, Path file) throws IOException {
+        if (isColumnar(file)) {
+            ColumnarFile.write(rows, file);
+            return;
+        }
+        Path temporary = temporaryFile(file);
+        try {
+            rows.toTable().writeToCSV(temporary);
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                channel.force(true);
+                Profiler.bytesWritten(channel.size());
+            }
+            copyPermissions(file, temporary);
+            try {
+                Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * @return .NAME.tmp next to the file, created with the default permissions
+     */
+    static Path temporaryFile(Path file) {
+        return file.resolveSibling("." + file.getFileName() + ".tmp");
+    }
+
+    /**
+     * Give the file replacing another one the permissions of that one
+     */
+    static void copyPermissions(Path from, Path to) throws IOException {
+        if (!Files.exists(from))
+            return;
+        try {
+            Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
+        } catch (UnsupportedOperationException e) {
+            // not a POSIX file system, the default permissions apply
+        }
+    }
+
+    /**
+     * Store a table in the other format: the new file is written first and
+     * the old one deleted after, a crash in between leaves both with the
+     * same rows
+     *
+     * @param file .csv or .col file of the table
+     * @return the new file of the table
+     * @throws IOException if it can not be written
+     */
+    public static Path convert(Path file) throws IOException {
+        Path converted = file.resolveSibling(tableName(file) + (isColumnar(file) ? CSV : COLUMNAR));
+        write(loadColumnar(file), converted);
+        copyPermissions(file, converted);
+        Files.delete(file);
+        return converted;
+    }
+
+    /**
+     * Columns of a table, from the first line of a .csv like Table.load
+     * reads them, or from the footer of a .col
+     *
+     * @param file .csv or .col file
+     * @return
+     */
+    public static List<String> columnNames(Path file) {
+        if (isColumnar(file)) {
+            try {
+                return ColumnarFile.open(file).getColumnNames();
+            } catch (IOException e) {
+                throw new RuntimeException("Error reading .col file", e);
+            }
+        }
+        try (BufferedReader reader = reader(file)) {
+            String header = reader.readLine();
+            if (header == null)
+                throw new RuntimeException("Error reading .csv file");
+            List<String> columnNames = new ArrayList<>();
+            for (String columnName : header.split(","))
+                columnNames.add(columnName.toUpperCase());
+            return columnNames;
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading .csv file", e);
+        }
+    }
+}
@@ -0,0 +1,586 @@
+package sql.ide.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Secondary index on one column of a .csv table, kept in a sidecar file
+ * named TABLE.NAME.idx next to the table.
+ *
+ * It maps the values of the column to the byte offsets of the lines that
+ * hold them, so a query reads only those lines. A HASH index answers
+ * equalities; a SORTED index answers equalities and ranges over numbers. The
+ * Stamp of the table is stored with the index, an index that does not match
+ * it is stale and must be built again.
+ */
+public class TableIndex {
+    public enum Kind {
+        HASH, SORTED
+    }
+
+    private static final int MAGIC = 0x53514958; // SQIX
+    private static final byte VERSION = 3;
+    private static final byte NULL = 0, DOUBLE = 1, STRING = 2, OTHER = 3;
+
+    /**
+     * A version of a table file: its size, its modification time with the
+     * full precision of the file system and its file key (device and inode),
+     * which changes every time the file is replaced by a new one
+     */
+    public static final class Stamp {
+        final long size;
+        final long modified;
+        // empty when the file system has no file keys, null when unknown
+        final String key;
+
+        Stamp(long size, long modified, String key) {
+            this.size = size;
+            this.modified = modified;
+            this.key = key;
+        }
+
+        /**
+         * @param table
+         * @return the current version of the file
+         * @throws IOException if the file can not be read
+         */
+        public static Stamp of(Path table) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(table, BasicFileAttributes.class);
+            Object key = attributes.fileKey();
+            return new Stamp(attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                    key == null ? "" : key.toString());
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Stamp))
+                return false;
+            Stamp stamp = (Stamp) other;
+            // an unknown version never matches
+            return key != null && size == stamp.size && modified == stamp.modified && key.equals(stamp.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(size, modified, key);
+        }
+    }
+
+    /**
+     * What the sidecar says about itself, without its entries
+     */
+    public static class Header {
+        public final String name;
+        public final String column;
+        public final Kind kind;
+        final Stamp table;
+        final int rows;
+
+        Header(String name, String column, Kind kind, Stamp table, int rows) {
+            this.name = name;
+            this.column = column;
+            this.kind = kind;
+            this.table = table;
+            this.rows = rows;
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + kind + " INDEX ON " + column + ")";
+        }
+    }
+
+    public final Header header;
+    // offsets of the rows in table order
+    private final Object[] values;
+    private final long[] offsets;
+
+    // HASH: value -> positions in offsets
+    private Map<Object, int[]> hash;
+    // SORTED: the numbers in order with their offsets, complete when every
+    // value of the column is a number
+    private double[] sortedKeys;
+    private long[] sortedOffsets;
+    private boolean complete;
+
+    private TableIndex(Header header, Object[] values, long[] offsets) {
+        this.header = header;
+        this.values = values;
+        this.offsets = offsets;
+        if (header.kind == Kind.HASH)
+            buildHash();
+        else
+            buildSorted();
+    }
+
+    /****************************************************************/
+    /* Building */
+    /****************************************************************/
+
+    /**
+     * Read the column from the table and index it
+     *
+     * @param table .csv file
+     * @param name name of the index
+     * @param column column to index, in upper case
+     * @param kind
+     * @return the index, not written yet
+     * @throws IOException if the table can not be read
+     * @throws Error if the table does not have the column
+     */
+    public static TableIndex build(Path table, String name, String column, Kind kind) throws IOException {
+        Stamp stamp = Stamp.of(table);
+        Object[] values = new Object[1024];
+        long[] offsets = new long[1024];
+        int rows = 0;
+
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(table), 1 << 16)) {
+            LineReader reader = new LineReader(input);
+            String header = reader.readLine();
+            int position = header == null ? -1 : Arrays.asList(header.toUpperCase().split(",")).indexOf(column);
+            if (position == -1)
+                throw new Error("The column " + column + " does not exist");
+
+            String line;
+            long offset;
+            while ((offset = reader.offset()) >= 0 && (line = reader.readLine()) != null) {
+                if (rows == offsets.length) {
+                    values = Arrays.copyOf(values, rows * 2);
+                    offsets = Arrays.copyOf(offsets, rows * 2);
+                }
+                values[rows] = valueOf(line, position);
+                offsets[rows] = offset;
+                rows++;
+            }
+        }
+        Header header = new Header(name, column, kind, stamp, rows);
+        return new TableIndex(header, Arrays.copyOf(values, rows), Arrays.copyOf(offsets, rows));
+    }
+
+    /**
+     * Follow a write of the table without reading it: the values of the
+     * rows it inserted, updated or deleted are applied to the index and the
+     * offsets are the ones the writer kept
+     *
+     * @param changes rows changed since the version the index was built on
+     * @param offsets offsets of the rows in the new file, in table order
+     * @param table version of the new file
+     * @return the updated index, not written yet, or null if the changes do
+     *         not add up to the rows of the new file
+     */
+    public TableIndex apply(RowChanges changes, long[] offsets, Stamp table) {
+        int position = -1;
+        for (int i = 0; i < changes.columnNames.size(); i++) {
+            if (changes.columnNames.get(i).toUpperCase().equals(header.column))
+                position = i;
+        }
+        if (position == -1)
+            return null;
+
+        List<Object> values = new ArrayList<>(Arrays.asList(this.values));
+        for (RowChanges.Change change : changes.changes) {
+            switch (change.type) {
+                case INSERT:
+                    values.add(valueOf(change.lines.get(0), position));
+                    break;
+                case UPDATE:
+                    for (int i = 0; i < change.rows.length; i++) {
+                        // like Table.updateRow, a row out of bounds is skipped
+                        if (change.rows[i] >= 0 && change.rows[i] < values.size())
+                            values.set(change.rows[i], valueOf(change.lines.get(i), position));
+                    }
+                    break;
+                case DELETE:
+                    // the positions are from before the statement, like in Table.deleteRows
+                    boolean[] deleted = new boolean[values.size()];
+                    for (int row : change.rows) {
+                        if (row >= 0 && row < deleted.length)
+                            deleted[row] = true;
+                    }
+                    List<Object> kept = new ArrayList<>(values.size());
+                    for (int i = 0; i < deleted.length; i++) {
+                        if (!deleted[i])
+                            kept.add(values.get(i));
+                    }
+                    values = kept;
+                    break;
+            }
+        }
+        if (values.size() != offsets.length)
+            return null;
+        Header updated = new Header(header.name, header.column, header.kind, table, offsets.length);
+        return new TableIndex(updated, values.toArray(), offsets);
+    }
+
+    /**
+     * @return the value of a column in a line of the .csv, like the queries
+     *         read it
+     */
+    private static Object valueOf(String line, int position) {
+        String[] fields = line.split(",");
+        return position < fields.length ? ColumnarTable.parseValue(fields[position]) : null;
+    }
+
+    private void buildHash() {
+        Map<Object, Integer> counts = new HashMap<>();
+        for (Object value : values)
+            counts.merge(value, 1, Integer::sum);
+        hash = new HashMap<>(counts.size() * 2);
+        for (Map.Entry<Object, Integer> entry : counts.entrySet())
+            hash.put(entry.getKey(), new int[entry.getValue()]);
+        Map<Object, Integer> filled = new HashMap<>(counts.size() * 2);
+        for (int i = 0; i < values.length; i++) {
+            int slot = filled.merge(values[i], 1, Integer::sum) - 1;
+            hash.get(values[i])[slot] = i;
+        }
+    }
+
+    private void buildSorted() {
+        int numbers = 0;
+        for (Object value : values) {
+            if (value instanceof Double)
+                numbers++;
+        }
+        complete = numbers == values.length;
+        Integer[] order = new Integer[numbers];
+        numbers = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] instanceof Double)
+                order[numbers++] = i;
+        }
+        // by value, and in table order for the same value
+        Arrays.sort(order, (a, b) -> {
+            int comparison = Double.compare((Double) values[a], (Double) values[b]);
+            return comparison != 0 ? comparison : Integer.compare(a, b);
+        });
+        sortedKeys = new double[order.length];
+        sortedOffsets = new long[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedKeys[i] = (Double) values[order[i]];
+            sortedOffsets[i] = offsets[order[i]];
+        }
+    }
+
+    /****************************************************************/
+    /* Lookups */
+    /****************************************************************/
+
+    /**
+     * Lines of the rows where the column equals the value, like
+     * Objects.equals does
+     *
+     * @param value a Double, a String, or null
+     * @return offsets in table order, or null if this index can not tell
+     */
+    public long[] equal(Object value) {
+        if (hash != null) {
+            int[] positions = hash.get(value);
+            if (positions == null)
+                return new long[0];
+            long[] result = new long[positions.length];
+            for (int i = 0; i < positions.length; i++)
+                result[i] = offsets[positions[i]];
+            return result;
+        }
+        if (!(value instanceof Double))
+            return null;
+        double key = (Double) value;
+        return range(key, true, key, true, false);
+    }
+
+    /**
+     * Lines of the rows where the column is within the bounds, only SORTED
+     * indexes on columns made only of numbers can tell; on anything else
+     * the comparison fails, so the scan must report it
+     *
+     * @param low lower bound, null when there is none
+     * @param lowInclusive
+     * @param high upper bound, null when there is none
+     * @param highInclusive
+     * @return offsets in table order, or null if this index can not tell
+     */
+    public long[] range(Double low, boolean lowInclusive, Double high, boolean highInclusive) {
+        if (sortedKeys == null || !complete)
+            return null;
+        return range(low == null ? Double.NEGATIVE_INFINITY : low, low == null || lowInclusive,
+                high == null ? Double.POSITIVE_INFINITY : high, high == null || highInclusive, true);
+    }
+
+    private long[] range(double low, boolean lowInclusive, double high, boolean highInclusive, boolean numeric) {
+        int from = lowerBound(low, lowInclusive, numeric);
+        int to = lowerBound(high, !highInclusive, numeric);
+        if (from >= to)
+            return new long[0];
+        long[] result = Arrays.copyOfRange(sortedOffsets, from, to);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * First position whose key is >= value (> value when not inclusive).
+     * Comparisons use the operators of the queries when numeric, and the
+     * bits of Double.equals for the equalities
+     */
+    private int lowerBound(double value, boolean inclusive, boolean numeric) {
+        int low = 0;
+        int high = sortedKeys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int comparison = numeric ? Double.compare(sortedKeys[middle] + 0.0, value + 0.0)
+                    : Double.compare(sortedKeys[middle], value);
+            if (comparison < 0 || (!inclusive && comparison == 0))
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * @return true when every row has a number in the column, so comparing
+     *         it with a number can not fail
+     */
+    public boolean onlyNumbers() {
+        if (sortedKeys != null)
+            return complete;
+        for (Object value : values) {
+            if (!(value instanceof Double))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Tell whether the table was changed outside of the IDE since the index
+     * was built; the writes of the IDE update the index themselves
+     *
+     * @return true when the table is not the version the index was built on
+     * @throws IOException if the table can not be read
+     */
+    public boolean isStale(Path table) throws IOException {
+        return !header.table.equals(Stamp.of(table));
+    }
+
+    /**
+     * @param table
+     * @return true when the index was built on that version of the table
+     */
+    public boolean isBuiltOn(Stamp table) {
+        return header.table.equals(table);
+    }
+
+    /**
+     * @return number of rows of the table when the index was built
+     */
+    public int rows() {
+        return header.rows;
+    }
+
+    /****************************************************************/
+    /* Sidecar files */
+    /****************************************************************/
+
+    /**
+     * @param table .csv file
+     * @param name name of the index
+     * @return the sidecar file of the index
+     */
+    public static Path file(Path table, String name) {
+        String fileName = table.getFileName().toString();
+        String tableName = fileName.endsWith(".csv") ? fileName.substring(0, fileName.length() - 4) : fileName;
+        return table.resolveSibling(tableName + "." + name + ".idx");
+    }
+
+    /**
+     * Write the sidecar through a temporary file, so a reader never sees
+     * half of it
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void write(Path file) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+                writeHeader(output, header);
+                for (int i = 0; i < values.length; i++) {
+                    Object value = values[i];
+                    if (value == null) {
+                        output.writeByte(NULL);
+                    } else if (value instanceof Double) {
+                        output.writeByte(DOUBLE);
+                        output.writeDouble((Double) value);
+                    } else if (value instanceof String) {
+                        output.writeByte(STRING);
+                        writeString(output, (String) value);
+                    } else {
+                        output.writeByte(OTHER);
+                        writeString(output, value.toString());
+                    }
+                    output.writeLong(offsets[i]);
+                }
+            }
+            try {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static void writeHeader(DataOutputStream output, Header header) throws IOException {
+        output.writeInt(MAGIC);
+        output.writeByte(VERSION);
+        writeString(output, header.name);
+        writeString(output, header.column);
+        output.writeByte(header.kind.ordinal());
+        output.writeLong(header.table.size);
+        output.writeLong(header.table.modified);
+        writeString(output, header.table.key);
+        output.writeInt(header.rows);
+    }
+
+    /**
+     * @param file sidecar file
+     * @return the index
+     * @throws IOException if the file can not be read or is not an index
+     */
+    public static TableIndex read(Path file) throws IOException {
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            Header header = readHeader(input, file);
+            Object[] values = new Object[header.rows];
+            long[] offsets = new long[header.rows];
+            for (int i = 0; i < header.rows; i++) {
+                byte type = input.readByte();
+                if (type == DOUBLE)
+                    values[i] = input.readDouble();
+                else if (type == STRING || type == OTHER)
+                    values[i] = readString(input);
+                offsets[i] = input.readLong();
+            }
+            return new TableIndex(header, values, offsets);
+        }
+    }
+
+    /**
+     * Read only the header of a sidecar, for the schema tree
+     *
+     * @param file sidecar file
+     * @return
+     * @throws IOException if the file can not be read or is not an index
+     */
+    public static Header readHeader(Path file) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            return readHeader(input, file);
+        }
+    }
+
+    private static Header readHeader(DataInputStream input, Path file) throws IOException {
+        if (input.readInt() != MAGIC)
+            throw new IOException(file + " is not an index");
+        byte version = input.readByte();
+        if (version < 1 || version > VERSION)
+            throw new IOException(file + " is not an index");
+        if (version < VERSION) {
+            // the older versions kept the modification time in milliseconds
+            // and strings of up to 64 KB: their entries are not read, the
+            // index is stale and built again
+            String name = input.readUTF();
+            String column = input.readUTF();
+            Kind kind = Kind.values()[input.readByte()];
+            return new Header(name, column, kind, new Stamp(0, 0, null), 0);
+        }
+        String name = readString(input);
+        String column = readString(input);
+        Kind kind = Kind.values()[input.readByte()];
+        Stamp table = new Stamp(input.readLong(), input.readLong(), readString(input));
+        return new Header(name, column, kind, table, input.readInt());
+    }
+
+    // writeUTF is limited to 64 KB
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the lines of a file keeping track of their byte offsets, with the
+     * same line endings as BufferedReader.readLine
+     */
+    static class LineReader {
+        private final InputStream input;
+        private byte[] buffer = new byte[256];
+        private long offset = 0;
+        private boolean skipLineFeed = false;
+
+        LineReader(InputStream input) {
+            this.input = input;
+        }
+
+        /**
+         * @return offset of the next line
+         */
+        long offset() throws IOException {
+            if (skipLineFeed) {
+                input.mark(1);
+                int next = input.read();
+                if (next == '\n')
+                    offset++;
+                else if (next != -1)
+                    input.reset();
+                skipLineFeed = false;
+            }
+            return offset;
+        }
+
+        /**
+         * @return the next line without its line ending, null at the end
+         */
+        String readLine() throws IOException {
+            offset();
+            int length = 0;
+            int next;
+            while ((next = input.read()) != -1) {
+                offset++;
+                if (next == '\n')
+                    return new String(buffer, 0, length, TableFiles.CHARSET);
+                if (next == '\r') {
+                    skipLineFeed = true;
+                    return new String(buffer, 0, length, TableFiles.CHARSET);
+                }
+                if (length == buffer.length)
+                    buffer = Arrays.copyOf(buffer, length * 2);
+                buffer[length++] = (byte) next;
+            }
+            return length == 0 ? null : new String(buffer, 0, length, TableFiles.CHARSET);
+        }
+    }
+}
@@ -0,0 +1,761 @@
+package sql.ide.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+//* Import everything related to database manager
+import edu.upvictoria.fpoo.*;
+import sql.ide.profiling.Profiler;
+
+/**
+ * Write-ahead log of a database folder, so an INSERT, UPDATE or DELETE
+ * appends a few bytes instead of rewriting the whole .csv of its table.
+ *
+ * The log is the file database.wal in the folder. Every record holds the
+ * rows one statement changed, by their position in the table, and a CRC so
+ * a record torn by a crash is detected and dropped. The records are written
+ * and forced to the disk in groups, when the caller calls sync().
+ *
+ * The records not yet in the tables are kept in memory too, and the reads
+ * merge them with the table files. A background checkpoint writes them into the
+ * tables and empties the log, when it grows past sqlide.wal.checkpointBytes
+ * or after sqlide.wal.checkpointMillis without changes:
+ *
+ * 1. every changed table is written to TABLE.csv.ckpt (or .col.ckpt) and forced
+ * 2. a checkpoint record naming those tables is appended and forced
+ * 3. the .ckpt files are moved over the tables
+ * 4. the log is emptied
+ *
+ * The listener is told about the rows the records changed in every .csv
+ * written, and where they landed, so the indexes follow without reading it.
+ *
+ * Opening the log recovers the folder: the moves of a checkpoint whose
+ * record made it to the disk are finished, the records after it are applied
+ * to the tables and the stray .ckpt files are deleted.
+ */
+public class WriteAheadLog implements Closeable {
+    public static final String FILE_NAME = "database.wal";
+    static final long CHECKPOINT_BYTES = Long.getLong("sqlide.wal.checkpointBytes", 16L << 20);
+    static final long CHECKPOINT_MILLIS = Long.getLong("sqlide.wal.checkpointMillis", 5000);
+
+    private static final int MAGIC = 0x53514C57; // SQLW
+    private static final byte VERSION = 1;
+    private static final int HEADER_BYTES = 5;
+    private static final byte INSERT = 1, UPDATE = 2, DELETE = 3, CHECKPOINT = 4;
+    private static final byte NULL = 0, DOUBLE = 1, STRING = 2, BOOLEAN = 3;
+    private static final String CHECKPOINT_SUFFIX = ".ckpt";
+
+    /**
+     * Rows changed by one statement. The values are in the order of the
+     * columns of the table
+     */
+    private static class Record {
+        final byte type;
+        final int[] rows;
+        final List<Object[]> values;
+
+        Record(byte type, int[] rows, List<Object[]> values) {
+            this.type = type;
+            this.rows = rows;
+            this.values = values;
+        }
+    }
+
+    /**
+     * Told about every .csv table a checkpoint wrote
+     */
+    public interface TableListener {
+        /**
+         * Called without holding the log, maybe after a later checkpoint
+         * wrote the table again
+         *
+         * @param table .csv file
+         * @param before version of the table the changes were applied to
+         * @param after version the checkpoint wrote
+         * @param changes rows changed by the records
+         * @param offsets byte offsets of the rows in the new file
+         */
+        void tableWritten(Path table, TableIndex.Stamp before, TableIndex.Stamp after, RowChanges changes,
+                long[] offsets) throws IOException;
+    }
+
+    /**
+     * A .csv table a checkpoint wrote, for the listener
+     */
+    private static class Written {
+        final Path table;
+        final TableIndex.Stamp before;
+        final TableIndex.Stamp after;
+        final RowChanges changes;
+        final long[] offsets;
+
+        Written(Path table, TableIndex.Stamp before, TableIndex.Stamp after, RowChanges changes, long[] offsets) {
+            this.table = table;
+            this.before = before;
+            this.after = after;
+            this.changes = changes;
+            this.offsets = offsets;
+        }
+    }
+
+    /**
+     * A table merged with its records, for the reads
+     */
+    private static class Merged {
+        final ColumnarTable base;
+        final int records;
+        final ColumnarTable table;
+
+        Merged(ColumnarTable base, int records, ColumnarTable table) {
+            this.base = base;
+            this.records = records;
+            this.table = table;
+        }
+    }
+
+    private final Path folder;
+    private final Path file;
+    // opened on the first record, a folder that is only read has no log
+    private FileChannel channel;
+    // records appended and not written yet
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    // records not in the tables yet, by table name
+    private final Map<String, List<Record>> pending = new LinkedHashMap<>();
+    private final Map<String, Merged> merged = new HashMap<>();
+    private long logBytes = 0;
+    private long lastAppend = 0;
+    private final ScheduledExecutorService checkpointer;
+    private TableListener listener;
+
+    private long appended = 0;
+    private long syncs = 0;
+    private long checkpoints = 0;
+
+    private WriteAheadLog(Path folder) {
+        this.folder = folder;
+        this.file = folder.resolve(FILE_NAME);
+        this.checkpointer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sql-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Open the log of a database folder, recovering the tables from the log
+     * a crash left behind
+     *
+     * @param folder database folder
+     * @return the log, empty after the recovery
+     * @throws IOException if the log or a table can not be read or written
+     */
+    public static WriteAheadLog open(Path folder) throws IOException {
+        WriteAheadLog log = new WriteAheadLog(folder);
+        log.recover();
+        log.checkpointer.scheduleWithFixedDelay(log::checkpointInBackground, CHECKPOINT_MILLIS,
+                CHECKPOINT_MILLIS, TimeUnit.MILLISECONDS);
+        return log;
+    }
+
+    /**
+     * @param listener told about the tables the checkpoints write, null for
+     *        none
+     */
+    public synchronized void setListener(TableListener listener) {
+        this.listener = listener;
+    }
+
+    /****************************************************************/
+    /* Records */
+    /****************************************************************/
+
+    /**
+     * Append a new row at the end of the table
+     *
+     * @param table .csv or .col file of the table
+     * @param columnNames columns of the table, the values are written in
+     *        their order
+     * @param row
+     */
+    public synchronized void insert(Path table, List<String> columnNames, Map<String, Object> row) {
+        append(table, new Record(INSERT, new int[0], List.<Object[]>of(values(columnNames, row))));
+    }
+
+    /**
+     * Replace rows of the table
+     *
+     * @param table .csv or .col file of the table
+     * @param columnNames columns of the table
+     * @param rows positions of the rows
+     * @param values new rows, in the same order
+     */
+    public synchronized void update(Path table, List<String> columnNames, List<Integer> rows,
+            List<? extends Map<String, Object>> values) {
+        List<Object[]> updated = new ArrayList<>(values.size());
+        for (Map<String, Object> row : values)
+            updated.add(values(columnNames, row));
+        append(table, new Record(UPDATE, toArray(rows), updated));
+    }
+
+    /**
+     * Delete rows of the table
+     *
+     * @param table .csv or .col file of the table
+     * @param rows positions of the rows, in ascending order
+     */
+    public synchronized void delete(Path table, List<Integer> rows) {
+        append(table, new Record(DELETE, toArray(rows), List.of()));
+    }
+
+    private void append(Path table, Record record) {
+        String name = tableName(table);
+        try {
+            writeRecord(name, record);
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing the write-ahead log", e);
+        }
+        pending.computeIfAbsent(name, key -> new ArrayList<>()).add(record);
+        lastAppend = System.currentTimeMillis();
+        appended++;
+    }
+
+    /**
+     * Write the records appended since the last call and force them to the
+     * disk, they survive a crash from then on
+     *
+     * @throws RuntimeException if the log can not be written
+     */
+    public synchronized void sync() {
+        try {
+            if (buffer.size() == 0)
+                return;
+            FileChannel channel = channel();
+            ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+            while (bytes.hasRemaining())
+                channel.write(bytes);
+            Profiler.bytesWritten(buffer.size());
+            buffer.reset();
+            channel.force(false);
+            syncs++;
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing the write-ahead log", e);
+        }
+    }
+
+    /****************************************************************/
+    /* Reads */
+    /****************************************************************/
+
+    /**
+     * @param table .csv or .col file of the table
+     * @return true if the log has changes not written to the table yet
+     */
+    public synchronized boolean hasPending(Path table) {
+        return pending.containsKey(tableName(table));
+    }
+
+    /**
+     * A copy of the table with the changes of the log, to be modified
+     *
+     * @param table .csv or .col file of the table
+     * @param cache where the table may already be loaded
+     * @return the rows
+     */
+    public synchronized Table read(Path table, TableCache cache) {
+        ColumnarTable cached = cache.peek(table);
+        Table rows = cached != null ? cached.toTable() : TableFiles.load(table);
+        List<Record> records = pending.get(tableName(table));
+        if (records != null)
+            apply(rows, records);
+        return rows;
+    }
+
+    /**
+     * The table merged with the changes of the log, for the queries; it is
+     * kept until the next change and must not be modified
+     *
+     * @param table .csv or .col file of the table
+     * @param cache the table is loaded through it
+     * @return the table, or null if the log has no changes for it
+     */
+    public synchronized ColumnarTable merged(Path table, TableCache cache) {
+        String name = tableName(table);
+        List<Record> records = pending.get(name);
+        if (records == null)
+            return null;
+        ColumnarTable base = cache.load(table);
+        Merged entry = merged.get(name);
+        if (entry == null || entry.base != base || entry.records != records.size()) {
+            Table rows = base.toTable();
+            apply(rows, records);
+            entry = new Merged(base, records.size(), ColumnarTable.from(rows));
+            merged.put(name, entry);
+        }
+        return entry.table;
+    }
+
+    private static void apply(Table table, List<Record> records) {
+        List<String> columnNames = table.getColumnNames();
+        for (Record record : records) {
+            switch (record.type) {
+                case INSERT:
+                    table.addRow(row(columnNames, record.values.get(0)));
+                    break;
+                case UPDATE:
+                    for (int i = 0; i < record.rows.length; i++)
+                        table.updateRow(row(columnNames, record.values.get(i)), record.rows[i]);
+                    break;
+                case DELETE:
+                    List<Integer> rows = new ArrayList<>(record.rows.length);
+                    for (int row : record.rows)
+                        rows.add(row);
+                    table.deleteRows(rows);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /****************************************************************/
+    /* Checkpoint and recovery */
+    /****************************************************************/
+
+    /**
+     * Write the changes of the log into the tables and empty it, then tell
+     * the listener about them once the log is released
+     *
+     * @return number of tables written
+     * @throws IOException if a table or the log can not be written
+     */
+    public int checkpoint() throws IOException {
+        TableListener listener;
+        List<Written> written = new ArrayList<>();
+        int tables;
+        synchronized (this) {
+            listener = this.listener;
+            tables = checkpoint(written);
+        }
+        tellListener(listener, written);
+        return tables;
+    }
+
+    /**
+     * @param written receives the .csv tables written, when there is a
+     *        listener
+     */
+    private synchronized int checkpoint(List<Written> written) throws IOException {
+        if (pending.isEmpty())
+            return 0;
+        sync();
+
+        List<String> tables = new ArrayList<>();
+        // the .csv tables, for the listener
+        Map<String, RowChanges> changes = new HashMap<>();
+        Map<String, long[]> offsets = new HashMap<>();
+        for (String name : new ArrayList<>(pending.keySet())) {
+            Path table = TableFiles.resolve(folder, name);
+            // a table deleted outside of the IDE takes its changes with it
+            if (!Files.exists(table)) {
+                pending.remove(name);
+                merged.remove(name);
+                continue;
+            }
+            tables.add(name);
+            Table rows = TableFiles.load(table);
+            apply(rows, pending.get(name));
+            Path checkpoint = checkpointFile(table);
+            if (TableFiles.isColumnar(table)) {
+                // written and forced by itself
+                ColumnarFile.write(ColumnarTable.from(rows), checkpoint);
+                continue;
+            }
+            offsets.put(name, TableFiles.writeCsv(rows, checkpoint));
+            if (listener != null)
+                changes.put(name, changes(rows.getColumnNames(), pending.get(name)));
+            try (FileChannel output = FileChannel.open(checkpoint, StandardOpenOption.WRITE)) {
+                output.force(true);
+                Profiler.bytesWritten(output.size());
+            }
+        }
+
+        // from here on the recovery finishes the checkpoint
+        writeRecord(null, checkpointRecord(tables));
+        sync();
+
+        for (String name : tables) {
+            Path table = TableFiles.resolve(folder, name);
+            TableIndex.Stamp before = changes.containsKey(name) ? TableIndex.Stamp.of(table) : null;
+            Files.move(checkpointFile(table), table, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            if (before != null)
+                written.add(new Written(table, before, TableIndex.Stamp.of(table), changes.get(name),
+                        offsets.get(name)));
+            pending.remove(name);
+            merged.remove(name);
+        }
+        channel().truncate(HEADER_BYTES);
+        channel().force(true);
+        logBytes = HEADER_BYTES;
+        checkpoints++;
+        return tables.size();
+    }
+
+    /**
+     * Tell the listener about the tables a checkpoint wrote, without holding
+     * the log: the appends of the executor do not wait for the indexes
+     */
+    private static void tellListener(TableListener listener, List<Written> written) {
+        for (Written table : written) {
+            try {
+                listener.tableWritten(table.table, table.before, table.after, table.changes, table.offsets);
+            } catch (IOException | RuntimeException | Error e) {
+                // the tables are written, the listener catches up on its own
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @return the rows the records changed, as the indexes see them
+     */
+    private static RowChanges changes(List<String> columnNames, List<Record> records) {
+        RowChanges changes = new RowChanges(columnNames);
+        for (Record record : records) {
+            switch (record.type) {
+                case INSERT:
+                    changes.insert(row(columnNames, record.values.get(0)));
+                    break;
+                case UPDATE:
+                    List<HashMap<String, Object>> rows = new ArrayList<>(record.values.size());
+                    for (Object[] values : record.values)
+                        rows.add(row(columnNames, values));
+                    changes.update(toList(record.rows), rows);
+                    break;
+                case DELETE:
+                    changes.delete(toList(record.rows));
+                    break;
+                default:
+                    break;
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Checkpoint when the log is big or the tables were left alone for a
+     * while
+     */
+    private void checkpointInBackground() {
+        synchronized (this) {
+            if (pending.isEmpty())
+                return;
+            if (logBytes < CHECKPOINT_BYTES
+                    && System.currentTimeMillis() - lastAppend < CHECKPOINT_MILLIS)
+                return;
+        }
+        try {
+            checkpoint();
+        } catch (IOException | RuntimeException e) {
+            // the records stay in the log, the next checkpoint tries again
+            e.printStackTrace();
+        }
+    }
+
+    private void recover() throws IOException {
+        if (!Files.exists(file)) {
+            deleteCheckpointFiles();
+            return;
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+        long valid = 0;
+        try {
+            if (input.readInt() != MAGIC || input.readByte() != VERSION)
+                throw new IOException("[" + file + "] Not a write-ahead log");
+            valid = HEADER_BYTES;
+            while (true) {
+                int length = input.readInt();
+                long checksum = input.readInt() & 0xFFFFFFFFL;
+                if (length < 0 || length > bytes.length - valid - 8)
+                    break;
+                byte[] payload = new byte[length];
+                input.readFully(payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if (crc.getValue() != checksum)
+                    break;
+                readRecord(payload);
+                valid += 8 + length;
+            }
+        } catch (EOFException e) {
+            // a record torn by a crash, everything before it is kept
+        }
+
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.truncate(valid);
+        channel.position(valid);
+        logBytes = valid;
+        deleteCheckpointFiles();
+        checkpoint();
+        channel.close();
+        channel = null;
+        Files.delete(file);
+    }
+
+    private void readRecord(byte[] payload) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = input.readByte();
+        if (type == CHECKPOINT) {
+            // the checkpoint made it to the disk, its moves are finished
+            int tables = input.readInt();
+            for (int i = 0; i < tables; i++) {
+                String name = readString(input);
+                Path table = TableFiles.resolve(folder, name);
+                Path checkpoint = checkpointFile(table);
+                if (Files.exists(checkpoint))
+                    Files.move(checkpoint, table, StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                pending.remove(name);
+            }
+            return;
+        }
+
+        String name = readString(input);
+        int[] rows = new int[input.readInt()];
+        for (int i = 0; i < rows.length; i++)
+            rows[i] = input.readInt();
+        int count = input.readInt();
+        List<Object[]> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Object[] row = new Object[input.readInt()];
+            for (int j = 0; j < row.length; j++)
+                row[j] = readValue(input);
+            values.add(row);
+        }
+        pending.computeIfAbsent(name, key -> new ArrayList<>()).add(new Record(type, rows, values));
+    }
+
+    private void deleteCheckpointFiles() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder,
+                "*{" + TableFiles.CSV + "," + TableFiles.COLUMNAR + "}" + CHECKPOINT_SUFFIX)) {
+            for (Path checkpoint : files)
+                Files.deleteIfExists(checkpoint);
+        }
+    }
+
+    /**
+     * Checkpoint, stop the background checkpoints and delete the empty log
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        checkpointer.shutdown();
+        TableListener listener;
+        List<Written> written = new ArrayList<>();
+        synchronized (this) {
+            listener = this.listener;
+            checkpoint(written);
+            if (channel != null) {
+                channel.close();
+                channel = null;
+                Files.deleteIfExists(file);
+            }
+        }
+        tellListener(listener, written);
+    }
+
+    /****************************************************************/
+    /* Format */
+    /****************************************************************/
+
+    /**
+     * Add a record to the buffer: length, CRC32 of the payload and payload
+     */
+    private void writeRecord(String name, Record record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeByte(record.type);
+        if (record.type == CHECKPOINT) {
+            output.writeInt(record.values.get(0).length);
+            for (Object table : record.values.get(0))
+                writeString(output, (String) table);
+        } else {
+            writeString(output, name);
+            output.writeInt(record.rows.length);
+            for (int row : record.rows)
+                output.writeInt(row);
+            output.writeInt(record.values.size());
+            for (Object[] row : record.values) {
+                output.writeInt(row.length);
+                for (Object value : row)
+                    writeValue(output, value);
+            }
+        }
+        output.flush();
+
+        byte[] payload = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        DataOutputStream framed = new DataOutputStream(buffer);
+        framed.writeInt(payload.length);
+        framed.writeInt((int) crc.getValue());
+        framed.write(payload);
+        logBytes += 8 + payload.length;
+    }
+
+    private static Record checkpointRecord(List<String> tables) {
+        return new Record(CHECKPOINT, new int[0], List.<Object[]>of(tables.toArray(new Object[0])));
+    }
+
+    private static void writeValue(DataOutputStream output, Object value) throws IOException {
+        if (value == null) {
+            output.writeByte(NULL);
+        } else if (value instanceof Double) {
+            output.writeByte(DOUBLE);
+            output.writeDouble((Double) value);
+        } else if (value instanceof Boolean) {
+            output.writeByte(BOOLEAN);
+            output.writeBoolean((Boolean) value);
+        } else {
+            output.writeByte(STRING);
+            writeString(output, value.toString());
+        }
+    }
+
+    private static Object readValue(DataInputStream input) throws IOException {
+        byte tag = input.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case DOUBLE:
+                return input.readDouble();
+            case BOOLEAN:
+                return input.readBoolean();
+            case STRING:
+                return readString(input);
+            default:
+                throw new IOException("Unknown value in the write-ahead log: " + tag);
+        }
+    }
+
+    // writeUTF is limited to 64 KB
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The log file, created with its header on the first record
+     */
+    private FileChannel channel() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            if (channel.size() < HEADER_BYTES) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).put(VERSION);
+                header.flip();
+                channel.truncate(0);
+                channel.write(header, 0);
+            }
+            channel.position(channel.size());
+            logBytes = channel.size() + buffer.size();
+        }
+        return channel;
+    }
+
+    /**
+     * @return TABLE.csv.ckpt or TABLE.col.ckpt
+     */
+    private static Path checkpointFile(Path table) {
+        return table.resolveSibling(table.getFileName() + CHECKPOINT_SUFFIX);
+    }
+
+    private static String tableName(Path table) {
+        return TableFiles.tableName(table);
+    }
+
+    private static Object[] values(List<String> columnNames, Map<String, Object> row) {
+        Object[] values = new Object[columnNames.size()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = row.get(columnNames.get(i));
+        return values;
+    }
+
+    private static HashMap<String, Object> row(List<String> columnNames, Object[] values) {
+        HashMap<String, Object> row = new HashMap<>();
+        for (int i = 0; i < columnNames.size(); i++)
+            row.put(columnNames.get(i), i < values.length ? values[i] : null);
+        return row;
+    }
+
+    private static List<Integer> toList(int[] rows) {
+        List<Integer> list = new ArrayList<>(rows.length);
+        for (int row : rows)
+            list.add(row);
+        return list;
+    }
+
+    private static int[] toArray(List<Integer> rows) {
+        int[] array = new int[rows.size()];
+        for (int i = 0; i < array.length; i++)
+            array[i] = rows.get(i);
+        return array;
+    }
+
+    /****************************************************************/
+    /* Statistics */
+    /****************************************************************/
+
+    public Path getFolder() {
+        return folder;
+    }
+
+    public synchronized long getAppended() {
+        return appended;
+    }
+
+    public synchronized long getSyncs() {
+        return syncs;
+    }
+
+    public synchronized long getCheckpoints() {
+        return checkpoints;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Write-ahead log: " + pending.size() + " table(s) pending, " + (logBytes >> 10) + " KB, "
+                + appended + " record(s), " + syncs + " sync(s), " + checkpoints + " checkpoint(s)";
+    }
+}